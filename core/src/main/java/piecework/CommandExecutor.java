@@ -17,6 +17,7 @@ package piecework;
 
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 import piecework.common.UuidGenerator;
@@ -27,6 +28,7 @@ import piecework.exception.StatusCodeError;
 import piecework.persistence.*;
 import piecework.service.IdentityService;
 import piecework.identity.IdentityHelper;
+import piecework.validation.SubmissionTemplateFactory;
 
 /**
  * @author James Renfro
@@ -42,6 +44,9 @@ public class CommandExecutor {
     @Autowired
     Environment environment;
 
+    @Autowired(required = false)
+    CacheManager cacheManager;
+
     @Autowired
     ProcessEngineFacade facade;
 
@@ -60,12 +65,21 @@ public class CommandExecutor {
     @Autowired
     DeploymentRepository deploymentRepository;
 
+    @Autowired
+    ProcessCache processCache;
+
     @Autowired
     ProcessRepository processRepository;
 
     @Autowired
     ProcessInstanceRepository processInstanceRepository;
 
+    @Autowired
+    SubmissionTemplateFactory submissionTemplateFactory;
+
+    @Autowired
+    TaskRepository taskRepository;
+
     @Autowired
     UuidGenerator uuidGenerator;
 
@@ -87,6 +101,10 @@ public class CommandExecutor {
         return result;
     }
 
+    public CacheManager getCacheManager() {
+        return cacheManager;
+    }
+
     public Environment getEnvironment() {
         return environment;
     }
@@ -111,6 +129,10 @@ public class CommandExecutor {
         return deploymentRepository;
     }
 
+    public ProcessCache getProcessCache() {
+        return processCache;
+    }
+
     public ProcessRepository getProcessRepository() {
         return processRepository;
     }
@@ -119,6 +141,14 @@ public class CommandExecutor {
         return processInstanceRepository;
     }
 
+    public SubmissionTemplateFactory getSubmissionTemplateFactory() {
+        return submissionTemplateFactory;
+    }
+
+    public TaskRepository getTaskRepository() {
+        return taskRepository;
+    }
+
     public ActivityRepository getActivityRepository() {
         return activityRepository;
     }
@@ -55,6 +55,15 @@ public interface Constants {
         public static final String SUBMIT = "submit";
     }
 
+    public static class CacheNames {
+        public static final String PROCESS_DEFINITION_IDS = "processDefinitionIds";
+        public static final String PROCESS_DEFINITION_ID_MAP = "processDefinitionIdMap";
+        public static final String AUTHORIZATIONS = "authorizations";
+        public static final String DEPLOYMENTS = "deployments";
+        public static final String PROCESSES = "processes";
+        public static final String SUBMISSION_TEMPLATES = "submissionTemplates";
+    }
+
     public static class CandidateTypes {
         public static final String PERSON = "PERSON";
         public static final String GROUP = "GROUP";
@@ -110,6 +119,7 @@ public interface Constants {
 		public static final String request_id_required = "request_id_required";
         public static final String request_type_required = "request_type_required";
         public static final String screen_id_invalid = "screen_id_invalid";
+        public static final String search_cursor_invalid = "search_cursor_invalid";
         public static final String system_action_only = "system_action_only";
         public static final String task_action_invalid = "task_action_invalid";
         public static final String task_does_not_exist = "task_does_not_exist";
@@ -46,7 +46,10 @@ public class AccessAuthority implements GrantedAuthority {
         if (roleAllowed == null)
             return false;
 
-        Set<ResourceAuthority> resourceAuthorities = matchedResourceAuthorities(Collections.singleton(roleAllowed));
+        // Called on every secured method, so look up the role directly rather than collecting matches into a set
+        List<ResourceAuthority> resourceAuthorities = resourceAuthorityMap.get(roleAllowed);
+        if (resourceAuthorities == null)
+            return false;
         for (ResourceAuthority resourceAuthority : resourceAuthorities) {
             if (resourceAuthority != null && resourceAuthority.isAuthorized(roleAllowed, processDefinitionKeyAllowed))
                 return true;
@@ -58,6 +61,10 @@ public class AccessAuthority implements GrantedAuthority {
         return Sets.intersection(groupIds, allowedGroupIds).size() >= 1;
     }
 
+    public Set<String> getGroupIds() {
+        return groupIds;
+    }
+
     public boolean hasRole(piecework.model.Process process, Set<String> allowedRoleSet) {
         if (!resourceAuthorityMap.isEmpty()) {
             Set<ResourceAuthority> resourceAuthorities = matchedResourceAuthorities(allowedRoleSet);
@@ -15,7 +15,12 @@
  */
 package piecework.authorization;
 
+import com.mongodb.DBObject;
 import org.apache.log4j.Logger;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import piecework.Constants;
 import piecework.model.Authorization;
 
 import java.util.*;
@@ -26,15 +31,23 @@ import org.springframework.security.core.authority.mapping.GrantedAuthoritiesMap
 import piecework.persistence.AuthorizationRepository;
 
 /**
+ * Maps the groups of a pre-authenticated user to an AccessAuthority. Since most users share a
+ * handful of group sets, the access authority built for each set is cached, and the cache is cleared
+ * whenever an Authorization is saved or deleted. Authorizations changed directly in Mongo take effect
+ * once their cache entries expire.
+ *
  * @author James Renfro
  */
-public class AuthorizationRoleMapper implements GrantedAuthoritiesMapper {
+public class AuthorizationRoleMapper extends AbstractMongoEventListener<Authorization> implements GrantedAuthoritiesMapper {
 
     private static final Logger LOG = Logger.getLogger(AuthorizationRoleMapper.class);
 
     @Autowired
     AuthorizationRepository repository;
 
+    @Autowired(required = false)
+    CacheManager cacheManager;
+
 	@Override
 	public Collection<? extends GrantedAuthority> mapAuthorities(Collection<? extends GrantedAuthority> authorities) {
 		
@@ -43,40 +56,75 @@ public class AuthorizationRoleMapper implements GrantedAuthoritiesMapper {
             if (LOG.isDebugEnabled())
                 start = System.currentTimeMillis();
 
-            AccessAuthority.Builder builder = new AccessAuthority.Builder();
-
 			Set<String> authorizationIds = new HashSet<String>();
             for (GrantedAuthority authority : authorities) {
                 if (authority instanceof DebugAccessAuthority) {
                     return Collections.singletonList((DebugAccessAuthority)authority);
                 } else {
-				    String authorizationId = authority.getAuthority();
-                    authorizationIds.add(authorizationId);
-                    builder.groupId(authorizationId);
+				    authorizationIds.add(authority.getAuthority());
                 }
 			}
 
-            Iterable<Authorization> authorizations = repository.findAll(authorizationIds);
-            if (authorizations != null) {
-                for (Authorization authorization : authorizations) {
-                    if (authorization != null) {
-                        List<ResourceAuthority> resourceAuthorities = authorization.getAuthorities();
-                        if (resourceAuthorities != null && !resourceAuthorities.isEmpty()) {
-                            for (ResourceAuthority resourceAuthority : resourceAuthorities) {
-                                builder.resourceAuthority(resourceAuthority);
-                            }
-                        }
-                    }
-                }
+            Cache cache = cache();
+            Cache.ValueWrapper wrapper = cache != null ? cache.get(authorizationIds) : null;
+            AccessAuthority accessAuthority = wrapper != null ? AccessAuthority.class.cast(wrapper.get()) : null;
+
+            if (accessAuthority == null) {
+                accessAuthority = accessAuthority(authorizationIds);
+                if (cache != null)
+                    cache.put(authorizationIds, accessAuthority);
             }
 
             if (LOG.isDebugEnabled())
                 LOG.debug("Mapped authorization roles in " + (System.currentTimeMillis() - start) + " ms");
 
-			return Collections.singletonList(builder.build());
+			return Collections.singletonList(accessAuthority);
 		}
 		
 		return null;
 	}
 
+    @Override
+    public void onAfterSave(Authorization source, DBObject dbo) {
+        clear();
+    }
+
+    @Override
+    public void onAfterDelete(DBObject dbo) {
+        clear();
+    }
+
+    private void clear() {
+        // Any cached group set could include the group that changed, so start over
+        Cache cache = cache();
+        if (cache != null)
+            cache.clear();
+    }
+
+    private AccessAuthority accessAuthority(Set<String> authorizationIds) {
+        AccessAuthority.Builder builder = new AccessAuthority.Builder();
+        for (String authorizationId : authorizationIds) {
+            builder.groupId(authorizationId);
+        }
+
+        Iterable<Authorization> authorizations = repository.findAll(authorizationIds);
+        if (authorizations != null) {
+            for (Authorization authorization : authorizations) {
+                if (authorization != null) {
+                    List<ResourceAuthority> resourceAuthorities = authorization.getAuthorities();
+                    if (resourceAuthorities != null && !resourceAuthorities.isEmpty()) {
+                        for (ResourceAuthority resourceAuthority : resourceAuthorities) {
+                            builder.resourceAuthority(resourceAuthority);
+                        }
+                    }
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    private Cache cache() {
+        return cacheManager != null ? cacheManager.getCache(Constants.CacheNames.AUTHORIZATIONS) : null;
+    }
+
 }
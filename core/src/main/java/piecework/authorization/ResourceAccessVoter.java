@@ -18,6 +18,8 @@ package piecework.authorization;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.ws.rs.PathParam;
 
@@ -32,6 +34,10 @@ import org.springframework.security.core.GrantedAuthority;
  */
 public class ResourceAccessVoter extends RoleVoter {
 
+	private static final int NO_INDEX = -1;
+
+	private final ConcurrentMap<Method, Integer> processDefinitionKeyIndexMap = new ConcurrentHashMap<Method, Integer>();
+
 	@Override
 	public boolean supports(Class<?> clazz) {
 		return MethodInvocation.class.isAssignableFrom(clazz);
@@ -67,26 +73,44 @@ public class ResourceAccessVoter extends RoleVoter {
 	}
 	
 	private String getProcessDefinitionKey(MethodInvocation methodInvocation) {
-		Method method = methodInvocation.getMethod();
-    	Annotation[][] parameterAnnotations = method.getParameterAnnotations();
-    	Object[] arguments = methodInvocation.getArguments();
-    	Class<?>[] parameterTypes = method.getParameterTypes();
-    	
-    	for (int i=0;i<parameterAnnotations.length;i++) {
-    		if (parameterAnnotations[i] == null)
-    			continue;
-    		for (int j=0;j<parameterAnnotations[i].length;j++) {
-    			Annotation annotation = parameterAnnotations[i][j];
-    			if (annotation instanceof PathParam) {
-    				PathParam pathParam = PathParam.class.cast(annotation);
-    				String name = pathParam.value();
-    				if (name != null && name.equalsIgnoreCase("processDefinitionKey") && arguments.length > i && parameterTypes.length > i)
-    					if (parameterTypes[i].equals(String.class))
-    						return (String) arguments[i];
-    			}
-    		}
-    	}
-    	return null;
+		int index = processDefinitionKeyIndex(methodInvocation.getMethod());
+		Object[] arguments = methodInvocation.getArguments();
+		if (index == NO_INDEX || arguments == null || arguments.length <= index)
+			return null;
+		return (String) arguments[index];
+	}
+
+	/*
+	 * Looks for the String parameter bound to the processDefinitionKey path parameter only once for each method
+	 */
+	private int processDefinitionKeyIndex(Method method) {
+		Integer index = processDefinitionKeyIndexMap.get(method);
+		if (index == null) {
+			index = Integer.valueOf(findProcessDefinitionKeyIndex(method));
+			processDefinitionKeyIndexMap.putIfAbsent(method, index);
+		}
+		return index.intValue();
+	}
+
+	static int findProcessDefinitionKeyIndex(Method method) {
+		Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+		Class<?>[] parameterTypes = method.getParameterTypes();
+
+		for (int i=0;i<parameterAnnotations.length;i++) {
+			if (parameterAnnotations[i] == null)
+				continue;
+			for (int j=0;j<parameterAnnotations[i].length;j++) {
+				Annotation annotation = parameterAnnotations[i][j];
+				if (annotation instanceof PathParam) {
+					PathParam pathParam = PathParam.class.cast(annotation);
+					String name = pathParam.value();
+					if (name != null && name.equalsIgnoreCase("processDefinitionKey") && parameterTypes.length > i)
+						if (parameterTypes[i].equals(String.class))
+							return i;
+				}
+			}
+		}
+		return NO_INDEX;
 	}
 
 }
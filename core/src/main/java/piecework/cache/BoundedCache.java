@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.cache;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spring cache backed by a size-bounded Guava cache whose entries can expire after a
+ * time to live. Null values are stored, so that callers can cache negative lookups.
+ *
+ * Since Spring's cache abstraction has no loader, refresh after write is handled by
+ * reporting a miss to the first caller to ask for a stale entry, so that it reloads and
+ * puts a fresh value, while other callers continue to get the stale value in the meantime.
+ * The reload happens outside the cache, so there's no way to learn that it failed -- instead
+ * a caller's claim on the refresh lapses after another refresh interval, and the next caller
+ * to ask gets to try again.
+ *
+ * @author James Renfro
+ */
+public class BoundedCache implements Cache {
+
+    private final String name;
+    private final CacheSettings settings;
+    private final com.google.common.cache.Cache<Object, Entry> store;
+    private final Ticker ticker;
+    private final long refreshNanos;
+    private final AtomicLong refreshCount;
+
+    public BoundedCache(String name, CacheSettings settings) {
+        this(name, settings, Ticker.systemTicker());
+    }
+
+    public BoundedCache(String name, CacheSettings settings, Ticker ticker) {
+        this.name = name;
+        this.settings = settings;
+        this.ticker = ticker;
+        this.refreshNanos = TimeUnit.SECONDS.toNanos(settings.getRefreshSeconds());
+        this.refreshCount = new AtomicLong();
+
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .maximumSize(settings.getMaximumSize())
+                .ticker(ticker)
+                .recordStats();
+        if (settings.getTimeToLiveSeconds() > 0)
+            builder.expireAfterWrite(settings.getTimeToLiveSeconds(), TimeUnit.SECONDS);
+        this.store = builder.build();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return store;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        if (key == null)
+            return null;
+
+        Entry entry = store.getIfPresent(key);
+        if (entry == null)
+            return null;
+
+        long now = ticker.read();
+        if (refreshNanos > 0 && now - entry.written > refreshNanos && entry.claimRefresh(now, refreshNanos)) {
+            refreshCount.incrementAndGet();
+            return null;
+        }
+
+        return new SimpleValueWrapper(entry.value);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        if (key == null)
+            return;
+
+        store.put(key, new Entry(value, ticker.read()));
+    }
+
+    @Override
+    public void evict(Object key) {
+        if (key == null)
+            return;
+
+        store.invalidate(key);
+    }
+
+    @Override
+    public void clear() {
+        store.invalidateAll();
+    }
+
+    public CacheSettings getSettings() {
+        return settings;
+    }
+
+    public CacheStats getStats() {
+        return store.stats();
+    }
+
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    public long getSize() {
+        return store.size();
+    }
+
+    private static class Entry {
+
+        private static final long UNCLAIMED = Long.MIN_VALUE;
+
+        private final Object value;
+        private final long written;
+        private final AtomicLong refreshClaimed;
+
+        private Entry(Object value, long written) {
+            this.value = value;
+            this.written = written;
+            this.refreshClaimed = new AtomicLong(UNCLAIMED);
+        }
+
+        /*
+         * True for the one caller that should reload the entry, which is the first to ask, or the first
+         * to ask once an earlier claim has gone unanswered for longer than the timeout
+         */
+        private boolean claimRefresh(long now, long timeoutNanos) {
+            long claimed = refreshClaimed.get();
+            if (claimed != UNCLAIMED && now - claimed <= timeoutNanos)
+                return false;
+            return refreshClaimed.compareAndSet(claimed, now);
+        }
+
+    }
+
+}
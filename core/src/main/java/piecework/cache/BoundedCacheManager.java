@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.cache;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.env.Environment;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replaces the unbounded ConcurrentMapCacheManager with caches that are limited in size and
+ * can expire, each configured by name from the environment (see CacheSettings). Hit, miss and
+ * eviction counts are kept for each cache and can be logged on an interval by setting
+ * cache.statistics.interval.seconds.
+ *
+ * @author James Renfro
+ */
+public class BoundedCacheManager implements CacheManager, DisposableBean {
+
+    private static final Logger LOG = Logger.getLogger(BoundedCacheManager.class);
+
+    private final Environment environment;
+    private final CacheSettings defaults;
+    private final ConcurrentMap<String, BoundedCache> cacheMap;
+    private final ScheduledExecutorService statisticsExecutor;
+
+    public BoundedCacheManager(Environment environment) {
+        this.environment = environment;
+        this.defaults = new CacheSettings.Builder()
+                .maximumSize(environment.getProperty("cache.default.maximum.size", Long.class, Long.valueOf(1000l)))
+                .timeToLiveSeconds(environment.getProperty("cache.default.ttl.seconds", Long.class, Long.valueOf(3600l)))
+                .refreshSeconds(environment.getProperty("cache.default.refresh.seconds", Long.class, Long.valueOf(0l)))
+                .build();
+        this.cacheMap = new ConcurrentHashMap<String, BoundedCache>();
+
+        long interval = environment.getProperty("cache.statistics.interval.seconds", Long.class, Long.valueOf(0l));
+        if (interval > 0) {
+            this.statisticsExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("cache-statistics-%d").build());
+            this.statisticsExecutor.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    logStatistics();
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        } else {
+            this.statisticsExecutor = null;
+        }
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        BoundedCache cache = cacheMap.get(name);
+        if (cache == null) {
+            BoundedCache created = new BoundedCache(name, CacheSettings.from(environment, name, defaults));
+            cache = cacheMap.putIfAbsent(name, created);
+            if (cache == null)
+                cache = created;
+        }
+        return cache;
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(cacheMap.keySet());
+    }
+
+    public Map<String, CacheStats> getStatistics() {
+        Map<String, CacheStats> statistics = new TreeMap<String, CacheStats>();
+        for (BoundedCache cache : cacheMap.values()) {
+            statistics.put(cache.getName(), cache.getStats());
+        }
+        return statistics;
+    }
+
+    public void logStatistics() {
+        for (BoundedCache cache : cacheMap.values()) {
+            CacheStats stats = cache.getStats();
+            LOG.info("Cache " + cache.getName() + " size " + cache.getSize() + " hits " + stats.hitCount()
+                    + " misses " + stats.missCount() + " evictions " + stats.evictionCount()
+                    + " refreshes " + cache.getRefreshCount() + " hit rate " + stats.hitRate());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (statisticsExecutor != null)
+            statisticsExecutor.shutdownNow();
+    }
+
+}
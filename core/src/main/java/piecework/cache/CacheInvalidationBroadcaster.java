@@ -0,0 +1,32 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.cache;
+
+/**
+ * Hook for keeping the caches of several nodes consistent. When a node evicts an entry that other
+ * nodes may also hold, it broadcasts the eviction, and each of the other nodes evicts the entry
+ * from its own cache of the same name.
+ *
+ * @author James Renfro
+ */
+public interface CacheInvalidationBroadcaster {
+
+    /*
+     * Tells the other nodes to evict the key passed from the named cache, or to clear the cache entirely if the key is null
+     */
+    void broadcast(String cacheName, String key);
+
+}
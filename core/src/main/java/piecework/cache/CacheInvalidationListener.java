@@ -0,0 +1,28 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.cache;
+
+/**
+ * Told about each eviction that another node has broadcast, after it has been applied to the cache
+ * of the same name here, so that caches holding entries derived from that one can evict them too.
+ *
+ * @author James Renfro
+ */
+public interface CacheInvalidationListener {
+
+    void onInvalidation(String cacheName, String key);
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.cache;
+
+import org.springframework.core.env.Environment;
+
+/**
+ * Limits that apply to a single named cache. A value of zero for the time to live
+ * or refresh interval means that entries never expire or are never refreshed.
+ *
+ * @author James Renfro
+ */
+public class CacheSettings {
+
+    private final long maximumSize;
+    private final long timeToLiveSeconds;
+    private final long refreshSeconds;
+
+    private CacheSettings(Builder builder) {
+        this.maximumSize = builder.maximumSize;
+        this.timeToLiveSeconds = builder.timeToLiveSeconds;
+        this.refreshSeconds = builder.refreshSeconds;
+    }
+
+    /*
+     * Reads the settings for a named cache from properties of the form cache.<name>.maximum.size,
+     * cache.<name>.ttl.seconds and cache.<name>.refresh.seconds, falling back to the defaults passed
+     */
+    public static CacheSettings from(Environment environment, String name, CacheSettings defaults) {
+        String prefix = "cache." + name;
+        return new Builder()
+                .maximumSize(environment.getProperty(prefix + ".maximum.size", Long.class, Long.valueOf(defaults.getMaximumSize())))
+                .timeToLiveSeconds(environment.getProperty(prefix + ".ttl.seconds", Long.class, Long.valueOf(defaults.getTimeToLiveSeconds())))
+                .refreshSeconds(environment.getProperty(prefix + ".refresh.seconds", Long.class, Long.valueOf(defaults.getRefreshSeconds())))
+                .build();
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getTimeToLiveSeconds() {
+        return timeToLiveSeconds;
+    }
+
+    public long getRefreshSeconds() {
+        return refreshSeconds;
+    }
+
+    public final static class Builder {
+
+        private long maximumSize;
+        private long timeToLiveSeconds;
+        private long refreshSeconds;
+
+        public Builder() {
+            this.maximumSize = 1000l;
+            this.timeToLiveSeconds = 0l;
+            this.refreshSeconds = 0l;
+        }
+
+        public CacheSettings build() {
+            return new CacheSettings(this);
+        }
+
+        public Builder maximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        public Builder timeToLiveSeconds(long timeToLiveSeconds) {
+            this.timeToLiveSeconds = timeToLiveSeconds;
+            return this;
+        }
+
+        public Builder refreshSeconds(long refreshSeconds) {
+            this.refreshSeconds = refreshSeconds;
+            return this;
+        }
+
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.cache;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import piecework.model.CacheInvalidation;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Broadcasts cache evictions through a collection in Mongo, which every node already shares.
+ * Each node polls for evictions made by the others every cache.invalidation.poll.seconds, so
+ * an entry may be stale on other nodes for up to that long. Setting the interval to zero turns
+ * broadcasting off, which is appropriate for a single node.
+ *
+ * @author James Renfro
+ */
+@Service
+public class MongoCacheInvalidationBroadcaster implements CacheInvalidationBroadcaster, DisposableBean {
+
+    private static final Logger LOG = Logger.getLogger(MongoCacheInvalidationBroadcaster.class);
+
+    // Node clocks are never quite in sync, so look back further than the last poll and skip what was already seen
+    private static final long SKEW_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    @Autowired(required = false)
+    CacheManager cacheManager;
+
+    @Autowired
+    Environment environment;
+
+    @Autowired(required = false)
+    List<CacheInvalidationListener> listeners;
+
+    @Autowired
+    MongoOperations mongoOperations;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, Date> seen = new HashMap<String, Date>();
+    private long pollMillis;
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        long pollSeconds = environment.getProperty("cache.invalidation.poll.seconds", Long.class, Long.valueOf(0l));
+        this.pollMillis = TimeUnit.SECONDS.toMillis(pollSeconds);
+        if (pollSeconds > 0 && cacheManager != null) {
+            this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("cache-invalidation-%d").build());
+            this.executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        poll();
+                    } catch (Exception e) {
+                        LOG.error("Unable to poll for cache invalidations", e);
+                    }
+                }
+            }, pollSeconds, pollSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void broadcast(String cacheName, String key) {
+        if (executor == null)
+            return;
+
+        mongoOperations.insert(new CacheInvalidation.Builder()
+                .cacheName(cacheName)
+                .key(key)
+                .nodeId(nodeId)
+                .build());
+    }
+
+    /*
+     * Evicts whatever the other nodes have evicted since the last poll, and removes records that are too old for any node to still need
+     */
+    synchronized void poll() {
+        long now = System.currentTimeMillis();
+        Date since = new Date(now - pollMillis - SKEW_MILLIS);
+
+        Query query = new Query(where("date").gt(since)).with(new Sort(Sort.Direction.ASC, "date"));
+        List<CacheInvalidation> invalidations = mongoOperations.find(query, CacheInvalidation.class);
+        for (CacheInvalidation invalidation : invalidations) {
+            if (nodeId.equals(invalidation.getNodeId()) || seen.containsKey(invalidation.getCacheInvalidationId()))
+                continue;
+
+            seen.put(invalidation.getCacheInvalidationId(), invalidation.getDate());
+            Cache cache = cacheManager.getCache(invalidation.getCacheName());
+            if (cache != null) {
+                if (invalidation.getKey() != null)
+                    cache.evict(invalidation.getKey());
+                else
+                    cache.clear();
+            }
+            if (listeners != null) {
+                for (CacheInvalidationListener listener : listeners) {
+                    listener.onInvalidation(invalidation.getCacheName(), invalidation.getKey());
+                }
+            }
+        }
+
+        Iterator<Map.Entry<String, Date>> iterator = seen.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Date date = iterator.next().getValue();
+            if (date == null || date.before(since))
+                iterator.remove();
+        }
+
+        mongoOperations.remove(new Query(where("date").lt(new Date(now - 10 * (pollMillis + SKEW_MILLIS)))), CacheInvalidation.class);
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null)
+            executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.cache;
+
+import com.mongodb.DBObject;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.stereotype.Service;
+import piecework.Constants;
+import piecework.model.Process;
+import piecework.model.ProcessDeployment;
+import piecework.persistence.DeploymentRepository;
+import piecework.persistence.ProcessRepository;
+
+import java.util.*;
+
+/**
+ * Read-through cache of processes, by process definition key, and of deployments, by deployment id.
+ * Each deployment id belongs to a single version of a process, and both are loaded along with the
+ * activities and fields they reference, so a cached entry saves several round trips to Mongo.
+ *
+ * Entries are evicted whenever a process or deployment is saved on this node, including when one is
+ * published, and each save is passed to the other nodes as a single eviction through the
+ * CacheInvalidationBroadcaster. Since a process holds a copy of its current deployment, every node
+ * clears its processes when a deployment is evicted, whether here or by another node.
+ *
+ * @author James Renfro
+ */
+@Service
+public class ProcessCache extends AbstractMongoEventListener<Object> implements CacheInvalidationListener {
+
+    private static final Logger LOG = Logger.getLogger(ProcessCache.class);
+
+    @Autowired(required = false)
+    CacheInvalidationBroadcaster broadcaster;
+
+    @Autowired(required = false)
+    CacheManager cacheManager;
+
+    @Autowired
+    DeploymentRepository deploymentRepository;
+
+    @Autowired
+    ProcessRepository processRepository;
+
+    public Process process(String processDefinitionKey) {
+        if (processDefinitionKey == null)
+            return null;
+
+        Cache cache = cache(Constants.CacheNames.PROCESSES);
+        Process process = cached(cache, processDefinitionKey, Process.class);
+        if (process == null) {
+            process = processRepository.findOne(processDefinitionKey);
+            if (process != null && cache != null)
+                cache.put(processDefinitionKey, process);
+        }
+        return process;
+    }
+
+    public ProcessDeployment deployment(String deploymentId) {
+        if (deploymentId == null)
+            return null;
+
+        Cache cache = cache(Constants.CacheNames.DEPLOYMENTS);
+        ProcessDeployment deployment = cached(cache, deploymentId, ProcessDeployment.class);
+        if (deployment == null) {
+            deployment = deploymentRepository.findOne(deploymentId);
+            if (deployment != null && cache != null)
+                cache.put(deploymentId, deployment);
+        }
+        return deployment;
+    }
+
+    /*
+     * Returns a map of the deployments with the ids passed, looking up all that are not cached in a single query
+     */
+    public Map<String, ProcessDeployment> deployments(Set<String> deploymentIds) {
+        Map<String, ProcessDeployment> deploymentMap = new HashMap<String, ProcessDeployment>();
+        if (deploymentIds == null || deploymentIds.isEmpty())
+            return deploymentMap;
+
+        Cache cache = cache(Constants.CacheNames.DEPLOYMENTS);
+        Set<String> uncachedIds = new HashSet<String>();
+        for (String deploymentId : deploymentIds) {
+            ProcessDeployment deployment = cached(cache, deploymentId, ProcessDeployment.class);
+            if (deployment != null)
+                deploymentMap.put(deploymentId, deployment);
+            else if (deploymentId != null)
+                uncachedIds.add(deploymentId);
+        }
+
+        if (!uncachedIds.isEmpty()) {
+            Iterable<ProcessDeployment> deployments = deploymentRepository.findAll(uncachedIds);
+            if (deployments != null) {
+                for (ProcessDeployment deployment : deployments) {
+                    deploymentMap.put(deployment.getDeploymentId(), deployment);
+                    if (cache != null)
+                        cache.put(deployment.getDeploymentId(), deployment);
+                }
+            }
+        }
+
+        return deploymentMap;
+    }
+
+    public void evictProcess(String processDefinitionKey) {
+        evict(Constants.CacheNames.PROCESSES, processDefinitionKey);
+    }
+
+    public void evictDeployment(String deploymentId) {
+        evict(Constants.CacheNames.DEPLOYMENTS, deploymentId);
+        // A process holds a reference to its current deployment, and it's not worth working out which one it is
+        evict(Constants.CacheNames.PROCESSES, null);
+    }
+
+    @Override
+    public void onAfterSave(Object source, DBObject dbo) {
+        if (source instanceof Process) {
+            String processDefinitionKey = Process.class.cast(source).getProcessDefinitionKey();
+            evictProcess(processDefinitionKey);
+            broadcast(Constants.CacheNames.PROCESSES, processDefinitionKey);
+        } else if (source instanceof ProcessDeployment) {
+            String deploymentId = ProcessDeployment.class.cast(source).getDeploymentId();
+            evictDeployment(deploymentId);
+            broadcast(Constants.CacheNames.DEPLOYMENTS, deploymentId);
+        }
+    }
+
+    @Override
+    public void onInvalidation(String cacheName, String key) {
+        // The other node has evicted the deployment itself, but only clears its own processes
+        if (Constants.CacheNames.DEPLOYMENTS.equals(cacheName))
+            evict(Constants.CacheNames.PROCESSES, null);
+    }
+
+    private void evict(String cacheName, String key) {
+        Cache cache = cache(cacheName);
+        if (cache == null)
+            return;
+
+        if (key != null)
+            cache.evict(key);
+        else
+            cache.clear();
+    }
+
+    private void broadcast(String cacheName, String key) {
+        if (broadcaster == null || cache(cacheName) == null)
+            return;
+
+        try {
+            broadcaster.broadcast(cacheName, key);
+        } catch (Exception e) {
+            LOG.error("Unable to broadcast eviction of " + key + " from " + cacheName, e);
+        }
+    }
+
+    private Cache cache(String cacheName) {
+        return cacheManager != null ? cacheManager.getCache(cacheName) : null;
+    }
+
+    private static <T> T cached(Cache cache, String key, Class<T> type) {
+        if (cache == null)
+            return null;
+        Cache.ValueWrapper wrapper = cache.get(key);
+        return wrapper != null ? type.cast(wrapper.get()) : null;
+    }
+
+}
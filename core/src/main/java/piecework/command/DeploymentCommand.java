@@ -20,6 +20,7 @@ import org.apache.log4j.Logger;
 import piecework.Command;
 import piecework.CommandExecutor;
 import piecework.Constants;
+import piecework.cache.ProcessCache;
 import piecework.common.UuidGenerator;
 import piecework.engine.ProcessDeploymentResource;
 import piecework.engine.ProcessEngineFacade;
@@ -124,6 +125,12 @@ public class DeploymentCommand implements Command<ProcessDeployment> {
                     .build();
             // Persist that too
             processRepository.save(updatedProcess);
+
+            ProcessCache processCache = commandExecutor.getProcessCache();
+            if (processCache != null) {
+                processCache.evictDeployment(persistedDeployment.getDeploymentId());
+                processCache.evictProcess(process.getProcessDefinitionKey());
+            }
         } catch (ProcessEngineException e) {
             throw new BadRequestError(Constants.ExceptionCodes.process_is_misconfigured, e.getCause());
         }
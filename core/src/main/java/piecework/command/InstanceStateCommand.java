@@ -25,7 +25,7 @@ import piecework.exception.ConflictError;
 import piecework.exception.ForbiddenError;
 import piecework.exception.InternalServerError;
 import piecework.exception.StatusCodeError;
-import piecework.persistence.DeploymentRepository;
+import piecework.cache.ProcessCache;
 import piecework.persistence.ProcessInstanceRepository;
 import piecework.service.IdentityService;
 import piecework.model.*;
@@ -76,7 +76,7 @@ public class InstanceStateCommand extends InstanceCommand {
         IdentityHelper helper = commandExecutor.getHelper();
         IdentityService identityService = commandExecutor.getIdentityService();
         ProcessInstanceRepository processInstanceRepository = commandExecutor.getProcessInstanceRepository();
-        DeploymentRepository deploymentRepository = commandExecutor.getDeploymentRepository();
+        ProcessCache processCache = commandExecutor.getProcessCache();
 
         try {
             ProcessInstance.Builder modified = new ProcessInstance.Builder(instance);
@@ -86,7 +86,7 @@ public class InstanceStateCommand extends InstanceCommand {
             if (operation != OperationType.UPDATE) {
                 ProcessDeployment deployment = process.getDeployment();
                 if (instance.getDeploymentId() != null && !instance.getDeploymentId().equals(process.getDeploymentId()))
-                    deployment = deploymentRepository.findOne(instance.getDeploymentId());
+                    deployment = processCache.deployment(instance.getDeploymentId());
 
                 if (deployment == null)
                     throw new InternalServerError(Constants.ExceptionCodes.process_is_misconfigured);
@@ -136,7 +136,8 @@ public class InstanceStateCommand extends InstanceCommand {
                 tasks = tasks(instance.getTasks(), operation);
             }
 
-            processInstanceRepository.update(instance.getProcessInstanceId(), new Operation(UUID.randomUUID().toString(), operation, reason, new Date(), actingAsUserId), applicationStatus, applicationStatusExplanation, processStatus, tasks);
+            if (processInstanceRepository.update(instance.getProcessInstanceId(), new Operation(UUID.randomUUID().toString(), operation, reason, new Date(), actingAsUserId), applicationStatus, applicationStatusExplanation, processStatus, tasks))
+                commandExecutor.getTaskRepository().update(tasks);
 
             if (LOG.isDebugEnabled())
                 LOG.debug("Executed instance state command " + this.toString());
@@ -16,9 +16,12 @@
 package piecework.command;
 
 import org.apache.log4j.Logger;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import piecework.Command;
 import piecework.CommandExecutor;
 import piecework.Constants;
+import piecework.cache.ProcessCache;
 import piecework.engine.ProcessEngineFacade;
 import piecework.engine.exception.ProcessEngineException;
 import piecework.exception.BadRequestError;
@@ -32,6 +35,7 @@ import piecework.persistence.DeploymentRepository;
 import piecework.persistence.ProcessRepository;
 import piecework.security.concrete.PassthroughSanitizer;
 import piecework.util.ProcessUtility;
+import piecework.validation.SubmissionTemplateFactory;
 
 /**
  * Command to publish deployment for a process
@@ -91,10 +95,41 @@ public class PublicationCommand implements Command<ProcessDeployment> {
         // Persist that too
         processRepository.save(updatedProcess);
 
+        // Anything cached against the previously published deployment is now stale
+        invalidateCaches(commandExecutor.getCacheManager());
+        evict(commandExecutor.getProcessCache());
+
+        // Build the submission templates for the new deployment now, rather than on its first submissions
+        SubmissionTemplateFactory submissionTemplateFactory = commandExecutor.getSubmissionTemplateFactory();
+        if (submissionTemplateFactory != null)
+            submissionTemplateFactory.precompile(persistedDeployment);
 
         return persistedDeployment;
     }
 
+    private static void invalidateCaches(CacheManager cacheManager) {
+        if (cacheManager == null)
+            return;
+
+        String[] cacheNames = { Constants.CacheNames.PROCESS_DEFINITION_IDS, Constants.CacheNames.PROCESS_DEFINITION_ID_MAP };
+        for (String cacheName : cacheNames) {
+            Cache cache = cacheManager.getCache(cacheName);
+            if (cache != null)
+                cache.clear();
+        }
+    }
+
+    /*
+     * Save events evict these as well, but publication should not depend on which listeners are registered
+     */
+    private void evict(ProcessCache processCache) {
+        if (processCache == null)
+            return;
+
+        processCache.evictDeployment(deploymentId);
+        processCache.evictProcess(process.getProcessDefinitionKey());
+    }
+
     public String getProcessDefinitionKey() {
         return process != null ? process.getProcessDefinitionKey() : null;
     }
@@ -28,7 +28,7 @@ import piecework.exception.StatusCodeError;
 import piecework.model.*;
 import piecework.model.Process;
 import piecework.CommandExecutor;
-import piecework.persistence.DeploymentRepository;
+import piecework.cache.ProcessCache;
 import piecework.persistence.ProcessInstanceRepository;
 import piecework.task.TaskCriteria;
 import piecework.validation.FormValidation;
@@ -57,11 +57,11 @@ public class TaskCommand implements Command<Boolean> {
     @Override
     public Boolean execute(CommandExecutor commandExecutor) throws StatusCodeError {
         ProcessEngineFacade facade = commandExecutor.getFacade();
-        DeploymentRepository deploymentRepository = commandExecutor.getDeploymentRepository();
+        ProcessCache processCache = commandExecutor.getProcessCache();
 
         ProcessDeployment deployment = process.getDeployment();
         if (instance.getDeploymentId() != null && !instance.getDeploymentId().equals(process.getDeploymentId()))
-            deployment = deploymentRepository.findOne(instance.getDeploymentId());
+            deployment = processCache.deployment(instance.getDeploymentId());
 
         if (deployment == null)
             throw new InternalServerError(Constants.ExceptionCodes.process_is_misconfigured);
@@ -79,6 +79,7 @@ public class TaskCommand implements Command<Boolean> {
                     if (task != null) {
                         ProcessInstanceRepository processInstanceRepository = commandExecutor.getProcessInstanceRepository();
                         processInstanceRepository.update(instance.getProcessInstanceId(), task);
+                        commandExecutor.getTaskRepository().update(task);
                     }
                     throw new ConflictError(Constants.ExceptionCodes.active_task_required);
                 }
@@ -29,7 +29,6 @@ import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.CacheManager;
-import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
@@ -46,6 +45,7 @@ import org.springframework.security.ldap.userdetails.DefaultLdapAuthoritiesPopul
 import org.springframework.security.ldap.userdetails.LdapAuthoritiesPopulator;
 import org.springframework.security.ldap.userdetails.LdapUserDetailsMapper;
 import org.springframework.util.StringUtils;
+import piecework.cache.BoundedCacheManager;
 import piecework.authorization.AuthorizationRoleMapper;
 import piecework.exception.AccessDeniedExceptionMapper;
 import piecework.exception.GeneralExceptionMapper;
@@ -103,6 +103,9 @@ public class ApplicationConfiguration {
     @Autowired
     GeneralExceptionMapper generalExceptionMapper;
 
+    @Autowired
+    Environment environment;
+
 //    @Autowired
 //    JavascriptProvider javascriptProvider;
 
@@ -215,7 +218,7 @@ public class ApplicationConfiguration {
 
     @Bean
     public CacheManager cacheManager() {
-        return new ConcurrentMapCacheManager();
+        return new BoundedCacheManager(environment);
     }
 
     @Bean
@@ -43,6 +43,7 @@ import org.springframework.data.mongodb.repository.config.EnableMongoRepositorie
 import piecework.common.UuidGenerator;
 import piecework.model.ProcessInstance;
 import piecework.persistence.EmbeddedMongoInstance;
+import piecework.persistence.IndexRegistry;
 import piecework.util.SSLSocketFactoryWrapper;
 
 import javax.annotation.PreDestroy;
@@ -83,6 +84,17 @@ public class MongoConfiguration extends AbstractMongoConfiguration {
         return new GridFsTemplate(mongoDbFactory(), mappingMongoConverter(), bucket);
     }
 
+    @Bean
+    public IndexRegistry indexRegistry() throws Exception {
+        IndexRegistry indexRegistry = new IndexRegistry(environment.getProperty("mongo.keywords.text.index", Boolean.class, Boolean.FALSE),
+                environment.getProperty("request.ttl.seconds", Long.class, Long.valueOf(86400l)));
+        boolean create = environment.getProperty("mongo.indexes.create", Boolean.class, Boolean.TRUE);
+        int missing = indexRegistry.reconcile(mongoTemplate(), create);
+        if (missing > 0)
+            LOG.warn(missing + " declared indexes are missing -- set mongo.indexes.create to true to create them on startup");
+        return indexRegistry;
+    }
+
     @Override
     protected String getDatabaseName() {
         return environment.getProperty("mongo.db");
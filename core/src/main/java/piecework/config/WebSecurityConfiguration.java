@@ -39,6 +39,8 @@ import piecework.authorization.AuthorizationRoleMapper;
 import piecework.authorization.ResourceAccessVoter;
 import piecework.security.*;
 import piecework.security.concrete.ExampleBouncyCastleEncryptionService;
+import piecework.security.concrete.JceEncryptionService;
+import piecework.security.concrete.PassthroughEncryptionService;
 
 import java.net.URL;
 import java.util.ArrayList;
@@ -118,6 +120,23 @@ public class WebSecurityConfiguration {
         return type;
     }
 
+    /*
+     * Selected by encryption.provider, which may be 'jce', 'bouncycastle' or 'none' -- restricted
+     * values are stored as plain text unless one of the first two is configured
+     */
+    @Bean
+    public EncryptionService encryptionService() {
+        String provider = environment.getProperty("encryption.provider", "none");
+        if (provider.equalsIgnoreCase("jce"))
+            return new JceEncryptionService();
+        if (provider.equalsIgnoreCase("bouncycastle"))
+            return new ExampleBouncyCastleEncryptionService();
+
+        if (!provider.equalsIgnoreCase("none"))
+            LOG.warn("Encryption provider: " + provider + " is not valid");
+        return new PassthroughEncryptionService();
+    }
+
     @Bean
     public Policy antisamyPolicy() throws Exception {
         ClassPathResource policyResource = new ClassPathResource("META-INF/piecework/antisamy-piecework-1.4.4.xml");
@@ -15,25 +15,50 @@
  */
 package piecework.engine;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
+import piecework.enumeration.DispatchStatus;
 import piecework.enumeration.StateChangeType;
 import piecework.exception.StatusCodeError;
 import piecework.model.*;
 import piecework.model.Process;
+import piecework.persistence.StateChangeQueueRepository;
 import piecework.service.ProcessInstanceService;
 import piecework.service.ProcessService;
 import piecework.service.TaskService;
 import piecework.task.TaskFactory;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 /**
+ * Keeps process instances and their tasks in step with the engine. Since the engine calls in
+ * from inside its own transaction, by default state changes are only queued in mongo here, and
+ * are applied in the background in batches, in the order that they were queued for each instance.
+ * Listeners are notified once the changes in a batch are stored. The queue is also polled on an
+ * interval, which picks up retries, as well as anything left behind by a node that stopped while
+ * applying it. Setting engine.state.async to false applies changes on the calling thread instead.
+ *
  * @author James Renfro
  */
 @Service
 public class EngineStateSynchronizer {
 
     private static final Logger LOG = Logger.getLogger(EngineStateSynchronizer.class);
+    private static final long MAXIMUM_BACKOFF_SECONDS = 3600l;
+    private static final long POSTPONE_MILLIS = 1000l;
+
+    @Autowired
+    Environment environment;
 
     @Autowired
     Mediator mediator;
@@ -47,30 +72,217 @@ public class EngineStateSynchronizer {
     @Autowired
     TaskService taskService;
 
+    @Autowired
+    StateChangeQueueRepository stateChangeQueueRepository;
+
+    boolean async;
+    private int batchSize;
+    private int maximumAttempts;
+    private long backoffSeconds;
+    private long leaseSeconds;
+    private ThreadPoolExecutor dispatchExecutor;
+    private ScheduledExecutorService pollingExecutor;
+
+    @PostConstruct
+    public void init() {
+        this.async = environment.getProperty("engine.state.async", Boolean.class, Boolean.TRUE);
+        if (!async)
+            return;
+
+        this.batchSize = Math.max(1, environment.getProperty("engine.state.batch.size", Integer.class, 100));
+        this.maximumAttempts = environment.getProperty("engine.state.retry.attempts", Integer.class, 10);
+        this.backoffSeconds = environment.getProperty("engine.state.retry.backoff.seconds", Long.class, 5l);
+        this.leaseSeconds = environment.getProperty("engine.state.lease.seconds", Long.class, 120l);
+
+        // Each thread drains the queue until nothing is due, so there is never any point in
+        // holding more signals than there are threads to act on them
+        int threads = Math.max(1, environment.getProperty("engine.state.dispatch.threads", Integer.class, 2));
+        this.dispatchExecutor = new ThreadPoolExecutor(threads, threads, 0l, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(threads), new ThreadFactoryBuilder().setDaemon(true).setNameFormat("engine-state-dispatch-%d").build(),
+                new ThreadPoolExecutor.DiscardPolicy());
+
+        long interval = environment.getProperty("engine.state.poll.interval.seconds", Long.class, 15l);
+        this.pollingExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("engine-state-poll-%d").build());
+        this.pollingExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                signal();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (pollingExecutor != null)
+            pollingExecutor.shutdownNow();
+        if (dispatchExecutor != null)
+            dispatchExecutor.shutdown();
+    }
+
     public void onProcessInstanceEvent(StateChangeType event, String processInstanceId) {
-        ProcessInstance instance = null;
         switch (event) {
         case START_PROCESS:
             if (LOG.isDebugEnabled())
                 LOG.debug("Process instance started " + processInstanceId);
             break;
         case COMPLETE_PROCESS:
-            instance = processInstanceService.complete(processInstanceId);
-            if (instance != null) {
-                try {
-                    Process process = processService.read(instance.getProcessDefinitionKey());
-                    LOG.debug("Process instance completed " + processInstanceId);
-                    mediator.notify(new StateChangeEvent.Builder(StateChangeType.COMPLETE_PROCESS).process(process).instance(instance).build());
-                } catch (StatusCodeError e) {
-                    LOG.error("Unable to find the process for this process instance -- complete process event will not be thrown" + processInstanceId);
+            if (async)
+                enqueue(new QueuedStateChange.Builder().type(event).processInstanceId(processInstanceId));
+            else
+                applyProcessInstanceEvent(processInstanceId);
+            break;
+        }
+    }
+
+    public void onTaskEvent(StateChangeType type, EngineTask delegateTask) {
+        if (async)
+            enqueue(new QueuedStateChange.Builder().type(type).task(delegateTask));
+        else
+            applyTaskEvent(type, delegateTask);
+    }
+
+    /*
+     * Applies every state change that is due, a batch at a time
+     */
+    void drain() {
+        while (true) {
+            List<QueuedStateChange> batch = claim();
+            if (batch.isEmpty())
+                break;
+
+            // Changes are claimed in order of sequence, so the changes for each instance stay in order too
+            Map<String, List<QueuedStateChange>> instanceMap = new LinkedHashMap<String, List<QueuedStateChange>>();
+            for (QueuedStateChange queued : batch) {
+                List<QueuedStateChange> changes = instanceMap.get(queued.getProcessInstanceId());
+                if (changes == null) {
+                    changes = new ArrayList<QueuedStateChange>();
+                    instanceMap.put(queued.getProcessInstanceId(), changes);
                 }
-            } else {
-                LOG.error("Unable to save final state of process instance with execution business key because the instance could not be found" + processInstanceId);
+                changes.add(queued);
+            }
+
+            List<StateChangeEvent> events = new ArrayList<StateChangeEvent>();
+            for (List<QueuedStateChange> changes : instanceMap.values()) {
+                apply(changes, events);
+            }
+
+            for (StateChangeEvent event : events) {
+                mediator.notify(event);
             }
         }
     }
 
-    public void onTaskEvent(StateChangeType type, EngineTask delegateTask) {
+    /*
+     * Applies the changes for a single instance in order, reading the process and instance only once. Changes
+     * are claimed one at a time, so another thread or node may hold a change that falls between two of these --
+     * each change is only applied once nothing earlier for the instance is still queued, and the rest of the list
+     * waits behind the first one that can't be. If one of the changes fails then the ones after it wait until it
+     * is retried, or fail along with it once there are no more attempts, until an operator retries or skips it.
+     */
+    void apply(List<QueuedStateChange> changes, List<StateChangeEvent> events) {
+        Process process = null;
+        ProcessInstance instance = null;
+        // Tasks stored earlier in this batch, since the instance that was read at the start does not have them
+        Map<String, Task> taskMap = new HashMap<String, Task>();
+        for (int i = 0; i < changes.size(); i++) {
+            QueuedStateChange queued = changes.get(i);
+            QueuedStateChange predecessor = stateChangeQueueRepository.predecessor(queued);
+            if (predecessor != null) {
+                if (predecessor.getStatus() == DispatchStatus.FAILED)
+                    fail(changes.subList(i, changes.size()), predecessor);
+                else
+                    postpone(changes.subList(i, changes.size()), predecessor.getStatus() == DispatchStatus.PENDING ? predecessor.getNextAttempt() : null);
+                return;
+            }
+
+            try {
+                if (queued.isTaskEvent()) {
+                    if (process == null)
+                        process = processService.read(queued.getProcessDefinitionKey());
+                    if (instance == null)
+                        instance = processInstanceService.read(process, queued.getProcessInstanceId(), true);
+
+                    Task previous = taskMap.get(queued.getTaskId());
+                    if (previous == null && queued.getType() != StateChangeType.CREATE_TASK)
+                        previous = taskService.read(instance, queued.getTaskId());
+
+                    Task updated = task(queued.getType(), process, instance, previous, queued);
+                    if (updated != null) {
+                        if (!taskService.update(instance.getProcessInstanceId(), updated))
+                            throw new IllegalStateException("Failed to store task changes for task " + queued.getTaskId());
+                        taskMap.put(queued.getTaskId(), updated);
+                        events.add(new StateChangeEvent.Builder(queued.getType()).process(process).instance(instance).task(updated).build());
+                    }
+                } else if (queued.getType() == StateChangeType.COMPLETE_PROCESS) {
+                    StateChangeEvent event = complete(queued.getProcessInstanceId());
+                    if (event == null)
+                        throw new IllegalStateException("Unable to find process instance " + queued.getProcessInstanceId());
+                    events.add(event);
+                }
+                stateChangeQueueRepository.delete(queued.getQueuedStateChangeId());
+            } catch (Exception e) {
+                Date nextAttempt = retry(queued, e);
+                if (nextAttempt != null)
+                    postpone(changes.subList(i + 1, changes.size()), nextAttempt);
+                else
+                    fail(changes.subList(i + 1, changes.size()), queued);
+                return;
+            }
+        }
+    }
+
+    /*
+     * Puts every change for the instance that failed for good back on the queue, with its attempts reset, for
+     * when whatever made it fail has been put right. Returns the number of changes that were queued again.
+     */
+    public int retryFailed(String processInstanceId) {
+        List<QueuedStateChange> failed = stateChangeQueueRepository.findFailed(processInstanceId);
+        if (failed.isEmpty())
+            return 0;
+
+        Date now = new Date();
+        for (QueuedStateChange queued : failed) {
+            LOG.warn("Retrying " + queued.getType() + " for process instance " + processInstanceId + " after it failed with " + queued.getLastError());
+            stateChangeQueueRepository.save(new QueuedStateChange.Builder(queued)
+                    .status(DispatchStatus.PENDING)
+                    .attempts(0)
+                    .nextAttempt(now)
+                    .build());
+        }
+        if (async)
+            signal();
+        return failed.size();
+    }
+
+    /*
+     * Drops the earliest change for the instance that failed for good, for when it can never be applied, and
+     * retries the changes that failed because of it. Returns the change that was dropped, or null if none had failed.
+     */
+    public QueuedStateChange skipFailed(String processInstanceId) {
+        List<QueuedStateChange> failed = stateChangeQueueRepository.findFailed(processInstanceId);
+        if (failed.isEmpty())
+            return null;
+
+        QueuedStateChange skipped = failed.get(0);
+        LOG.warn("Skipping " + skipped.getType() + " " + skipped.getQueuedStateChangeId() + " for process instance " + processInstanceId + " after it failed with " + skipped.getLastError());
+        stateChangeQueueRepository.delete(skipped.getQueuedStateChangeId());
+        retryFailed(processInstanceId);
+        return skipped;
+    }
+
+    private void applyProcessInstanceEvent(String processInstanceId) {
+        try {
+            StateChangeEvent event = complete(processInstanceId);
+            if (event != null)
+                mediator.notify(event);
+            else
+                LOG.error("Unable to save final state of process instance with execution business key because the instance could not be found" + processInstanceId);
+        } catch (StatusCodeError e) {
+            LOG.error("Unable to find the process for this process instance -- complete process event will not be thrown" + processInstanceId);
+        }
+    }
+
+    private void applyTaskEvent(StateChangeType type, EngineTask delegateTask) {
         try {
             Process process = processService.read(delegateTask.getProcessDefinitionKey());
             if (process == null)
@@ -80,17 +292,8 @@ public class EngineStateSynchronizer {
             if (processInstance == null)
                 return;
 
-            Task updated;
-
-            switch(type) {
-                case CREATE_TASK:
-                    updated = TaskFactory.task(process, processInstance, delegateTask);
-                    break;
-                default:
-                    Task task = taskService.read(processInstance, delegateTask.getTaskId());
-                    updated = TaskFactory.task(task, delegateTask, type == StateChangeType.COMPLETE_TASK);
-                    break;
-            };
+            Task previous = type != StateChangeType.CREATE_TASK ? taskService.read(processInstance, delegateTask.getTaskId()) : null;
+            Task updated = task(type, process, processInstance, previous, delegateTask);
 
             if (updated != null) {
                 if (taskService.update(processInstance.getProcessInstanceId(), updated)) {
@@ -105,4 +308,121 @@ public class EngineStateSynchronizer {
         }
     }
 
+    /*
+     * Marks the instance as complete, returning the event to publish, or null if the instance could not be found
+     */
+    private StateChangeEvent complete(String processInstanceId) throws StatusCodeError {
+        ProcessInstance instance = processInstanceService.complete(processInstanceId);
+        if (instance == null)
+            return null;
+
+        Process process = processService.read(instance.getProcessDefinitionKey());
+        LOG.debug("Process instance completed " + processInstanceId);
+        return new StateChangeEvent.Builder(StateChangeType.COMPLETE_PROCESS).process(process).instance(instance).build();
+    }
+
+    private List<QueuedStateChange> claim() {
+        Date now = new Date();
+        Date leaseExpires = new Date(now.getTime() + TimeUnit.SECONDS.toMillis(leaseSeconds));
+        List<QueuedStateChange> batch = new ArrayList<QueuedStateChange>(batchSize);
+        while (batch.size() < batchSize) {
+            QueuedStateChange queued = stateChangeQueueRepository.claim(now, leaseExpires);
+            if (queued == null)
+                break;
+            batch.add(queued);
+        }
+        return batch;
+    }
+
+    /*
+     * Queues the change to be applied in the background. If it cannot be stored then it is not applied directly
+     * either, since earlier changes for the instance may still be queued -- the exception rolls back the engine
+     * transaction instead, so that the engine and the instance don't drift apart.
+     */
+    private void enqueue(QueuedStateChange.Builder builder) {
+        QueuedStateChange queued = null;
+        try {
+            queued = builder.sequence(stateChangeQueueRepository.nextSequence()).build();
+            stateChangeQueueRepository.save(queued);
+        } catch (RuntimeException e) {
+            LOG.error("Unable to queue state change" + (queued != null ? " " + queued.getType() + " for process instance " + queued.getProcessInstanceId() : ""), e);
+            throw e;
+        }
+        signal();
+    }
+
+    /*
+     * Returns changes to the queue without counting an attempt, to be tried again once whatever they
+     * are waiting on is out of the way
+     */
+    private void postpone(List<QueuedStateChange> changes, Date until) {
+        long earliest = System.currentTimeMillis() + POSTPONE_MILLIS;
+        Date nextAttempt = new Date(until != null ? Math.max(earliest, until.getTime()) : earliest);
+        for (QueuedStateChange queued : changes) {
+            stateChangeQueueRepository.save(new QueuedStateChange.Builder(queued)
+                    .status(DispatchStatus.PENDING)
+                    .nextAttempt(nextAttempt)
+                    .build());
+        }
+    }
+
+    /*
+     * Gives up on changes that come after one that failed for good, without applying them
+     */
+    private void fail(List<QueuedStateChange> changes, QueuedStateChange failed) {
+        for (QueuedStateChange queued : changes) {
+            LOG.error("Giving up on " + queued.getType() + " for process instance " + queued.getProcessInstanceId() + " because an earlier " + failed.getType() + " failed");
+            stateChangeQueueRepository.save(new QueuedStateChange.Builder(queued)
+                    .status(DispatchStatus.FAILED)
+                    .lastError("Earlier " + failed.getType() + " " + failed.getQueuedStateChangeId() + " failed")
+                    .build());
+        }
+    }
+
+    /*
+     * Returns the time of the next attempt, or null if there are to be no more attempts
+     */
+    private Date retry(QueuedStateChange queued, Exception e) {
+        int attempts = queued.getAttempts() + 1;
+        QueuedStateChange.Builder builder = new QueuedStateChange.Builder(queued)
+                .attempts(attempts)
+                .lastError(e.getMessage());
+
+        Date nextAttempt = null;
+        if (attempts >= maximumAttempts) {
+            LOG.error("Giving up on " + queued.getType() + " for process instance " + queued.getProcessInstanceId() + " after " + attempts + " attempts", e);
+            builder.status(DispatchStatus.FAILED);
+        } else {
+            long delay = Math.min(MAXIMUM_BACKOFF_SECONDS, backoffSeconds << Math.min(attempts - 1, 16));
+            LOG.warn("Unable to apply " + queued.getType() + " for process instance " + queued.getProcessInstanceId() + ", will try again in " + delay + " seconds", e);
+            nextAttempt = new Date(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(delay));
+            builder.status(DispatchStatus.PENDING)
+                    .nextAttempt(nextAttempt);
+        }
+        stateChangeQueueRepository.save(builder.build());
+        return nextAttempt;
+    }
+
+    /*
+     * Builds the new state of the task from the engine's copy, starting from its previous state unless it is new
+     */
+    private static Task task(StateChangeType type, Process process, ProcessInstance instance, Task previous, EngineTask engineTask) {
+        if (type == StateChangeType.CREATE_TASK)
+            return TaskFactory.task(process, instance, engineTask);
+        return TaskFactory.task(previous, engineTask, type == StateChangeType.COMPLETE_TASK);
+    }
+
+    private void signal() {
+        dispatchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    drain();
+                } catch (Exception e) {
+                    LOG.error("Unable to apply engine state changes", e);
+                }
+            }
+        });
+    }
+
 }
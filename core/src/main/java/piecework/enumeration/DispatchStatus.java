@@ -13,22 +13,11 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package piecework.persistence;
-
-import java.util.List;
-import java.util.Map;
+package piecework.enumeration;
 
 /**
  * @author James Renfro
  */
-public interface IteratingDataProvider<T> {
-
-    T getHeader();
-
-    List<T> next();
-
-    boolean hasNext();
-
-    void reset();
-
+public enum DispatchStatus {
+    PENDING, SENDING, FAILED
 }
@@ -15,6 +15,7 @@
  */
 package piecework.form;
 
+import org.apache.cxf.jaxrs.ext.MessageContext;
 import piecework.PublicApplicationResource;
 import piecework.authorization.AuthorizationRole;
 import piecework.exception.StatusCodeError;
@@ -24,6 +25,7 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
 
 /**
@@ -36,12 +38,12 @@ public interface AnonymousScriptResource extends PublicApplicationResource {
     @Path("css/{id}.css")
     @RolesAllowed({AuthorizationRole.USER})
     @Produces({"text/css"})
-    Response readStylesheet(@PathParam("id") String stylesheetId) throws StatusCodeError;
+    Response readStylesheet(@PathParam("id") String stylesheetId, @Context MessageContext context) throws StatusCodeError;
 
     @GET
     @Path("script/{id}.js")
     @RolesAllowed({AuthorizationRole.USER})
     @Produces({"text/javascript"})
-    Response readScript(@PathParam("id") String scriptId) throws StatusCodeError;
+    Response readScript(@PathParam("id") String scriptId, @Context MessageContext context) throws StatusCodeError;
 
 }
@@ -23,13 +23,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import piecework.Constants;
 import piecework.authorization.AuthorizationRole;
+import piecework.cache.ProcessCache;
 import piecework.model.RequestDetails;
 import piecework.enumeration.ActionType;
 import piecework.identity.IdentityHelper;
 import piecework.exception.*;
 import piecework.model.*;
 import piecework.model.Process;
+import piecework.persistence.ActivityRepository;
 import piecework.persistence.RequestRepository;
+import piecework.security.RequestTokenService;
 import piecework.service.ProcessInstanceService;
 import piecework.service.TaskService;
 import piecework.validation.FormValidation;
@@ -45,12 +48,21 @@ public class RequestHandler {
 
     private static final Logger LOG = Logger.getLogger(RequestHandler.class);
 
+    @Autowired
+    ActivityRepository activityRepository;
+
     @Autowired
     RequestRepository requestRepository;
 
+    @Autowired
+    RequestTokenService requestTokenService;
+
     @Autowired
     IdentityHelper identityHelper;
 
+    @Autowired
+    ProcessCache processCache;
+
     @Autowired
     ProcessInstanceService processInstanceService;
 
@@ -105,6 +117,13 @@ public class RequestHandler {
             formRequestBuilder.messages(validation.getResults());
         }
 
+        // Validation messages are too much to carry in a token, so requests that have them are still persisted
+        boolean hasMessages = validation != null && validation.getResults() != null && !validation.getResults().isEmpty();
+        if (requestTokenService.isEnabled() && !hasMessages) {
+            FormRequest formRequest = formRequestBuilder.requestDate(new Date()).build();
+            return formRequestBuilder.requestId(requestTokenService.encode(formRequest)).build();
+        }
+
         return requestRepository.save(formRequestBuilder.build());
     }
 
@@ -123,7 +142,8 @@ public class RequestHandler {
     }
 
     public FormRequest handle(RequestDetails request, String requestId) throws StatusCodeError {
-        FormRequest formRequest = requestRepository.findOne(requestId);
+        // Either way, the activity comes back with only its id, and is resolved below once the instance is known
+        FormRequest formRequest = requestTokenService.isToken(requestId) ? requestTokenService.decode(requestId) : requestRepository.findOneUnresolved(requestId);
 
         if (formRequest == null) {
             return null;
@@ -168,9 +188,11 @@ public class RequestHandler {
         if (instance == null && StringUtils.isNotEmpty(formRequest.getProcessDefinitionKey()) && StringUtils.isNotEmpty(formRequest.getProcessInstanceId()))
             instance = processInstanceService.read(formRequest.getProcessDefinitionKey(), formRequest.getProcessInstanceId(), false);
 
+        // The task is embedded in the instance, so reading it doesn't go back to the database
         FormRequest.Builder builder = new FormRequest.Builder(formRequest)
                 .instance(instance)
-                .task(taskService.read(instance, formRequest.getTaskId()));
+                .task(taskService.read(instance, formRequest.getTaskId()))
+                .activity(activity(formRequest, instance));
 
         return builder.build();
     }
@@ -208,6 +230,49 @@ public class RequestHandler {
     }
 
 
+    /*
+     * Finds the activity that a request refers to among the activities of the instance and of its deployment, which
+     * is almost always cached, and only goes to the database for an activity that belongs to neither
+     */
+    private Activity activity(FormRequest formRequest, ProcessInstance instance) {
+        Activity reference = formRequest.getActivity();
+        String activityId = reference != null ? reference.getActivityId() : null;
+        if (activityId == null)
+            return null;
+
+        Activity activity = null;
+        if (instance != null)
+            activity = activity(instance.getActivityMap(), activityId);
+
+        if (activity == null) {
+            ProcessDeployment deployment = null;
+            if (instance != null && instance.getDeploymentId() != null) {
+                deployment = processCache.deployment(instance.getDeploymentId());
+            } else {
+                Process process = processCache.process(formRequest.getProcessDefinitionKey());
+                if (process != null)
+                    deployment = process.getDeployment();
+            }
+            if (deployment != null)
+                activity = activity(deployment.getActivityMap(), activityId);
+        }
+
+        if (activity == null)
+            activity = activityRepository.findOne(activityId);
+
+        return activity;
+    }
+
+    private static Activity activity(Map<String, Activity> activityMap, String activityId) {
+        if (activityMap != null) {
+            for (Activity activity : activityMap.values()) {
+                if (activity != null && activityId.equals(activity.getActivityId()))
+                    return activity;
+            }
+        }
+        return null;
+    }
+
     private void verifyCurrentUserIsAuthorized(Process process, Task task) throws ForbiddenError, BadRequestError {
         if (process == null)
             throw new BadRequestError(Constants.ExceptionCodes.process_does_not_exist);
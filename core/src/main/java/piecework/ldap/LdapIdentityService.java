@@ -15,6 +15,9 @@
  */
 package piecework.ldap;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.springframework.cache.Cache;
@@ -35,6 +38,7 @@ import piecework.service.IdentityService;
 
 import javax.naming.directory.SearchControls;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * @author James Renfro
@@ -50,6 +54,7 @@ public class LdapIdentityService implements IdentityService {
     private final LdapUserSearch userSearch;
     private final LdapAuthoritiesPopulator authoritiesPopulator;
     private final CustomLdapUserDetailsMapper userDetailsMapper;
+    private final ExecutorService lookupExecutor;
 
     public LdapIdentityService() {
         this.cacheManager = null;
@@ -59,6 +64,7 @@ public class LdapIdentityService implements IdentityService {
         this.userSearch = null;
         this.authoritiesPopulator = null;
         this.ldapSettings = null;
+        this.lookupExecutor = null;
     }
 
     public LdapIdentityService(LdapContextSource personLdapContextSource, LdapUserSearch userSearch, LdapAuthoritiesPopulator authoritiesPopulator, CustomLdapUserDetailsMapper userDetailsMapper, LdapSettings ldapSettings, CacheManager cacheManager) {
@@ -70,6 +76,8 @@ public class LdapIdentityService implements IdentityService {
         this.authoritiesPopulator = authoritiesPopulator;
         this.ldapSettings = ldapSettings;
         this.cacheManager = cacheManager;
+        this.lookupExecutor = Executors.newFixedThreadPool(Math.max(1, ldapSettings.getLdapLookupThreads()),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ldap-lookup-%d").build());
     }
 
     @Override
@@ -78,23 +86,29 @@ public class LdapIdentityService implements IdentityService {
         if (LOG.isDebugEnabled())
             start = System.currentTimeMillis();
         Map<String, User> map = new HashMap<String, User>();
-        if (ids != null) {
-            String internalId = ldapSettings.getLdapPersonAttributeIdInternal();
-            OrFilter filter = new OrFilter();
+        if (ids != null && !ids.isEmpty()) {
+            Cache cache = cacheManager.getCache("userById");
+            List<String> missing = new ArrayList<String>();
             for (String id : ids) {
-                filter.or(new EqualsFilter(internalId, id));
-            }
-            List<User> users = findMany(filter, -1);
-            if (users != null) {
-                for (User user : users) {
-                    if (user != null)
-                        map.put(user.getUserId(), user);
+                if (StringUtils.isEmpty(id))
+                    continue;
+                Cache.ValueWrapper wrapper = cache.get(id);
+                if (wrapper == null) {
+                    missing.add(id);
+                    continue;
                 }
+                User user = (User) wrapper.get();
+                if (user != null)
+                    map.put(user.getUserId(), user);
             }
+
+            if (!missing.isEmpty())
+                map.putAll(findUncachedUsers(missing, cache));
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("Retrieving users for " + ids.size() + " took " + (System.currentTimeMillis() - start) + " ms, with " + missing.size() + " not cached");
         }
 
-        if (LOG.isDebugEnabled())
-            LOG.debug("Retrieving users for " + ids.size() + " took " + (System.currentTimeMillis() - start) + " ms");
         return map;
     }
 
@@ -152,6 +166,81 @@ public class LdapIdentityService implements IdentityService {
         }
     }
 
+    /*
+     * Looks up ids that are not in the per-user cache in batches, running the batches in parallel
+     * when there is more than one, and caches each result, including ids that were not found. A
+     * batch that fails fails the whole lookup, the same as when there's only one batch, so that
+     * callers never get back a map that is quietly missing users.
+     */
+    private Map<String, User> findUncachedUsers(List<String> ids, final Cache cache) {
+        Map<String, User> map = new HashMap<String, User>();
+        List<List<String>> batches = Lists.partition(ids, Math.max(1, ldapSettings.getLdapLookupBatchSize()));
+        if (batches.size() == 1 || lookupExecutor == null) {
+            for (List<String> batch : batches) {
+                map.putAll(findBatch(batch, cache));
+            }
+            return map;
+        }
+
+        List<Future<Map<String, User>>> futures = new ArrayList<Future<Map<String, User>>>(batches.size());
+        for (final List<String> batch : batches) {
+            futures.add(lookupExecutor.submit(new Callable<Map<String, User>>() {
+                @Override
+                public Map<String, User> call() throws Exception {
+                    return findBatch(batch, cache);
+                }
+            }));
+        }
+        try {
+            for (Future<Map<String, User>> future : futures) {
+                map.putAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(futures);
+            throw new IllegalStateException("Interrupted while retrieving users", e);
+        } catch (ExecutionException e) {
+            cancel(futures);
+            throw Throwables.propagate(e.getCause());
+        }
+        return map;
+    }
+
+    private static void cancel(List<Future<Map<String, User>>> futures) {
+        for (Future<Map<String, User>> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private Map<String, User> findBatch(List<String> ids, Cache cache) {
+        String internalId = ldapSettings.getLdapPersonAttributeIdInternal();
+        OrFilter filter = new OrFilter();
+        for (String id : ids) {
+            filter.or(new EqualsFilter(internalId, id));
+        }
+        List<User> users = search(filter.encode(), 0l);
+
+        // A search that exceeded its limits tells us nothing about the ids that are missing
+        if (users == null)
+            return Collections.emptyMap();
+
+        // Directory ids generally match without regard to case, so do the same when matching them back up
+        Map<String, User> found = new HashMap<String, User>();
+        for (User user : users) {
+            if (user != null && user.getUserId() != null)
+                found.put(user.getUserId().toLowerCase(), user);
+        }
+
+        Map<String, User> map = new HashMap<String, User>();
+        for (String id : ids) {
+            User user = found.get(id.toLowerCase());
+            cache.put(id, user);
+            if (user != null)
+                map.put(user.getUserId(), user);
+        }
+        return map;
+    }
+
     private List<User> findMany(Filter filter, long countLimit) {
         String encoded = filter.encode();
         Cache cache = cacheManager.getCache("userCache");
@@ -159,6 +248,13 @@ public class LdapIdentityService implements IdentityService {
         if (wrapper != null)
             return (List<User>) wrapper.get();
 
+        List<User> users = search(encoded, countLimit);
+        if (users != null)
+            cache.put(encoded, users);
+        return users;
+    }
+
+    List<User> search(String encoded, long countLimit) {
         String ldapPersonSearchBase = ldapSettings.getLdapPersonSearchBase();
         SpringSecurityLdapTemplate template = new SpringSecurityLdapTemplate(personLdapContextSource);
 
@@ -177,7 +273,6 @@ public class LdapIdentityService implements IdentityService {
                     users.add(new User.Builder(identityDetails).build());
                 }
             }
-            cache.put(encoded, users);
             return users;
         } catch (SizeLimitExceededException e) {
             return null;
@@ -52,6 +52,8 @@ public class LdapSettings {
     private final String ldapDefaultUser;
     private final char[] ldapDefaultPassword;
     private final SearchControls searchControls;
+    private final int ldapLookupBatchSize;
+    private final int ldapLookupThreads;
 
     public LdapSettings(Environment environment) {
         this.encryption = authenticationEncryption(environment.getProperty("ldap.authentication.encryption"));
@@ -81,6 +83,8 @@ public class LdapSettings {
         this.searchControls.setTimeLimit(10000);
         this.searchControls.setReturningAttributes(null);
         this.searchControls.setCountLimit(20);
+        this.ldapLookupBatchSize = environment.getProperty("ldap.lookup.batch.size", Integer.class, Integer.valueOf(50));
+        this.ldapLookupThreads = environment.getProperty("ldap.lookup.threads", Integer.class, Integer.valueOf(4));
     }
 
     public LdapAuthenticationEncryption getEncryption() {
@@ -175,6 +179,14 @@ public class LdapSettings {
         return searchControls;
     }
 
+    public int getLdapLookupBatchSize() {
+        return ldapLookupBatchSize;
+    }
+
+    public int getLdapLookupThreads() {
+        return ldapLookupThreads;
+    }
+
     private static LdapAuthenticationEncryption authenticationEncryption(String ldapAuthenticationEncryption) {
         LdapAuthenticationEncryption encryption = LdapAuthenticationEncryption.NONE;
 
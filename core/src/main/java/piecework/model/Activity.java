@@ -192,6 +192,11 @@ public class Activity implements Serializable {
             return new Activity(this);
         }
 
+        public Builder activityId(String activityId) {
+            this.activityId = activityId;
+            return this;
+        }
+
         public Builder fields(Set<Field> fields) {
             this.fields = fields;
             return this;
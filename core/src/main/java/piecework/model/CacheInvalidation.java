@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Record of a cache entry that one node has evicted, so that the other nodes of a cluster
+ * can evict it too. A null key means that the whole cache was cleared.
+ *
+ * @author James Renfro
+ */
+@Document(collection = CacheInvalidation.Constants.COLLECTION_NAME)
+public class CacheInvalidation implements Serializable {
+
+    @Id
+    private final String cacheInvalidationId;
+
+    private final String cacheName;
+
+    private final String key;
+
+    private final String nodeId;
+
+    private final Date date;
+
+    private CacheInvalidation() {
+        this(new Builder());
+    }
+
+    private CacheInvalidation(Builder builder) {
+        this.cacheInvalidationId = builder.cacheInvalidationId;
+        this.cacheName = builder.cacheName;
+        this.key = builder.key;
+        this.nodeId = builder.nodeId;
+        this.date = builder.date;
+    }
+
+    public String getCacheInvalidationId() {
+        return cacheInvalidationId;
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public final static class Builder {
+
+        private String cacheInvalidationId;
+        private String cacheName;
+        private String key;
+        private String nodeId;
+        private Date date;
+
+        public Builder() {
+            super();
+            this.cacheInvalidationId = UUID.randomUUID().toString();
+            this.date = new Date();
+        }
+
+        public CacheInvalidation build() {
+            return new CacheInvalidation(this);
+        }
+
+        public Builder cacheName(String cacheName) {
+            this.cacheName = cacheName;
+            return this;
+        }
+
+        public Builder key(String key) {
+            this.key = key;
+            return this;
+        }
+
+        public Builder nodeId(String nodeId) {
+            this.nodeId = nodeId;
+            return this;
+        }
+
+    }
+
+    public static class Constants {
+        public static final String COLLECTION_NAME = "cache.invalidation";
+    }
+
+}
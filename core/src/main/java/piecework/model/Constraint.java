@@ -26,10 +26,12 @@ import javax.xml.bind.annotation.*;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import piecework.security.Sanitizer;
 import piecework.common.ViewContext;
+import piecework.util.CompiledConstraint;
 
 /**
  * @author James Renfro
@@ -78,6 +80,9 @@ public class Constraint implements Serializable {
 	@XmlTransient
     @JsonIgnore
     private final boolean isDeleted;
+
+    @Transient
+    private transient volatile CompiledConstraint compiled;
 	
 	private Constraint() {
         this(new Constraint.Builder(), new ViewContext());
@@ -124,6 +129,18 @@ public class Constraint implements Serializable {
 		return isDeleted;
 	}
 
+    /*
+     * Compiled lazily on first use, since constraints are immutable once built or loaded
+     */
+    public CompiledConstraint compiled() {
+        CompiledConstraint compiled = this.compiled;
+        if (compiled == null) {
+            compiled = CompiledConstraint.compile(this);
+            this.compiled = compiled;
+        }
+        return compiled;
+    }
+
     public List<Constraint> getAnd() {
         return and;
     }
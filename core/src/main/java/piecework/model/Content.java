@@ -37,6 +37,7 @@ public class Content implements Serializable, Streamable {
     private final String md5;
     private final Date lastModified;
     private final Long length;
+    private final transient java.io.File localFile;
 
     private Content() {
         this(new Builder());
@@ -51,6 +52,7 @@ public class Content implements Serializable, Streamable {
         this.md5 = builder.md5;
         this.lastModified = builder.lastModified;
         this.length = builder.length;
+        this.localFile = builder.localFile;
     }
 
     public String getContentId() {
@@ -89,6 +91,14 @@ public class Content implements Serializable, Streamable {
         return length;
     }
 
+    /*
+     * The file on the local file system that holds this content, if there is one, so that it can be
+     * sent straight from the file channel rather than read through the input stream
+     */
+    public java.io.File getLocalFile() {
+        return localFile;
+    }
+
     public final static class Builder {
 
         private String contentId;
@@ -99,6 +109,7 @@ public class Content implements Serializable, Streamable {
         private String md5;
         private Date lastModified;
         private Long length;
+        private java.io.File localFile;
 
         public Builder() {
 
@@ -113,6 +124,7 @@ public class Content implements Serializable, Streamable {
             this.md5 = content.md5;
             this.lastModified = content.lastModified;
             this.length = content.length;
+            this.localFile = content.localFile;
         }
 
         public Content build() {
@@ -163,6 +175,11 @@ public class Content implements Serializable, Streamable {
             this.length = length;
             return this;
         }
+
+        public Builder localFile(java.io.File localFile) {
+            this.localFile = localFile;
+            return this;
+        }
     }
 
 }
@@ -111,7 +111,7 @@ public class FormRequest {
         this.referrer = builder.referrer;
         this.userAgent = builder.userAgent;
         this.task = builder.task;
-        this.requestDate = new Date();
+        this.requestDate = builder.requestDate != null ? builder.requestDate : new Date();
     }
 
     @JsonIgnore
@@ -240,6 +240,7 @@ public class FormRequest {
         private ManyMap<String, Message> messages;
         private String referrer;
         private String userAgent;
+        private Date requestDate;
 
         public Builder() {
             super();
@@ -266,6 +267,7 @@ public class FormRequest {
             this.messages = new ManyMap<String, Message>(request.getMessages());
             this.referrer = request.referrer;
             this.userAgent = request.userAgent;
+            this.requestDate = request.requestDate;
         }
 
         public Builder(FormRequest request, Sanitizer sanitizer) {
@@ -411,6 +413,11 @@ public class FormRequest {
             this.userAgent = userAgent;
             return this;
         }
+
+        public Builder requestDate(Date requestDate) {
+            this.requestDate = requestDate;
+            return this;
+        }
     }
 
 }
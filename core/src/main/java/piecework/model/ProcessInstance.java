@@ -32,6 +32,7 @@ import piecework.enumeration.OperationType;
 import piecework.model.bind.FormNameMessageMapAdapter;
 import piecework.model.bind.FormNameValueEntryMapAdapter;
 import piecework.common.ViewContext;
+import piecework.util.KeywordUtility;
 import piecework.util.ManyMap;
 
 /**
@@ -111,6 +112,10 @@ public class ProcessInstance implements Serializable {
     @JsonIgnore
     private final Set<String> keywords;
 
+    @XmlTransient
+    @JsonIgnore
+    private final Set<String> tokens;
+
     @XmlTransient
     @JsonIgnore
     private final List<Operation> operations;
@@ -154,6 +159,7 @@ public class ProcessInstance implements Serializable {
         this.previousApplicationStatus = builder.previousApplicationStatus;
         this.attachmentIds = Collections.unmodifiableSet(builder.attachmentIds);
         this.keywords = builder.keywords;
+        this.tokens = KeywordUtility.tokens(builder.keywords);
         this.tasks = Collections.unmodifiableMap(builder.tasks);
         this.activityMap = builder.activityMap != null ? Collections.unmodifiableMap(builder.activityMap) : null;
 
@@ -296,6 +302,11 @@ public class ProcessInstance implements Serializable {
         return keywords;
     }
 
+    @JsonIgnore
+    public Set<String> getTokens() {
+        return tokens;
+    }
+
     @JsonIgnore
     public ManyMap<String, Attachment> getAttachmentMap() {
         ManyMap<String, Attachment> map = new ManyMap<String, Attachment>();
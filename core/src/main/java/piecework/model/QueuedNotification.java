@@ -0,0 +1,258 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import piecework.enumeration.DispatchStatus;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * An email that has been rendered from a notification and is waiting to be sent. Recipients
+ * are kept as the unresolved string from the notification, so that looking them up happens
+ * off the request thread along with the send itself.
+ *
+ * @author James Renfro
+ */
+@Document(collection = QueuedNotification.Constants.COLLECTION_NAME)
+public class QueuedNotification implements Serializable {
+
+    @Id
+    private final String queuedNotificationId;
+
+    private final String notificationId;
+
+    private final String senderEmail;
+
+    private final String senderName;
+
+    private final String recipients;
+
+    private final String bcc;
+
+    private final String subject;
+
+    private final String text;
+
+    private final DispatchStatus status;
+
+    private final int attempts;
+
+    private final int deliveredBatches;
+
+    private final Date created;
+
+    private final Date nextAttempt;
+
+    private final String lastError;
+
+    private QueuedNotification() {
+        this(new Builder());
+    }
+
+    private QueuedNotification(Builder builder) {
+        this.queuedNotificationId = builder.queuedNotificationId;
+        this.notificationId = builder.notificationId;
+        this.senderEmail = builder.senderEmail;
+        this.senderName = builder.senderName;
+        this.recipients = builder.recipients;
+        this.bcc = builder.bcc;
+        this.subject = builder.subject;
+        this.text = builder.text;
+        this.status = builder.status;
+        this.attempts = builder.attempts;
+        this.deliveredBatches = builder.deliveredBatches;
+        this.created = builder.created;
+        this.nextAttempt = builder.nextAttempt;
+        this.lastError = builder.lastError;
+    }
+
+    public String getQueuedNotificationId() {
+        return queuedNotificationId;
+    }
+
+    public String getNotificationId() {
+        return notificationId;
+    }
+
+    public String getSenderEmail() {
+        return senderEmail;
+    }
+
+    public String getSenderName() {
+        return senderName;
+    }
+
+    public String getRecipients() {
+        return recipients;
+    }
+
+    public String getBcc() {
+        return bcc;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public DispatchStatus getStatus() {
+        return status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /*
+     * Long recipient lists go out as several messages, and this is how many of them have already
+     * been sent, so that a retry only sends the rest
+     */
+    public int getDeliveredBatches() {
+        return deliveredBatches;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+
+    public Date getNextAttempt() {
+        return nextAttempt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public final static class Builder {
+
+        private String queuedNotificationId;
+        private String notificationId;
+        private String senderEmail;
+        private String senderName;
+        private String recipients;
+        private String bcc;
+        private String subject;
+        private String text;
+        private DispatchStatus status;
+        private int attempts;
+        private int deliveredBatches;
+        private Date created;
+        private Date nextAttempt;
+        private String lastError;
+
+        public Builder() {
+            super();
+            this.queuedNotificationId = UUID.randomUUID().toString();
+            this.status = DispatchStatus.PENDING;
+            this.created = new Date();
+            this.nextAttempt = this.created;
+        }
+
+        public Builder(QueuedNotification queued) {
+            this.queuedNotificationId = queued.queuedNotificationId;
+            this.notificationId = queued.notificationId;
+            this.senderEmail = queued.senderEmail;
+            this.senderName = queued.senderName;
+            this.recipients = queued.recipients;
+            this.bcc = queued.bcc;
+            this.subject = queued.subject;
+            this.text = queued.text;
+            this.status = queued.status;
+            this.attempts = queued.attempts;
+            this.deliveredBatches = queued.deliveredBatches;
+            this.created = queued.created;
+            this.nextAttempt = queued.nextAttempt;
+            this.lastError = queued.lastError;
+        }
+
+        public QueuedNotification build() {
+            return new QueuedNotification(this);
+        }
+
+        public Builder notificationId(String notificationId) {
+            this.notificationId = notificationId;
+            return this;
+        }
+
+        public Builder senderEmail(String senderEmail) {
+            this.senderEmail = senderEmail;
+            return this;
+        }
+
+        public Builder senderName(String senderName) {
+            this.senderName = senderName;
+            return this;
+        }
+
+        public Builder recipients(String recipients) {
+            this.recipients = recipients;
+            return this;
+        }
+
+        public Builder bcc(String bcc) {
+            this.bcc = bcc;
+            return this;
+        }
+
+        public Builder subject(String subject) {
+            this.subject = subject;
+            return this;
+        }
+
+        public Builder text(String text) {
+            this.text = text;
+            return this;
+        }
+
+        public Builder status(DispatchStatus status) {
+            this.status = status;
+            return this;
+        }
+
+        public Builder attempts(int attempts) {
+            this.attempts = attempts;
+            return this;
+        }
+
+        public Builder deliveredBatches(int deliveredBatches) {
+            this.deliveredBatches = deliveredBatches;
+            return this;
+        }
+
+        public Builder nextAttempt(Date nextAttempt) {
+            this.nextAttempt = nextAttempt;
+            return this;
+        }
+
+        public Builder lastError(String lastError) {
+            this.lastError = lastError;
+            return this;
+        }
+
+    }
+
+    public static class Constants {
+        public static final String COLLECTION_NAME = "notification.queue";
+    }
+
+}
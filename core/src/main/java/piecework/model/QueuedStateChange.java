@@ -0,0 +1,361 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import piecework.engine.EngineTask;
+import piecework.enumeration.ActionType;
+import piecework.enumeration.DispatchStatus;
+import piecework.enumeration.StateChangeType;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A change in engine state that is waiting to be applied to the instance and its tasks. Task
+ * events carry a copy of everything the engine knew about the task when the event was raised,
+ * since the engine's own task object is only usable inside the transaction that raised it.
+ *
+ * Events for an instance are applied in order of sequence, which is taken from a counter in mongo
+ * when the event is queued, so that events queued by different nodes can be compared.
+ *
+ * @author James Renfro
+ */
+@Document(collection = QueuedStateChange.Constants.COLLECTION_NAME)
+public class QueuedStateChange implements EngineTask, Serializable {
+
+    @Id
+    private final String queuedStateChangeId;
+
+    private final StateChangeType type;
+
+    private final long sequence;
+
+    private final String processDefinitionKey;
+
+    private final String processInstanceId;
+
+    private final String taskDefinitionKey;
+
+    private final String taskId;
+
+    private final String engineProcessInstanceId;
+
+    private final String name;
+
+    private final String description;
+
+    private final String assigneeId;
+
+    private final Set<String> candidateAssigneeIds;
+
+    private final Set<String> candidateGroupIds;
+
+    private final Date startTime;
+
+    private final Date dueDate;
+
+    private final int priority;
+
+    private final ActionType actionType;
+
+    private final DispatchStatus status;
+
+    private final int attempts;
+
+    private final Date created;
+
+    private final Date nextAttempt;
+
+    private final String lastError;
+
+    private QueuedStateChange() {
+        this(new Builder());
+    }
+
+    private QueuedStateChange(Builder builder) {
+        this.queuedStateChangeId = builder.queuedStateChangeId;
+        this.type = builder.type;
+        this.sequence = builder.sequence;
+        this.processDefinitionKey = builder.processDefinitionKey;
+        this.processInstanceId = builder.processInstanceId;
+        this.taskDefinitionKey = builder.taskDefinitionKey;
+        this.taskId = builder.taskId;
+        this.engineProcessInstanceId = builder.engineProcessInstanceId;
+        this.name = builder.name;
+        this.description = builder.description;
+        this.assigneeId = builder.assigneeId;
+        this.candidateAssigneeIds = Collections.unmodifiableSet(builder.candidateAssigneeIds);
+        this.candidateGroupIds = Collections.unmodifiableSet(builder.candidateGroupIds);
+        this.startTime = builder.startTime;
+        this.dueDate = builder.dueDate;
+        this.priority = builder.priority;
+        this.actionType = builder.actionType;
+        this.status = builder.status;
+        this.attempts = builder.attempts;
+        this.created = builder.created;
+        this.nextAttempt = builder.nextAttempt;
+        this.lastError = builder.lastError;
+    }
+
+    public String getQueuedStateChangeId() {
+        return queuedStateChangeId;
+    }
+
+    public StateChangeType getType() {
+        return type;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public String getProcessDefinitionKey() {
+        return processDefinitionKey;
+    }
+
+    @Override
+    public String getProcessInstanceId() {
+        return processInstanceId;
+    }
+
+    @Override
+    public String getTaskDefinitionKey() {
+        return taskDefinitionKey;
+    }
+
+    @Override
+    public String getTaskId() {
+        return taskId;
+    }
+
+    @Override
+    public String getEngineProcessInstanceId() {
+        return engineProcessInstanceId;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String getAssigneeId() {
+        return assigneeId;
+    }
+
+    @Override
+    public Set<String> getCandidateAssigneeIds() {
+        return candidateAssigneeIds;
+    }
+
+    @Override
+    public Set<String> getCandidateGroupIds() {
+        return candidateGroupIds;
+    }
+
+    @Override
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    @Override
+    public Date getDueDate() {
+        return dueDate;
+    }
+
+    @Override
+    public int getPriority() {
+        return priority;
+    }
+
+    @Override
+    public ActionType getActionType() {
+        return actionType;
+    }
+
+    public boolean isTaskEvent() {
+        return taskId != null;
+    }
+
+    public DispatchStatus getStatus() {
+        return status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+
+    public Date getNextAttempt() {
+        return nextAttempt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public final static class Builder {
+
+        private String queuedStateChangeId;
+        private StateChangeType type;
+        private long sequence;
+        private String processDefinitionKey;
+        private String processInstanceId;
+        private String taskDefinitionKey;
+        private String taskId;
+        private String engineProcessInstanceId;
+        private String name;
+        private String description;
+        private String assigneeId;
+        private Set<String> candidateAssigneeIds;
+        private Set<String> candidateGroupIds;
+        private Date startTime;
+        private Date dueDate;
+        private int priority;
+        private ActionType actionType;
+        private DispatchStatus status;
+        private int attempts;
+        private Date created;
+        private Date nextAttempt;
+        private String lastError;
+
+        public Builder() {
+            super();
+            this.queuedStateChangeId = UUID.randomUUID().toString();
+            this.candidateAssigneeIds = new LinkedHashSet<String>();
+            this.candidateGroupIds = new LinkedHashSet<String>();
+            this.status = DispatchStatus.PENDING;
+            this.created = new Date();
+            this.nextAttempt = this.created;
+        }
+
+        public Builder(QueuedStateChange queued) {
+            this.queuedStateChangeId = queued.queuedStateChangeId;
+            this.type = queued.type;
+            this.sequence = queued.sequence;
+            this.processDefinitionKey = queued.processDefinitionKey;
+            this.processInstanceId = queued.processInstanceId;
+            this.taskDefinitionKey = queued.taskDefinitionKey;
+            this.taskId = queued.taskId;
+            this.engineProcessInstanceId = queued.engineProcessInstanceId;
+            this.name = queued.name;
+            this.description = queued.description;
+            this.assigneeId = queued.assigneeId;
+            this.candidateAssigneeIds = new LinkedHashSet<String>(queued.candidateAssigneeIds);
+            this.candidateGroupIds = new LinkedHashSet<String>(queued.candidateGroupIds);
+            this.startTime = queued.startTime;
+            this.dueDate = queued.dueDate;
+            this.priority = queued.priority;
+            this.actionType = queued.actionType;
+            this.status = queued.status;
+            this.attempts = queued.attempts;
+            this.created = queued.created;
+            this.nextAttempt = queued.nextAttempt;
+            this.lastError = queued.lastError;
+        }
+
+        public QueuedStateChange build() {
+            return new QueuedStateChange(this);
+        }
+
+        public Builder type(StateChangeType type) {
+            this.type = type;
+            return this;
+        }
+
+        public Builder sequence(long sequence) {
+            this.sequence = sequence;
+            return this;
+        }
+
+        public Builder processDefinitionKey(String processDefinitionKey) {
+            this.processDefinitionKey = processDefinitionKey;
+            return this;
+        }
+
+        public Builder processInstanceId(String processInstanceId) {
+            this.processInstanceId = processInstanceId;
+            return this;
+        }
+
+        /*
+         * Copies the state of the engine task, so that it can be applied after the engine's transaction is over
+         */
+        public Builder task(EngineTask task) {
+            this.processDefinitionKey = task.getProcessDefinitionKey();
+            this.processInstanceId = task.getProcessInstanceId();
+            this.taskDefinitionKey = task.getTaskDefinitionKey();
+            this.taskId = task.getTaskId();
+            this.engineProcessInstanceId = task.getEngineProcessInstanceId();
+            this.name = task.getName();
+            this.description = task.getDescription();
+            this.assigneeId = task.getAssigneeId();
+            this.candidateAssigneeIds.clear();
+            if (task.getCandidateAssigneeIds() != null)
+                this.candidateAssigneeIds.addAll(task.getCandidateAssigneeIds());
+            this.candidateGroupIds.clear();
+            if (task.getCandidateGroupIds() != null)
+                this.candidateGroupIds.addAll(task.getCandidateGroupIds());
+            this.startTime = task.getStartTime();
+            this.dueDate = task.getDueDate();
+            this.priority = task.getPriority();
+            this.actionType = task.getActionType();
+            return this;
+        }
+
+        public Builder status(DispatchStatus status) {
+            this.status = status;
+            return this;
+        }
+
+        public Builder attempts(int attempts) {
+            this.attempts = attempts;
+            return this;
+        }
+
+        public Builder nextAttempt(Date nextAttempt) {
+            this.nextAttempt = nextAttempt;
+            return this;
+        }
+
+        public Builder lastError(String lastError) {
+            this.lastError = lastError;
+            return this;
+        }
+
+    }
+
+    public static class Constants {
+        public static final String COLLECTION_NAME = "engine.state.queue";
+        public static final String SEQUENCE_COLLECTION_NAME = "engine.state.sequence";
+    }
+
+}
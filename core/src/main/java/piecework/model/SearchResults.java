@@ -36,6 +36,9 @@ public class SearchResults implements Serializable {
     @XmlElement
 	private final Long total;
 
+    @XmlElement
+    private final String nextCursor;
+
     @XmlTransient
     @JsonIgnore
     private final Integer page;
@@ -90,6 +93,7 @@ public class SearchResults implements Serializable {
 		this.firstResult = builder.firstResult;
 		this.maxResults = builder.maxResults;
 		this.total = builder.total;
+		this.nextCursor = builder.nextCursor;
 		this.moreResults = builder.moreResults;
 		this.incomplete = builder.incomplete;
 		this.page = firstResult != null && maxResults != null && maxResults.intValue() > 0 ? firstResult.intValue() / maxResults.intValue() + 1 : 1;
@@ -110,6 +114,13 @@ public class SearchResults implements Serializable {
 		return total;
 	}
 
+    /*
+     * Token to pass back as the 'after' parameter to retrieve the next page, or null if this is the last one
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
 	public Integer getPage() {
 		return page;
 	}
@@ -184,6 +195,7 @@ public class SearchResults implements Serializable {
 		private Integer firstResult;
 		private Integer maxResults;
 		private Long total;
+		private String nextCursor;
 		private Integer page;
 		private Boolean moreResults;
 		private Boolean incomplete;
@@ -288,6 +300,11 @@ public class SearchResults implements Serializable {
 			return this;
 		}
 		
+		public Builder nextCursor(String nextCursor) {
+			this.nextCursor = nextCursor;
+			return this;
+		}
+
 		public Builder page(Integer page) {
 			this.page = page;
 			return this;
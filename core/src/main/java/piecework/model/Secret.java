@@ -47,6 +47,9 @@ public class Secret extends Value {
     @XmlTransient
     private final byte[] iv;
 
+    @XmlTransient
+    private final int plaintextLength;
+
     private Secret() {
         this(new Builder());
     }
@@ -57,6 +60,7 @@ public class Secret extends Value {
         this.date = builder.date;
         this.ciphertext = builder.ciphertext;
         this.iv = builder.iv;
+        this.plaintextLength = builder.plaintextLength;
     }
 
     @JsonIgnore
@@ -84,12 +88,26 @@ public class Secret extends Value {
         return iv;
     }
 
+    /*
+     * Length of the original text, so that it can be masked without decrypting it, or -1 for
+     * secrets that were stored before the length was recorded
+     */
+    @JsonIgnore
+    public int getPlaintextLength() {
+        return plaintextLength;
+    }
+
     public final static class Builder {
         private String id;
         private String name;
         private Date date;
         private byte[] ciphertext;
         private byte[] iv;
+        private int plaintextLength;
+
+        public Builder() {
+            this.plaintextLength = -1;
+        }
 
         public Secret build() {
             return new Secret(this);
@@ -119,6 +137,11 @@ public class Secret extends Value {
             this.iv = iv;
             return this;
         }
+
+        public Builder plaintextLength(int plaintextLength) {
+            this.plaintextLength = plaintextLength;
+            return this;
+        }
     }
 
     public static class Constants {
@@ -38,6 +38,7 @@ import java.util.*;
 @XmlAccessorType(XmlAccessType.NONE)
 @XmlType(name = Task.Constants.TYPE_NAME)
 @JsonIgnoreProperties(ignoreUnknown = true)
+@Document(collection = Task.Constants.ROOT_ELEMENT_NAME)
 public class Task implements Serializable, Comparable<Task> {
 
     private static final long serialVersionUID = 8102389797252020510L;
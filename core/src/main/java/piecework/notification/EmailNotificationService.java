@@ -15,38 +15,59 @@
  */
 package piecework.notification;
 
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.Properties;
 import java.io.StringReader;
 import java.io.StringWriter;
-import javax.mail.internet.InternetAddress;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
 import org.apache.log4j.Logger;
 import org.apache.commons.mail.EmailException;
 import org.apache.commons.mail.SimpleEmail;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.core.env.Environment;
-import org.springframework.security.core.userdetails.UserDetails;
 import com.github.mustachejava.DefaultMustacheFactory;
 import com.github.mustachejava.Mustache;
 import com.github.mustachejava.MustacheFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import piecework.enumeration.DispatchStatus;
 import piecework.model.Notification;
+import piecework.model.QueuedNotification;
+import piecework.persistence.NotificationQueueRepository;
 import piecework.service.NotificationService;
 import piecework.model.User;
-import piecework.identity.IdentityDetails;
 import piecework.service.IdentityService;
 import piecework.model.Group;
 import piecework.service.GroupService;
-import piecework.Constants;
 
 /**
- * send out email notifications
+ * send out email notifications. Notifications are rendered on the calling thread and then
+ * queued in mongo, so that resolving recipients and talking to the mail server happen in
+ * the background, with failed sends retried after a growing delay.
  * @author Jiefeng Shen
  */
 @Service
 public class EmailNotificationService implements NotificationService {
     private static final Logger LOG = Logger.getLogger(EmailNotificationService.class);
+    private static final long MAXIMUM_BACKOFF_SECONDS = 3600l;
 
     @Autowired
     Environment environment;
@@ -57,8 +78,64 @@ public class EmailNotificationService implements NotificationService {
     @Autowired
     GroupService groupService;	// get group members
 
+    @Autowired
+    NotificationQueueRepository notificationQueueRepository;
+
+    // compiled templates are thread safe, and notifications reuse the same subject and text over and over
+    private final MustacheFactory mustacheFactory = new DefaultMustacheFactory();
+    private final Cache<String, Mustache> templateCache = CacheBuilder.newBuilder().maximumSize(500).build();
+
+    private Session mailSession;
+    private String mailFromAddress;
+    private String mailFromLabel;
+    private int batchSize;
+    private int maximumAttempts;
+    private long backoffSeconds;
+    private long leaseSeconds;
+    private ThreadPoolExecutor dispatchExecutor;
+    private ScheduledExecutorService pollingExecutor;
+
+    @PostConstruct
+    public void init() {
+        Properties properties = new Properties();
+        properties.setProperty("mail.smtp.host", environment.getProperty("mail.server.host", "localhost"));
+        properties.setProperty("mail.smtp.port", String.valueOf(environment.getProperty("mail.server.port", Integer.class, 25)));
+        this.mailSession = Session.getInstance(properties);
+        this.mailFromAddress = environment.getProperty("mail.from.address");
+        this.mailFromLabel = environment.getProperty("mail.from.label");
+        this.batchSize = Math.max(1, environment.getProperty("notification.batch.size", Integer.class, 50));
+        this.maximumAttempts = environment.getProperty("notification.retry.attempts", Integer.class, 5);
+        this.backoffSeconds = environment.getProperty("notification.retry.backoff.seconds", Long.class, 60l);
+        this.leaseSeconds = environment.getProperty("notification.lease.seconds", Long.class, 300l);
+
+        // Each thread drains the queue until nothing is due, so there is never any point in
+        // holding more signals than there are threads to act on them
+        int threads = Math.max(1, environment.getProperty("notification.dispatch.threads", Integer.class, 2));
+        this.dispatchExecutor = new ThreadPoolExecutor(threads, threads, 0l, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(threads), new ThreadFactoryBuilder().setDaemon(true).setNameFormat("notification-dispatch-%d").build(),
+                new ThreadPoolExecutor.DiscardPolicy());
+
+        // Picks up retries, as well as anything queued by a node that stopped before sending it
+        long interval = environment.getProperty("notification.poll.interval.seconds", Long.class, 30l);
+        this.pollingExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("notification-poll-%d").build());
+        this.pollingExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                signal();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (pollingExecutor != null)
+            pollingExecutor.shutdownNow();
+        if (dispatchExecutor != null)
+            dispatchExecutor.shutdown();
+    }
+
     /** 
-     * expand any macros in notifications and send the notification to recipients.
+     * expand any macros in notifications and queue the notification to be sent to recipients.
      * @param  notification notification to send.
      * @param  context      a map of key-value pairs to be used for macro expansion.
      */  
@@ -68,10 +145,11 @@ public class EmailNotificationService implements NotificationService {
             return;
         }
 
-        String mailServerHost = environment.getProperty("mail.server.host");
-        int mailServerPort = environment.getProperty("mail.server.port", Integer.class, 25);
-        String mailFromAddress = environment.getProperty("mail.from.address");
-        String mailFromLabel = environment.getProperty("mail.from.label");
+        // recipients are required
+        String recipientStr = notification.getRecipients();
+        if ( recipientStr == null || recipientStr.isEmpty() ) {
+            return;
+        }
 
         // get sender email
         String senderEmail = notification.getSenderEmail();
@@ -85,67 +163,18 @@ public class EmailNotificationService implements NotificationService {
             senderName = mailFromLabel;
         }
 
-        // recipients
-        String recipientStr = notification.getRecipients();
-        List<User> recipients = getUsers(recipientStr);
-        if ( recipients == null || recipients.isEmpty() ) {
-            return; // recipients are required
-        }
-
-        // bcc 
-        String bccStr = notification.getBcc();
-        List<User> bcc = getUsers(bccStr);
-
-        // get subject
-        String subject = notification.getSubject();
-        MustacheFactory mf = new DefaultMustacheFactory();
-        StringWriter writer = new StringWriter();
-        Mustache mustache = mf.compile(new StringReader(subject), "subject");
-        mustache.execute(writer, context);
-        subject = writer.toString();
-
-        // get body
-        String body = notification.getText();
-        writer = new StringWriter();
-        mustache = mf.compile(new StringReader(body), "text");
-        mustache.execute(writer, context);
-        body = writer.toString();
-
-        try {
-            SimpleEmail email = new SimpleEmail();
-            email.setHostName(mailServerHost);
-            email.setSmtpPort(mailServerPort);
+        QueuedNotification queued = new QueuedNotification.Builder()
+                .notificationId(notification.getNotificationId())
+                .senderEmail(senderEmail)
+                .senderName(senderName)
+                .recipients(recipientStr)
+                .bcc(notification.getBcc())
+                .subject(render(notification.getSubject(), "subject", context))
+                .text(render(notification.getText(), "text", context))
+                .build();
 
-            for (User u : recipients) {
-                String emailAddr = u.getEmailAddress();
-                if ( emailAddr != null && ! emailAddr.isEmpty() ) {
-                    email.addTo(emailAddr, u.getDisplayName());
-                }
-            }
-            List<InternetAddress> toList = email.getToAddresses();
-            if ( toList == null || toList.isEmpty() ) {
-                LOG.error("No email addresses were found for " + recipientStr + ". No emails were sent.");
-                return; // no recipients
-            }
-
-            if ( bcc != null && ! bcc.isEmpty() ) {
-                for (User u : bcc) {
-                    String emailAddr = u.getEmailAddress();
-                    if ( emailAddr != null && ! emailAddr.isEmpty() ) {
-                        email.addBcc(emailAddr, u.getDisplayName());
-                    }
-                }
-            }
-            email.setFrom(senderEmail, senderName);
-            email.setSubject(subject);
-            email.setMsg(body);
-
-            LOG.debug("Subject: " + email.getSubject());
-            LOG.debug(email.getMimeMessage());
-            email.send();
-        } catch (EmailException e) {
-            LOG.error("Unable to send email with subject " + subject);
-        }
+        notificationQueueRepository.save(queued);
+        signal();
     }
 
     /** 
@@ -166,6 +195,162 @@ public class EmailNotificationService implements NotificationService {
          }
     }
 
+    /*
+     * Sends every notification that is due, reusing a single connection to the mail server
+     */
+    void drain() {
+        Transport transport = null;
+        try {
+            while (true) {
+                Date now = new Date();
+                QueuedNotification queued = notificationQueueRepository.claim(now, new Date(now.getTime() + TimeUnit.SECONDS.toMillis(leaseSeconds)));
+                if (queued == null)
+                    break;
+
+                try {
+                    if (transport == null || !transport.isConnected())
+                        transport = connect();
+                    deliver(queued, transport);
+                    notificationQueueRepository.delete(queued.getQueuedNotificationId());
+                } catch (MessagingException e) {
+                    // The connection may well be unusable, so start over with a new one next time
+                    close(transport);
+                    transport = null;
+                    retry(queued, e);
+                } catch (Exception e) {
+                    retry(queued, e);
+                }
+            }
+        } finally {
+            close(transport);
+        }
+    }
+
+    Transport connect() throws MessagingException {
+        Transport transport = mailSession.getTransport("smtp");
+        transport.connect();
+        return transport;
+    }
+
+    private void deliver(QueuedNotification queued, Transport transport) throws EmailException, MessagingException {
+        List<User> recipients = getUsers(queued.getRecipients());
+        List<User> bcc = getUsers(queued.getBcc());
+
+        List<User> addressable = addressable(recipients);
+        if ( addressable.isEmpty() ) {
+            LOG.error("No email addresses were found for " + queued.getRecipients() + ". No emails were sent.");
+            return; // no recipients
+        }
+
+        // Very long recipient lists are split over several messages, since mail servers limit the recipients per message.
+        // Progress is saved after each one, so that if a later message fails, the retry doesn't send the earlier ones again.
+        List<List<User>> batches = Lists.partition(addressable, batchSize);
+        for (int index = queued.getDeliveredBatches(); index < batches.size(); index++) {
+            List<User> batch = batches.get(index);
+            SimpleEmail email = new SimpleEmail();
+            email.setMailSession(mailSession);
+            for (User u : batch) {
+                email.addTo(u.getEmailAddress(), u.getDisplayName());
+            }
+            if ( index == 0 ) {
+                for (User u : addressable(bcc)) {
+                    email.addBcc(u.getEmailAddress(), u.getDisplayName());
+                }
+            }
+            email.setFrom(queued.getSenderEmail(), queued.getSenderName());
+            email.setSubject(queued.getSubject());
+            email.setMsg(queued.getText());
+            email.buildMimeMessage();
+
+            MimeMessage message = email.getMimeMessage();
+            if (LOG.isDebugEnabled())
+                LOG.debug("Subject: " + email.getSubject());
+            Address[] addresses = message.getAllRecipients();
+            transport.sendMessage(message, addresses);
+
+            if (index < batches.size() - 1)
+                notificationQueueRepository.save(new QueuedNotification.Builder(queued).deliveredBatches(index + 1).build());
+        }
+    }
+
+    private void retry(QueuedNotification queued, Exception e) {
+        // Start from what was saved, which includes any batches that were sent before this failure
+        QueuedNotification saved = notificationQueueRepository.findOne(queued.getQueuedNotificationId());
+        if (saved != null)
+            queued = saved;
+
+        int attempts = queued.getAttempts() + 1;
+        QueuedNotification.Builder builder = new QueuedNotification.Builder(queued)
+                .attempts(attempts)
+                .lastError(e.getMessage());
+
+        if (attempts >= maximumAttempts) {
+            LOG.error("Giving up on email with subject " + queued.getSubject() + " after " + attempts + " attempts", e);
+            builder.status(DispatchStatus.FAILED);
+        } else {
+            long delay = Math.min(MAXIMUM_BACKOFF_SECONDS, backoffSeconds << Math.min(attempts - 1, 16));
+            LOG.warn("Unable to send email with subject " + queued.getSubject() + ", will try again in " + delay + " seconds", e);
+            builder.status(DispatchStatus.PENDING)
+                    .nextAttempt(new Date(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(delay)));
+        }
+        notificationQueueRepository.save(builder.build());
+    }
+
+    private void signal() {
+        dispatchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    drain();
+                } catch (Exception e) {
+                    LOG.error("Unable to dispatch notifications", e);
+                }
+            }
+        });
+    }
+
+    private String render(String template, String name, Map<String, String> context) {
+        if ( template == null ) {
+            return null;
+        }
+
+        Mustache mustache = templateCache.getIfPresent(template);
+        if ( mustache == null ) {
+            mustache = mustacheFactory.compile(new StringReader(template), name);
+            templateCache.put(template, mustache);
+        }
+        StringWriter writer = new StringWriter();
+        mustache.execute(writer, context);
+        return writer.toString();
+    }
+
+    private static List<User> addressable(List<User> users) {
+        if ( users == null || users.isEmpty() ) {
+            return Collections.emptyList();
+        }
+
+        List<User> addressable = new ArrayList<User>(users.size());
+        for (User u : users) {
+            String emailAddr = u != null ? u.getEmailAddress() : null;
+            if ( emailAddr != null && ! emailAddr.isEmpty() ) {
+                addressable.add(u);
+            }
+        }
+        return addressable;
+    }
+
+    private static void close(Transport transport) {
+        if ( transport == null ) {
+            return;
+        }
+
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            LOG.warn("Unable to close connection to mail server", e);
+        }
+    }
+
     /** 
      * return a list of users objects for a list of recipient IDs.
      * @param userStr  a comma-separated list of user IDs, groupIds
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.persistence;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import org.apache.log4j.Logger;
+import org.springframework.data.mongodb.core.MongoOperations;
+import piecework.model.*;
+
+import java.util.*;
+
+/**
+ * Declares the indexes that each persisted model needs to support the queries made against it,
+ * and reconciles them against what actually exists in Mongo on startup. Models that are only
+ * ever looked up by id are registered with no additional indexes, so that any index found on
+ * their collections is reported as undeclared.
+ *
+ * @author James Renfro
+ */
+public class IndexRegistry {
+
+    private static final Logger LOG = Logger.getLogger(IndexRegistry.class);
+    private static final String ID_INDEX_NAME = "_id_";
+    private static final String TEXT = "text";
+    private static final String TEXT_KEY = "_fts";
+    private static final String TEXT_INDEX_KEY = "_ftsx";
+    private static final String EXPIRE_AFTER_SECONDS = "expireAfterSeconds";
+
+    private final Map<Class<?>, List<Definition>> definitionMap;
+
+    public IndexRegistry() {
+        this(false);
+    }
+
+    public IndexRegistry(boolean textIndex) {
+        this(textIndex, 0l);
+    }
+
+    public IndexRegistry(boolean textIndex, long requestTimeToLiveSeconds) {
+        this.definitionMap = new LinkedHashMap<Class<?>, List<Definition>>();
+
+        // Supports ProcessInstanceQueryBuilder, which always limits to a set of process definition keys
+        // and a process status, then sorts on start or end time with ties broken by id for cursor paging
+        register(ProcessInstance.class,
+                new Definition("instance_definition_status_start_id").on("processDefinitionKey", 1).on("processStatus", 1).on("startTime", -1).on("_id", -1),
+                new Definition("instance_definition_status_end_id").on("processDefinitionKey", 1).on("processStatus", 1).on("endTime", -1).on("_id", -1),
+                new Definition("instance_definition_initiator_start_id").on("processDefinitionKey", 1).on("initiatorId", 1).on("startTime", -1).on("_id", -1),
+                new Definition("instance_definition_alias").on("processDefinitionKey", 1).on("alias", 1),
+                new Definition("instance_definition_engine_instance").on("processDefinitionKey", 1).on("engineProcessInstanceId", 1),
+                new Definition("instance_keywords").on("keywords", 1),
+                new Definition("instance_tokens").on("tokens", 1));
+
+        // Mongo allows only one text index per collection, so it covers every field that keywords are taken from
+        if (textIndex)
+            register(ProcessInstance.class,
+                    new Definition("instance_text").text("processInstanceLabel").text("alias").text("keywords"));
+
+        // Supports TaskQueryBuilder and lookups of the tasks that belong to an instance
+        register(Task.class,
+                new Definition("task_definition_status_start_id").on("processDefinitionKey", 1).on("taskStatus", 1).on("startTime", -1).on("_id", -1),
+                new Definition("task_assignee_status_start_id").on("assigneeId", 1).on("taskStatus", 1).on("startTime", -1).on("_id", -1),
+                new Definition("task_candidate_status_start_id").on("candidateAssigneeIds", 1).on("taskStatus", 1).on("startTime", -1).on("_id", -1),
+                new Definition("task_definition_status_due").on("processDefinitionKey", 1).on("taskStatus", 1).on("dueDate", 1),
+                new Definition("task_instance").on("processInstanceId", 1));
+
+        register(Activity.class);
+        register(Attachment.class);
+
+        // Supports polling for evictions broadcast by other nodes
+        register(CacheInvalidation.class,
+                new Definition("cache_invalidation_date").on("date", 1));
+        // Has Mongo remove form requests once they are too old to be handled, since nothing else deletes them
+        if (requestTimeToLiveSeconds > 0)
+            register(FormRequest.class,
+                    new Definition("request_date_ttl").on("requestDate", 1).expireAfterSeconds(requestTimeToLiveSeconds));
+        else
+            register(FormRequest.class);
+        register(ProcessDeployment.class);
+        register(Submission.class);
+
+        // Supports claiming the next notification that is due to be sent
+        register(QueuedNotification.class,
+                new Definition("notification_queue_status_next").on("status", 1).on("nextAttempt", 1));
+
+        // Supports claiming the next state change that is due, and checking that none are queued ahead of it for the same instance
+        register(QueuedStateChange.class,
+                new Definition("engine_state_queue_status_sequence").on("status", 1).on("sequence", 1),
+                new Definition("engine_state_queue_instance_sequence").on("processInstanceId", 1).on("sequence", 1));
+    }
+
+    public IndexRegistry register(Class<?> type, Definition ... definitions) {
+        List<Definition> list = definitionMap.get(type);
+        if (list == null) {
+            list = new ArrayList<Definition>();
+            definitionMap.put(type, list);
+        }
+        if (definitions != null)
+            list.addAll(Arrays.asList(definitions));
+        return this;
+    }
+
+    public Map<Class<?>, List<Definition>> getDefinitionMap() {
+        return Collections.unmodifiableMap(definitionMap);
+    }
+
+    /*
+     * Compares declared indexes against the indexes that exist on each collection, creating any
+     * that are missing if create is true, and logging a report of what is missing or undeclared.
+     * Returns the number of declared indexes that are still missing afterward.
+     */
+    public int reconcile(MongoOperations mongoOperations, boolean create) {
+        int missingCount = 0;
+        for (Map.Entry<Class<?>, List<Definition>> entry : definitionMap.entrySet()) {
+            String collectionName = mongoOperations.getCollectionName(entry.getKey());
+            DBCollection collection = mongoOperations.getCollection(collectionName);
+
+            Map<String, DBObject> existing = new HashMap<String, DBObject>();
+            List<DBObject> indexInfos = collection.getIndexInfo();
+            if (indexInfos != null) {
+                for (DBObject indexInfo : indexInfos) {
+                    String name = String.valueOf(indexInfo.get("name"));
+                    if (!ID_INDEX_NAME.equals(name))
+                        existing.put(signature(keys(indexInfo)), indexInfo);
+                }
+            }
+
+            for (Definition definition : entry.getValue()) {
+                String signature = signature(definition.getKeys());
+                DBObject indexInfo = existing.remove(signature);
+                if (indexInfo != null) {
+                    // Mongo won't change the expiry of an index that already exists, so it has to be dropped to pick up a new one
+                    Object expireAfterSeconds = definition.getOptions().get(EXPIRE_AFTER_SECONDS);
+                    Object existingExpireAfterSeconds = indexInfo.get(EXPIRE_AFTER_SECONDS);
+                    if (expireAfterSeconds instanceof Number && (!(existingExpireAfterSeconds instanceof Number)
+                            || Number.class.cast(existingExpireAfterSeconds).longValue() != Number.class.cast(expireAfterSeconds).longValue()))
+                        LOG.warn("Index " + indexInfo.get("name") + " on " + collectionName + " expires after " + indexInfo.get(EXPIRE_AFTER_SECONDS) + " seconds rather than " + expireAfterSeconds + " -- drop it to have it recreated");
+                    continue;
+                }
+
+                if (create) {
+                    LOG.info("Creating index " + definition.getName() + " on " + collectionName + " " + definition.getKeys());
+                    collection.ensureIndex(definition.getKeys(), definition.getOptions());
+                } else {
+                    LOG.warn("Missing index " + definition.getName() + " on " + collectionName + " " + definition.getKeys());
+                    missingCount++;
+                }
+            }
+
+            // Mongo does not track index usage, so the best we can do is point out indexes that nothing declares
+            for (DBObject indexInfo : existing.values()) {
+                LOG.warn("Index " + indexInfo.get("name") + " on " + collectionName + " is not declared and may be unused");
+            }
+        }
+        return missingCount;
+    }
+
+    /*
+     * Mongo stores the fields of a text index as weights, with placeholder keys in their place,
+     * so put them back the way they would have been declared
+     */
+    static DBObject keys(DBObject indexInfo) {
+        DBObject keys = DBObject.class.cast(indexInfo.get("key"));
+        if (keys == null || !keys.containsField(TEXT_KEY))
+            return keys;
+
+        BasicDBObject declared = new BasicDBObject();
+        for (String key : keys.keySet()) {
+            if (!key.equals(TEXT_KEY) && !key.equals(TEXT_INDEX_KEY))
+                declared.append(key, keys.get(key));
+        }
+        Object weights = indexInfo.get("weights");
+        if (weights instanceof DBObject) {
+            for (String key : DBObject.class.cast(weights).keySet())
+                declared.append(key, TEXT);
+        }
+        return declared;
+    }
+
+    static String signature(DBObject keys) {
+        StringBuilder builder = new StringBuilder();
+        // The order of fields in a text index makes no difference, and is not kept by Mongo
+        Set<String> textKeys = new TreeSet<String>();
+        if (keys != null) {
+            for (String key : keys.keySet()) {
+                Object direction = keys.get(key);
+                if (TEXT.equals(direction)) {
+                    textKeys.add(key);
+                    continue;
+                }
+                if (builder.length() > 0)
+                    builder.append(',');
+                builder.append(key).append(':');
+                if (direction instanceof Number)
+                    builder.append(Number.class.cast(direction).intValue());
+                else
+                    builder.append(direction);
+            }
+        }
+        for (String key : textKeys) {
+            if (builder.length() > 0)
+                builder.append(',');
+            builder.append(key).append(':').append(TEXT);
+        }
+        return builder.toString();
+    }
+
+    public final static class Definition {
+
+        private final String name;
+        private final BasicDBObject keys;
+        private final BasicDBObject options;
+
+        public Definition(String name) {
+            this.name = name;
+            this.keys = new BasicDBObject();
+            this.options = new BasicDBObject("name", name).append("background", Boolean.TRUE);
+        }
+
+        public Definition on(String key, int direction) {
+            this.keys.append(key, Integer.valueOf(direction));
+            return this;
+        }
+
+        public Definition text(String key) {
+            this.keys.append(key, TEXT);
+            return this;
+        }
+
+        public Definition unique() {
+            this.options.append("unique", Boolean.TRUE);
+            return this;
+        }
+
+        public Definition sparse() {
+            this.options.append("sparse", Boolean.TRUE);
+            return this;
+        }
+
+        public Definition expireAfterSeconds(long seconds) {
+            this.options.append(EXPIRE_AFTER_SECONDS, Long.valueOf(seconds));
+            return this;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public DBObject getKeys() {
+            return keys;
+        }
+
+        public DBObject getOptions() {
+            return options;
+        }
+    }
+
+}
@@ -18,10 +18,11 @@ package piecework.persistence;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import piecework.model.FormRequest;
 import piecework.model.ProcessInstance;
+import piecework.persistence.custom.RequestRepositoryCustom;
 
 /**
  * @author James Renfro
  */
-public interface RequestRepository extends MongoRepository<FormRequest, String> {
+public interface RequestRepository extends MongoRepository<FormRequest, String>, RequestRepositoryCustom {
 
 }
@@ -16,44 +16,32 @@
 package piecework.persistence.concrete;
 
 import org.apache.commons.lang.StringUtils;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.query.Query;
 import piecework.model.*;
 import piecework.model.Process;
-import piecework.persistence.IteratingDataProvider;
 import piecework.persistence.ProcessInstanceRepository;
-import piecework.process.ProcessInstanceQueryBuilder;
+import piecework.persistence.ResultHandler;
 import piecework.process.ProcessInstanceSearchCriteria;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
+ * Streams the instances that match a search, with only the data for the exported fields,
+ * so that an export runs over a single cursor and never holds more than one instance.
+ *
  * @author James Renfro
  */
-public class ExportInstanceProvider implements IteratingDataProvider<String> {
-
-    private static final int PAGE_SIZE = 200;
+public class ExportInstanceProvider {
 
     private final Map<String, String> headerMap;
-    private final String[] headerKeys;
     private final Query query;
     private final ProcessInstanceRepository repository;
-    private final Sort sort;
 
-    private Page<ProcessInstance> page;
-    private Pageable request;
-
-    public ExportInstanceProvider(Process process, ProcessInstanceSearchCriteria criteria, ProcessInstanceRepository repository, Sort sort) {
+    public ExportInstanceProvider(Process process, ProcessInstanceSearchCriteria criteria, ProcessInstanceRepository repository) {
         this.headerMap = new LinkedHashMap<String, String>();
-        this.query = new ProcessInstanceQueryBuilder(criteria).build();
         this.repository = repository;
-        this.request = new PageRequest(0, PAGE_SIZE, sort);
-        this.sort = sort;
 
-        String[] headerKeys = null;
         ProcessDeployment deployment = process.getDeployment();
         if (deployment != null) {
             Collection<Activity> activities = deployment.getActivityMap().values();
@@ -69,78 +57,48 @@ public class ExportInstanceProvider implements IteratingDataProvider<String> {
                         String fieldHeader = field.getHeader();
 
                         if (StringUtils.isNotEmpty(fieldHeader))
-                            headerMap.put(fieldName, "\"" + fieldHeader + "\"");
+                            headerMap.put(fieldName, fieldHeader);
                         else
-                            headerMap.put(fieldName, "\"" + fieldLabel+ "\"");
+                            headerMap.put(fieldName, fieldLabel);
                     }
                 }
             }
-            if (!headerMap.isEmpty())
-                headerKeys = headerMap.keySet().toArray(new String[headerMap.size()]);
         }
-        this.headerKeys = headerKeys;
-    }
-
-    @Override
-    public String getHeader() {
-        return StringUtils.join(headerMap.values(), ", ");
-    }
-
-    @Override
-    public List<String> next() {
-        Query query = this.query.with(this.request);
-        this.page = repository.findByQuery(query, this.request);
-        this.request = page.nextPageable();
 
-        List<String> rows = page.hasContent() ? new ArrayList<String>(page.getNumberOfElements()) : Collections.<String>emptyList();
-
-        if (page.hasContent()) {
-            List<ProcessInstance> instances = page.getContent();
-            for (ProcessInstance instance : instances) {
-                String row = convert(instance);
-                if (row != null)
-                    rows.add(row);
-            }
+        // Only bring back the data that is actually going to be exported
+        this.query = repository.query(criteria);
+        org.springframework.data.mongodb.core.query.Field projection = query.fields();
+        projection.include("_id");
+        for (String fieldName : headerMap.keySet()) {
+            projection.include("data." + fieldName);
         }
+    }
 
-        return rows;
+    public List<String> getHeaderKeys() {
+        return new ArrayList<String>(headerMap.keySet());
     }
 
-    @Override
-    public boolean hasNext() {
-        return this.page == null || !this.page.isLastPage();
+    public List<String> getHeaders() {
+        return new ArrayList<String>(headerMap.values());
     }
 
-    @Override
-    public void reset() {
-        this.request = new PageRequest(0, PAGE_SIZE, sort);
+    public long export(ResultHandler<ProcessInstance> handler) throws IOException {
+        return repository.stream(query, handler);
     }
 
-    private String convert(ProcessInstance instance) {
-        StringBuilder builder = new StringBuilder();
+    public static List<String> values(ProcessInstance instance, String headerKey) {
         Map<String, List<Value>> data = instance.getData();
-        if (headerKeys != null) {
-            int length = headerKeys.length - 1;
-            for (int i=0;i<=length;i++) {
-                List<Value> values = data.get(headerKeys[i]);
-                builder.append("\"");
-                if (values != null && !values.isEmpty()) {
-                    int lastValue = values.size() - 1;
-                    for (int j=0;j<=lastValue;j++) {
-                        Value value = values.get(j);
-                        String text = value.toString();
-                        if (text != null)
-                            builder.append(text);
-                        if (j != lastValue)
-                            builder.append(", ");
-                    }
-                }
-                builder.append("\"");
-                if (i != length)
-                    builder.append(", ");
-            }
+        List<Value> values = data != null ? data.get(headerKey) : null;
+        if (values == null || values.isEmpty())
+            return Collections.emptyList();
+
+        List<String> texts = new ArrayList<String>(values.size());
+        for (Value value : values) {
+            String text = value != null ? value.toString() : null;
+            if (text != null)
+                texts.add(text);
         }
-        return builder.toString();
+        return texts;
     }
 
 }
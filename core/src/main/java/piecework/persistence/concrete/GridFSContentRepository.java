@@ -198,7 +198,13 @@ public class GridFSContentRepository implements ContentRepository {
             else if (location.endsWith(".html"))
                 contentType = "text/html";
         }
-        return new Content.Builder().inputStream(inputStream).contentType(contentType).build();
+        return new Content.Builder()
+                .inputStream(inputStream)
+                .contentType(contentType)
+                .lastModified(resource.lastModified())
+                .length(Long.valueOf(resource.contentLength()))
+                .localFile(resource.getFile())
+                .build();
     }
 
     private Content getFromGridFS(String location) {
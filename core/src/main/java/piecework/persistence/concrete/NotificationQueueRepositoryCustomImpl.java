@@ -0,0 +1,63 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.persistence.concrete;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.repository.NoRepositoryBean;
+import org.springframework.stereotype.Service;
+import piecework.enumeration.DispatchStatus;
+import piecework.model.QueuedNotification;
+import piecework.persistence.custom.NotificationQueueRepositoryCustom;
+
+import java.util.Date;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * @author James Renfro
+ */
+@Service
+@NoRepositoryBean
+public class NotificationQueueRepositoryCustomImpl implements NotificationQueueRepositoryCustom {
+
+    @Autowired
+    MongoTemplate mongoOperations;
+
+    /*
+     * A notification that is still marked as sending after its lease has run out belongs to a node
+     * that went away in the middle of sending it, so it is claimed the same as a pending one
+     */
+    @Override
+    public QueuedNotification claim(Date now, Date leaseExpires) {
+        Query query = new Query();
+        query.addCriteria(where("status").in(DispatchStatus.PENDING.toString(), DispatchStatus.SENDING.toString()));
+        query.addCriteria(where("nextAttempt").lte(now));
+        query.with(new Sort(Sort.Direction.ASC, "nextAttempt"));
+
+        Update update = new Update()
+                .set("status", DispatchStatus.SENDING.toString())
+                .set("nextAttempt", leaseExpires);
+
+        return mongoOperations.findAndModify(query, update, new FindAndModifyOptions().returnNew(true), QueuedNotification.class);
+    }
+
+}
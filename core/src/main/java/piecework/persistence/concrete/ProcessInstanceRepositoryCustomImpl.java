@@ -15,11 +15,15 @@
  */
 package piecework.persistence.concrete;
 
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.WriteResult;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
@@ -34,10 +38,14 @@ import org.springframework.data.repository.NoRepositoryBean;
 import org.springframework.stereotype.Service;
 import piecework.Constants;
 import piecework.model.*;
+import piecework.persistence.ResultHandler;
 import piecework.persistence.custom.ProcessInstanceRepositoryCustom;
 import piecework.process.ProcessInstanceQueryBuilder;
 import piecework.process.ProcessInstanceSearchCriteria;
+import piecework.util.KeywordUtility;
 
+import javax.annotation.PostConstruct;
+import java.io.IOException;
 import java.util.*;
 
 import static org.springframework.data.mongodb.core.query.Criteria.where;
@@ -53,13 +61,24 @@ public class ProcessInstanceRepositoryCustomImpl implements ProcessInstanceRepos
 
     private static final FindAndModifyOptions OPTIONS = new FindAndModifyOptions().returnNew(true);
 
+    @Autowired
+    Environment environment;
+
     @Autowired
     MongoTemplate mongoOperations;
 
+    @PostConstruct
+    public void init() {
+        // Instances stored before keywords were tokenized cannot be found by keyword until they are indexed
+        if (environment.getProperty("mongo.keywords.reindex", Boolean.class, Boolean.TRUE)
+                && mongoOperations.findOne(new Query(where("tokens").exists(false)), ProcessInstance.class) != null)
+            reindexKeywords();
+    }
+
     @Override
     public Page<ProcessInstance> findByCriteria(ProcessInstanceSearchCriteria criteria, Pageable pageable) {
         // Otherwise, look up all instances that match the query
-        Query query = new ProcessInstanceQueryBuilder(criteria).build();
+        Query query = query(criteria);
         query.skip(pageable.getOffset());
         query.limit(pageable.getPageSize());
 
@@ -69,24 +88,50 @@ public class ProcessInstanceRepositoryCustomImpl implements ProcessInstanceRepos
         if (! criteria.isIncludeVariables())
             field.exclude("data");
 
-        return findByQuery(query, pageable);
+        return findByQuery(query, pageable, criteria.isIncludeTotal());
+    }
+
+    @Override
+    public Query query(ProcessInstanceSearchCriteria criteria) {
+        boolean textIndex = environment.getProperty("mongo.keywords.text.index", Boolean.class, Boolean.FALSE);
+        return new ProcessInstanceQueryBuilder(criteria).textIndex(textIndex).build();
     }
 
     @Override
     public Page<ProcessInstance> findByQuery(Query query, Pageable request) {
+        return findByQuery(query, request, true);
+    }
+
+    /*
+     * Without a total, one extra instance is read past the end of the page instead of counting every match,
+     * and the total reported is just large enough for the page to say whether there is another one after it
+     */
+    @Override
+    public Page<ProcessInstance> findByQuery(Query query, Pageable request, boolean includeTotal) {
         long start = 0;
         if (LOG.isDebugEnabled())
             start = System.currentTimeMillis();
 
+        int limit = query.getLimit();
+        if (!includeTotal && limit > 0)
+            query.limit(limit + 1);
+
         List<ProcessInstance> processInstances = mongoOperations.find(query, ProcessInstance.class);
 
-        long total = 0;
+        long total;
 
-        // We only need to look up a total if we're not on the first page or the page is full
-        if (query.getSkip() > 0 || processInstances.size() == query.getLimit())
+        if (!includeTotal) {
+            boolean hasMore = limit > 0 && processInstances.size() > limit;
+            if (hasMore)
+                processInstances = processInstances.subList(0, limit);
+            total = request.getOffset() + processInstances.size() + (hasMore ? 1 : 0);
+            query.limit(limit);
+        } else if (query.getSkip() > 0 || processInstances.size() == limit) {
+            // We only need to look up a total if we're not on the first page or the page is full
             total = mongoOperations.count(query, ProcessInstance.class);
-        else
+        } else {
             total = processInstances.size();
+        }
 
         Page<ProcessInstance> page = new PageImpl<ProcessInstance>(processInstances, request, total);
         if (LOG.isDebugEnabled())
@@ -95,8 +140,75 @@ public class ProcessInstanceRepositoryCustomImpl implements ProcessInstanceRepos
         return page;
     }
 
+    /*
+     * Walks the results with a single cursor instead of paging with skip and limit, which gets slower
+     * with every page, handing each instance off as soon as it is read
+     */
+    @Override
+    public long stream(Query query, ResultHandler<ProcessInstance> handler) throws IOException {
+        long start = System.currentTimeMillis();
+        long count = 0;
+
+        MongoConverter converter = mongoOperations.getConverter();
+        DBCollection collection = mongoOperations.getCollection(mongoOperations.getCollectionName(ProcessInstance.class));
+        DBCursor cursor = collection.find(query.getQueryObject(), query.getFieldsObject());
+        try {
+            if (query.getSortObject() != null)
+                cursor.sort(query.getSortObject());
+            while (cursor.hasNext()) {
+                handler.handle(converter.read(ProcessInstance.class, cursor.next()));
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Streamed " + count + " instances in " + (System.currentTimeMillis() - start) + " ms");
+
+        return count;
+    }
+
+    /*
+     * Tokenizes the stored keywords of every instance that does not have tokens yet. This is only
+     * necessary once, for instances that were stored before keywords were tokenized.
+     */
+    public long reindexKeywords() {
+        long start = System.currentTimeMillis();
+        long count = 0;
+
+        DBCollection collection = mongoOperations.getCollection(mongoOperations.getCollectionName(ProcessInstance.class));
+        DBCursor cursor = collection.find(new BasicDBObject("tokens", new BasicDBObject("$exists", false)), new BasicDBObject("keywords", 1));
+        try {
+            while (cursor.hasNext()) {
+                DBObject stored = cursor.next();
+                Set<String> keywords = new HashSet<String>();
+                Object values = stored.get("keywords");
+                if (values instanceof Collection) {
+                    for (Object value : Collection.class.cast(values)) {
+                        if (value != null)
+                            keywords.add(value.toString());
+                    }
+                }
+                collection.update(new BasicDBObject("_id", stored.get("_id")),
+                        new BasicDBObject("$set", new BasicDBObject("tokens", new ArrayList<String>(KeywordUtility.tokens(keywords)))));
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        LOG.info("Tokenized keywords of " + count + " instances in " + (System.currentTimeMillis() - start) + " ms");
+        return count;
+    }
+
     @Override
     public ProcessInstance findByTaskId(String processDefinitionKey, String taskId) {
+        // Task ids are keys of the embedded tasks map, which cannot be indexed, so use the task collection when possible
+        Task task = mongoOperations.findById(taskId, Task.class);
+        if (task != null && processDefinitionKey != null && processDefinitionKey.equals(task.getProcessDefinitionKey()) && task.getProcessInstanceId() != null)
+            return mongoOperations.findById(task.getProcessInstanceId(), ProcessInstance.class);
+
         Query query = new Query(where("tasks." + taskId).exists(true).and("processDefinitionKey").is(processDefinitionKey));
         return mongoOperations.findOne(query, ProcessInstance.class);
     }
@@ -183,6 +295,7 @@ public class ProcessInstanceRepositoryCustomImpl implements ProcessInstanceRepos
         include(update, attachments);
         include(update, data);
         include(update, label);
+        includeKeywords(update, label, data);
         include(update, submission);
         includeMessages(update, messages);
 
@@ -274,6 +387,36 @@ public class ProcessInstanceRepositoryCustomImpl implements ProcessInstanceRepos
         }
     }
 
+    /*
+     * Adds keywords and tokens for the new label and values, the way ProcessInstance.Builder does when an
+     * instance is saved whole. Keywords of values that are replaced are left behind, so that instances can
+     * still be found by what they used to contain.
+     */
+    private static void includeKeywords(Update update, String label, Map<String, List<Value>> data) {
+        Set<String> keywords = new HashSet<String>();
+        if (StringUtils.isNotEmpty(label))
+            keywords.add(label.toLowerCase());
+        if (data != null) {
+            for (List<Value> values : data.values()) {
+                if (values == null)
+                    continue;
+                for (Value value : values) {
+                    if (value instanceof File) {
+                        File file = File.class.cast(value);
+                        if (StringUtils.isNotEmpty(file.getName()))
+                            keywords.add(file.getName().toLowerCase());
+                    } else if (value != null && StringUtils.isNotEmpty(value.getValue())) {
+                        keywords.add(value.getValue().toLowerCase());
+                    }
+                }
+            }
+        }
+        if (!keywords.isEmpty()) {
+            update.addToSet("keywords", new BasicDBObject("$each", new ArrayList<String>(keywords)));
+            update.addToSet("tokens", new BasicDBObject("$each", new ArrayList<String>(KeywordUtility.tokens(keywords))));
+        }
+    }
+
     private static void include(Update update, String label) {
         if (StringUtils.isNotEmpty(label))
             update.set("processInstanceLabel", label);
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.persistence.concrete;
+
+import com.mongodb.DBObject;
+import com.mongodb.DBRef;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.repository.NoRepositoryBean;
+import org.springframework.stereotype.Service;
+import piecework.model.Activity;
+import piecework.model.FormRequest;
+import piecework.persistence.custom.RequestRepositoryCustom;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * @author James Renfro
+ */
+@Service
+@NoRepositoryBean
+public class RequestRepositoryCustomImpl implements RequestRepositoryCustom {
+
+    @Autowired
+    MongoTemplate mongoOperations;
+
+    /*
+     * The mapping converter resolves every DBRef as soon as it reads a document, with a query of its own,
+     * so the references are taken off the raw document before it's converted
+     */
+    @Override
+    public FormRequest findOneUnresolved(String requestId) {
+        if (requestId == null)
+            return null;
+
+        Query query = new Query(where("_id").is(requestId));
+        DBObject dbObject = mongoOperations.findOne(query, DBObject.class, mongoOperations.getCollectionName(FormRequest.class));
+        if (dbObject == null)
+            return null;
+
+        String activityId = referenceId(dbObject.removeField("activity"));
+        // Only requests made through the old interaction screens have a screen, and nothing reads it any longer
+        dbObject.removeField("screen");
+
+        FormRequest formRequest = mongoOperations.getConverter().read(FormRequest.class, dbObject);
+        if (activityId == null)
+            return formRequest;
+
+        return new FormRequest.Builder(formRequest)
+                .activity(new Activity.Builder().activityId(activityId).build())
+                .build();
+    }
+
+    private static String referenceId(Object reference) {
+        if (reference instanceof DBRef) {
+            Object id = DBRef.class.cast(reference).getId();
+            return id != null ? id.toString() : null;
+        }
+        return null;
+    }
+
+}
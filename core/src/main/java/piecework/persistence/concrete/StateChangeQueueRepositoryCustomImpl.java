@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.persistence.concrete;
+
+import com.mongodb.DBObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.repository.NoRepositoryBean;
+import org.springframework.stereotype.Service;
+import piecework.enumeration.DispatchStatus;
+import piecework.model.QueuedStateChange;
+import piecework.persistence.custom.StateChangeQueueRepositoryCustom;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * @author James Renfro
+ */
+@Service
+@NoRepositoryBean
+public class StateChangeQueueRepositoryCustomImpl implements StateChangeQueueRepositoryCustom {
+
+    private static final String SEQUENCE_ID = "sequence";
+
+    @Autowired
+    MongoTemplate mongoOperations;
+
+    /*
+     * A state change that is still marked as sending after its lease has run out belongs to a node
+     * that went away while applying it, so it is claimed the same as a pending one
+     */
+    @Override
+    public QueuedStateChange claim(Date now, Date leaseExpires) {
+        Query query = new Query();
+        query.addCriteria(where("status").in(DispatchStatus.PENDING.toString(), DispatchStatus.SENDING.toString()));
+        query.addCriteria(where("nextAttempt").lte(now));
+        query.with(new Sort(Sort.Direction.ASC, "sequence"));
+
+        Update update = new Update()
+                .set("status", DispatchStatus.SENDING.toString())
+                .set("nextAttempt", leaseExpires);
+
+        return mongoOperations.findAndModify(query, update, new FindAndModifyOptions().returnNew(true), QueuedStateChange.class);
+    }
+
+    /*
+     * Changes that have failed for good are included, since applying the changes after them would leave
+     * the instance in a state the engine never had, for example completing a task that was never created
+     */
+    @Override
+    public QueuedStateChange predecessor(QueuedStateChange queued) {
+        Query query = new Query();
+        query.addCriteria(where("processInstanceId").is(queued.getProcessInstanceId()));
+        query.addCriteria(where("sequence").lt(queued.getSequence()));
+        query.addCriteria(where("status").in(DispatchStatus.PENDING.toString(), DispatchStatus.SENDING.toString(), DispatchStatus.FAILED.toString()));
+        query.with(new Sort(Sort.Direction.ASC, "sequence"));
+
+        return mongoOperations.findOne(query, QueuedStateChange.class);
+    }
+
+    @Override
+    public List<QueuedStateChange> findFailed(String processInstanceId) {
+        Query query = new Query();
+        query.addCriteria(where("processInstanceId").is(processInstanceId));
+        query.addCriteria(where("status").is(DispatchStatus.FAILED.toString()));
+        query.with(new Sort(Sort.Direction.ASC, "sequence"));
+
+        return mongoOperations.find(query, QueuedStateChange.class);
+    }
+
+    @Override
+    public long nextSequence() {
+        Query query = new Query(where("_id").is(SEQUENCE_ID));
+        Update update = new Update().inc("sequence", 1);
+
+        DBObject counter = mongoOperations.findAndModify(query, update, new FindAndModifyOptions().returnNew(true).upsert(true),
+                DBObject.class, QueuedStateChange.Constants.SEQUENCE_COLLECTION_NAME);
+        return ((Number) counter.get("sequence")).longValue();
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.persistence.concrete;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.repository.NoRepositoryBean;
+import org.springframework.stereotype.Service;
+import piecework.model.ProcessInstance;
+import piecework.model.Task;
+import piecework.persistence.custom.TaskRepositoryCustom;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Maintains the task collection, which holds a copy of each task embedded in a process instance
+ * so that task lists can be queried, paged and counted without loading the instances themselves.
+ *
+ * @author James Renfro
+ */
+@Service
+@NoRepositoryBean
+public class TaskRepositoryCustomImpl implements TaskRepositoryCustom {
+
+    private static final Logger LOG = Logger.getLogger(TaskRepositoryCustomImpl.class);
+
+    @Autowired
+    MongoTemplate mongoOperations;
+
+    @PostConstruct
+    public void init() {
+        // Populate the task collection the first time the application starts up with it
+        if (mongoOperations.getCollection(mongoOperations.getCollectionName(Task.class)).count() == 0)
+            rebuild();
+    }
+
+    @Override
+    public Page<Task> findByQuery(Query query, Pageable request) {
+        return findByQuery(query, request, true);
+    }
+
+    /*
+     * Without a total, one extra task is read past the end of the page instead of counting every match,
+     * and the total reported is just large enough for the page to say whether there is another one after it
+     */
+    @Override
+    public Page<Task> findByQuery(Query query, Pageable request, boolean includeTotal) {
+        long start = 0;
+        if (LOG.isDebugEnabled())
+            start = System.currentTimeMillis();
+
+        int limit = query.getLimit();
+        if (!includeTotal && limit > 0)
+            query.limit(limit + 1);
+
+        List<Task> tasks = mongoOperations.find(query, Task.class);
+
+        long total;
+
+        if (!includeTotal) {
+            boolean hasMore = limit > 0 && tasks.size() > limit;
+            if (hasMore)
+                tasks = tasks.subList(0, limit);
+            total = request.getOffset() + tasks.size() + (hasMore ? 1 : 0);
+            query.limit(limit);
+        } else if (query.getSkip() > 0 || tasks.size() == limit) {
+            // We only need to look up a total if we're not on the first page or the page is full
+            total = mongoOperations.count(query, Task.class);
+        } else {
+            total = tasks.size();
+        }
+
+        Page<Task> page = new PageImpl<Task>(tasks, request, total);
+        if (LOG.isDebugEnabled())
+            LOG.debug("Retrieved tasks by query in " + (System.currentTimeMillis() - start) + " ms");
+
+        return page;
+    }
+
+    @Override
+    public boolean update(Task task) {
+        if (task == null || task.getTaskInstanceId() == null)
+            return false;
+
+        mongoOperations.save(task);
+        return true;
+    }
+
+    @Override
+    public boolean update(Collection<Task> tasks) {
+        boolean result = true;
+        if (tasks != null) {
+            for (Task task : tasks) {
+                result = update(task) && result;
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Copies every task that is embedded in a process instance into the task collection. This is
+     * only necessary once, for instances that were created before the task collection existed.
+     */
+    @Override
+    public long rebuild() {
+        long start = System.currentTimeMillis();
+        long count = 0;
+
+        MongoConverter converter = mongoOperations.getConverter();
+        DBCollection collection = mongoOperations.getCollection(mongoOperations.getCollectionName(ProcessInstance.class));
+        DBCursor cursor = collection.find(new BasicDBObject("tasks", new BasicDBObject("$exists", true)), new BasicDBObject("tasks", 1));
+        try {
+            while (cursor.hasNext()) {
+                Object tasks = cursor.next().get("tasks");
+                if (!(tasks instanceof DBObject))
+                    continue;
+
+                DBObject taskMap = DBObject.class.cast(tasks);
+                for (String taskId : taskMap.keySet()) {
+                    Object stored = taskMap.get(taskId);
+                    if (stored instanceof DBObject) {
+                        Task task = converter.read(Task.class, DBObject.class.cast(stored));
+                        if (update(task))
+                            count++;
+                    }
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        LOG.info("Rebuilt " + count + " entries in the task collection in " + (System.currentTimeMillis() - start) + " ms");
+        return count;
+    }
+
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.persistence.custom;
+
+import piecework.model.FormRequest;
+
+/**
+ * @author James Renfro
+ */
+public interface RequestRepositoryCustom {
+
+    /*
+     * Reads a request without following its references, so that it costs a single round trip. The
+     * activity it returns carries only its id, and it's up to the caller to resolve it.
+     */
+    FormRequest findOneUnresolved(String requestId);
+
+}
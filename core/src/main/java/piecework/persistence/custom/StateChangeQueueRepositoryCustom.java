@@ -0,0 +1,50 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.persistence.custom;
+
+import piecework.model.QueuedStateChange;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @author James Renfro
+ */
+public interface StateChangeQueueRepositoryCustom {
+
+    /*
+     * Atomically takes the earliest state change that is due to be applied, holding it until
+     * leaseExpires so that no other node picks it up in the meantime
+     */
+    QueuedStateChange claim(Date now, Date leaseExpires);
+
+    /*
+     * Returns the earliest state change for the same instance that was queued before the one passed
+     * and has either still to be applied or failed for good, or null if there is none
+     */
+    QueuedStateChange predecessor(QueuedStateChange queued);
+
+    /*
+     * Returns the state changes for the instance that have failed for good, in the order they were queued
+     */
+    List<QueuedStateChange> findFailed(String processInstanceId);
+
+    /*
+     * Returns the next value of a counter shared by every node, to order state changes by
+     */
+    long nextSequence();
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.persistence.custom;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.query.Query;
+import piecework.model.Task;
+
+import java.util.Collection;
+
+/**
+ * @author James Renfro
+ */
+public interface TaskRepositoryCustom {
+
+    Page<Task> findByQuery(Query query, Pageable pageable);
+
+    Page<Task> findByQuery(Query query, Pageable pageable, boolean includeTotal);
+
+    boolean update(Task task);
+
+    boolean update(Collection<Task> tasks);
+
+    long rebuild();
+
+}
@@ -18,12 +18,15 @@ package piecework.process;
 
 import static org.springframework.data.mongodb.core.query.Criteria.where;
 
+import com.mongodb.BasicDBObject;
 import org.apache.commons.lang.StringUtils;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.query.Query;
 import piecework.Constants;
+import piecework.util.KeywordUtility;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * @author James Renfro
@@ -31,11 +34,21 @@ import piecework.Constants;
 public class ProcessInstanceQueryBuilder {
 
     private final ProcessInstanceSearchCriteria searchCriteria;
+    private boolean textIndex;
 
     public ProcessInstanceQueryBuilder(final ProcessInstanceSearchCriteria searchCriteria) {
         this.searchCriteria = searchCriteria;
     }
 
+    /*
+     * Matches keywords with Mongo's text search instead of the token index, which requires the
+     * text index declared in IndexRegistry and a server that supports the $text operator
+     */
+    public ProcessInstanceQueryBuilder textIndex(boolean textIndex) {
+        this.textIndex = textIndex;
+        return this;
+    }
+
     public Query build() {
         Query query = new Query();
 
@@ -79,35 +92,31 @@ public class ProcessInstanceQueryBuilder {
         if (searchCriteria.getCompletedAfter() != null)
             query.addCriteria(where("endTime").gt(searchCriteria.getCompletedAfter()));
 
-        if (!searchCriteria.getKeywords().isEmpty()) {
+        if (textIndex) {
+            if (!searchCriteria.getKeywords().isEmpty())
+                query.addCriteria(where("$text").is(new BasicDBObject("$search", StringUtils.join(searchCriteria.getKeywords(), ' '))));
+        } else {
+            // Every token of every keyword, and of the label, has to be the start of some token of the instance. The
+            // label's tokens only narrow the search down through the index, since the label itself is still matched above
+            List<Pattern> prefixes = new ArrayList<Pattern>();
             for (String keyword : searchCriteria.getKeywords())
-                query.addCriteria(where("keywords").regex(keyword.toLowerCase()));
+                prefixes.addAll(KeywordUtility.prefixes(keyword));
+            if (StringUtils.isNotEmpty(searchCriteria.getProcessInstanceLabel()))
+                prefixes.addAll(KeywordUtility.prefixes(searchCriteria.getProcessInstanceLabel()));
+            if (!prefixes.isEmpty())
+                query.addCriteria(where("tokens").all(prefixes.toArray()));
         }
 
+        // Seeking past the last item of the previous page stays as fast on the last page as on the first
+        if (searchCriteria.getAfter() != null)
+            query.addCriteria(searchCriteria.getAfter().criteria(searchCriteria.getOrderBy()));
+        else if (searchCriteria.getFirstResult() != null)
+            query.skip(searchCriteria.getFirstResult());
+
         if (searchCriteria.getMaxResults() != null)
             query.limit(searchCriteria.getMaxResults());
 
-        if (searchCriteria.getFirstResult() != null)
-            query.skip(searchCriteria.getFirstResult());
-
-        if (searchCriteria.getOrderBy() != null) {
-            switch (searchCriteria.getOrderBy()) {
-                case START_TIME_ASC:
-                    query.with(new Sort(Sort.Direction.ASC, "startTime"));
-                    break;
-                case START_TIME_DESC:
-                    query.with(new Sort(Sort.Direction.DESC, "startTime"));
-                    break;
-                case END_TIME_ASC:
-                    query.with(new Sort(Sort.Direction.ASC, "endTime"));
-                    break;
-                case END_TIME_DESC:
-                    query.with(new Sort(Sort.Direction.DESC, "endTime"));
-                    break;
-            }
-        } else {
-            query.with(new Sort(Sort.Direction.DESC, "startTime"));
-        }
+        query.with(searchCriteria.getSort());
 
         return query;
     }
@@ -20,6 +20,7 @@ import org.apache.log4j.Logger;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 import org.springframework.data.domain.Sort;
+import piecework.exception.BadRequestError;
 import piecework.security.Sanitizer;
 import piecework.util.ManyMap;
 
@@ -55,12 +56,18 @@ public class ProcessInstanceSearchCriteria {
     private final Date completedBefore;
     private final Date completedAfter;
     private final String initiatedBy;
+    private final String assigneeId;
+    private final String candidateAssigneeId;
+    private final Date dueBefore;
+    private final Date dueAfter;
     private final Integer firstResult;
     private final Integer maxResults;
     private final boolean includeVariables;
     private final Map<String, List<String>> contentParameters;
     private final Map<String, List<String>> sanitizedParameters;
     private final OrderBy orderBy;
+    private final SearchCursor after;
+    private final Boolean includeTotal;
 
     private ProcessInstanceSearchCriteria() {
         this(new Builder());
@@ -89,7 +96,13 @@ public class ProcessInstanceSearchCriteria {
         this.completedBefore = builder.completedBefore;
         this.completedAfter = builder.completedAfter;
         this.initiatedBy = builder.initiatedBy;
+        this.assigneeId = builder.assigneeId;
+        this.candidateAssigneeId = builder.candidateAssigneeId;
+        this.dueBefore = builder.dueBefore;
+        this.dueAfter = builder.dueAfter;
         this.orderBy = builder.orderBy;
+        this.after = builder.after;
+        this.includeTotal = builder.includeTotal;
         this.firstResult = builder.firstResult;
         this.maxResults = builder.maxResults;
         this.contentParameters = Collections.unmodifiableMap(builder.contentParameters);
@@ -193,6 +206,22 @@ public class ProcessInstanceSearchCriteria {
         return initiatedBy;
     }
 
+    public String getAssigneeId() {
+        return assigneeId;
+    }
+
+    public String getCandidateAssigneeId() {
+        return candidateAssigneeId;
+    }
+
+    public Date getDueBefore() {
+        return dueBefore;
+    }
+
+    public Date getDueAfter() {
+        return dueAfter;
+    }
+
     public OrderBy getOrderBy() {
         return orderBy;
     }
@@ -209,28 +238,25 @@ public class ProcessInstanceSearchCriteria {
         return includeVariables;
     }
 
+    public SearchCursor getAfter() {
+        return after;
+    }
+
+    /*
+     * Counting every match costs as much as reading them all, so totals are only computed when asked
+     * for explicitly, or for offset paging where clients have always relied on them
+     */
+    public boolean isIncludeTotal() {
+        if (includeTotal != null)
+            return includeTotal.booleanValue();
+        return after == null;
+    }
+
+    /*
+     * Sorts on the start or end time, with ties broken by id so that the order is stable across pages
+     */
     public Sort getSort() {
-        Sort.Direction direction = Sort.Direction.DESC;
-        String sortProperty = "startTime";
-        switch (getOrderBy()) {
-            case START_TIME_ASC:
-                direction = Sort.Direction.ASC;
-                sortProperty = "startTime";
-                break;
-            case START_TIME_DESC:
-                direction = Sort.Direction.DESC;
-                sortProperty = "startTime";
-                break;
-            case END_TIME_ASC:
-                direction = Sort.Direction.ASC;
-                sortProperty = "endTime";
-                break;
-            case END_TIME_DESC:
-                direction = Sort.Direction.DESC;
-                sortProperty = "endTime";
-                break;
-        }
-        return new Sort(direction, sortProperty);
+        return SearchCursor.sort(getOrderBy());
     }
 
     public final static class Builder {
@@ -256,7 +282,13 @@ public class ProcessInstanceSearchCriteria {
         private Date completedBefore;
         private Date completedAfter;
         private String initiatedBy;
+        private String assigneeId;
+        private String candidateAssigneeId;
+        private Date dueBefore;
+        private Date dueAfter;
         private OrderBy orderBy = OrderBy.START_TIME_DESC;
+        private SearchCursor after;
+        private Boolean includeTotal;
         private Integer firstResult;
         private Integer maxResults;
         private List<String> keywords;
@@ -265,10 +297,6 @@ public class ProcessInstanceSearchCriteria {
         private boolean includeVariables;
 
         public Builder() {
-            this(null, null);
-        }
-
-        public Builder(Map<String, List<String>> queryParameters, Sanitizer sanitizer) {
             this.limitToProcessDefinitionKeys = new HashSet<String>();
             this.processDefinitionKeys = new HashSet<String>();
             this.processInstanceIds = new HashSet<String>();
@@ -277,6 +305,14 @@ public class ProcessInstanceSearchCriteria {
             this.keywords = new ArrayList<String>();
             this.contentParameters = new ManyMap<String, String>();
             this.sanitizedParameters = new ManyMap<String, String>();
+        }
+
+        /*
+         * Reads the criteria from the query parameters of a search. Parameters that cannot be parsed are skipped,
+         * except for the cursor, since treating it as missing would hand back the first page again.
+         */
+        public Builder(Map<String, List<String>> queryParameters, Sanitizer sanitizer) throws BadRequestError {
+            this();
             if (queryParameters != null && sanitizer != null) {
                 DateTimeFormatter dateTimeFormatter = ISODateTimeFormat.dateTimeNoMillis();
                 for (Map.Entry<String, List<String>> rawQueryParameterEntry : queryParameters.entrySet()) {
@@ -323,6 +359,10 @@ public class ProcessInstanceSearchCriteria {
                                     this.taskStatus = value;
                                 else if (key.equals("initiatedBy"))
                                     this.initiatedBy = value;
+                                else if (key.equals("assignee"))
+                                    this.assigneeId = value;
+                                else if (key.equals("candidateAssignee"))
+                                    this.candidateAssigneeId = value;
                                 else if (key.equals("orderBy"))
                                     this.orderBy = ProcessInstanceSearchCriteria.OrderBy.valueOf(value);
                                 else if (key.equals("completedAfter"))
@@ -333,10 +373,18 @@ public class ProcessInstanceSearchCriteria {
                                     this.startedAfter = dateTimeFormatter.parseDateTime(value).toDate();
                                 else if (key.equals("startedBefore"))
                                     this.startedBefore = dateTimeFormatter.parseDateTime(value).toDate();
+                                else if (key.equals("dueAfter"))
+                                    this.dueAfter = dateTimeFormatter.parseDateTime(value).toDate();
+                                else if (key.equals("dueBefore"))
+                                    this.dueBefore = dateTimeFormatter.parseDateTime(value).toDate();
                                 else if (key.equals("maxResults"))
                                     this.maxResults = Integer.valueOf(value);
                                 else if (key.equals("firstResult"))
                                     this.firstResult = Integer.valueOf(value);
+                                else if (key.equals("after"))
+                                    this.after = SearchCursor.decode(value);
+                                else if (key.equals("includeTotal"))
+                                    this.includeTotal = Boolean.valueOf(value);
                                 else if (key.equals("keyword"))
                                     this.keywords.add(value);
                                 else if (key.equals("verbose")) {
@@ -454,6 +502,26 @@ public class ProcessInstanceSearchCriteria {
             return this;
         }
 
+        public Builder assigneeId(String assigneeId) {
+            this.assigneeId = assigneeId;
+            return this;
+        }
+
+        public Builder candidateAssigneeId(String candidateAssigneeId) {
+            this.candidateAssigneeId = candidateAssigneeId;
+            return this;
+        }
+
+        public Builder dueBefore(Date dueBefore) {
+            this.dueBefore = dueBefore;
+            return this;
+        }
+
+        public Builder dueAfter(Date dueAfter) {
+            this.dueAfter = dueAfter;
+            return this;
+        }
+
         public Builder applicationStatus(String applicationStatus) {
             this.applicationStatus = applicationStatus;
             return this;
@@ -489,6 +557,16 @@ public class ProcessInstanceSearchCriteria {
             return this;
         }
 
+        public Builder after(SearchCursor after) {
+            this.after = after;
+            return this;
+        }
+
+        public Builder includeTotal(Boolean includeTotal) {
+            this.includeTotal = includeTotal;
+            return this;
+        }
+
         public Builder includeVariables() {
             this.includeVariables = true;
             return this;
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.process;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import piecework.Constants;
+import piecework.exception.BadRequestError;
+
+import javax.xml.bind.DatatypeConverter;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Position in a sorted list of instances or tasks, made up of the value of the sort property
+ * and the id of the last item returned, so that the next page can be found by seeking past it
+ * on an index rather than by skipping over every earlier result. The id breaks ties between
+ * items with the same start or end time.
+ *
+ * Cursors are passed to clients as opaque url-safe tokens.
+ *
+ * @author James Renfro
+ */
+public class SearchCursor {
+
+    private static final Logger LOG = Logger.getLogger(SearchCursor.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String NULL_VALUE = "-";
+    private static final char SEPARATOR = ':';
+
+    private final Date sortValue;
+    private final String id;
+
+    public SearchCursor(Date sortValue, String id) {
+        this.sortValue = sortValue;
+        this.id = id;
+    }
+
+    /*
+     * Returns the cursor for the item passed, taking its start or end time depending on how results are ordered
+     */
+    public static SearchCursor after(ProcessInstanceSearchCriteria.OrderBy orderBy, Date startTime, Date endTime, String id) {
+        if (id == null)
+            return null;
+        return new SearchCursor(isEndTime(orderBy) ? endTime : startTime, id);
+    }
+
+    /*
+     * Parses a token produced by encode, returning null if there is none. A token that cannot be read is rejected,
+     * rather than treated as missing, so that a client never gets the first page back in place of the next one.
+     */
+    public static SearchCursor decode(String token) throws BadRequestError {
+        if (StringUtils.isEmpty(token))
+            return null;
+
+        try {
+            String base64 = token.replace('-', '+').replace('_', '/');
+            while (base64.length() % 4 != 0)
+                base64 += "=";
+            String decoded = new String(DatatypeConverter.parseBase64Binary(base64), UTF8);
+            int index = decoded.indexOf(SEPARATOR);
+            if (index < 1 || index == decoded.length() - 1)
+                throw new BadRequestError(Constants.ExceptionCodes.search_cursor_invalid);
+
+            String value = decoded.substring(0, index);
+            Date sortValue = value.equals(NULL_VALUE) ? null : new Date(Long.parseLong(value));
+            return new SearchCursor(sortValue, decoded.substring(index + 1));
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Unable to parse search cursor " + token, e);
+            throw new BadRequestError(Constants.ExceptionCodes.search_cursor_invalid);
+        }
+    }
+
+    public String encode() {
+        String value = sortValue != null ? String.valueOf(sortValue.getTime()) : NULL_VALUE;
+        String printed = DatatypeConverter.printBase64Binary((value + SEPARATOR + id).getBytes(UTF8));
+        return StringUtils.stripEnd(printed, "=").replace('+', '-').replace('/', '_');
+    }
+
+    /*
+     * Builds a criteria that matches only the items that come after this cursor in the order passed. Mongo
+     * sorts missing values before any date, so instances that have not ended come first in ascending order
+     * and last in descending order, and range operators on dates never match them.
+     */
+    public Criteria criteria(ProcessInstanceSearchCriteria.OrderBy orderBy) {
+        String sortProperty = isEndTime(orderBy) ? "endTime" : "startTime";
+        boolean ascending = isAscending(orderBy);
+
+        if (sortValue == null) {
+            Criteria tied = ascending ? where(sortProperty).is(null).and("_id").gt(id) : where(sortProperty).is(null).and("_id").lt(id);
+            if (ascending)
+                return new Criteria().orOperator(tied, where(sortProperty).ne(null));
+            return tied;
+        }
+
+        Criteria beyond = ascending ? where(sortProperty).gt(sortValue) : where(sortProperty).lt(sortValue);
+        Criteria tied = ascending ? where(sortProperty).is(sortValue).and("_id").gt(id) : where(sortProperty).is(sortValue).and("_id").lt(id);
+        if (ascending)
+            return new Criteria().orOperator(beyond, tied);
+        return new Criteria().orOperator(beyond, tied, where(sortProperty).is(null));
+    }
+
+    public Date getSortValue() {
+        return sortValue;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    static Sort sort(ProcessInstanceSearchCriteria.OrderBy orderBy) {
+        Sort.Direction direction = isAscending(orderBy) ? Sort.Direction.ASC : Sort.Direction.DESC;
+        return new Sort(direction, isEndTime(orderBy) ? "endTime" : "startTime").and(new Sort(direction, "_id"));
+    }
+
+    private static boolean isAscending(ProcessInstanceSearchCriteria.OrderBy orderBy) {
+        return orderBy == ProcessInstanceSearchCriteria.OrderBy.START_TIME_ASC || orderBy == ProcessInstanceSearchCriteria.OrderBy.END_TIME_ASC;
+    }
+
+    private static boolean isEndTime(ProcessInstanceSearchCriteria.OrderBy orderBy) {
+        return orderBy == ProcessInstanceSearchCriteria.OrderBy.END_TIME_ASC || orderBy == ProcessInstanceSearchCriteria.OrderBy.END_TIME_DESC;
+    }
+
+}
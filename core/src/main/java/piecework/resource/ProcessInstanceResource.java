@@ -66,7 +66,7 @@ public interface ProcessInstanceResource extends ApplicationResource, ApiResourc
     @GET
     @Path("")
     @RolesAllowed({AuthorizationRole.OVERSEER})
-    @Produces({"application/xml","application/json", "text/csv"})
+    @Produces({"application/xml","application/json", "text/csv", "application/x-ndjson"})
     Response search(@Context MessageContext context) throws StatusCodeError;
 
     /*
@@ -104,7 +104,7 @@ public interface ProcessInstanceResource extends ApplicationResource, ApiResourc
     @GET
     @Path("{processDefinitionKey}/{processInstanceId}/attachment/{attachmentId}")
     @RolesAllowed({AuthorizationRole.USER, AuthorizationRole.OVERSEER})
-    Response attachment(@PathParam("processDefinitionKey") String processDefinitionKey, @PathParam("processInstanceId") String processInstanceId, @PathParam("attachmentId") String attachmentId) throws StatusCodeError;
+    Response attachment(@Context MessageContext context, @PathParam("processDefinitionKey") String processDefinitionKey, @PathParam("processInstanceId") String processInstanceId, @PathParam("attachmentId") String attachmentId) throws StatusCodeError;
 
     @POST
     @Path("{processDefinitionKey}/{processInstanceId}/cancellation")
@@ -145,10 +145,20 @@ public interface ProcessInstanceResource extends ApplicationResource, ApiResourc
     @Consumes({"application/xml","application/json"})
     Response suspend(@PathParam("processDefinitionKey") String processDefinitionKey, @PathParam("processInstanceId") String processInstanceId, OperationDetails reason) throws StatusCodeError;
 
+    @POST
+    @Path("{processDefinitionKey}/{processInstanceId}/synchronization")
+    @RolesAllowed({AuthorizationRole.OVERSEER})
+    Response synchronize(@PathParam("processDefinitionKey") String processDefinitionKey, @PathParam("processInstanceId") String processInstanceId) throws StatusCodeError;
+
+    @DELETE
+    @Path("{processDefinitionKey}/{processInstanceId}/synchronization")
+    @RolesAllowed({AuthorizationRole.OVERSEER})
+    Response skipSynchronization(@PathParam("processDefinitionKey") String processDefinitionKey, @PathParam("processInstanceId") String processInstanceId) throws StatusCodeError;
+
     @GET
     @Path("{processDefinitionKey}/{processInstanceId}/value/{fieldName}/{valueId}")
     @RolesAllowed({AuthorizationRole.USER, AuthorizationRole.OVERSEER})
-    Response value(@PathParam("processDefinitionKey") String processDefinitionKey, @PathParam("processInstanceId") String processInstanceId, @PathParam("fieldName") String fieldName, @PathParam("valueId") String valueId) throws StatusCodeError;
+    Response value(@Context MessageContext context, @PathParam("processDefinitionKey") String processDefinitionKey, @PathParam("processInstanceId") String processInstanceId, @PathParam("fieldName") String fieldName, @PathParam("valueId") String valueId) throws StatusCodeError;
 
     @POST
     @Path("{processDefinitionKey}/{processInstanceId}/value/{fieldName}")
@@ -16,10 +16,9 @@
 package piecework.resource.concrete;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.cxf.jaxrs.ext.MessageContext;
 import org.apache.log4j.Logger;
-import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
 import piecework.Constants;
 import piecework.enumeration.ActionType;
 import piecework.enumeration.DataInjectionStrategy;
@@ -30,14 +29,17 @@ import piecework.model.Process;
 import piecework.service.DeploymentService;
 import piecework.service.ProcessService;
 import piecework.service.UserInterfaceService;
-import piecework.ui.streaming.ResourceStreamingOutput;
+import piecework.ui.AssetBundle;
 
 import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 import java.io.IOException;
 import java.util.Date;
+import java.util.List;
 
 /**
  * @author James Renfro
@@ -45,6 +47,8 @@ import java.util.Date;
 public abstract class AbstractScriptResource {
 
     private static final Logger LOG = Logger.getLogger(AbstractScriptResource.class);
+    private static final int DAY_SECONDS = 24 * 60 * 60;
+    private static final int YEAR_SECONDS = 365 * DAY_SECONDS;
 
     @Autowired
     DeploymentService deploymentService;
@@ -97,23 +101,79 @@ public abstract class AbstractScriptResource {
         throw new NotFoundError();
     }
 
-    protected static Response response(Resource resource, String mediaType) {
-        DateTime today = new DateTime();
-        return Response
-                .ok(new ResourceStreamingOutput(resource), mediaType)
-                .expires(today.plusDays(1).toDate())
-                .lastModified(lastModified(resource))
+    /*
+     * Bundles requested with the hash of their current content in the url can be cached for good, since
+     * any change to the bundle changes its url. Otherwise the browser has to check back with the ETag.
+     */
+    protected static Response response(AssetBundle bundle, String version, String mediaType, MessageContext context) {
+        boolean gzip = acceptsGzip(context);
+        EntityTag entityTag = new EntityTag(gzip ? bundle.getHash() + "-gzip" : bundle.getHash());
+
+        CacheControl cacheControl = new CacheControl();
+        if (version == null)
+            cacheControl.setMaxAge(DAY_SECONDS);
+        else if (version.equals(bundle.getHash()))
+            cacheControl.setMaxAge(YEAR_SECONDS);
+        else
+            cacheControl.setNoCache(true);
+
+        Response.ResponseBuilder builder = context != null && context.getRequest() != null ? context.getRequest().evaluatePreconditions(entityTag) : null;
+        if (builder == null) {
+            builder = Response.ok(gzip ? bundle.getGzipped() : bundle.getContent(), mediaType)
+                    .lastModified(new Date(bundle.getBuilt()));
+            if (gzip)
+                builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        return builder
+                .tag(entityTag)
+                .cacheControl(cacheControl)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
                 .build();
     }
 
-    private static Date lastModified(Resource resource) {
-        DateTime lastModified;
-        try {
-            lastModified = new DateTime(resource.lastModified());
-        } catch (IOException ioe) {
-            lastModified = new DateTime();
+    /*
+     * Gzip is acceptable when it's listed, or covered by a wildcard, with a quality above zero -- a
+     * coding listed as gzip;q=0 is one the client is refusing
+     */
+    static boolean acceptsGzip(MessageContext context) {
+        HttpHeaders headers = context != null ? context.getHttpHeaders() : null;
+        List<String> acceptEncodings = headers != null ? headers.getRequestHeader(HttpHeaders.ACCEPT_ENCODING) : null;
+        if (acceptEncodings == null)
+            return false;
+
+        Float gzipQuality = null;
+        Float wildcardQuality = null;
+        for (String acceptEncoding : acceptEncodings) {
+            if (acceptEncoding == null)
+                continue;
+            for (String coding : acceptEncoding.split(",")) {
+                String[] parts = coding.split(";");
+                String name = parts[0].trim().toLowerCase();
+                if (name.equals("gzip") || name.equals("x-gzip"))
+                    gzipQuality = quality(parts);
+                else if (name.equals("*"))
+                    wildcardQuality = quality(parts);
+            }
+        }
+
+        if (gzipQuality != null)
+            return gzipQuality.floatValue() > 0;
+        return wildcardQuality != null && wildcardQuality.floatValue() > 0;
+    }
+
+    private static Float quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Float.valueOf(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return Float.valueOf(0);
+                }
+            }
         }
-        return lastModified.toDate();
+        return Float.valueOf(1);
     }
 
 }
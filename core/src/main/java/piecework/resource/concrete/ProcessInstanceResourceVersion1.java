@@ -27,8 +27,10 @@ import org.springframework.stereotype.Service;
 
 import piecework.*;
 import piecework.authorization.AuthorizationRole;
+import piecework.engine.EngineStateSynchronizer;
 import piecework.model.RequestDetails;
 import piecework.enumeration.ActionType;
+import piecework.enumeration.ExportFormat;
 import piecework.form.LegacyFormFactory;
 import piecework.handler.SubmissionHandler;
 import piecework.persistence.concrete.ExportInstanceProvider;
@@ -53,6 +55,7 @@ import piecework.handler.RequestHandler;
 import piecework.security.SecuritySettings;
 import piecework.security.concrete.PassthroughSanitizer;
 import piecework.service.TaskService;
+import piecework.ui.streaming.AttachmentResponses;
 import piecework.ui.streaming.StreamingAttachmentContent;
 import piecework.util.ProcessInstanceUtility;
 
@@ -70,6 +73,9 @@ public class ProcessInstanceResourceVersion1 implements ProcessInstanceResource
     @Autowired
     AttachmentService attachmentService;
 
+    @Autowired
+    EngineStateSynchronizer engineStateSynchronizer;
+
     @Autowired
     IdentityHelper helper;
 
@@ -177,7 +183,7 @@ public class ProcessInstanceResourceVersion1 implements ProcessInstanceResource
     }
 
     @Override
-    public Response attachment(String rawProcessDefinitionKey, String rawProcessInstanceId, String rawAttachmentId) throws StatusCodeError {
+    public Response attachment(MessageContext context, String rawProcessDefinitionKey, String rawProcessInstanceId, String rawAttachmentId) throws StatusCodeError {
         Entity principal = helper.getPrincipal();
         Process process = processService.read(rawProcessDefinitionKey);
         ProcessInstance instance = processInstanceService.read(process, rawProcessInstanceId, true);
@@ -191,8 +197,7 @@ public class ProcessInstanceResourceVersion1 implements ProcessInstanceResource
         if (content == null)
             throw new NotFoundError(Constants.ExceptionCodes.attachment_does_not_exist, attachmentId);
 
-        String contentDisposition = new StringBuilder("attachment; filename=").append(content.getAttachment().getDescription()).toString();
-        return Response.ok(content, content.getAttachment().getContentType()).header("Content-Disposition", contentDisposition).build();
+        return AttachmentResponses.build(context, content, content.getAttachment().getContentType(), content.getAttachment().getDescription());
     }
 
     @Override
@@ -308,6 +313,40 @@ public class ProcessInstanceResourceVersion1 implements ProcessInstanceResource
         return suspend(rawProcessDefinitionKey, rawProcessInstanceId, details.getReason());
     }
 
+    /*
+     * Queues the engine state changes that failed for good for this instance again, once whatever made them fail has been put right
+     */
+    @Override
+    public Response synchronize(String rawProcessDefinitionKey, String rawProcessInstanceId) throws StatusCodeError {
+        Entity principal = helper.getPrincipal();
+        Process process = processService.read(rawProcessDefinitionKey);
+        ProcessInstance instance = processInstanceService.read(process, rawProcessInstanceId, false);
+
+        if (!principal.hasRole(process, AuthorizationRole.OVERSEER))
+            throw new ForbiddenError();
+
+        engineStateSynchronizer.retryFailed(instance.getProcessInstanceId());
+        return Response.noContent().build();
+    }
+
+    /*
+     * Drops the earliest engine state change that failed for good for this instance, for when it can never be applied
+     */
+    @Override
+    public Response skipSynchronization(String rawProcessDefinitionKey, String rawProcessInstanceId) throws StatusCodeError {
+        Entity principal = helper.getPrincipal();
+        Process process = processService.read(rawProcessDefinitionKey);
+        ProcessInstance instance = processInstanceService.read(process, rawProcessInstanceId, false);
+
+        if (!principal.hasRole(process, AuthorizationRole.OVERSEER))
+            throw new ForbiddenError();
+
+        if (engineStateSynchronizer.skipFailed(instance.getProcessInstanceId()) == null)
+            throw new NotFoundError();
+
+        return Response.noContent().build();
+    }
+
     @Override
     public Response update(String rawProcessDefinitionKey, String rawProcessInstanceId, ProcessInstance instance) throws StatusCodeError {
         String processDefinitionKey = sanitizer.sanitize(rawProcessDefinitionKey);
@@ -350,8 +389,13 @@ public class ProcessInstanceResourceVersion1 implements ProcessInstanceResource
         if (mediaTypes != null && mediaTypes.contains(new MediaType("text", "csv"))) {
             String fileName = "export.csv";
             ExportInstanceProvider provider = processInstanceService.exportProvider(rawQueryParameters, principal);
-            ExportStreamingOutput exportStreamingOutput = new ExportStreamingOutput(provider);
+            ExportStreamingOutput exportStreamingOutput = new ExportStreamingOutput(provider, ExportFormat.CSV);
             return Response.ok(exportStreamingOutput, "text/csv").header("Content-Disposition", "attachment; filename=" + fileName).build();
+        } else if (mediaTypes != null && mediaTypes.contains(new MediaType("application", "x-ndjson"))) {
+            String fileName = "export.ndjson";
+            ExportInstanceProvider provider = processInstanceService.exportProvider(rawQueryParameters, principal);
+            ExportStreamingOutput exportStreamingOutput = new ExportStreamingOutput(provider, ExportFormat.NDJSON);
+            return Response.ok(exportStreamingOutput, "application/x-ndjson").header("Content-Disposition", "attachment; filename=" + fileName).build();
         } else {
             SearchResults results = processInstanceService.search(rawQueryParameters, principal);
             return Response.ok(results).build();
@@ -374,7 +418,7 @@ public class ProcessInstanceResourceVersion1 implements ProcessInstanceResource
     }
 
     @Override
-    public Response value(String rawProcessDefinitionKey, String rawProcessInstanceId, String rawFieldName, String rawValueId) throws StatusCodeError {
+    public Response value(MessageContext context, String rawProcessDefinitionKey, String rawProcessInstanceId, String rawFieldName, String rawValueId) throws StatusCodeError {
         Entity principal = helper.getPrincipal();
         Process process = processService.read(rawProcessDefinitionKey);
         ProcessInstance instance = processInstanceService.read(process, rawProcessInstanceId, false);
@@ -384,7 +428,7 @@ public class ProcessInstanceResourceVersion1 implements ProcessInstanceResource
         if (!principal.hasRole(process, AuthorizationRole.OVERSEER) && !taskService.hasAllowedTask(process, instance, principal, true))
             throw new ForbiddenError(Constants.ExceptionCodes.active_task_required);
 
-        return valuesService.read(process, instance, fieldName, valueId);
+        return valuesService.read(context, process, instance, fieldName, valueId);
     }
 
     @Override
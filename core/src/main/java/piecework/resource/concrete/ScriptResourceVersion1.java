@@ -19,7 +19,6 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.cxf.jaxrs.ext.MessageContext;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import piecework.model.RequestDetails;
 import piecework.exception.*;
@@ -32,6 +31,7 @@ import piecework.resource.ScriptResource;
 import piecework.security.Sanitizer;
 import piecework.security.SecuritySettings;
 import piecework.service.FormTemplateService;
+import piecework.ui.AssetBundle;
 
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.PathSegment;
@@ -76,19 +76,21 @@ public class ScriptResourceVersion1 extends AbstractScriptResource implements Sc
     }
 
     @Override
-    public Response readScript(String scriptId) throws StatusCodeError {
-        String templateName = formTemplateService.getTemplateName(scriptId, isAnonymous());
+    public Response readScript(String scriptId, MessageContext context) throws StatusCodeError {
+        String[] versioned = AssetBundle.versioned(scriptId);
+        String templateName = formTemplateService.getTemplateName(versioned[0], isAnonymous());
 
-        Resource scriptResource = userInterfaceService.getScriptResource(templateName);
-        return response(scriptResource, "text/javascript");
+        AssetBundle bundle = userInterfaceService.getScriptBundle(templateName);
+        return response(bundle, versioned[1], "text/javascript", context);
     }
 
     @Override
-    public Response readStylesheet(String stylesheetId) throws StatusCodeError {
-        String templateName = formTemplateService.getTemplateName(stylesheetId, isAnonymous());
+    public Response readStylesheet(String stylesheetId, MessageContext context) throws StatusCodeError {
+        String[] versioned = AssetBundle.versioned(stylesheetId);
+        String templateName = formTemplateService.getTemplateName(versioned[0], isAnonymous());
 
-        Resource stylesheetResource = userInterfaceService.getStylesheetResource(templateName);
-        return response(stylesheetResource, "text/css");
+        AssetBundle bundle = userInterfaceService.getStylesheetBundle(templateName);
+        return response(bundle, versioned[1], "text/css", context);
     }
 
     @Override
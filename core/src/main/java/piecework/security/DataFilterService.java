@@ -130,58 +130,18 @@ public class DataFilterService {
     }
 
     public ManyMap<String, Value> decrypt(Map<String, List<Value>> original) {
-        ManyMap<String, Value> map = new ManyMap<String, Value>();
-
-        if (original != null && !original.isEmpty()) {
-            for (Map.Entry<String, List<Value>> entry : original.entrySet()) {
-                String key = entry.getKey();
-                try {
-                    List<Value> decrypted = decrypt(entry.getValue());
-                    map.put(key, decrypted);
-                } catch (Exception e) {
-                    LOG.error("Could not decrypt messages for " + key, e);
-                }
-            }
-        }
-
-        return map;
+        return encryptionService.decrypt(original);
     }
 
-    public List<Value> encrypt(List<? extends Value> values) throws UnsupportedEncodingException, GeneralSecurityException, InvalidCipherTextException {
-        if (values.isEmpty())
-            return Collections.emptyList();
-
-        List<Value> list = new ArrayList<Value>(values.size());
-        for (Value value : values) {
-            if (value instanceof Value) {
-                String plaintext = value != null ? value.getValue() : null;
-                if (StringUtils.isNotEmpty(plaintext)) {
-                    list.add(encryptionService.encrypt(plaintext));
-                }
-            } else {
-                list.add(value);
-            }
-        }
-
-        return list;
+    /*
+     * Returns a view that only decrypts the values under a key when that key is read
+     */
+    public Map<String, List<Value>> decryptLazily(Map<String, List<Value>> original) {
+        return new DecryptingDataMap(original, encryptionService);
     }
 
-    private List<Value> decrypt(List<? extends Value> values) throws UnsupportedEncodingException, GeneralSecurityException, InvalidCipherTextException {
-        if (values.isEmpty())
-            return Collections.emptyList();
-
-        List<Value> list = new ArrayList<Value>(values.size());
-        for (Value value : values) {
-            if (value instanceof Secret) {
-                Secret secret = Secret.class.cast(value);
-                String plaintext = encryptionService.decrypt(secret);
-                list.add(new Value(plaintext));
-            } else {
-                list.add(value);
-            }
-        }
-
-        return list;
+    public List<Value> encrypt(List<? extends Value> values) throws UnsupportedEncodingException, GeneralSecurityException, InvalidCipherTextException {
+        return encryptionService.encrypt(values);
     }
 
     private ManyMap<String, Value> mask(Map<String, List<Value>> original) {
@@ -210,8 +170,11 @@ public class DataFilterService {
         for (Value value : values) {
             if (value instanceof Secret) {
                 Secret secret = Secret.class.cast(value);
-                String plaintext = encryptionService.decrypt(secret);
-                list.add(new Value(Strings.repeat("*", plaintext.length())));
+                int length = secret.getPlaintextLength();
+                // Older secrets don't record their length, so they have to be decrypted to mask them
+                if (length < 0)
+                    length = encryptionService.decrypt(secret).length();
+                list.add(new Value(Strings.repeat("*", length)));
             } else {
                 list.add(value);
             }
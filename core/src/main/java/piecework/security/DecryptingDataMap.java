@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.security;
+
+import org.apache.log4j.Logger;
+import piecework.model.Secret;
+import piecework.model.Value;
+
+import java.util.*;
+
+/**
+ * Read-only view of instance or submission data that decrypts the secrets stored under a key
+ * the first time that key is read, so that callers like validation rules, which look at only a
+ * few fields, don't pay to decrypt every secret in the instance. Values that can't be decrypted
+ * are logged and treated as missing, as they are when data is decrypted all at once.
+ *
+ * @author James Renfro
+ */
+class DecryptingDataMap extends AbstractMap<String, List<Value>> {
+
+    private static final Logger LOG = Logger.getLogger(DecryptingDataMap.class);
+
+    private final Map<String, List<Value>> original;
+    private final EncryptionService encryptionService;
+    private final Map<String, List<Value>> decrypted;
+
+    DecryptingDataMap(Map<String, List<Value>> original, EncryptionService encryptionService) {
+        this.original = original != null ? original : Collections.<String, List<Value>>emptyMap();
+        this.encryptionService = encryptionService;
+        this.decrypted = new HashMap<String, List<Value>>();
+    }
+
+    @Override
+    public List<Value> get(Object key) {
+        if (decrypted.containsKey(key))
+            return decrypted.get(key);
+
+        List<Value> values = original.get(key);
+        if (values == null)
+            return null;
+
+        List<Value> result = decrypt(String.valueOf(key), values);
+        decrypted.put(String.valueOf(key), result);
+        return result;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return original.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return original.size();
+    }
+
+    @Override
+    public Set<Entry<String, List<Value>>> entrySet() {
+        return new AbstractSet<Entry<String, List<Value>>>() {
+            @Override
+            public Iterator<Entry<String, List<Value>>> iterator() {
+                final Iterator<String> keys = original.keySet().iterator();
+                return new Iterator<Entry<String, List<Value>>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return keys.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, List<Value>> next() {
+                        String key = keys.next();
+                        return new SimpleImmutableEntry<String, List<Value>>(key, get(key));
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return original.size();
+            }
+        };
+    }
+
+    private List<Value> decrypt(String key, List<Value> values) {
+        boolean hasSecret = false;
+        for (Value value : values) {
+            if (value instanceof Secret) {
+                hasSecret = true;
+                break;
+            }
+        }
+        if (!hasSecret)
+            return values;
+
+        try {
+            List<Value> list = new ArrayList<Value>(values.size());
+            for (Value value : values) {
+                if (value instanceof Secret)
+                    list.add(new Value(encryptionService.decrypt(Secret.class.cast(value))));
+                else
+                    list.add(value);
+            }
+            return list;
+        } catch (Exception e) {
+            LOG.error("Could not decrypt messages for " + key, e);
+            return null;
+        }
+    }
+
+}
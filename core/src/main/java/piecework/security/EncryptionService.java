@@ -26,6 +26,9 @@ import java.util.List;
 import java.util.Map;
 
 /**
+ * Implementations are expected to reuse their ciphers between values, so that encrypting or
+ * decrypting a whole list of values or map of fields costs little more than the cipher work itself.
+ *
  * @author James Renfro
  */
 public interface EncryptionService {
@@ -34,4 +37,19 @@ public interface EncryptionService {
 
     String decrypt(Secret secret) throws InvalidCipherTextException, GeneralSecurityException, UnsupportedEncodingException;
 
+    /*
+     * Encrypts the text of each value, skipping values that have no text
+     */
+    List<Value> encrypt(List<? extends Value> values) throws InvalidCipherTextException, UnsupportedEncodingException, GeneralSecurityException;
+
+    /*
+     * Replaces each secret with a plain value, leaving other values as they are
+     */
+    List<Value> decrypt(List<? extends Value> values) throws InvalidCipherTextException, GeneralSecurityException, UnsupportedEncodingException;
+
+    /*
+     * Decrypts every secret in the map, leaving out (and logging) any field whose values can't be decrypted
+     */
+    ManyMap<String, Value> decrypt(Map<String, List<Value>> data);
+
 }
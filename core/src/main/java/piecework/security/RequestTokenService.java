@@ -0,0 +1,198 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.security;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+import piecework.Constants;
+import piecework.enumeration.ActionType;
+import piecework.exception.ForbiddenError;
+import piecework.model.Activity;
+import piecework.model.FormRequest;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.bind.DatatypeConverter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encodes the context of a form request as a signed token that can stand in for the request id,
+ * so that showing a form doesn't need to write a request document to Mongo and read it back on
+ * submit. The token carries the process, instance, task, activity and action along with the user
+ * and certificate that the request was made by and the time it was made, and is signed with an
+ * HMAC so that none of these can be changed by the client.
+ *
+ * Tokens are only issued when request.tokens.enabled is true. Every node that handles requests
+ * must share the same request.token.secret, or a token issued by one will be rejected by another.
+ *
+ * @author James Renfro
+ */
+@Service
+public class RequestTokenService {
+
+    private static final Logger LOG = Logger.getLogger(RequestTokenService.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final char SEPARATOR = '.';
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Autowired
+    Environment environment;
+
+    private boolean enabled;
+    private SecretKeySpec key;
+
+    // Mac instances are not thread safe, but are worth reusing since looking one up goes through the providers
+    private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to initialize " + ALGORITHM, e);
+            }
+        }
+    };
+
+    @PostConstruct
+    public void init() {
+        this.enabled = environment.getProperty("request.tokens.enabled", Boolean.class, Boolean.FALSE);
+
+        byte[] secret;
+        String configured = environment.getProperty("request.token.secret");
+        if (StringUtils.isNotEmpty(configured)) {
+            secret = configured.getBytes(UTF8);
+        } else {
+            secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+            if (enabled)
+                LOG.warn("No request.token.secret is configured, so request tokens will not be accepted by other nodes or after a restart");
+        }
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /*
+     * Request ids that Mongo generates never contain the separator, so anything that does must be a token
+     */
+    public boolean isToken(String requestId) {
+        return requestId != null && requestId.indexOf(SEPARATOR) != -1;
+    }
+
+    public String encode(FormRequest formRequest) {
+        Map<String, Object> claims = new LinkedHashMap<String, Object>();
+        claims.put("p", formRequest.getProcessDefinitionKey());
+        claims.put("i", formRequest.getProcessInstanceId());
+        claims.put("t", formRequest.getTaskId());
+        claims.put("a", formRequest.getActivity() != null ? formRequest.getActivity().getActivityId() : null);
+        claims.put("x", formRequest.getAction() != null ? formRequest.getAction().name() : null);
+        claims.put("u", formRequest.getRemoteUser());
+        claims.put("s", formRequest.getActAsUser());
+        claims.put("ci", formRequest.getCertificateIssuer());
+        claims.put("cs", formRequest.getCertificateSubject());
+        claims.put("d", formRequest.getRequestDate() != null ? formRequest.getRequestDate().getTime() : System.currentTimeMillis());
+
+        try {
+            String payload = base64(OBJECT_MAPPER.writeValueAsBytes(claims));
+            return payload + SEPARATOR + base64(sign(payload));
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write request token", e);
+        }
+    }
+
+    /*
+     * Verifies the signature on the token and returns a request that carries its claims. The activity
+     * is returned with only its id, since the token doesn't hold the activity itself.
+     */
+    public FormRequest decode(String token) throws ForbiddenError {
+        int index = token != null ? token.lastIndexOf(SEPARATOR) : -1;
+        if (index < 1 || index == token.length() - 1)
+            throw new ForbiddenError(Constants.ExceptionCodes.request_does_not_match);
+
+        String payload = token.substring(0, index);
+        try {
+            byte[] signature = unbase64(token.substring(index + 1));
+            if (!MessageDigest.isEqual(signature, sign(payload))) {
+                LOG.error("Request token signature does not match");
+                throw new ForbiddenError(Constants.ExceptionCodes.request_does_not_match);
+            }
+
+            Map<String, Object> claims = OBJECT_MAPPER.readValue(unbase64(payload), new TypeReference<Map<String, Object>>() {});
+            String activityId = string(claims.get("a"));
+            String action = string(claims.get("x"));
+            Object timestamp = claims.get("d");
+
+            return new FormRequest.Builder()
+                    .requestId(token)
+                    .processDefinitionKey(string(claims.get("p")))
+                    .processInstanceId(string(claims.get("i")))
+                    .taskId(string(claims.get("t")))
+                    .activity(activityId != null ? new Activity.Builder().activityId(activityId).build() : null)
+                    .action(action != null ? ActionType.valueOf(action) : null)
+                    .remoteUser(string(claims.get("u")))
+                    .actAsUser(string(claims.get("s")))
+                    .certificateIssuer(string(claims.get("ci")))
+                    .certificateSubject(string(claims.get("cs")))
+                    .requestDate(timestamp instanceof Number ? new Date(Number.class.cast(timestamp).longValue()) : null)
+                    .build();
+        } catch (IOException e) {
+            LOG.error("Unable to read request token", e);
+            throw new ForbiddenError(Constants.ExceptionCodes.request_does_not_match);
+        } catch (IllegalArgumentException e) {
+            LOG.error("Unable to read request token", e);
+            throw new ForbiddenError(Constants.ExceptionCodes.request_does_not_match);
+        }
+    }
+
+    private byte[] sign(String payload) {
+        return macs.get().doFinal(payload.getBytes(UTF8));
+    }
+
+    private static String string(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    private static String base64(byte[] bytes) {
+        String printed = DatatypeConverter.printBase64Binary(bytes);
+        return StringUtils.stripEnd(printed, "=").replace('+', '-').replace('/', '_');
+    }
+
+    private static byte[] unbase64(String encoded) {
+        String base64 = encoded.replace('-', '+').replace('_', '/');
+        while (base64.length() % 4 != 0)
+            base64 += "=";
+        return DatatypeConverter.parseBase64Binary(base64);
+    }
+
+}
@@ -16,27 +16,102 @@
 package piecework.security.concrete;
 
 import com.google.common.base.Strings;
+import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.springframework.core.env.Environment;
 import piecework.model.Secret;
 import piecework.model.Value;
 import piecework.security.EncryptionService;
 import piecework.util.ManyMap;
 
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
 import java.io.UnsupportedEncodingException;
 import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.spec.KeySpec;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 /**
+ * Implements the bulk operations of EncryptionService on top of the single value ones, and
+ * derives the key that the AES implementations share.
+ *
  * @author James Renfro
  */
 public abstract class BaseEncryptionService implements EncryptionService {
 
     private static final Logger LOG = Logger.getLogger(BaseEncryptionService.class);
 
+    @Override
+    public List<Value> encrypt(List<? extends Value> values) throws InvalidCipherTextException, UnsupportedEncodingException, GeneralSecurityException {
+        if (values == null || values.isEmpty())
+            return Collections.emptyList();
+
+        List<Value> list = new ArrayList<Value>(values.size());
+        for (Value value : values) {
+            String plaintext = value != null ? value.getValue() : null;
+            if (StringUtils.isNotEmpty(plaintext))
+                list.add(encrypt(plaintext));
+        }
+        return list;
+    }
+
+    @Override
+    public List<Value> decrypt(List<? extends Value> values) throws InvalidCipherTextException, GeneralSecurityException, UnsupportedEncodingException {
+        if (values == null || values.isEmpty())
+            return Collections.emptyList();
+
+        List<Value> list = new ArrayList<Value>(values.size());
+        for (Value value : values) {
+            if (value instanceof Secret)
+                list.add(new Value(decrypt(Secret.class.cast(value))));
+            else
+                list.add(value);
+        }
+        return list;
+    }
+
+    @Override
+    public ManyMap<String, Value> decrypt(Map<String, List<Value>> data) {
+        ManyMap<String, Value> map = new ManyMap<String, Value>();
+        if (data == null || data.isEmpty())
+            return map;
+
+        for (Map.Entry<String, List<Value>> entry : data.entrySet()) {
+            String key = entry.getKey();
+            try {
+                map.put(key, decrypt(entry.getValue()));
+            } catch (Exception e) {
+                LOG.error("Could not decrypt messages for " + key, e);
+            }
+        }
+        return map;
+    }
+
+    /*
+     * Derives an AES key from the configured passphrase. The salt is random, so secrets only
+     * survive as long as the process that encrypted them, which is why these implementations
+     * are only examples.
+     */
+    protected static SecretKey secretKey(Environment environment, SecureRandom random) throws GeneralSecurityException {
+        String encryptionFactoryAlgorithm = environment.getProperty("encryption.factory.algorithm");
+        String encryptionKeyAlgorithm = environment.getProperty("encryption.key.algorithm");
+        String encryptionKeyValue = environment.getProperty("encryption.key.value");
+        int encryptionKeySize = environment.getProperty("encryption.key.size", Integer.class, 256);
 
+        byte[] salt = new byte[8];
+        random.nextBytes(salt);
+        SecretKeyFactory factory = SecretKeyFactory.getInstance(encryptionFactoryAlgorithm);
+        int iterationCount = random.nextInt(3001) + 1000;
+        KeySpec spec = new PBEKeySpec(encryptionKeyValue.toCharArray(), salt, iterationCount, encryptionKeySize);
+        SecretKey tmp = factory.generateSecret(spec);
+        return new SecretKeySpec(tmp.getEncoded(), encryptionKeyAlgorithm);
+    }
 
 }
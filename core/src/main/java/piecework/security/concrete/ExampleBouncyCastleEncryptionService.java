@@ -16,40 +16,31 @@
 package piecework.security.concrete;
 
 import org.bouncycastle.crypto.BufferedBlockCipher;
-import org.bouncycastle.crypto.CipherParameters;
 import org.bouncycastle.crypto.InvalidCipherTextException;
 import org.bouncycastle.crypto.engines.AESEngine;
 import org.bouncycastle.crypto.modes.CBCBlockCipher;
-import org.bouncycastle.crypto.paddings.BlockCipherPadding;
 import org.bouncycastle.crypto.paddings.PKCS7Padding;
 import org.bouncycastle.crypto.paddings.PaddedBufferedBlockCipher;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.crypto.params.ParametersWithIV;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.env.Environment;
-import org.springframework.stereotype.Service;
 import piecework.model.Secret;
 import piecework.security.EncryptionService;
 
 import javax.annotation.PostConstruct;
-import javax.crypto.Cipher;
-import javax.crypto.SecretKey;
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.PBEKeySpec;
-import javax.crypto.spec.SecretKeySpec;
 import java.io.UnsupportedEncodingException;
-import java.security.AlgorithmParameters;
 import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
-import java.security.spec.KeySpec;
 import java.util.Date;
 
 /**
  * This implementation is provided purely for the purposes of demonstration and is
  * not intended to be used for production releases.
  *
+ * Each thread keeps its own encrypting and decrypting cipher, which are keyed once
+ * and afterwards only given a new initialization vector for each value.
+ *
  * @author James Renfro
  */
 public class ExampleBouncyCastleEncryptionService extends BaseEncryptionService {
@@ -57,21 +48,35 @@ public class ExampleBouncyCastleEncryptionService extends BaseEncryptionService
     @Autowired
     Environment environment;
 
-    private SecretKey secretKey;
+    private String encryptionKeyName;
+    private KeyParameter keyParameter;
     private SecureRandom random;
 
+    private final ThreadLocal<KeyedCipher> encryptors = new ThreadLocal<KeyedCipher>() {
+        @Override
+        protected KeyedCipher initialValue() {
+            return new KeyedCipher(true);
+        }
+    };
+
+    private final ThreadLocal<KeyedCipher> decryptors = new ThreadLocal<KeyedCipher>() {
+        @Override
+        protected KeyedCipher initialValue() {
+            return new KeyedCipher(false);
+        }
+    };
+
     @Override
     public Secret encrypt(String text) throws InvalidCipherTextException, UnsupportedEncodingException, GeneralSecurityException {
-        String encryptionKeyName = environment.getProperty("encryption.key.name");
-        BufferedBlockCipher cipher = cipher();
+        KeyedCipher keyedCipher = encryptors.get();
+        BufferedBlockCipher cipher = keyedCipher.cipher;
 
-        byte[] key = secretKey.getEncoded();
         byte[] iv = new byte[cipher.getBlockSize()];
 
         // Generate a random initialization vector for this encryption
         random.nextBytes(iv);
 
-        cipher.init(true, new ParametersWithIV(new KeyParameter(key), iv));
+        keyedCipher.init(iv);
 
         byte[] clear = text.getBytes("UTF-8");
         byte[] hidden = new byte[cipher.getOutputSize(clear.length)];
@@ -81,15 +86,15 @@ public class ExampleBouncyCastleEncryptionService extends BaseEncryptionService
         if (bytesProcessed != hidden.length)
             throw new GeneralSecurityException("Unable to correctly encrypt input data");
 
-        return new Secret.Builder().name(encryptionKeyName).date(new Date()).ciphertext(hidden).iv(iv).build();
+        return new Secret.Builder().name(encryptionKeyName).date(new Date()).ciphertext(hidden).iv(iv).plaintextLength(text.length()).build();
     }
 
     @Override
     public String decrypt(Secret secret) throws InvalidCipherTextException, GeneralSecurityException, UnsupportedEncodingException {
-        BufferedBlockCipher cipher = cipher();
-        byte[] key = secretKey.getEncoded();
-        byte[] iv = secret.getIv();
-        cipher.init(false, new ParametersWithIV(new KeyParameter(key), iv));
+        KeyedCipher keyedCipher = decryptors.get();
+        BufferedBlockCipher cipher = keyedCipher.cipher;
+
+        keyedCipher.init(secret.getIv());
 
         byte[] hidden = secret.getCiphertext();
         byte[] temporary;
@@ -98,35 +103,38 @@ public class ExampleBouncyCastleEncryptionService extends BaseEncryptionService
         int bytesProcessed = cipher.processBytes(hidden, 0, hidden.length, temporary, 0);
         bytesProcessed += cipher.doFinal(temporary, bytesProcessed);
 
-        byte[] clear = new byte[bytesProcessed];
-
-        System.arraycopy(temporary, 0, clear, 0, bytesProcessed);
-
-        return new String(clear, "UTF-8");
+        return new String(temporary, 0, bytesProcessed, "UTF-8");
     }
 
     @PostConstruct
     public void init() throws GeneralSecurityException {
-        String encryptionFactoryAlgorithm = environment.getProperty("encryption.factory.algorithm");
         String encryptionPseudoRandomGenerator = environment.getProperty("encryption.pseudorandom.generator");
-        String encryptionKeyAlgorithm = environment.getProperty("encryption.key.algorithm");
-        String encryptionKeyValue = environment.getProperty("encryption.key.value");
-        int encryptionKeySize = environment.getProperty("encryption.key.size", Integer.class, 256);
 
-        byte[] salt = new byte[8];
         random = SecureRandom.getInstance(encryptionPseudoRandomGenerator);
-        random.nextBytes(salt);
-        SecretKeyFactory factory = SecretKeyFactory.getInstance(encryptionFactoryAlgorithm);
-        int iterationCount = random.nextInt(3001) + 1000;
-        KeySpec spec = new PBEKeySpec(encryptionKeyValue.toCharArray(), salt, iterationCount, encryptionKeySize);
-        SecretKey tmp = factory.generateSecret(spec);
-        secretKey = new SecretKeySpec(tmp.getEncoded(), encryptionKeyAlgorithm);
+        encryptionKeyName = environment.getProperty("encryption.key.name");
+        keyParameter = new KeyParameter(secretKey(environment, random).getEncoded());
     }
 
-    private BufferedBlockCipher cipher() {
-        BufferedBlockCipher cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESEngine()), new PKCS7Padding());
-        cipher.reset();
-        return cipher;
+    /*
+     * The AES key schedule only needs to be computed the first time a cipher is used, after that
+     * BouncyCastle accepts a null key with a new initialization vector
+     */
+    private final class KeyedCipher {
+
+        private final boolean encrypting;
+        private final BufferedBlockCipher cipher;
+        private boolean keyed;
+
+        private KeyedCipher(boolean encrypting) {
+            this.encrypting = encrypting;
+            this.cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESEngine()), new PKCS7Padding());
+        }
+
+        private void init(byte[] iv) {
+            cipher.init(encrypting, new ParametersWithIV(keyed ? null : keyParameter, iv));
+            keyed = true;
+        }
+
     }
 
 }
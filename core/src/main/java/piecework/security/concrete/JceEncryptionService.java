@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.security.concrete;
+
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import piecework.model.Secret;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Date;
+
+/**
+ * Same scheme as ExampleBouncyCastleEncryptionService (AES in CBC mode with PKCS #5/#7 padding),
+ * but using the JCE provider's cipher, configured by encryption.cipher.algorithm, which on
+ * current JVMs is compiled to the processor's AES instructions where they exist. Ciphers are
+ * created once per thread. Like the BouncyCastle implementation, this derives its key from a
+ * random salt on startup, so it is only an example.
+ *
+ * @author James Renfro
+ */
+public class JceEncryptionService extends BaseEncryptionService {
+
+    @Autowired
+    Environment environment;
+
+    private String cipherAlgorithm;
+    private String encryptionKeyName;
+    private SecretKey secretKey;
+    private SecureRandom random;
+
+    private final ThreadLocal<Cipher> ciphers = new ThreadLocal<Cipher>();
+
+    @Override
+    public Secret encrypt(String text) throws InvalidCipherTextException, UnsupportedEncodingException, GeneralSecurityException {
+        Cipher cipher = cipher();
+
+        // Generate a random initialization vector for this encryption
+        byte[] iv = new byte[cipher.getBlockSize()];
+        random.nextBytes(iv);
+
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey, new IvParameterSpec(iv));
+        byte[] hidden = cipher.doFinal(text.getBytes("UTF-8"));
+
+        return new Secret.Builder().name(encryptionKeyName).date(new Date()).ciphertext(hidden).iv(iv).plaintextLength(text.length()).build();
+    }
+
+    @Override
+    public String decrypt(Secret secret) throws InvalidCipherTextException, GeneralSecurityException, UnsupportedEncodingException {
+        Cipher cipher = cipher();
+
+        cipher.init(Cipher.DECRYPT_MODE, secretKey, new IvParameterSpec(secret.getIv()));
+        byte[] clear = cipher.doFinal(secret.getCiphertext());
+
+        return new String(clear, "UTF-8");
+    }
+
+    @PostConstruct
+    public void init() throws GeneralSecurityException {
+        String encryptionPseudoRandomGenerator = environment.getProperty("encryption.pseudorandom.generator");
+
+        random = SecureRandom.getInstance(encryptionPseudoRandomGenerator);
+        cipherAlgorithm = environment.getProperty("encryption.cipher.algorithm", "AES/CBC/PKCS5Padding");
+        encryptionKeyName = environment.getProperty("encryption.key.name");
+        secretKey = secretKey(environment, random);
+
+        // Fail on startup rather than on the first submission if the algorithm isn't available
+        Cipher.getInstance(cipherAlgorithm);
+    }
+
+    private Cipher cipher() throws GeneralSecurityException {
+        Cipher cipher = ciphers.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(cipherAlgorithm);
+            ciphers.set(cipher);
+        }
+        return cipher;
+    }
+
+}
@@ -20,6 +20,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.log4j.Logger;
 import org.owasp.validator.html.AntiSamy;
@@ -40,7 +42,24 @@ import piecework.util.ManyMap;
 public class UserInputSanitizer implements Sanitizer {
 
 	private static final Logger LOG = org.apache.log4j.Logger.getLogger(UserInputSanitizer.class);
-	
+
+	// Ids, field names and other short values repeat constantly, so remember how they were cleaned
+	private static final int MEMOIZED_MAXIMUM_LENGTH = 64;
+	private static final long MEMOIZED_MAXIMUM_SIZE = 10000l;
+	private static final String PLAIN_PUNCTUATION = "_-.,:;@/+=#!?()[]*$%~|";
+
+	// AntiSamy keeps per-scan state, so each thread gets its own rather than a new one for every string
+	private static final ThreadLocal<AntiSamy> SCANNER = new ThreadLocal<AntiSamy>() {
+		@Override
+		protected AntiSamy initialValue() {
+			return new AntiSamy();
+		}
+	};
+
+	private final Cache<String, String> memoized = CacheBuilder.newBuilder()
+			.maximumSize(MEMOIZED_MAXIMUM_SIZE)
+			.build();
+
 	@Autowired
 	Policy antisamyPolicy;
 		
@@ -48,23 +67,10 @@ public class UserInputSanitizer implements Sanitizer {
 	 * Ensure that the passed string is stripped of any potential scripting
 	 */
 	public String sanitize(String tainted) {
-		AntiSamy as = new AntiSamy();
-		
-		if (tainted != null) {
-			try {
-				CleanResults cr = as.scan(tainted, antisamyPolicy);
-				String clean = cr.getCleanHTML();
-				logErrors(cr);
-				if (clean != null) {
-					return StringEscapeUtils.unescapeXml(clean);
-				}
-			} catch (ScanException se) {
-				LOG.error("Caught a scan exception", se);
-			} catch (PolicyException pe) {
-				LOG.error("Caught a scan exception", pe);
-			}
-		}
-		
+		String clean = clean(tainted);
+		if (clean != null)
+			return StringEscapeUtils.unescapeXml(clean);
+
 		return null;
 	}
 
@@ -76,38 +82,92 @@ public class UserInputSanitizer implements Sanitizer {
 			return null;
 		
 		ManyMap<String, String> clean = new ManyMap<String, String>();
-		
-		AntiSamy as = new AntiSamy();
-		
+
 		for (Entry<String, List<String>> taintedEntry : tainted.entrySet()) {
-			try {
-				CleanResults cr = as.scan(taintedEntry.getKey(), antisamyPolicy);
-				String key = cr.getCleanHTML();
-				logErrors(cr);
-				List<String> values = new LinkedList<String>();
-				List<String> taintedValues = taintedEntry.getValue();
-				if (taintedValues != null) {
-					for (String taintedValue : taintedValues) {
-						cr = as.scan(taintedValue, antisamyPolicy);
-						logErrors(cr);
-						String value = cr.getCleanHTML();
-						if (value != null) {
-							String unescapedValue = StringEscapeUtils.unescapeXml(value);
-							values.add(unescapedValue);
-						}
+			String key = clean(taintedEntry.getKey());
+			if (key == null)
+				continue;
+
+			List<String> values = new LinkedList<String>();
+			List<String> taintedValues = taintedEntry.getValue();
+			if (taintedValues != null) {
+				for (String taintedValue : taintedValues) {
+					String value = clean(taintedValue);
+					if (value != null) {
+						String unescapedValue = StringEscapeUtils.unescapeXml(value);
+						values.add(unescapedValue);
 					}
 				}
-				clean.put(key, values);
-			} catch (ScanException se) {
-				LOG.error("Caught a scan exception", se);
-			} catch (PolicyException pe) {
-				LOG.error("Caught a scan exception", pe);
 			}
+			clean.put(key, values);
 		}
 
 		return clean;
 	}
-	
+
+	/*
+	 * Returns the clean html for the passed string, skipping the scan entirely for strings that
+	 * cannot contain markup, and only scanning short strings once
+	 */
+	private String clean(String tainted) {
+		if (tainted == null)
+			return null;
+
+		if (isPlainText(tainted))
+			return tainted;
+
+		if (tainted.length() > MEMOIZED_MAXIMUM_LENGTH)
+			return scan(tainted);
+
+		String clean = memoized.getIfPresent(tainted);
+		if (clean == null) {
+			clean = scan(tainted);
+			if (clean != null)
+				memoized.put(tainted, clean);
+		}
+		return clean;
+	}
+
+	private String scan(String tainted) {
+		try {
+			CleanResults cr = SCANNER.get().scan(tainted, antisamyPolicy);
+			logErrors(cr);
+			return cr.getCleanHTML();
+		} catch (ScanException se) {
+			LOG.error("Caught a scan exception", se);
+		} catch (PolicyException pe) {
+			LOG.error("Caught a scan exception", pe);
+		}
+		return null;
+	}
+
+	/*
+	 * Conservative check for input that AntiSamy would return unchanged: ascii letters and digits,
+	 * single interior spaces and punctuation that is neither markup nor escaped in the clean html
+	 */
+	static boolean isPlainText(String text) {
+		int length = text.length();
+		if (length == 0)
+			return false;
+
+		char previous = ' ';
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c == ' ') {
+				if (previous == ' ' || i == length - 1)
+					return false;
+			} else if (!isAsciiLetterOrDigit(c) && PLAIN_PUNCTUATION.indexOf(c) == -1) {
+				return false;
+			}
+			previous = c;
+		}
+		return true;
+	}
+
+	private static boolean isAsciiLetterOrDigit(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+	}
+
 	private void logErrors(CleanResults cr) {
 		if (cr.getNumberOfErrors() > 0) {
 			StringBuilder builder = new StringBuilder();
@@ -126,5 +186,6 @@ public class UserInputSanitizer implements Sanitizer {
 
     public void setAntisamyPolicy(Policy antisamyPolicy) {
         this.antisamyPolicy = antisamyPolicy;
+        this.memoized.invalidateAll();
     }
 }
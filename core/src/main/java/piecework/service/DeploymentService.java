@@ -23,7 +23,7 @@ import piecework.exception.MisconfiguredProcessException;
 import piecework.model.Process;
 import piecework.model.ProcessDeployment;
 import piecework.model.ProcessInstance;
-import piecework.persistence.DeploymentRepository;
+import piecework.cache.ProcessCache;
 
 /**
  * @author James Renfro
@@ -34,7 +34,7 @@ public class DeploymentService {
     private static final Logger LOG = Logger.getLogger(DeploymentService.class);
 
     @Autowired
-    DeploymentRepository deploymentRepository;
+    ProcessCache processCache;
 
     public ProcessDeployment read(Process process, ProcessInstance instance) throws MisconfiguredProcessException {
         // Make sure we have a process
@@ -56,7 +56,7 @@ public class DeploymentService {
 
         if (!useCurrentDeployment(instance, deployment)) {
             String deploymentId = instance.getDeploymentId();
-            return deploymentRepository.findOne(deploymentId);
+            return processCache.deployment(deploymentId);
         }
         return deployment;
     }
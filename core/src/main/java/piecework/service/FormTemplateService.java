@@ -32,7 +32,9 @@ import piecework.model.SearchResults;
 
 import javax.annotation.PostConstruct;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -117,6 +119,18 @@ public class FormTemplateService {
         throw new NotFoundError();
     }
 
+    /*
+     * Names of all the templates that script and stylesheet bundles can be requested for
+     */
+    public List<String> getTemplateNames() {
+        List<String> templateNames = new ArrayList<String>();
+        for (Class<?> cls : ACCEPTABLE_TEMPLATE_CLASSES) {
+            templateNames.add(cls.getSimpleName() + ".template.html");
+            templateNames.add(cls.getSimpleName() + ".anonymous.template.html");
+        }
+        return templateNames;
+    }
+
     public Resource getTemplateResource(Class<?> type, Object t) {
         StringBuilder templateNameBuilder = new StringBuilder(type.getSimpleName());
 
@@ -21,7 +21,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import piecework.Constants;
 import piecework.CommandExecutor;
@@ -29,9 +28,10 @@ import piecework.Versions;
 import piecework.authorization.AuthorizationRole;
 import piecework.command.*;
 import piecework.enumeration.OperationType;
-import piecework.persistence.DeploymentRepository;
+import piecework.cache.ProcessCache;
 import piecework.persistence.concrete.ExportInstanceProvider;
 import piecework.process.ProcessInstanceSearchCriteria;
+import piecework.process.SearchCursor;
 import piecework.validation.SubmissionTemplate;
 import piecework.model.SearchResults;
 import piecework.common.ViewContext;
@@ -60,7 +60,7 @@ public class ProcessInstanceService {
     AttachmentRepository attachmentRepository;
 
     @Autowired
-    DeploymentRepository deploymentRepository;
+    ProcessCache processCache;
 
     @Autowired
     ProcessService processService;
@@ -104,7 +104,7 @@ public class ProcessInstanceService {
         ProcessInstance processInstance = processInstanceRepository.findOne(processInstanceId);
         if (processInstance != null) {
             String deploymentId = processInstance.getDeploymentId();
-            ProcessDeployment deployment = deploymentRepository.findOne(deploymentId);
+            ProcessDeployment deployment = processCache.deployment(deploymentId);
             String completionStatus = null;
             if (deployment != null) {
                 completionStatus = deployment.getCompletionStatus();
@@ -222,26 +222,6 @@ public class ProcessInstanceService {
                 }
             }
             ProcessInstanceSearchCriteria executionCriteria = executionCriteriaBuilder.build();
-            Sort.Direction direction = Sort.Direction.DESC;
-            String sortProperty = "startTime";
-            switch (executionCriteria.getOrderBy()) {
-                case START_TIME_ASC:
-                    direction = Sort.Direction.ASC;
-                    sortProperty = "startTime";
-                    break;
-                case START_TIME_DESC:
-                    direction = Sort.Direction.DESC;
-                    sortProperty = "startTime";
-                    break;
-                case END_TIME_ASC:
-                    direction = Sort.Direction.ASC;
-                    sortProperty = "endTime";
-                    break;
-                case END_TIME_DESC:
-                    direction = Sort.Direction.DESC;
-                    sortProperty = "endTime";
-                    break;
-            }
 
             processDefinitionKeys = executionCriteria.getProcessDefinitionKeys();
             if (processDefinitionKeys.size() != 1)
@@ -250,7 +230,7 @@ public class ProcessInstanceService {
             String processDefinitionKey = processDefinitionKeys.iterator().next();
             Process process = processService.read(processDefinitionKey);
 
-            return new ExportInstanceProvider(process, executionCriteria, processInstanceRepository, new Sort(direction, sortProperty));
+            return new ExportInstanceProvider(process, executionCriteria, processInstanceRepository);
         }
         return null;
     }
@@ -285,31 +265,11 @@ public class ProcessInstanceService {
                 }
             }
 
-            int firstResult = executionCriteria.getFirstResult() != null ? executionCriteria.getFirstResult() : 0;
+            // A cursor replaces the offset entirely, since it already marks where the page starts
+            int firstResult = executionCriteria.getFirstResult() != null && executionCriteria.getAfter() == null ? executionCriteria.getFirstResult() : 0;
             int maxResult = executionCriteria.getMaxResults() != null ? executionCriteria.getMaxResults() : 1000;
 
-            Sort.Direction direction = Sort.Direction.DESC;
-            String sortProperty = "startTime";
-            switch (executionCriteria.getOrderBy()) {
-            case START_TIME_ASC:
-                direction = Sort.Direction.ASC;
-                sortProperty = "startTime";
-                break;
-            case START_TIME_DESC:
-                direction = Sort.Direction.DESC;
-                sortProperty = "startTime";
-                break;
-            case END_TIME_ASC:
-                direction = Sort.Direction.ASC;
-                sortProperty = "endTime";
-                break;
-            case END_TIME_DESC:
-                direction = Sort.Direction.DESC;
-                sortProperty = "endTime";
-                break;
-            }
-
-            Pageable pageable = new PageRequest(firstResult, maxResult, new Sort(direction, sortProperty));
+            Pageable pageable = new PageRequest(firstResult, maxResult, executionCriteria.getSort());
             Page<ProcessInstance> page = processInstanceRepository.findByCriteria(executionCriteria, pageable);
 
             if (page.hasContent()) {
@@ -319,6 +279,15 @@ public class ProcessInstanceService {
             }
 
             resultsBuilder.page(page, pageable);
+            if (!executionCriteria.isIncludeTotal())
+                resultsBuilder.total(null);
+
+            if (page.hasContent() && page.hasNextPage()) {
+                ProcessInstance last = page.getContent().get(page.getContent().size() - 1);
+                SearchCursor cursor = SearchCursor.after(executionCriteria.getOrderBy(), last.getStartTime(), last.getEndTime(), last.getProcessInstanceId());
+                if (cursor != null)
+                    resultsBuilder.nextCursor(cursor.encode());
+            }
         }
         return resultsBuilder.build();
     }
@@ -25,6 +25,7 @@ import piecework.Versions;
 import piecework.authorization.AuthorizationRole;
 import piecework.command.DeploymentCommand;
 import piecework.command.PublicationCommand;
+import piecework.cache.ProcessCache;
 import piecework.engine.ProcessDeploymentResource;
 import piecework.engine.ProcessEngineFacade;
 import piecework.engine.exception.ProcessEngineException;
@@ -69,6 +70,9 @@ public class ProcessService {
     @Autowired
     ContentRepository contentRepository;
 
+    @Autowired
+    ProcessCache processCache;
+
     @Autowired
     ProcessRepository processRepository;
 
@@ -277,7 +281,7 @@ public class ProcessService {
         if (selectedDeploymentVersion == null)
             throw new NotFoundError();
 
-        ProcessDeployment deployment = deploymentRepository.findOne(deploymentId);
+        ProcessDeployment deployment = processCache.deployment(deploymentId);
         if (deployment == null)
             throw new NotFoundError();
 
@@ -320,7 +324,7 @@ public class ProcessService {
     public Process read(String rawProcessDefinitionKey) throws StatusCodeError {
         String processDefinitionKey = sanitizer.sanitize(rawProcessDefinitionKey);
 
-        Process result = processRepository.findOne(processDefinitionKey);
+        Process result = processCache.process(processDefinitionKey);
 
         if (result == null)
             throw new NotFoundError();
@@ -370,7 +374,7 @@ public class ProcessService {
                     deploymentIds.add(version.getDeploymentId());
                 }
             }
-            Iterable<ProcessDeployment> deployments = deploymentRepository.findAll(deploymentIds);
+            Collection<ProcessDeployment> deployments = processCache.deployments(deploymentIds).values();
             if (deployments != null) {
                 for (ProcessDeployment deployment : deployments) {
                     resultsBuilder.item(deployment);
@@ -22,6 +22,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 import piecework.Constants;
 import piecework.Versions;
@@ -36,8 +37,9 @@ import piecework.model.Process;
 import piecework.CommandExecutor;
 import piecework.command.TaskCommand;
 import piecework.identity.IdentityHelper;
-import piecework.persistence.DeploymentRepository;
+import piecework.cache.ProcessCache;
 import piecework.persistence.ProcessInstanceRepository;
+import piecework.persistence.TaskRepository;
 import piecework.process.ProcessInstanceSearchCriteria;
 import piecework.security.DataFilterService;
 import piecework.security.Sanitizer;
@@ -45,6 +47,7 @@ import piecework.security.concrete.PassthroughSanitizer;
 import piecework.task.TaskFactory;
 import piecework.task.TaskFilter;
 import piecework.task.TaskPageHandler;
+import piecework.task.TaskQueryBuilder;
 import piecework.validation.FormValidation;
 
 import javax.ws.rs.core.MultivaluedMap;
@@ -62,7 +65,7 @@ public class TaskService {
     DataFilterService dataFilterService;
 
     @Autowired
-    DeploymentRepository deploymentRepository;
+    ProcessCache processCache;
 
     @Autowired
     IdentityHelper helper;
@@ -79,6 +82,9 @@ public class TaskService {
     @Autowired
     Sanitizer sanitizer;
 
+    @Autowired
+    TaskRepository taskRepository;
+
     @Autowired
     CommandExecutor commandExecutor;
 
@@ -137,16 +143,21 @@ public class TaskService {
         TaskPageHandler pageHandler = new TaskPageHandler(rawQueryParameters, taskFilter, sanitizer, version){
 
             protected Map<String, ProcessDeployment> getDeploymentMap(Set<String> deploymentIds) {
-                Map<String, ProcessDeployment> deploymentMap = new HashMap<String, ProcessDeployment>();
-                if (!deploymentIds.isEmpty()) {
-                    Iterable<ProcessDeployment> deployments = deploymentRepository.findAll(deploymentIds);
-                    if (deployments != null) {
-                        for (ProcessDeployment deployment : deployments) {
-                            deploymentMap.put(deployment.getDeploymentId(), deployment);
+                return processCache.deployments(deploymentIds);
+            }
+
+            @Override
+            protected Map<String, ProcessInstance> getInstanceMap(Set<String> processInstanceIds) {
+                Map<String, ProcessInstance> instanceMap = new HashMap<String, ProcessInstance>();
+                if (!processInstanceIds.isEmpty()) {
+                    Iterable<ProcessInstance> instances = processInstanceRepository.findAll(processInstanceIds);
+                    if (instances != null) {
+                        for (ProcessInstance instance : instances) {
+                            instanceMap.put(instance.getProcessInstanceId(), instance);
                         }
                     }
                 }
-                return deploymentMap;
+                return instanceMap;
             }
 
             @Override
@@ -158,11 +169,18 @@ public class TaskService {
 
         ProcessInstanceSearchCriteria executionCriteria = pageHandler.criteria(allowedProcesses);
 
-        int firstResult = executionCriteria.getFirstResult() != null ? executionCriteria.getFirstResult() : 0;
+        // A cursor replaces the offset entirely, since it already marks where the page starts
+        int firstResult = executionCriteria.getFirstResult() != null && executionCriteria.getAfter() == null ? executionCriteria.getFirstResult() : 0;
         int maxResult = executionCriteria.getMaxResults() != null ? executionCriteria.getMaxResults() : 1000;
 
         Pageable pageable = new PageRequest(firstResult, maxResult, executionCriteria.getSort());
-        Page<ProcessInstance> page = processInstanceRepository.findByCriteria(executionCriteria, pageable);
+        Query query = new TaskQueryBuilder(executionCriteria)
+                .principal(principal, overseerProcessDefinitionKeys)
+                .build();
+        query.skip(pageable.getOffset());
+        query.limit(pageable.getPageSize());
+
+        Page<Task> page = taskRepository.findByQuery(query, pageable, executionCriteria.isIncludeTotal());
 
         SearchResults results = pageHandler.handle(page);
 
@@ -199,7 +217,11 @@ public class TaskService {
     }
 
     public boolean update(String processInstanceId, Task task) {
-        return processInstanceRepository.update(processInstanceId, task);
+        if (!processInstanceRepository.update(processInstanceId, task))
+            return false;
+
+        // Keep the task collection in sync with the tasks embedded in the instance
+        return taskRepository.update(task);
     }
 
     private Task findTask(Process process, ProcessInstance instance, String taskId, Entity principal, boolean limitToActive) throws StatusCodeError {
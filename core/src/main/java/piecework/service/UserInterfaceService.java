@@ -17,17 +17,21 @@ package piecework.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.jaxrs.json.JacksonJaxbJsonProvider;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.io.IOUtils;
 import org.apache.cxf.common.util.StringUtils;
 import org.apache.log4j.Logger;
 import org.htmlcleaner.CleanerProperties;
 import org.htmlcleaner.HtmlCleaner;
 import org.htmlcleaner.TagNode;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.core.env.Environment;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
+import piecework.designer.model.view.IndexView;
+import piecework.exception.InternalServerError;
 import piecework.exception.MisconfiguredProcessException;
 import piecework.exception.NotFoundError;
 import piecework.exception.StatusCodeError;
@@ -35,7 +39,9 @@ import piecework.form.FormDisposition;
 import piecework.identity.IdentityHelper;
 import piecework.model.*;
 import piecework.persistence.ContentRepository;
+import piecework.ui.AssetBundle;
 import piecework.ui.streaming.HtmlCleanerStreamingOutput;
+import piecework.ui.streaming.HtmlTemplateCache;
 import piecework.ui.visitor.LinkOptimizingVisitor;
 import piecework.ui.visitor.OptimizingHtmlProviderVisitor;
 import piecework.ui.PageContext;
@@ -43,6 +49,7 @@ import piecework.ui.TemplateResourceStreamingOutput;
 import piecework.ui.visitor.ScriptInjectingVisitor;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -50,6 +57,7 @@ import javax.ws.rs.core.StreamingOutput;
 import java.io.*;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.*;
 
 /**
  * @author James Renfro
@@ -57,9 +65,11 @@ import java.util.Map;
 @Service
 public class UserInterfaceService {
 
-    private final static CacheManager cacheManager = new org.springframework.cache.concurrent.ConcurrentMapCacheManager();
     private static final Logger LOG = Logger.getLogger(UserInterfaceService.class);
 
+    @Autowired
+    private CacheManager cacheManager;
+
     @Autowired
     protected ContentRepository contentRepository;
 
@@ -80,6 +90,14 @@ public class UserInterfaceService {
     private String publicUrl;
     private String assetsUrl;
     private boolean disableResourceCaching;
+    private boolean streamingHtml;
+    private HtmlTemplateCache templateCache;
+    private ScheduledExecutorService bundleExecutor;
+
+    private enum BundleType { SCRIPT, STYLESHEET };
+
+    private final ConcurrentMap<String, AssetBundle> bundleMap = new ConcurrentHashMap<String, AssetBundle>();
+    private final ConcurrentMap<String, FutureTask<AssetBundle>> buildMap = new ConcurrentHashMap<String, FutureTask<AssetBundle>>();
 
     @PostConstruct
     public void init() {
@@ -88,6 +106,39 @@ public class UserInterfaceService {
         this.publicUrl = environment.getProperty("base.public.uri");
         this.assetsUrl = environment.getProperty("ui.static.urlbase");
         this.disableResourceCaching = environment.getProperty("disable.resource.caching", Boolean.class, Boolean.FALSE);
+        this.streamingHtml = environment.getProperty("ui.html.streaming", Boolean.class, Boolean.TRUE);
+        this.templateCache = new HtmlTemplateCache(cacheManager.getCache("htmlTemplateCache"));
+
+        this.bundleExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("asset-bundles-%d").build());
+        if (!disableResourceCaching) {
+            if (environment.getProperty("assets.bundles.precompute", Boolean.class, Boolean.TRUE)) {
+                bundleExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        precomputeBundles();
+                    }
+                });
+            }
+            long refreshSeconds = environment.getProperty("assets.bundles.refresh.seconds", Long.class, Long.valueOf(60l));
+            if (refreshSeconds > 0) {
+                bundleExecutor.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            refreshBundles();
+                        } catch (Exception e) {
+                            LOG.error("Unable to refresh asset bundles", e);
+                        }
+                    }
+                }, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (bundleExecutor != null)
+            bundleExecutor.shutdownNow();
     }
 
     public boolean hasPage(Class<?> type) {
@@ -115,10 +166,15 @@ public class UserInterfaceService {
         if (template.exists()) {
             Entity user = helper.getPrincipal();
             ObjectMapper objectMapper = jacksonJaxbJsonProvider.locateMapper(type, MediaType.APPLICATION_JSON_TYPE);
+            String bundleTemplateName = bundleTemplateName(type, t);
             LinkOptimizingVisitor visitor =
-                    new LinkOptimizingVisitor(applicationTitle, applicationUrl, publicUrl, assetsUrl, t, type, user, objectMapper, environment);
+                    new LinkOptimizingVisitor(applicationTitle, applicationUrl, publicUrl, assetsUrl, t, type, user, objectMapper, environment,
+                            version(BundleType.SCRIPT, bundleTemplateName), version(BundleType.STYLESHEET, bundleTemplateName));
+
+            if (disableResourceCaching)
+                return new HtmlCleanerStreamingOutput(template.getInputStream(), visitor, streamingHtml);
 
-            return new HtmlCleanerStreamingOutput(template.getInputStream(), visitor);
+            return new HtmlCleanerStreamingOutput(templateCache.template(template), visitor, streamingHtml);
         }
         return null;
     }
@@ -142,7 +198,10 @@ public class UserInterfaceService {
             throw new MisconfiguredProcessException("No content found for disposition path: " + disposition.getPath());
 
         ScriptInjectingVisitor visitor = new ScriptInjectingVisitor(form);
-        return new HtmlCleanerStreamingOutput(content.getInputStream(), visitor);
+        if (disableResourceCaching)
+            return new HtmlCleanerStreamingOutput(content.getInputStream(), visitor, streamingHtml);
+
+        return new HtmlCleanerStreamingOutput(templateCache.template(content), visitor, streamingHtml);
     }
 
     public StreamingOutput getExternalScriptAsStreaming(Class<?> type, Object t) throws IOException {
@@ -175,84 +234,173 @@ public class UserInterfaceService {
         return null;
     }
 
-    public Resource getScriptResource(String templateName) throws StatusCodeError {
-        Resource template = formTemplateService.getTemplateResource(templateName);
-        return getScriptResource(template);
+    public AssetBundle getScriptBundle(String templateName) throws StatusCodeError {
+        return bundle(BundleType.SCRIPT, templateName);
     }
 
-    public Resource getScriptResource(Resource template) throws StatusCodeError {
+    public AssetBundle getStylesheetBundle(String templateName) throws StatusCodeError {
+        return bundle(BundleType.STYLESHEET, templateName);
+    }
+
+    /*
+     * Bundles are built from the templates in the background when the service starts, so pages can
+     * link to them by content hash, and rebuilt in the background when a template changes. A bundle
+     * that somehow hasn't been built yet is built on the spot, once, however many requests ask for it.
+     */
+    private AssetBundle bundle(BundleType type, String templateName) throws StatusCodeError {
+        Resource template = formTemplateService.getTemplateResource(templateName);
         if (!template.exists())
             throw new NotFoundError();
 
-        Cache cache = cacheManager.getCache("scriptCache");
-        OptimizingHtmlProviderVisitor visitor = null;
-        try {
-            Cache.ValueWrapper wrapper = disableResourceCaching ? null : cache.get(template.getFilename());
-
-            if (wrapper != null) {
-                Resource scriptResource = (Resource) wrapper.get();
-
-                if (scriptResource != null && scriptResource.exists() && scriptResource.lastModified() >= template.lastModified())
-                    return scriptResource;
+        if (disableResourceCaching) {
+            try {
+                return build(type, templateName, template);
+            } catch (IOException ioe) {
+                LOG.error("Unable to read template", ioe);
+                throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
             }
+        }
 
-            CleanerProperties cleanerProperties = new CleanerProperties();
-            cleanerProperties.setOmitXmlDeclaration(true);
-            HtmlCleaner cleaner = new HtmlCleaner(cleanerProperties);
-            visitor = new OptimizingHtmlProviderVisitor(applicationTitle, applicationUrl, publicUrl, assetsUrl, environment, contentRepository);
-            TagNode node = cleaner.clean(template.getInputStream());
-            node.traverse(visitor);
-        } catch (IOException ioe) {
-            LOG.error("Unable to read template", ioe);
+        AssetBundle bundle = bundleMap.get(key(type, templateName));
+        if (bundle == null) {
+            try {
+                return build(type, templateName, false).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InternalServerError();
+            } catch (ExecutionException e) {
+                throw new InternalServerError();
+            }
         }
 
-        if (visitor == null)
-            throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
+        // Serve what has already been built rather than making this request wait on the new one
+        if (lastModified(template) > bundle.getTemplateLastModified())
+            build(type, templateName, true);
 
-        Resource scriptResource = visitor.getScriptResource();
-        cache.put(template.getFilename(), scriptResource);
+        return bundle;
+    }
 
-        return scriptResource;
+    /*
+     * Returns the hash of the current bundle, to version its url with, or null if it hasn't been built
+     * yet, in which case it's built in the background and the page links to the unversioned url
+     */
+    private String version(BundleType type, String templateName) {
+        if (disableResourceCaching || templateName == null)
+            return null;
+
+        AssetBundle bundle = bundleMap.get(key(type, templateName));
+        if (bundle == null) {
+            build(type, templateName, true);
+            return null;
+        }
+        return bundle.getHash();
     }
 
-    public Resource getStylesheetResource(String templateName) throws StatusCodeError {
-        Resource template = formTemplateService.getTemplateResource(templateName);
-        return getStylesheetResource(template);
+    private Future<AssetBundle> build(final BundleType type, final String templateName, boolean background) {
+        final String key = key(type, templateName);
+        FutureTask<AssetBundle> task = new FutureTask<AssetBundle>(new Callable<AssetBundle>() {
+            @Override
+            public AssetBundle call() throws Exception {
+                try {
+                    AssetBundle bundle = build(type, templateName, formTemplateService.getTemplateResource(templateName));
+                    bundleMap.put(key, bundle);
+                    return bundle;
+                } catch (Exception e) {
+                    LOG.error("Unable to build " + type + " bundle for " + templateName, e);
+                    throw e;
+                } finally {
+                    buildMap.remove(key);
+                }
+            }
+        });
+
+        FutureTask<AssetBundle> existing = buildMap.putIfAbsent(key, task);
+        if (existing != null)
+            return existing;
+
+        if (background)
+            bundleExecutor.execute(task);
+        else
+            task.run();
+
+        return task;
     }
 
-    public Resource getStylesheetResource(Resource template) throws StatusCodeError {
-        if (!template.exists())
-            throw new NotFoundError();
+    private AssetBundle build(BundleType type, String templateName, Resource template) throws IOException {
+        long templateLastModified = lastModified(template);
+        long start = System.currentTimeMillis();
 
-        Cache cache = cacheManager.getCache("stylesheetCache");
-        OptimizingHtmlProviderVisitor visitor = null;
+        CleanerProperties cleanerProperties = new CleanerProperties();
+        cleanerProperties.setOmitXmlDeclaration(true);
+        HtmlCleaner cleaner = new HtmlCleaner(cleanerProperties);
+        OptimizingHtmlProviderVisitor visitor = new OptimizingHtmlProviderVisitor(applicationTitle, applicationUrl, publicUrl, assetsUrl, environment, contentRepository);
+        InputStream inputStream = template.getInputStream();
+        TagNode node;
         try {
-            Cache.ValueWrapper wrapper = disableResourceCaching ? null : cache.get(template.getFilename());
+            node = cleaner.clean(inputStream);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+        node.traverse(visitor);
+
+        ByteArrayResource resource = type == BundleType.SCRIPT ? visitor.getScriptResource() : visitor.getStylesheetResource();
+        AssetBundle bundle = new AssetBundle(templateName, resource.getByteArray(), templateLastModified);
 
-            if (wrapper != null) {
-                Resource stylesheetResource = (Resource) wrapper.get();
+        if (LOG.isDebugEnabled())
+            LOG.debug("Built " + type + " bundle " + bundle.getHash() + " for " + templateName + " in " + (System.currentTimeMillis() - start) + " ms");
 
-                if (stylesheetResource != null && stylesheetResource.exists() && stylesheetResource.lastModified() >= template.lastModified())
-                    return stylesheetResource;
+        return bundle;
+    }
+
+    private void precomputeBundles() {
+        for (String templateName : formTemplateService.getTemplateNames()) {
+            Resource template = formTemplateService.getTemplateResource(templateName);
+            if (!template.exists())
+                continue;
+            for (BundleType type : BundleType.values()) {
+                build(type, templateName, false);
             }
+        }
+    }
 
-            CleanerProperties cleanerProperties = new CleanerProperties();
-            cleanerProperties.setOmitXmlDeclaration(true);
-            HtmlCleaner cleaner = new HtmlCleaner(cleanerProperties);
-            visitor = new OptimizingHtmlProviderVisitor(applicationTitle, applicationUrl, publicUrl, assetsUrl, environment, contentRepository);
-            TagNode node = cleaner.clean(template.getInputStream());
-            node.traverse(visitor);
-        } catch (IOException ioe) {
-            LOG.error("Unable to read template", ioe);
+    void refreshBundles() {
+        for (Map.Entry<String, AssetBundle> entry : bundleMap.entrySet()) {
+            AssetBundle bundle = entry.getValue();
+            Resource template = formTemplateService.getTemplateResource(bundle.getTemplateName());
+            if (template.exists() && lastModified(template) > bundle.getTemplateLastModified()) {
+                BundleType type = BundleType.valueOf(entry.getKey().substring(0, entry.getKey().indexOf(':')));
+                build(type, bundle.getTemplateName(), false);
+            }
         }
+    }
 
-        if (visitor == null)
-            throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
+    /*
+     * Name of the template whose bundles the default page for this type links to, if it has any
+     */
+    private String bundleTemplateName(Class<?> type, Object t) {
+        try {
+            if (type.equals(Form.class))
+                return formTemplateService.getTemplateName(Form.class.getSimpleName(), Form.class.cast(t).isAnonymous());
+            if (type.equals(IndexView.class))
+                return formTemplateService.getTemplateName(IndexView.class.getSimpleName(), false);
+            if (type.equals(Explanation.class))
+                return formTemplateService.getTemplateName(Explanation.class.getSimpleName(), true);
+        } catch (NotFoundError e) {
+            LOG.warn("No template for " + type.getSimpleName() + " bundles");
+        }
+        return null;
+    }
 
-        Resource stylesheetResource = visitor.getStylesheetResource();
-        cache.put(template.getFilename(), stylesheetResource);
+    private static String key(BundleType type, String templateName) {
+        return type + ":" + templateName;
+    }
 
-        return stylesheetResource;
+    private static long lastModified(Resource resource) {
+        try {
+            return resource.lastModified();
+        } catch (IOException ioe) {
+            return 0l;
+        }
     }
 
     public boolean serveExternalScriptResource(Class<?> type, Object t, OutputStream out) throws IOException {
@@ -38,7 +38,6 @@ import piecework.identity.IdentityHelper;
 import com.google.common.collect.Sets;
 import piecework.security.DataFilterService;
 import piecework.security.EncryptionService;
-import piecework.util.ManyMap;
 import piecework.validation.FormValidation;
 import piecework.validation.SubmissionTemplate;
 import piecework.validation.ValidationRule;
@@ -97,8 +96,9 @@ public class ValidationService {
             Map<String, List<Value>> submissionData = submission.getData();
             Map<String, List<Value>> instanceData = instance != null ? instance.getData() : Collections.<String, List<Value>>emptyMap();
 
-            ManyMap<String, Value> decryptedSubmissionData = dataFilterService.decrypt(submissionData);
-            ManyMap<String, Value> decryptedInstanceData = dataFilterService.decrypt(instanceData);
+            // Rules usually look at only a few fields, so only decrypt the ones they actually read
+            Map<String, List<Value>> decryptedSubmissionData = dataFilterService.decryptLazily(submissionData);
+            Map<String, List<Value>> decryptedInstanceData = dataFilterService.decryptLazily(instanceData);
 
             for (Map.Entry<Field, List<ValidationRule>> entry : fieldRuleMap.entrySet()) {
                 Field field = entry.getKey();
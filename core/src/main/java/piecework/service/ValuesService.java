@@ -16,6 +16,7 @@
 package piecework.service;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.cxf.jaxrs.ext.MessageContext;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import piecework.CommandExecutor;
@@ -28,6 +29,7 @@ import piecework.model.Process;
 import piecework.persistence.ContentRepository;
 import piecework.command.InstanceCommand;
 import piecework.command.UpdateInstanceCommand;
+import piecework.ui.streaming.AttachmentResponses;
 import piecework.ui.streaming.StreamingAttachmentContent;
 import piecework.util.Base64Utility;
 import piecework.util.ManyMap;
@@ -53,7 +55,7 @@ public class ValuesService {
     @Autowired
     Versions versions;
 
-    public Response read(piecework.model.Process process, ProcessInstance instance, String fieldName, String fileId) throws StatusCodeError {
+    public Response read(MessageContext context, piecework.model.Process process, ProcessInstance instance, String fieldName, String fileId) throws StatusCodeError {
         Map<String, List<Value>> data = instance.getData();
         List<? extends Value> values = fieldName != null ? data.get(fieldName) : null;
 
@@ -74,8 +76,7 @@ public class ValuesService {
                     Content content = contentRepository.findByLocation(file.getLocation());
                     if (content != null) {
                         StreamingAttachmentContent streamingAttachmentContent = new StreamingAttachmentContent(null, content);
-                        String contentDisposition = new StringBuilder("attachment; filename=").append(content.getName()).toString();
-                        return Response.ok(streamingAttachmentContent, streamingAttachmentContent.getContent().getContentType()).header("Content-Disposition", contentDisposition).build();
+                        return AttachmentResponses.build(context, streamingAttachmentContent, content.getContentType(), content.getName());
                     }
                 }
             } else {
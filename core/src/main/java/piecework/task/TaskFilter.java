@@ -16,7 +16,6 @@
 package piecework.task;
 
 import org.apache.commons.lang.StringUtils;
-import piecework.Constants;
 import piecework.common.ViewContext;
 import piecework.enumeration.ActionType;
 import piecework.model.*;
@@ -55,7 +54,7 @@ public class TaskFilter {
 
             Map<String, List<Value>> data = null;
 
-            if (includeData)
+            if (includeData && activity != null && deployment.getInstance() != null)
                 data = dataFilterService.filter(activity.getFieldMap(), deployment.getInstance(), null, principal, false);
 
             return new Form.Builder()
@@ -72,19 +71,6 @@ public class TaskFilter {
         return rebuilt;
     }
 
-    public boolean include(Task task, String processStatus, String taskStatus) {
-        if (!processStatus.equals(Constants.ProcessStatuses.ALL) &&
-                !processStatus.equalsIgnoreCase(task.getTaskStatus()))
-            return false;
-
-        if (!taskStatus.equals(Constants.TaskStatuses.ALL) &&
-                !taskStatus.equalsIgnoreCase(task.getTaskStatus()))
-            return false;
-
-        return overseerProcessDefinitionKeys.contains(task.getProcessDefinitionKey())
-                || task.isCandidateOrAssignee(principal);
-    }
-
     public Set<String> getDeploymentIds(Iterable<ProcessInstance> instances) {
         if (wrapWithForm) {
             Set<String> deploymentIds = new HashSet<String>();
@@ -16,12 +16,13 @@
 package piecework.task;
 
 import org.springframework.data.domain.Page;
-import piecework.Constants;
 import piecework.common.PageHandler;
 import piecework.common.ViewContext;
+import piecework.exception.BadRequestError;
 import piecework.model.*;
 import piecework.model.Process;
 import piecework.process.ProcessInstanceSearchCriteria;
+import piecework.process.SearchCursor;
 import piecework.security.Sanitizer;
 import piecework.security.concrete.PassthroughSanitizer;
 
@@ -31,7 +32,7 @@ import java.util.*;
 /**
  * @author James Renfro
  */
-public abstract class TaskPageHandler implements PageHandler<ProcessInstance> {
+public abstract class TaskPageHandler implements PageHandler<Task> {
 
     private final MultivaluedMap<String, String> rawQueryParameters;
     private final TaskFilter taskFilter;
@@ -49,7 +50,7 @@ public abstract class TaskPageHandler implements PageHandler<ProcessInstance> {
         this.version = version;
     }
 
-    public ProcessInstanceSearchCriteria criteria(Set<Process> allowedProcesses) {
+    public ProcessInstanceSearchCriteria criteria(Set<Process> allowedProcesses) throws BadRequestError {
         resultsBuilder = new SearchResults.Builder()
                 .resourceLabel("Tasks")
                 .resourceName(Form.Constants.ROOT_ELEMENT_NAME)
@@ -69,37 +70,36 @@ public abstract class TaskPageHandler implements PageHandler<ProcessInstance> {
         return this.executionCriteria;
     }
 
-    public SearchResults handle(Page<ProcessInstance> page) {
+    public SearchResults handle(Page<Task> page) {
         if (page.hasContent()) {
-            String processStatus = executionCriteria.getProcessStatus() != null ? executionCriteria.getProcessStatus() : Constants.ProcessStatuses.OPEN;
-            String taskStatus = executionCriteria.getTaskStatus() != null ? executionCriteria.getTaskStatus() : Constants.TaskStatuses.ALL;
             int count = 0;
 
-            // Loop once through list to get the deployment ids
-            Set<String> deploymentIds = taskFilter.getDeploymentIds(page.getContent());
+            // When wrapping tasks in forms, the instance and deployment of each task are also needed
+            Map<String, ProcessInstance> instanceMap = Collections.emptyMap();
+            Map<String, ProcessDeployment> deploymentMap = Collections.emptyMap();
+            if (taskFilter.isWrapWithForm()) {
+                Set<String> processInstanceIds = new HashSet<String>();
+                for (Task task : page.getContent()) {
+                    if (task.getProcessInstanceId() != null)
+                        processInstanceIds.add(task.getProcessInstanceId());
+                }
 
-            // Retrieve a map of deployment objects from Mongo
-            Map<String, ProcessDeployment> deploymentMap = getDeploymentMap(deploymentIds);
+                // Retrieve maps of instance and deployment objects from Mongo
+                instanceMap = getInstanceMap(processInstanceIds);
+                deploymentMap = getDeploymentMap(taskFilter.getDeploymentIds(instanceMap.values()));
+            }
 
             List<TaskDeployment> rawTasks = new ArrayList<TaskDeployment>();
             Set<String> userIds = new HashSet<String>();
 
-            // Loop again through the list to get all user ids and build the intermediate object including
+            // Loop through the page to get all user ids and build the intermediate object including
             // task, instance, and deployment
-            for (ProcessInstance instance : page.getContent()) {
-                ProcessDeployment processDeployment = null;
-                if (taskFilter.isWrapWithForm())
-                    processDeployment = deploymentMap.get(instance.getDeploymentId());
-
-                Set<Task> tasks = instance.getTasks();
-                if (tasks != null && !tasks.isEmpty()) {
-                    for (Task task : tasks) {
-                        if (taskFilter.include(task, processStatus, taskStatus)) {
-                            rawTasks.add(new TaskDeployment(processDeployment, instance, task));
-                            userIds.addAll(task.getAssigneeAndCandidateAssigneeIds());
-                        }
-                    }
-                }
+            for (Task task : page.getContent()) {
+                ProcessInstance instance = instanceMap.get(task.getProcessInstanceId());
+                ProcessDeployment processDeployment = instance != null ? deploymentMap.get(instance.getDeploymentId()) : null;
+
+                rawTasks.add(new TaskDeployment(processDeployment, instance, task));
+                userIds.addAll(task.getAssigneeAndCandidateAssigneeIds());
             }
 
             Map<String, User> userMap = getUserMap(userIds);
@@ -109,27 +109,33 @@ public abstract class TaskPageHandler implements PageHandler<ProcessInstance> {
                 count++;
             }
 
-            if (executionCriteria.getMaxResults() != null || executionCriteria.getFirstResult() != null) {
-                if (executionCriteria.getFirstResult() != null)
-                    resultsBuilder.firstResult(executionCriteria.getFirstResult());
-                else
-                    resultsBuilder.firstResult(1);
-
-                if (executionCriteria.getMaxResults() != null)
-                    resultsBuilder.maxResults(executionCriteria.getMaxResults());
-                else
-                    resultsBuilder.maxResults(count);
-
-                resultsBuilder.total(Long.valueOf(count));
-            } else {
+            if (executionCriteria.getFirstResult() != null)
+                resultsBuilder.firstResult(executionCriteria.getFirstResult());
+            else
                 resultsBuilder.firstResult(1);
+
+            if (executionCriteria.getMaxResults() != null)
+                resultsBuilder.maxResults(executionCriteria.getMaxResults());
+            else
                 resultsBuilder.maxResults(count);
-                resultsBuilder.total(Long.valueOf(count));
+
+            if (executionCriteria.isIncludeTotal())
+                resultsBuilder.total(Long.valueOf(page.getTotalElements()));
+            else
+                resultsBuilder.total(null);
+
+            if (page.hasNextPage()) {
+                Task last = page.getContent().get(page.getContent().size() - 1);
+                SearchCursor cursor = SearchCursor.after(executionCriteria.getOrderBy(), last.getStartTime(), last.getEndTime(), last.getTaskInstanceId());
+                if (cursor != null)
+                    resultsBuilder.nextCursor(cursor.encode());
             }
         }
         return resultsBuilder.build(version);
     }
 
+    protected abstract Map<String, ProcessInstance> getInstanceMap(Set<String> processInstanceIds);
+
     protected abstract Map<String, ProcessDeployment> getDeploymentMap(Set<String> deploymentIds);
 
     protected abstract Map<String, User> getUserMap(Set<String> userIds);
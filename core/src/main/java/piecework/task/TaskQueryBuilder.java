@@ -0,0 +1,191 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.task;
+
+import org.apache.commons.lang.StringUtils;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import piecework.Constants;
+import piecework.authorization.AccessAuthority;
+import piecework.model.Entity;
+import piecework.process.ProcessInstanceSearchCriteria;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Builds a query against the task collection, so that the caller's tasks can be
+ * filtered, paged and counted by Mongo rather than by walking process instances.
+ *
+ * @author James Renfro
+ */
+public class TaskQueryBuilder {
+
+    private static final String[] TASK_STATUSES = {
+        Constants.TaskStatuses.OPEN,
+        Constants.TaskStatuses.COMPLETE,
+        Constants.TaskStatuses.CANCELLED,
+        Constants.TaskStatuses.REJECTED,
+        Constants.TaskStatuses.SUSPENDED
+    };
+
+    private final ProcessInstanceSearchCriteria searchCriteria;
+    private Entity principal;
+    private Set<String> overseerProcessDefinitionKeys;
+
+    public TaskQueryBuilder(final ProcessInstanceSearchCriteria searchCriteria) {
+        this.searchCriteria = searchCriteria;
+        this.overseerProcessDefinitionKeys = Collections.emptySet();
+    }
+
+    /*
+     * Limits results to tasks that the principal is assigned to or a candidate for, unless
+     * the task belongs to one of the processes that the principal oversees
+     */
+    public TaskQueryBuilder principal(Entity principal, Set<String> overseerProcessDefinitionKeys) {
+        this.principal = principal;
+        if (overseerProcessDefinitionKeys != null)
+            this.overseerProcessDefinitionKeys = overseerProcessDefinitionKeys;
+        return this;
+    }
+
+    public Query build() {
+        Query query = new Query();
+
+        query.addCriteria(where("processDefinitionKey").in(searchCriteria.getProcessDefinitionKeys()));
+
+        if (!searchCriteria.getProcessInstanceIds().isEmpty())
+            query.addCriteria(where("processInstanceId").in(searchCriteria.getProcessInstanceIds()));
+        if (StringUtils.isNotEmpty(searchCriteria.getBusinessKey()))
+            query.addCriteria(where("processInstanceAlias").is(searchCriteria.getBusinessKey()));
+        if (StringUtils.isNotEmpty(searchCriteria.getProcessDefinitionLabel()))
+            query.addCriteria(where("processDefinitionLabel").regex(searchCriteria.getProcessDefinitionLabel(), "i"));
+        if (StringUtils.isNotEmpty(searchCriteria.getProcessInstanceLabel()))
+            query.addCriteria(where("processInstanceLabel").regex(searchCriteria.getProcessInstanceLabel(), "i"));
+        if (StringUtils.isNotEmpty(searchCriteria.getAssigneeId()))
+            query.addCriteria(where("assigneeId").is(searchCriteria.getAssigneeId()));
+        if (StringUtils.isNotEmpty(searchCriteria.getCandidateAssigneeId()))
+            query.addCriteria(where("candidateAssigneeIds").is(searchCriteria.getCandidateAssigneeId()));
+
+        // Task status has historically been matched against both the process status and task status parameters
+        String processStatus = searchCriteria.getProcessStatus() != null ? searchCriteria.getProcessStatus() : Constants.ProcessStatuses.OPEN;
+        String taskStatus = searchCriteria.getTaskStatus() != null ? searchCriteria.getTaskStatus() : Constants.TaskStatuses.ALL;
+        Set<String> taskStatuses = new HashSet<String>();
+        if (!processStatus.equalsIgnoreCase(Constants.ProcessStatuses.ALL))
+            taskStatuses.add(taskStatus(processStatus));
+        if (!taskStatus.equalsIgnoreCase(Constants.TaskStatuses.ALL))
+            taskStatuses.add(taskStatus(taskStatus));
+        if (taskStatuses.size() == 1)
+            query.addCriteria(where("taskStatus").is(taskStatuses.iterator().next()));
+        else if (taskStatuses.size() > 1)
+            query.addCriteria(where("taskStatus").in(Collections.emptySet()));
+
+        if (searchCriteria.getStartedBefore() != null || searchCriteria.getStartedAfter() != null) {
+            Criteria startTime = where("startTime");
+            if (searchCriteria.getStartedBefore() != null)
+                startTime.lt(searchCriteria.getStartedBefore());
+            if (searchCriteria.getStartedAfter() != null)
+                startTime.gt(searchCriteria.getStartedAfter());
+            query.addCriteria(startTime);
+        }
+
+        if (searchCriteria.getCompletedBefore() != null || searchCriteria.getCompletedAfter() != null) {
+            Criteria endTime = where("endTime");
+            if (searchCriteria.getCompletedBefore() != null)
+                endTime.lt(searchCriteria.getCompletedBefore());
+            if (searchCriteria.getCompletedAfter() != null)
+                endTime.gt(searchCriteria.getCompletedAfter());
+            query.addCriteria(endTime);
+        }
+
+        if (searchCriteria.getDueBefore() != null || searchCriteria.getDueAfter() != null) {
+            Criteria dueDate = where("dueDate");
+            if (searchCriteria.getDueBefore() != null)
+                dueDate.lt(searchCriteria.getDueBefore());
+            if (searchCriteria.getDueAfter() != null)
+                dueDate.gt(searchCriteria.getDueAfter());
+            query.addCriteria(dueDate);
+        }
+
+        List<Criteria> clauses = new ArrayList<Criteria>();
+        Criteria access = access();
+        if (access != null)
+            clauses.add(access);
+
+        if (!searchCriteria.getKeywords().isEmpty()) {
+            for (String keyword : searchCriteria.getKeywords()) {
+                String pattern = Pattern.quote(keyword);
+                clauses.add(new Criteria().orOperator(where("processInstanceLabel").regex(pattern, "i"),
+                        where("processInstanceAlias").regex(pattern, "i")));
+            }
+        }
+
+        // Seeking past the last task of the previous page stays as fast on the last page as on the first
+        if (searchCriteria.getAfter() != null)
+            clauses.add(searchCriteria.getAfter().criteria(searchCriteria.getOrderBy()));
+
+        if (clauses.size() == 1)
+            query.addCriteria(clauses.get(0));
+        else if (clauses.size() > 1)
+            query.addCriteria(new Criteria().andOperator(clauses.toArray(new Criteria[clauses.size()])));
+
+        query.with(searchCriteria.getSort());
+
+        return query;
+    }
+
+    private Criteria access() {
+        if (principal == null)
+            return null;
+
+        List<Criteria> alternatives = new ArrayList<Criteria>();
+        if (!overseerProcessDefinitionKeys.isEmpty())
+            alternatives.add(where("processDefinitionKey").in(overseerProcessDefinitionKeys));
+
+        String entityId = principal.getEntityId();
+        if (StringUtils.isNotEmpty(entityId)) {
+            Set<String> candidateIds = new HashSet<String>();
+            candidateIds.add(entityId);
+            AccessAuthority accessAuthority = principal.getAccessAuthority();
+            if (accessAuthority != null && accessAuthority.getGroupIds() != null)
+                candidateIds.addAll(accessAuthority.getGroupIds());
+
+            alternatives.add(where("assigneeId").is(entityId));
+            alternatives.add(where("candidateAssigneeIds").in(candidateIds));
+        }
+
+        // A principal with no identity and no oversight should never see any tasks
+        if (alternatives.isEmpty())
+            return where("taskInstanceId").in(Collections.emptySet());
+
+        return new Criteria().orOperator(alternatives.toArray(new Criteria[alternatives.size()]));
+    }
+
+    /*
+     * Task statuses are stored capitalized, while query parameters are usually lower case,
+     * so match them up here rather than relying on an unindexable case-insensitive regex
+     */
+    private static String taskStatus(String status) {
+        for (String taskStatus : TASK_STATUSES) {
+            if (taskStatus.equalsIgnoreCase(status))
+                return taskStatus;
+        }
+        return status;
+    }
+
+}
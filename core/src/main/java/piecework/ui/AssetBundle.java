@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.ui;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A script or stylesheet bundle built from the references in a page template, held in memory along
+ * with a gzipped copy and a hash of its content. The hash is used both as the ETag of the bundle and
+ * as the version in its url, so that a url with a hash in it can be cached by browsers indefinitely.
+ *
+ * @author James Renfro
+ */
+public class AssetBundle {
+
+    private static final int HASH_LENGTH = 16;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String templateName;
+    private final byte[] content;
+    private final byte[] gzipped;
+    private final String hash;
+    private final long templateLastModified;
+    private final long built;
+
+    public AssetBundle(String templateName, byte[] content, long templateLastModified) {
+        this.templateName = templateName;
+        this.content = content;
+        this.gzipped = gzip(content);
+        this.hash = hash(content);
+        this.templateLastModified = templateLastModified;
+        this.built = System.currentTimeMillis();
+    }
+
+    /*
+     * Splits a requested id like Form.0123456789abcdef into the id and the hash, returning the id
+     * in the first element and the hash, or null if there isn't one, in the second
+     */
+    public static String[] versioned(String id) {
+        int index = id != null ? id.lastIndexOf('.') : -1;
+        if (index > 0 && id.length() - index - 1 == HASH_LENGTH && isHex(id.substring(index + 1)))
+            return new String[] { id.substring(0, index), id.substring(index + 1) };
+        return new String[] { id, null };
+    }
+
+    public String getTemplateName() {
+        return templateName;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public byte[] getGzipped() {
+        return gzipped;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public long getTemplateLastModified() {
+        return templateLastModified;
+    }
+
+    public long getBuilt() {
+        return built;
+    }
+
+    private static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(content.length / 3 + 32);
+        try {
+            GZIPOutputStream gzipOutputStream = new GZIPOutputStream(output);
+            gzipOutputStream.write(content);
+            gzipOutputStream.close();
+        } catch (IOException e) {
+            // Writing to memory doesn't fail
+            throw new IllegalStateException(e);
+        }
+        return output.toByteArray();
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder builder = new StringBuilder(HASH_LENGTH);
+            for (int i = 0; i < HASH_LENGTH / 2; i++) {
+                builder.append(HEX[(digest[i] >> 4) & 0xf]).append(HEX[digest[i] & 0xf]);
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isHex(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f'))
+                return false;
+        }
+        return true;
+    }
+
+}
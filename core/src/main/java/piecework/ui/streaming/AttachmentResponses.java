@@ -0,0 +1,197 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.ui.streaming;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.cxf.jaxrs.ext.MessageContext;
+import org.apache.log4j.Logger;
+import piecework.model.Content;
+import piecework.ui.Streamable;
+
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Builds the response for an attachment or file value download. Since stored content doesn't change,
+ * its MD5 and upload date make a reliable ETag and Last-Modified, so browsers and proxies can revalidate
+ * what they've cached instead of downloading it again, and a single byte range can be requested to
+ * resume an interrupted download or to page through a large PDF.
+ *
+ * @author James Renfro
+ */
+public class AttachmentResponses {
+
+    private static final Logger LOG = Logger.getLogger(AttachmentResponses.class);
+    private static final String ACCEPT_RANGES = "Accept-Ranges";
+    private static final String CONTENT_RANGE = "Content-Range";
+    private static final String IF_RANGE = "If-Range";
+    private static final String RANGE = "Range";
+    private static final String BYTES = "bytes";
+    private static final int REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+
+    public static Response build(MessageContext context, StreamingAttachmentContent streamingAttachmentContent, String contentType, String filename) {
+        Streamable streamable = streamingAttachmentContent.getContent();
+        Content content = streamable instanceof Content ? Content.class.cast(streamable) : null;
+
+        EntityTag entityTag = content != null && StringUtils.isNotEmpty(content.getMd5()) ? new EntityTag(content.getMd5()) : null;
+        // Header dates only go down to the second
+        Date lastModified = content != null && content.getLastModified() != null ? new Date(content.getLastModified().getTime() / 1000 * 1000) : null;
+        Long length = content != null ? content.getLength() : null;
+
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setPrivate(true);
+
+        Request request = context != null ? context.getRequest() : null;
+        Response.ResponseBuilder builder = null;
+        if (request != null) {
+            if (entityTag != null && lastModified != null)
+                builder = request.evaluatePreconditions(lastModified, entityTag);
+            else if (entityTag != null)
+                builder = request.evaluatePreconditions(entityTag);
+            else if (lastModified != null)
+                builder = request.evaluatePreconditions(lastModified);
+        }
+
+        // Nothing gets written for a 304, 412 or 416, so the stream opened when the content was looked up is closed here
+        boolean hasEntity = false;
+        if (builder == null) {
+            long[] range = length != null ? range(context, length.longValue(), entityTag, lastModified) : null;
+
+            if (range == null) {
+                builder = Response.ok(streamingAttachmentContent, contentType);
+                hasEntity = true;
+                if (length != null)
+                    builder.header(HttpHeaders.CONTENT_LENGTH, length);
+            } else if (range.length == 0) {
+                builder = Response.status(REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(CONTENT_RANGE, BYTES + " */" + length);
+            } else {
+                long rangeLength = range[1] - range[0] + 1;
+                builder = Response.status(Response.Status.PARTIAL_CONTENT)
+                        .entity(streamingAttachmentContent.range(range[0], rangeLength))
+                        .type(contentType)
+                        .header(HttpHeaders.CONTENT_LENGTH, rangeLength)
+                        .header(CONTENT_RANGE, BYTES + " " + range[0] + "-" + range[1] + "/" + length);
+                hasEntity = true;
+            }
+
+            if (StringUtils.isNotEmpty(filename))
+                builder.header("Content-Disposition", new StringBuilder("attachment; filename=").append(filename).toString());
+            if (lastModified != null)
+                builder.lastModified(lastModified);
+        }
+
+        if (!hasEntity && streamable != null)
+            IOUtils.closeQuietly(streamable.getInputStream());
+
+        if (entityTag != null)
+            builder.tag(entityTag);
+        if (length != null)
+            builder.header(ACCEPT_RANGES, BYTES);
+
+        return builder.cacheControl(cacheControl).build();
+    }
+
+    /*
+     * Returns the first and last byte positions of the range requested, null if the whole content
+     * should be sent, or an empty array if the range can't be satisfied. Only single ranges are
+     * supported -- requests for several ranges get the whole content, which the spec allows.
+     */
+    static long[] range(String header, long length) {
+        if (StringUtils.isEmpty(header) || !header.startsWith(BYTES + "="))
+            return null;
+
+        String spec = header.substring(BYTES.length() + 1).trim();
+        if (spec.indexOf(',') != -1)
+            return null;
+
+        int dash = spec.indexOf('-');
+        if (dash == -1)
+            return null;
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // A suffix range, for the last so many bytes
+                if (last.isEmpty())
+                    return null;
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0)
+                    return new long[0];
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = length - 1;
+                if (!last.isEmpty()) {
+                    long requestedEnd = Long.parseLong(last);
+                    // A range that ends before it starts is invalid, so the header is ignored
+                    if (requestedEnd < start)
+                        return null;
+                    end = Math.min(requestedEnd, end);
+                }
+            }
+            if (start >= length || start < 0)
+                return new long[0];
+            return new long[] { start, end };
+        } catch (NumberFormatException e) {
+            LOG.warn("Ignoring unreadable range " + header);
+            return null;
+        }
+    }
+
+    private static long[] range(MessageContext context, long length, EntityTag entityTag, Date lastModified) {
+        HttpHeaders headers = context != null ? context.getHttpHeaders() : null;
+        if (headers == null)
+            return null;
+
+        String header = headers.getRequestHeaders().getFirst(RANGE);
+        if (StringUtils.isEmpty(header))
+            return null;
+
+        // A range is only good for the version of the content the client already has part of
+        String ifRange = headers.getRequestHeaders().getFirst(IF_RANGE);
+        if (StringUtils.isNotEmpty(ifRange)) {
+            boolean matches;
+            if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+                matches = entityTag != null && ifRange.equals("\"" + entityTag.getValue() + "\"");
+            else
+                matches = lastModified != null && ifRange.equals(httpDate(lastModified));
+            if (!matches)
+                return null;
+        }
+
+        return range(header, length);
+    }
+
+    private static String httpDate(Date date) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(date);
+    }
+
+}
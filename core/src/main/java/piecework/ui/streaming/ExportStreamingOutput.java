@@ -17,47 +17,167 @@ package piecework.ui.streaming;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.List;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
 import org.apache.log4j.Logger;
+import piecework.enumeration.ExportFormat;
+import piecework.model.ProcessInstance;
+import piecework.persistence.ResultHandler;
 import piecework.persistence.concrete.ExportInstanceProvider;
 
 /**
+ * Writes each instance straight to the response as it comes off the cursor, either as a row
+ * of csv or as one json object per line.
+ *
  * @author James Renfro
  */
 public class ExportStreamingOutput implements StreamingOutput {
 
     private static final Logger LOG = Logger.getLogger(ExportStreamingOutput.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int FLUSH_INTERVAL = 500;
 
     private final ExportInstanceProvider provider;
+    private final ExportFormat format;
 
-    public ExportStreamingOutput(ExportInstanceProvider provider) {
+    public ExportStreamingOutput(ExportInstanceProvider provider, ExportFormat format) {
         this.provider = provider;
+        this.format = format;
     }
 
     @Override
     public void write(OutputStream output) throws IOException, WebApplicationException {
-
-        PrintWriter writer = null;
-
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, "UTF-8"), BUFFER_SIZE);
         try {
-            writer = new PrintWriter(output, true);
-            writer.println(provider.getHeader());
-            while (provider.hasNext()) {
-                List<String> rows = provider.next();
-                for (String row : rows) {
-                    writer.print(row);
-                }
-            }
+            ResultHandler<ProcessInstance> handler = format == ExportFormat.NDJSON ? new JsonLineHandler(writer) : new CsvRowHandler(writer);
+            long count = provider.export(handler);
+            writer.flush();
+            if (LOG.isDebugEnabled())
+                LOG.debug("Exported " + count + " instances");
+        } catch (IOException ioe) {
+            // Most often the client has gone away, and there is no one left to tell
+            LOG.warn("Unable to complete export", ioe);
+            throw ioe;
         } catch (Exception e) {
-            LOG.error(e);
+            LOG.error("Unable to complete export", e);
             throw new WebApplicationException(e);
         } finally {
-            if (writer != null)
-                writer.close();
+            writer.close();
+        }
+    }
+
+    /*
+     * Every field is quoted, with embedded quotes doubled, so that commas and line breaks in the data are safe
+     */
+    static void writeCsvField(Writer writer, String text) throws IOException {
+        writer.write('"');
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '"')
+                writer.write('"');
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    private abstract class FlushingHandler implements ResultHandler<ProcessInstance> {
+
+        protected final Writer writer;
+        protected final List<String> headerKeys;
+        private int count;
+
+        protected FlushingHandler(Writer writer) {
+            this.writer = writer;
+            this.headerKeys = provider.getHeaderKeys();
+        }
+
+        @Override
+        public void handle(ProcessInstance instance) throws IOException {
+            write(instance);
+            if (++count % FLUSH_INTERVAL == 0)
+                writer.flush();
+        }
+
+        protected abstract void write(ProcessInstance instance) throws IOException;
+
+    }
+
+    private class CsvRowHandler extends FlushingHandler {
+
+        private CsvRowHandler(Writer writer) throws IOException {
+            super(writer);
+            writeRow(provider.getHeaders());
+        }
+
+        @Override
+        protected void write(ProcessInstance instance) throws IOException {
+            int size = headerKeys.size();
+            for (int i = 0; i < size; i++) {
+                if (i != 0)
+                    writer.write(',');
+                List<String> values = ExportInstanceProvider.values(instance, headerKeys.get(i));
+                StringBuilder cell = new StringBuilder();
+                for (String value : values) {
+                    if (cell.length() > 0)
+                        cell.append(", ");
+                    cell.append(value);
+                }
+                writeCsvField(writer, cell.toString());
+            }
+            writer.write("\r\n");
+        }
+
+        private void writeRow(List<String> cells) throws IOException {
+            int size = cells.size();
+            for (int i = 0; i < size; i++) {
+                if (i != 0)
+                    writer.write(',');
+                String cell = cells.get(i);
+                writeCsvField(writer, cell != null ? cell : "");
+            }
+            writer.write("\r\n");
+        }
+
+    }
+
+    private class JsonLineHandler extends FlushingHandler {
+
+        private final JsonGenerator generator;
+
+        private JsonLineHandler(Writer writer) throws IOException {
+            super(writer);
+            this.generator = JSON_FACTORY.createGenerator(writer);
+            this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            this.generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+            // Line breaks are written after each object below, so nothing goes between them here
+            this.generator.setPrettyPrinter(new MinimalPrettyPrinter(""));
+        }
+
+        @Override
+        protected void write(ProcessInstance instance) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("processInstanceId", instance.getProcessInstanceId());
+            for (String headerKey : headerKeys) {
+                generator.writeArrayFieldStart(headerKey);
+                for (String value : ExportInstanceProvider.values(instance, headerKey)) {
+                    generator.writeString(value);
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+            // Only hands the object to the buffered writer, which decides when to actually flush
+            generator.flush();
+            writer.write('\n');
         }
 
     }
@@ -15,6 +15,7 @@
  */
 package piecework.ui.streaming;
 
+import org.apache.commons.io.IOUtils;
 import org.htmlcleaner.*;
 
 import javax.ws.rs.WebApplicationException;
@@ -24,26 +25,68 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 /**
+ * Writes an html page after running it past a visitor. By default the whole tree is visited before
+ * any of it is serialized. In streaming mode each node is visited as it is written instead (see
+ * VisitingHtmlSerializer), so the response starts sooner and no second pass over the tree is made.
+ *
  * @author James Renfro
  */
 public class HtmlCleanerStreamingOutput implements StreamingOutput {
 
     private final InputStream inputStream;
+    private final TagNode node;
     private final TagNodeVisitor visitor;
+    private final boolean streaming;
 
     public HtmlCleanerStreamingOutput(InputStream inputStream, TagNodeVisitor visitor) {
+        this(inputStream, visitor, false);
+    }
+
+    public HtmlCleanerStreamingOutput(InputStream inputStream, TagNodeVisitor visitor, boolean streaming) {
         this.inputStream = inputStream;
+        this.node = null;
+        this.visitor = visitor;
+        this.streaming = streaming;
+    }
+
+    /*
+     * For a tree that has already been parsed, generally a copy from the HtmlTemplateCache
+     */
+    public HtmlCleanerStreamingOutput(TagNode node, TagNodeVisitor visitor) {
+        this(node, visitor, false);
+    }
+
+    public HtmlCleanerStreamingOutput(TagNode node, TagNodeVisitor visitor, boolean streaming) {
+        this.inputStream = null;
+        this.node = node;
         this.visitor = visitor;
+        this.streaming = streaming;
     }
 
     @Override
     public void write(OutputStream output) throws IOException, WebApplicationException {
-        CleanerProperties cleanerProperties = new CleanerProperties();
-        cleanerProperties.setOmitXmlDeclaration(true);
-        HtmlCleaner cleaner = new HtmlCleaner(cleanerProperties);
-        TagNode node = cleaner.clean(inputStream);
+        CleanerProperties cleanerProperties = cleanerProperties();
+        TagNode node = this.node;
+        if (node == null) {
+            HtmlCleaner cleaner = new HtmlCleaner(cleanerProperties);
+            try {
+                node = cleaner.clean(inputStream);
+            } finally {
+                IOUtils.closeQuietly(inputStream);
+            }
+        }
+        if (streaming) {
+            new VisitingHtmlSerializer(cleanerProperties, visitor).write(node, output);
+            return;
+        }
         node.traverse(visitor);
-        SimpleHtmlSerializer serializer = new SimpleHtmlSerializer(cleaner.getProperties());
+        SimpleHtmlSerializer serializer = new SimpleHtmlSerializer(cleanerProperties);
         serializer.writeToStream(node, output);
     }
+
+    public static CleanerProperties cleanerProperties() {
+        CleanerProperties cleanerProperties = new CleanerProperties();
+        cleanerProperties.setOmitXmlDeclaration(true);
+        return cleanerProperties;
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.ui.streaming;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.htmlcleaner.*;
+import org.springframework.cache.Cache;
+import org.springframework.core.io.Resource;
+import piecework.model.Content;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Holds parsed HTML templates keyed by location, so that a page can be rendered from a copy
+ * of the parsed tree rather than by parsing the template again. An entry is replaced when the
+ * last modified time of the template changes. The cached trees are never handed out directly,
+ * since the visitors that decorate a page modify the tree they traverse.
+ *
+ * @author James Renfro
+ */
+public class HtmlTemplateCache {
+
+    private static final Logger LOG = Logger.getLogger(HtmlTemplateCache.class);
+
+    private final Cache cache;
+
+    public HtmlTemplateCache(Cache cache) {
+        this.cache = cache;
+    }
+
+    public TagNode template(Resource resource) throws IOException {
+        long lastModified;
+        try {
+            lastModified = resource.lastModified();
+        } catch (IOException ioe) {
+            // Resources that cannot report a modification time are simply not cached
+            return parse(resource.getInputStream());
+        }
+        String key = resource.getDescription();
+        TagNode cached = cached(key, lastModified);
+        if (cached != null)
+            return copy(cached);
+
+        return store(key, lastModified, resource.getInputStream());
+    }
+
+    public TagNode template(Content content) throws IOException {
+        if (content.getLocation() == null || content.getLastModified() == null)
+            return parse(content.getInputStream());
+
+        long lastModified = content.getLastModified().getTime();
+        TagNode cached = cached(content.getLocation(), lastModified);
+        if (cached != null) {
+            IOUtils.closeQuietly(content.getInputStream());
+            return copy(cached);
+        }
+
+        return store(content.getLocation(), lastModified, content.getInputStream());
+    }
+
+    private TagNode cached(String key, long lastModified) {
+        if (cache == null)
+            return null;
+
+        Cache.ValueWrapper wrapper = cache.get(key);
+        if (wrapper == null)
+            return null;
+
+        ParsedTemplate parsed = (ParsedTemplate) wrapper.get();
+        if (parsed == null || parsed.lastModified != lastModified)
+            return null;
+
+        return parsed.node;
+    }
+
+    private TagNode store(String key, long lastModified, InputStream inputStream) throws IOException {
+        TagNode node = parse(inputStream);
+        if (cache != null) {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Caching parsed template " + key);
+            cache.put(key, new ParsedTemplate(node, lastModified));
+        }
+        return copy(node);
+    }
+
+    private static TagNode parse(InputStream inputStream) throws IOException {
+        try {
+            HtmlCleaner cleaner = new HtmlCleaner(HtmlCleanerStreamingOutput.cleanerProperties());
+            return cleaner.clean(inputStream);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
+    /*
+     * Deep copy of the tree, which is a great deal cheaper than parsing the html again. Content and
+     * comment nodes are copied as well, since visitors are free to append to them.
+     */
+    static TagNode copy(TagNode original) {
+        TagNode copy = new TagNode(original.getName());
+        copy.setAttributes(new LinkedHashMap<String, String>(original.getAttributes()));
+        copy.setDocType(original.getDocType());
+
+        List children = original.getAllChildren();
+        if (children != null) {
+            for (Object child : children) {
+                if (child instanceof TagNode)
+                    copy.addChild(copy((TagNode) child));
+                else if (child instanceof CommentNode)
+                    copy.addChild(new CommentNode(String.valueOf(((CommentNode) child).getContent())));
+                else if (child instanceof ContentNode)
+                    copy.addChild(new ContentNode(String.valueOf(((ContentNode) child).getContent())));
+                else
+                    copy.addChild(child);
+            }
+        }
+        return copy;
+    }
+
+    private static class ParsedTemplate {
+
+        private final TagNode node;
+        private final long lastModified;
+
+        private ParsedTemplate(TagNode node, long lastModified) {
+            this.node = node;
+            this.lastModified = lastModified;
+        }
+
+    }
+
+}
@@ -22,33 +22,61 @@ import piecework.ui.Streamable;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.StreamingOutput;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.io.StringReader;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 /**
+ * Writes out an attachment or file value, or just a range of its bytes when the client asked
+ * for one. Content that lives on the local file system is transferred from its file channel,
+ * everything else is copied from its input stream a GridFS chunk at a time.
+ *
  * @author James Renfro
  */
 public class StreamingAttachmentContent implements StreamingOutput {
 
+    // Same as the default GridFS chunk size, so each read takes a whole chunk
+    private static final int BUFFER_SIZE = 256 * 1024;
+
     private final Attachment attachment;
     private final Streamable content;
+    private final long offset;
+    private final long length;
 
     public StreamingAttachmentContent(Streamable content) {
         this(null, content);
     }
 
     public StreamingAttachmentContent(Attachment attachment, Streamable content) {
+        this(attachment, content, 0l, -1l);
+    }
+
+    /*
+     * Limits the output to length bytes starting at offset, or to everything after offset if length is negative
+     */
+    public StreamingAttachmentContent(Attachment attachment, Streamable content, long offset, long length) {
         this.attachment = attachment;
         this.content = content;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public StreamingAttachmentContent range(long offset, long length) {
+        return new StreamingAttachmentContent(attachment, content, offset, length);
     }
 
     @Override
     public void write(OutputStream output) throws IOException, WebApplicationException {
-        if (content != null)
-            IOUtils.copy(content.getInputStream(), output);
-        else if (attachment != null)
+        if (content != null) {
+            File localFile = content instanceof Content ? Content.class.cast(content).getLocalFile() : null;
+            if (localFile != null && localFile.isFile())
+                transfer(localFile, output);
+            else
+                copy(output);
+        } else if (attachment != null) {
             IOUtils.copy(new StringReader(attachment.getDescription()), output);
+        }
     }
 
     public Attachment getAttachment() {
@@ -58,4 +86,69 @@ public class StreamingAttachmentContent implements StreamingOutput {
     public Streamable getContent() {
         return content;
     }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    private void copy(OutputStream output) throws IOException {
+        InputStream input = content.getInputStream();
+        try {
+            skip(input, offset);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = length >= 0 ? length : Long.MAX_VALUE;
+            while (remaining > 0) {
+                int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1)
+                    break;
+                output.write(buffer, 0, read);
+                remaining -= read;
+            }
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    private void transfer(File localFile, OutputStream output) throws IOException {
+        // The stream opened when the content was looked up isn't needed, since the channel is used instead
+        IOUtils.closeQuietly(content.getInputStream());
+
+        FileInputStream input = new FileInputStream(localFile);
+        try {
+            FileChannel channel = input.getChannel();
+            WritableByteChannel target = Channels.newChannel(output);
+            long position = offset;
+            long remaining = length >= 0 ? length : channel.size() - offset;
+            while (remaining > 0) {
+                long transferred = channel.transferTo(position, remaining, target);
+                if (transferred <= 0)
+                    break;
+                position += transferred;
+                remaining -= transferred;
+            }
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /*
+     * GridFS streams skip whole chunks without reading them, but other streams may skip less than asked
+     */
+    private static void skip(InputStream input, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = input.skip(remaining);
+            if (skipped <= 0) {
+                if (input.read() == -1)
+                    throw new EOFException();
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
 }
@@ -51,16 +51,18 @@ public class StreamingPageContent implements StreamingOutput {
         cleanerProperties.setOmitXmlDeclaration(true);
         HtmlCleaner cleaner = new HtmlCleaner(cleanerProperties);
         TagNode node = cleaner.clean(content.getInputStream());
+        TagNodeVisitor visitor = null;
         switch (strategy) {
             case INCLUDE_SCRIPT:
-                node.traverse(new ScriptInjectingVisitor(form));
+                visitor = new ScriptInjectingVisitor(form);
                 break;
             case DECORATE_HTML:
-                node.traverse(new DecoratingVisitor(form));
+                visitor = new DecoratingVisitor(form);
                 break;
         }
 
-        SimpleHtmlSerializer serializer = new SimpleHtmlSerializer(cleaner.getProperties());
-        serializer.writeToStream(node, output);
+        // Decorators only ever change the tag they are handed, so each can be applied as the page is written
+        VisitingHtmlSerializer serializer = new VisitingHtmlSerializer(cleaner.getProperties(), visitor);
+        serializer.write(node, output);
     }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.ui.streaming;
+
+import org.htmlcleaner.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Serializes a tree while it's being decorated, visiting each node just before it is written
+ * rather than traversing the whole tree first, so that the start of the page goes out while the
+ * rest is still being decorated. Nodes are visited in the same order as TagNode.traverse visits
+ * them, and the same way, a node that a visitor removes from the tree is neither written nor
+ * descended into.
+ *
+ * This only holds for visitors that change the node they are visiting, its attributes and
+ * its children, which is true of all the visitors that decorate pages. A change made to a node
+ * that has already been written will not show up in the output.
+ *
+ * @author James Renfro
+ */
+public class VisitingHtmlSerializer extends SimpleHtmlSerializer {
+
+    private final TagNodeVisitor visitor;
+    private boolean visiting;
+
+    public VisitingHtmlSerializer(CleanerProperties properties, TagNodeVisitor visitor) {
+        super(properties);
+        this.visitor = visitor;
+    }
+
+    public void write(TagNode node, OutputStream output) throws IOException {
+        this.visiting = visitor != null;
+        if (visiting) {
+            TagNode parent = node.getParent();
+            visiting = visitor.visit(parent, node);
+            if (parent != null && node.getParent() == null)
+                return;
+        }
+        writeToStream(node, output);
+    }
+
+    @Override
+    protected void serialize(TagNode tagNode, Writer writer) throws IOException {
+        serializeOpenTag(tagNode, writer, false);
+        if (isMinimizedTagSyntax(tagNode))
+            return;
+
+        // A visitor may remove the node it's visiting, so iterate over a copy of the children
+        List<?> children = tagNode.getAllChildren();
+        for (Object child : children.toArray()) {
+            if (visiting && child instanceof HtmlNode) {
+                visiting = visitor.visit(tagNode, (HtmlNode) child);
+                if (child instanceof TagNode && ((TagNode) child).getParent() != tagNode)
+                    continue;
+            }
+
+            if (child instanceof ContentNode) {
+                String content = child.toString();
+                writer.write(dontEscape(tagNode) ? content : escapeText(content));
+            } else if (child instanceof BaseToken) {
+                ((BaseToken) child).serialize(this, writer);
+            }
+        }
+        serializeEndTag(tagNode, writer, false);
+    }
+
+}
@@ -38,11 +38,23 @@ public class LinkOptimizingVisitor extends HtmlProviderVisitor {
     private final String pageContextAsJson;
     private final String modelAsJson;
     private final boolean isExplanation;
+    private final String scriptVersion;
+    private final String stylesheetVersion;
 
     public LinkOptimizingVisitor(String applicationTitle, String applicationUrl, String publicUrl, String assetsUrl, Object t, Class<?> type, Entity user, ObjectMapper objectMapper, Environment environment) {
+        this(applicationTitle, applicationUrl, publicUrl, assetsUrl, t, type, user, objectMapper, environment, null, null);
+    }
+
+    /*
+     * When the hashes of the script and stylesheet bundles are known they're put into the urls, so that
+     * browsers can cache the bundles for good and will fetch new ones as soon as their content changes
+     */
+    public LinkOptimizingVisitor(String applicationTitle, String applicationUrl, String publicUrl, String assetsUrl, Object t, Class<?> type, Entity user, ObjectMapper objectMapper, Environment environment, String scriptVersion, String stylesheetVersion) {
         super(applicationTitle, applicationUrl, publicUrl, assetsUrl);
         this.t = t;
         this.type = type;
+        this.scriptVersion = scriptVersion;
+        this.stylesheetVersion = stylesheetVersion;
         PageContext pageContext = new PageContext.Builder()
                 .applicationTitle(applicationTitle)
                 .assetsUrl(assetsUrl)
@@ -77,16 +89,16 @@ public class LinkOptimizingVisitor extends HtmlProviderVisitor {
         if (type.equals(Form.class)) {
             Form form = Form.class.cast(t);
             if (form.isAnonymous())
-                dependencies.addAttribute("href", publicUrl + "/resource/css/Form.css");
+                dependencies.addAttribute("href", publicUrl + "/resource/css/" + versioned("Form", stylesheetVersion) + ".css");
             else
-                dependencies.addAttribute("href", applicationUrl + "/resource/css/Form.css");
+                dependencies.addAttribute("href", applicationUrl + "/resource/css/" + versioned("Form", stylesheetVersion) + ".css");
 
         } else if (type.equals(SearchResults.class)) {
             dependencies.addAttribute("href", applicationUrl + "/resource/css/SearchResults.form.css");
         } else if (type.equals(IndexView.class)) {
-            dependencies.addAttribute("href", applicationUrl + "/resource/css/IndexView.css");
+            dependencies.addAttribute("href", applicationUrl + "/resource/css/" + versioned("IndexView", stylesheetVersion) + ".css");
         } else if (type.equals(Explanation.class)) {
-            dependencies.addAttribute("href", publicUrl + "/resource/css/Explanation.css");
+            dependencies.addAttribute("href", publicUrl + "/resource/css/" + versioned("Explanation", stylesheetVersion) + ".css");
         }
         tagNode.addChild(dependencies);
     }
@@ -118,16 +130,16 @@ public class LinkOptimizingVisitor extends HtmlProviderVisitor {
         if (type.equals(Form.class)) {
             Form form = Form.class.cast(t);
             if (form.isAnonymous())
-                dependencies.addAttribute("src", publicUrl + "/resource/script/Form.js");
+                dependencies.addAttribute("src", publicUrl + "/resource/script/" + versioned("Form", scriptVersion) + ".js");
             else
-                dependencies.addAttribute("src", applicationUrl + "/resource/script/Form.js");
+                dependencies.addAttribute("src", applicationUrl + "/resource/script/" + versioned("Form", scriptVersion) + ".js");
 
         } else if (type.equals(SearchResults.class)) {
             dependencies.addAttribute("src", applicationUrl + "/resource/script/SearchResults.form.js");
         } else if (type.equals(IndexView.class)) {
-            dependencies.addAttribute("src", applicationUrl + "/resource/script/IndexView.js");
+            dependencies.addAttribute("src", applicationUrl + "/resource/script/" + versioned("IndexView", scriptVersion) + ".js");
         } else if (type.equals(Explanation.class)) {
-            dependencies.addAttribute("href", publicUrl + "/resource/script/Explanation.js");
+            dependencies.addAttribute("href", publicUrl + "/resource/script/" + versioned("Explanation", scriptVersion) + ".js");
         }
         tagNode.addChild(dependencies);
     }
@@ -161,4 +173,10 @@ public class LinkOptimizingVisitor extends HtmlProviderVisitor {
             tagNode.removeFromTree();
     }
 
+    private static String versioned(String id, String version) {
+        if (StringUtils.isEmpty(version))
+            return id;
+        return id + "." + version;
+    }
+
 }
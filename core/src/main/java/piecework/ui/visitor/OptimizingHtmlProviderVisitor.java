@@ -136,7 +136,7 @@ public class OptimizingHtmlProviderVisitor extends HtmlProviderVisitor {
         return out.toString();
     }
 
-    private synchronized void handleAttribute(String name, String path, TagNode tagNode, StringBuffer buffer) {
+    private void handleAttribute(String name, String path, TagNode tagNode, StringBuffer buffer) {
         if (StringUtils.isEmpty(path))
             return;
 
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.util;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * List that holds a single element in a field, and only allocates an array once a second element
+ * is added. Almost every form value is single valued, so this saves an array for nearly every
+ * entry in a ManyMap. Not thread safe.
+ *
+ * @author James Renfro
+ */
+final class CompactList<E> extends AbstractList<E> implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = 2317356924437519618L;
+
+    private E single;
+    private boolean hasSingle;
+    private List<E> many;
+
+    CompactList() {
+
+    }
+
+    CompactList(E element) {
+        this.single = element;
+        this.hasSingle = true;
+    }
+
+    @Override
+    public E get(int index) {
+        if (many != null)
+            return many.get(index);
+        if (index != 0 || !hasSingle)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        return single;
+    }
+
+    @Override
+    public int size() {
+        if (many != null)
+            return many.size();
+        return hasSingle ? 1 : 0;
+    }
+
+    @Override
+    public E set(int index, E element) {
+        if (many != null)
+            return many.set(index, element);
+        E previous = get(index);
+        single = element;
+        return previous;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        modCount++;
+        if (many == null) {
+            if (!hasSingle && index == 0) {
+                single = element;
+                hasSingle = true;
+                return;
+            }
+            if (index < 0 || index > size())
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+
+            many = new ArrayList<E>(4);
+            if (hasSingle)
+                many.add(single);
+            single = null;
+            hasSingle = false;
+        }
+        many.add(index, element);
+    }
+
+    @Override
+    public E remove(int index) {
+        modCount++;
+        if (many != null)
+            return many.remove(index);
+        E previous = get(index);
+        single = null;
+        hasSingle = false;
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        modCount++;
+        single = null;
+        hasSingle = false;
+        many = null;
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.util;
+
+import org.apache.log4j.Logger;
+import piecework.model.Constraint;
+import piecework.model.Field;
+import piecework.model.Value;
+
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Constraint tree compiled into a reusable predicate, with the pattern for each node compiled
+ * once and the 'and' and 'or' branches ordered so that the cheapest are tried first. Evaluation
+ * gives the same result as the original interpretation of the tree in ConstraintUtil: a node
+ * is satisfied when every value submitted for the named field (or the field's default, if
+ * nothing was submitted) matches its pattern and all of its 'and' constraints are satisfied,
+ * or when any of its 'or' constraints is satisfied.
+ *
+ * Instances are immutable and are cached on the Constraint they were compiled from, which in
+ * turn lives as long as the activity that holds it.
+ *
+ * @author James Renfro
+ */
+public class CompiledConstraint {
+
+    private static final Logger LOG = Logger.getLogger(CompiledConstraint.class);
+    private static final CompiledConstraint[] NONE = new CompiledConstraint[0];
+
+    private final String name;
+    private final Pattern pattern;
+    private final CompiledConstraint[] and;
+    private final CompiledConstraint[] or;
+    private final int cost;
+
+    private CompiledConstraint(String name, Pattern pattern, CompiledConstraint[] and, CompiledConstraint[] or) {
+        this.name = name;
+        this.pattern = pattern;
+        this.and = and;
+        this.or = or;
+
+        int cost = 1;
+        for (CompiledConstraint child : and)
+            cost += child.cost;
+        for (CompiledConstraint child : or)
+            cost += child.cost;
+        this.cost = cost;
+    }
+
+    public static CompiledConstraint compile(Constraint constraint) {
+        if (constraint == null)
+            return null;
+
+        return new CompiledConstraint(constraint.getName(), pattern(constraint), compile(constraint.getAnd()), compile(constraint.getOr()));
+    }
+
+    public boolean evaluate(Map<String, Field> fieldMap, Map<String, List<Value>> submissionData) {
+        if (matches(fieldMap, submissionData)) {
+            for (CompiledConstraint child : and) {
+                if (!child.evaluate(fieldMap, submissionData))
+                    return false;
+            }
+            return true;
+        }
+
+        for (CompiledConstraint child : or) {
+            if (child.evaluate(fieldMap, submissionData))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean matches(Map<String, Field> fieldMap, Map<String, List<Value>> submissionData) {
+        if (pattern == null)
+            return false;
+
+        Field constraintField = fieldMap != null ? fieldMap.get(name) : null;
+        List<Value> values = submissionData != null ? submissionData.get(name) : null;
+
+        if (values == null || values.isEmpty()) {
+            if (constraintField == null)
+                return false;
+            String defaultFieldValue = constraintField.getDefaultValue();
+            return defaultFieldValue != null && pattern.matcher(defaultFieldValue).matches();
+        }
+
+        if (values instanceof RandomAccess) {
+            int size = values.size();
+            for (int i = 0; i < size; i++) {
+                if (!matches(values.get(i)))
+                    return false;
+            }
+        } else {
+            for (Value value : values) {
+                if (!matches(value))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(Value value) {
+        String text = value != null ? value.getValue() : null;
+        return text != null && pattern.matcher(text).matches();
+    }
+
+    private static CompiledConstraint[] compile(List<Constraint> constraints) {
+        if (constraints == null || constraints.isEmpty())
+            return NONE;
+
+        List<CompiledConstraint> compiled = new ArrayList<CompiledConstraint>(constraints.size());
+        for (Constraint constraint : constraints) {
+            if (constraint != null)
+                compiled.add(constraint.compiled());
+        }
+
+        // Evaluation has no side effects, so the order only matters for speed
+        Collections.sort(compiled, new Comparator<CompiledConstraint>() {
+            @Override
+            public int compare(CompiledConstraint o1, CompiledConstraint o2) {
+                return o1.cost < o2.cost ? -1 : (o1.cost == o2.cost ? 0 : 1);
+            }
+        });
+        return compiled.toArray(new CompiledConstraint[compiled.size()]);
+    }
+
+    private static Pattern pattern(Constraint constraint) {
+        if (constraint.getValue() == null)
+            return null;
+
+        try {
+            return Pattern.compile(constraint.getValue());
+        } catch (PatternSyntaxException e) {
+            LOG.error("Constraint " + constraint.getConstraintId() + " on " + constraint.getName() + " has an invalid pattern and will never be satisfied", e);
+            return null;
+        }
+    }
+
+}
@@ -23,7 +23,6 @@ import piecework.model.Value;
 
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 /**
  * @author James Renfro
@@ -44,43 +43,15 @@ public class ConstraintUtil {
         return null;
     }
 
+    /*
+     * Evaluates the constraint against the submitted values, falling back to the field's default value when nothing
+     * has been submitted for it. The constraint tree is compiled once and cached on the constraint (see CompiledConstraint).
+     */
     public static boolean evaluate(Map<String, Field> fieldMap, Map<String, List<Value>> submissionData, Constraint constraint) {
         if (constraint == null)
             return true;
 
-        String constraintName = constraint.getName();
-        String constraintValue = constraint.getValue();
-        Pattern pattern = Pattern.compile(constraintValue);
-
-        boolean isSatisfied = false;
-
-        Field constraintField = fieldMap != null ? fieldMap.get(constraintName) : null;
-        List<? extends Value> values = submissionData != null ? submissionData.get(constraintName) : null;
-
-        // Evaluate whether this particular item is satisfied
-        if (constraintField != null && (values == null || values.isEmpty())) {
-            String defaultFieldValue = constraintField.getDefaultValue();
-            isSatisfied = defaultFieldValue != null && pattern.matcher(defaultFieldValue).matches();
-        } else {
-            if (values != null) {
-                for (Value value : values) {
-                    isSatisfied = values != null && pattern.matcher(value.getValue()).matches();
-                    if (!isSatisfied)
-                        break;
-                }
-            }
-        }
-
-        // If it is satisfied, then evaluate each of the 'and' constraints
-        if (isSatisfied) {
-            return checkAll(null, fieldMap, submissionData, constraint.getAnd());
-        } else {
-            if (constraint.getOr() != null && !constraint.getOr().isEmpty())
-                return checkAny(null, fieldMap, submissionData, constraint.getOr());
-        }
-
-
-        return isSatisfied;
+        return constraint.compiled().evaluate(fieldMap, submissionData);
     }
 
     public static boolean checkAll(String type, Map<String, Field> fieldMap, Map<String, List<Value>> submissionData, List<Constraint> constraints) {
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.util;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Splits keywords into lower case tokens of letters and digits, so that they can be stored in
+ * a multikey index and searched with anchored prefix expressions, which Mongo can answer from
+ * the index, rather than with unanchored regular expressions, which it cannot.
+ *
+ * @author James Renfro
+ */
+public class KeywordUtility {
+
+    // Long tokens are truncated, since a prefix of this length is selective enough for any search
+    public static final int MAXIMUM_TOKEN_LENGTH = 32;
+
+    public static Set<String> tokens(Collection<String> values) {
+        Set<String> tokens = new TreeSet<String>();
+        if (values != null) {
+            for (String value : values) {
+                tokens(value, tokens);
+            }
+        }
+        return tokens;
+    }
+
+    public static Set<String> tokens(String value) {
+        Set<String> tokens = new TreeSet<String>();
+        tokens(value, tokens);
+        return tokens;
+    }
+
+    /*
+     * Returns an anchored expression for each token in the keyword. Since tokens only contain letters and
+     * digits, they never need to be quoted, which would keep Mongo from using the index to match them.
+     */
+    public static List<Pattern> prefixes(String keyword) {
+        Set<String> tokens = tokens(keyword);
+        List<Pattern> patterns = new ArrayList<Pattern>(tokens.size());
+        for (String token : tokens) {
+            patterns.add(Pattern.compile("^" + token));
+        }
+        return patterns;
+    }
+
+    private static void tokens(String value, Set<String> tokens) {
+        if (StringUtils.isEmpty(value))
+            return;
+
+        String lowerCase = value.toLowerCase();
+        int start = -1;
+        for (int i = 0; i <= lowerCase.length(); i++) {
+            boolean isTokenCharacter = i < lowerCase.length() && Character.isLetterOrDigit(lowerCase.charAt(i));
+            if (isTokenCharacter && start == -1) {
+                start = i;
+            } else if (!isTokenCharacter && start != -1) {
+                tokens.add(lowerCase.substring(start, Math.min(i, start + MAXIMUM_TOKEN_LENGTH)));
+                start = -1;
+            }
+        }
+    }
+
+}
@@ -15,12 +15,18 @@
  */
 package piecework.util;
 
-import java.util.Hashtable;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Vector;
 
-public class ManyMap<K, V> extends Hashtable<K, List<V>> implements Map<K, List<V>> {
+/**
+ * Map of keys to lists of values. Instances are almost always confined to a single request, so
+ * this is not synchronized, and keys added through putOne hold their first value without allocating
+ * an array. Maps that are shared between threads must not be modified once they are published.
+ *
+ * @author James Renfro
+ */
+public class ManyMap<K, V> extends HashMap<K, List<V>> implements Map<K, List<V>> {
     
 	private static final long serialVersionUID = -5990287399286512607L;
 
@@ -36,18 +42,18 @@ public class ManyMap<K, V> extends Hashtable<K, List<V>> implements Map<K, List<
 		super(initialCapacity);
 	}
 	
-	public synchronized V getOne(K key) {
+	public V getOne(K key) {
 		List<V> list = get(key);
 		
-		return list != null && !list.isEmpty() ? list.iterator().next() : null;
+		return list != null && !list.isEmpty() ? list.get(0) : null;
 	}
 	
-	public synchronized int putOne(K key, V value) {
+	public int putOne(K key, V value) {
 		
 		List<V> list = get(key);
 		if (list == null) {
-			list = new Vector<V>();
-			put(key, list);
+			put(key, new CompactList<V>(value));
+			return 1;
 		}
 		list.add(value);
 		
@@ -22,6 +22,9 @@ import piecework.util.ManyMap;
 import java.util.*;
 
 /**
+ * Immutable once built, so that a single template can be cached and shared by every
+ * submission against the same activity (see SubmissionTemplateFactory).
+ *
  * @author James Renfro
  */
 public class SubmissionTemplate {
@@ -48,7 +51,11 @@ public class SubmissionTemplate {
         this.restricted = Collections.unmodifiableSet(builder.restricted);
         this.userFields = Collections.unmodifiableSet(builder.userFields);
         this.isAttachmentAllowed = builder.isAttachmentAllowed;
-        this.fieldRuleMap = Collections.unmodifiableMap(builder.fieldRuleMap);
+        Map<Field, List<ValidationRule>> fieldRuleMap = new HashMap<Field, List<ValidationRule>>();
+        for (Map.Entry<Field, List<ValidationRule>> entry : builder.fieldRuleMap.entrySet()) {
+            fieldRuleMap.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+        }
+        this.fieldRuleMap = Collections.unmodifiableMap(fieldRuleMap);
         this.maxAttachmentSize = builder.maxAttachmentSize;
     }
 
@@ -16,11 +16,17 @@
 package piecework.validation;
 
 import com.google.common.collect.Sets;
+import com.mongodb.DBObject;
 import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
 import org.springframework.stereotype.Service;
 import piecework.Constants;
 import piecework.Registry;
+import piecework.cache.CacheInvalidationBroadcaster;
 import piecework.enumeration.ActionType;
 import piecework.enumeration.FieldTag;
 import piecework.exception.InternalServerError;
@@ -36,13 +42,25 @@ import java.util.*;
 import java.util.regex.Pattern;
 
 /**
+ * Builds the submission templates that submissions are validated against. A template depends only on
+ * the activity and the container being validated, so templates are cached by deployment, activity and
+ * validation id, and built ahead of time for every activity when a deployment is published. Templates
+ * for fields whose options are resolved from the registry are never cached, since those options can change.
+ *
  * @author James Renfro
  */
 @Service
-public class SubmissionTemplateFactory {
+public class SubmissionTemplateFactory extends AbstractMongoEventListener<Object> {
 
+    private static final Logger LOG = Logger.getLogger(SubmissionTemplateFactory.class);
     private static final Set<FieldTag> FREEFORM_INPUT_TYPES = Sets.newHashSet(FieldTag.FILE, FieldTag.EMAIL, FieldTag.NUMBER, FieldTag.TEXT, FieldTag.TEXTAREA);
 
+    @Autowired(required=false)
+    CacheInvalidationBroadcaster broadcaster;
+
+    @Autowired(required=false)
+    CacheManager cacheManager;
+
     @Autowired(required=false)
     Registry registry;
 
@@ -77,6 +95,80 @@ public class SubmissionTemplateFactory {
         if (deployment == null)
             throw new InternalServerError(Constants.ExceptionCodes.process_is_misconfigured);
 
+        Cache cache = cache();
+        String key = key(deployment, activity, validationId);
+        if (cache != null && key != null) {
+            Cache.ValueWrapper wrapper = cache.get(key);
+            if (wrapper != null && wrapper.get() != null)
+                return SubmissionTemplate.class.cast(wrapper.get());
+        }
+
+        SubmissionTemplate template = build(activity, validationId);
+        if (cache != null && key != null && isCacheable(template))
+            cache.put(key, template);
+
+        return template;
+    }
+
+    /*
+     * Builds and caches the templates for every activity of a deployment, both for the activity as a whole and
+     * for each of the containers that can be validated on its own, so the first submissions don't pay for them
+     */
+    public void precompile(ProcessDeployment deployment) {
+        Cache cache = cache();
+        if (cache == null || deployment == null || deployment.getActivityMap() == null)
+            return;
+
+        int count = 0;
+        for (Activity activity : deployment.getActivityMap().values()) {
+            Container parentContainer = activity != null ? ActivityUtil.parent(activity, ActionType.CREATE) : null;
+            if (parentContainer == null)
+                continue;
+
+            Set<String> validationIds = new LinkedHashSet<String>();
+            validationIds.add(null);
+            containerIds(ActivityUtil.child(activity, ActionType.CREATE, parentContainer), validationIds);
+
+            for (String validationId : validationIds) {
+                String key = key(deployment, activity, validationId);
+                if (key == null)
+                    continue;
+                SubmissionTemplate template = build(activity, validationId);
+                if (isCacheable(template)) {
+                    cache.put(key, template);
+                    count++;
+                }
+            }
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Precompiled " + count + " submission templates for deployment " + deployment.getDeploymentId());
+    }
+
+    /*
+     * Activities and deployments that are still being edited are saved as they change, so clear everything,
+     * since saves are rare compared to submissions and a template can't easily be traced back to its activity
+     */
+    @Override
+    public void onAfterSave(Object source, DBObject dbo) {
+        if (!(source instanceof Activity) && !(source instanceof ProcessDeployment))
+            return;
+
+        Cache cache = cache();
+        if (cache == null)
+            return;
+
+        cache.clear();
+        if (broadcaster != null) {
+            try {
+                broadcaster.broadcast(Constants.CacheNames.SUBMISSION_TEMPLATES, null);
+            } catch (Exception e) {
+                LOG.error("Unable to broadcast clearing of submission templates", e);
+            }
+        }
+    }
+
+    private SubmissionTemplate build(Activity activity, String validationId) {
         Set<Field> fields = null;
 
         SubmissionTemplate.Builder builder = new SubmissionTemplate.Builder();
@@ -193,6 +285,52 @@ public class SubmissionTemplateFactory {
 //        return builder.build();
 //    }
 
+    private Cache cache() {
+        return cacheManager != null ? cacheManager.getCache(Constants.CacheNames.SUBMISSION_TEMPLATES) : null;
+    }
+
+    private static void containerIds(Container container, Set<String> containerIds) {
+        if (container == null || container.getChildren() == null)
+            return;
+
+        for (Container child : container.getChildren()) {
+            if (child == null)
+                continue;
+            if (child.getContainerId() != null)
+                containerIds.add(child.getContainerId());
+            containerIds(child, containerIds);
+        }
+    }
+
+    /*
+     * Options that are resolved from the registry are looked up when the template is built, and may change
+     */
+    private boolean isCacheable(SubmissionTemplate template) {
+        if (registry == null)
+            return true;
+
+        for (Field field : template.getFieldRuleMap().keySet()) {
+            List<Constraint> constraints = field.getConstraints();
+            if (constraints == null)
+                continue;
+            for (Constraint constraint : constraints) {
+                if (constraint != null && Constants.ConstraintTypes.IS_LIMITED_TO.equals(constraint.getType()))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private static String key(ProcessDeployment deployment, Activity activity, String validationId) {
+        if (deployment.getDeploymentId() == null || activity == null || activity.getActivityId() == null)
+            return null;
+
+        StringBuilder key = new StringBuilder(deployment.getDeploymentId()).append(':').append(activity.getActivityId());
+        if (StringUtils.isNotEmpty(validationId))
+            key.append(':').append(validationId);
+        return key.toString();
+    }
+
     private void addField(SubmissionTemplate.Builder builder, Field field) {
         builder.rules(field, new ArrayList<ValidationRule>(validationRules(field)));
         if (!field.isDeleted() && field.isEditable()) {
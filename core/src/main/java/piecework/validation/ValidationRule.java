@@ -19,7 +19,6 @@ import org.apache.commons.lang.StringUtils;
 import piecework.exception.ValidationRuleException;
 import piecework.model.*;
 import piecework.util.ConstraintUtil;
-import piecework.util.ManyMap;
 
 import java.util.*;
 import java.util.regex.Pattern;
@@ -75,7 +74,7 @@ public class ValidationRule {
         this.required = builder.required;
     }
 
-    public void evaluate(ManyMap<String, Value> submissionData,  ManyMap<String, Value> instanceData) throws ValidationRuleException {
+    public void evaluate(Map<String, List<Value>> submissionData,  Map<String, List<Value>> instanceData) throws ValidationRuleException {
         switch(type) {
         case CONSTRAINED:
             evaluateConstraint(submissionData);
@@ -120,21 +119,21 @@ public class ValidationRule {
         return name;
     }
 
-    private void evaluateConstraint(ManyMap<String, Value> submissionData) throws ValidationRuleException {
+    private void evaluateConstraint(Map<String, List<Value>> submissionData) throws ValidationRuleException {
         if (!ConstraintUtil.evaluate(null, submissionData, constraint))
             throw new ValidationRuleException("Not a valid input for this field");
     }
 
-    private void evaluateConstraintRequired(ManyMap<String, Value> submissionData) throws ValidationRuleException {
+    private void evaluateConstraintRequired(Map<String, List<Value>> submissionData) throws ValidationRuleException {
         if (ConstraintUtil.evaluate(null, submissionData, constraint))
             evaluateRequired(submissionData);
     }
 
-    private void evaluateEmail(ManyMap<String, Value> submissionData) throws ValidationRuleException {
+    private void evaluateEmail(Map<String, List<Value>> submissionData) throws ValidationRuleException {
 
     }
 
-    private void evaluateOptions(ManyMap<String, Value> submissionData) throws ValidationRuleException {
+    private void evaluateOptions(Map<String, List<Value>> submissionData) throws ValidationRuleException {
         if (options == null || options.isEmpty())
             throw new ValidationRuleException("No valid options for this field");
 
@@ -145,7 +144,7 @@ public class ValidationRule {
         }
     }
 
-    private void evaluateNumberOfInputs(ManyMap<String, Value> submissionData) throws ValidationRuleException {
+    private void evaluateNumberOfInputs(Map<String, List<Value>> submissionData) throws ValidationRuleException {
         if (constraint != null && !ConstraintUtil.evaluate(null, submissionData, constraint))
             return;
 
@@ -169,7 +168,7 @@ public class ValidationRule {
             throw new ValidationRuleException("At least " + minInputs + " are required");
     }
 
-    private void evaluateNumeric(ManyMap<String, Value> submissionData) throws ValidationRuleException {
+    private void evaluateNumeric(Map<String, List<Value>> submissionData) throws ValidationRuleException {
         List<? extends Value> values = safeValues(name, submissionData);
         for (Value value : values) {
             if (value != null && StringUtils.isNotEmpty(value.getValue()) && !value.getValue().matches("^[0-9]+$"))
@@ -177,7 +176,7 @@ public class ValidationRule {
         }
     }
 
-    private void evaluatePattern(ManyMap<String, Value> submissionData) throws ValidationRuleException {
+    private void evaluatePattern(Map<String, List<Value>> submissionData) throws ValidationRuleException {
         List<? extends Value> values = safeValues(name, submissionData);
         for (Value value : values) {
             if (value != null && StringUtils.isNotEmpty(value.getValue()) && pattern != null && !pattern.matcher(value.getValue()).matches()) {
@@ -190,7 +189,7 @@ public class ValidationRule {
         }
     }
 
-    private void evaluateRequired(ManyMap<String, Value> submissionData) throws ValidationRuleException {
+    private void evaluateRequired(Map<String, List<Value>> submissionData) throws ValidationRuleException {
         boolean hasAtLeastOneValue = false;
         List<? extends Value> values = safeValues(name, submissionData);
         for (Value value : values) {
@@ -214,7 +213,7 @@ public class ValidationRule {
             throw new ValidationRuleException("Field is required");
     }
 
-    private void evaluateRequiredIfNoPrevious(ManyMap<String, Value> submissionData, ManyMap<String, Value> instanceData) throws ValidationRuleException {
+    private void evaluateRequiredIfNoPrevious(Map<String, List<Value>> submissionData, Map<String, List<Value>> instanceData) throws ValidationRuleException {
         boolean hasAtLeastOneValue = false;
         List<? extends Value> values = safeValues(name, submissionData);
         for (Value value : values) {
@@ -240,11 +239,11 @@ public class ValidationRule {
             throw new ValidationRuleException("Field is required");
     }
 
-    private void evaluateValidUser(ManyMap<String, Value> submissionData) throws ValidationRuleException {
+    private void evaluateValidUser(Map<String, List<Value>> submissionData) throws ValidationRuleException {
 
     }
 
-    private void evaluateValueLength(ManyMap<String, Value> submissionData) throws ValidationRuleException {
+    private void evaluateValueLength(Map<String, List<Value>> submissionData) throws ValidationRuleException {
         List<? extends Value> values = safeValues(name, submissionData);
         for (Value value : values) {
             if (value != null && value.getValue() != null) {
@@ -256,7 +255,7 @@ public class ValidationRule {
         }
     }
 
-    private void evaluateValuesMatch(ManyMap<String, Value> submissionData) throws ValidationRuleException {
+    private void evaluateValuesMatch(Map<String, List<Value>> submissionData) throws ValidationRuleException {
         if (constraint != null && !ConstraintUtil.evaluate(null, submissionData, constraint))
             return;
 
@@ -271,7 +270,7 @@ public class ValidationRule {
         }
     }
 
-    private List<? extends Value> safeValues(String name, ManyMap<String, Value> submissionData) {
+    private List<? extends Value> safeValues(String name, Map<String, List<Value>> submissionData) {
         List<? extends Value> values = null;
 
         if (name != null)
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.authorization;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import piecework.model.Authorization;
+import piecework.persistence.AuthorizationRepository;
+
+import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author James Renfro
+ */
+public class AuthorizationRoleMapperTest {
+
+    private AuthorizationRoleMapper mapper;
+
+    @Before
+    public void setup() {
+        Authorization authorization = new Authorization.Builder()
+                .authorizationId("staff")
+                .authority(new ResourceAuthority.Builder().role(AuthorizationRole.USER).processDefinitionKey("demo").build())
+                .build();
+
+        mapper = new AuthorizationRoleMapper();
+        mapper.repository = Mockito.mock(AuthorizationRepository.class);
+        mapper.cacheManager = new ConcurrentMapCacheManager();
+        Mockito.when(mapper.repository.findAll(Mockito.any(Iterable.class))).thenReturn(Collections.singletonList(authorization));
+    }
+
+    @Test
+    public void testMappedAuthorityIsCachedForGroupSet() {
+        AccessAuthority first = map("staff", "faculty");
+        AccessAuthority second = map("faculty", "staff");
+
+        Assert.assertSame(first, second);
+        Assert.assertTrue(first.isAuthorized(AuthorizationRole.USER, "demo"));
+        Assert.assertFalse(first.isAuthorized(AuthorizationRole.OVERSEER, "demo"));
+        Mockito.verify(mapper.repository, Mockito.times(1)).findAll(Mockito.any(Iterable.class));
+    }
+
+    @Test
+    public void testSaveClearsCache() {
+        AccessAuthority first = map("staff");
+        mapper.onAfterSave(new Authorization.Builder().authorizationId("staff").build(), null);
+        AccessAuthority second = map("staff");
+
+        Assert.assertNotSame(first, second);
+        Mockito.verify(mapper.repository, Mockito.times(2)).findAll(Mockito.any(Iterable.class));
+    }
+
+    @Test
+    public void testDeleteClearsCache() {
+        AccessAuthority first = map("staff");
+        mapper.onAfterDelete(null);
+        AccessAuthority second = map("staff");
+
+        Assert.assertNotSame(first, second);
+        Mockito.verify(mapper.repository, Mockito.times(2)).findAll(Mockito.any(Iterable.class));
+    }
+
+    @Test
+    public void testProcessDefinitionKeyIndex() throws Exception {
+        Assert.assertEquals(1, ResourceAccessVoter.findProcessDefinitionKeyIndex(Resource.class.getMethod("read", String.class, String.class)));
+        Assert.assertEquals(-1, ResourceAccessVoter.findProcessDefinitionKeyIndex(Resource.class.getMethod("search", String.class)));
+    }
+
+    private AccessAuthority map(String ... groupIds) {
+        List<GrantedAuthority> authorities = new ArrayList<GrantedAuthority>();
+        for (String groupId : groupIds)
+            authorities.add(new SimpleGrantedAuthority(groupId));
+        Collection<? extends GrantedAuthority> mapped = mapper.mapAuthorities(authorities);
+        Assert.assertEquals(1, mapped.size());
+        return AccessAuthority.class.cast(mapped.iterator().next());
+    }
+
+    public interface Resource {
+
+        void read(@PathParam("processInstanceId") String processInstanceId, @PathParam("processDefinitionKey") String processDefinitionKey);
+
+        void search(@QueryParam("keyword") String keyword);
+
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.cache;
+
+import com.google.common.base.Ticker;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author James Renfro
+ */
+public class BoundedCacheTest {
+
+    @Test
+    public void testNullValueIsCached() {
+        BoundedCache cache = new BoundedCache("test", new CacheSettings.Builder().build());
+        cache.put("missing", null);
+        Cache.ValueWrapper wrapper = cache.get("missing");
+        Assert.assertNotNull(wrapper);
+        Assert.assertNull(wrapper.get());
+    }
+
+    @Test
+    public void testMaximumSize() {
+        BoundedCache cache = new BoundedCache("test", new CacheSettings.Builder().maximumSize(2).build());
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        Assert.assertEquals(2, cache.getSize());
+        Assert.assertEquals(1, cache.getStats().evictionCount());
+    }
+
+    @Test
+    public void testTimeToLive() {
+        FakeTicker ticker = new FakeTicker();
+        BoundedCache cache = new BoundedCache("test", new CacheSettings.Builder().timeToLiveSeconds(60).build(), ticker);
+        cache.put("a", "1");
+        Assert.assertEquals("1", cache.get("a").get());
+        ticker.advance(61);
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(1, cache.getStats().hitCount());
+    }
+
+    @Test
+    public void testRefreshReportsMissToOnlyOneCaller() {
+        FakeTicker ticker = new FakeTicker();
+        BoundedCache cache = new BoundedCache("test", new CacheSettings.Builder().refreshSeconds(10).build(), ticker);
+        cache.put("a", "1");
+        ticker.advance(11);
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals("1", cache.get("a").get());
+        cache.put("a", "2");
+        Assert.assertEquals("2", cache.get("a").get());
+        Assert.assertEquals(1, cache.getRefreshCount());
+    }
+
+    @Test
+    public void testFailedRefreshIsRetried() {
+        FakeTicker ticker = new FakeTicker();
+        BoundedCache cache = new BoundedCache("test", new CacheSettings.Builder().refreshSeconds(10).build(), ticker);
+        cache.put("a", "1");
+        ticker.advance(11);
+        Assert.assertNull(cache.get("a"));
+
+        // The caller that was told to reload never puts a value, so the claim lapses
+        ticker.advance(5);
+        Assert.assertEquals("1", cache.get("a").get());
+        ticker.advance(6);
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals("1", cache.get("a").get());
+        Assert.assertEquals(2, cache.getRefreshCount());
+    }
+
+    @Test
+    public void testClear() {
+        BoundedCache cache = new BoundedCache("test", new CacheSettings.Builder().build());
+        cache.put("a", "1");
+        cache.clear();
+        Assert.assertNull(cache.get("a"));
+    }
+
+    private static class FakeTicker extends Ticker {
+
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        public void advance(long seconds) {
+            nanos.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+        }
+
+    }
+
+}
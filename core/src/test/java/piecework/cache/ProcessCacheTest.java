@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.cache;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import piecework.model.Process;
+import piecework.model.ProcessDeployment;
+import piecework.persistence.DeploymentRepository;
+import piecework.persistence.ProcessRepository;
+
+import java.util.*;
+
+/**
+ * @author James Renfro
+ */
+public class ProcessCacheTest {
+
+    private ProcessCache processCache;
+
+    private ProcessDeployment first;
+    private ProcessDeployment second;
+
+    @Before
+    public void setup() {
+        first = new ProcessDeployment.Builder().deploymentId("1").build();
+        second = new ProcessDeployment.Builder().deploymentId("2").build();
+
+        processCache = new ProcessCache();
+        processCache.cacheManager = new ConcurrentMapCacheManager();
+        processCache.broadcaster = Mockito.mock(CacheInvalidationBroadcaster.class);
+        processCache.deploymentRepository = Mockito.mock(DeploymentRepository.class);
+        processCache.processRepository = Mockito.mock(ProcessRepository.class);
+
+        Mockito.when(processCache.deploymentRepository.findOne("1")).thenReturn(first);
+        Mockito.when(processCache.processRepository.findOne("demo")).thenReturn(new Process.Builder().processDefinitionKey("demo").build());
+    }
+
+    @Test
+    public void testDeploymentIsReadThrough() {
+        Assert.assertSame(first, processCache.deployment("1"));
+        Assert.assertSame(first, processCache.deployment("1"));
+
+        Mockito.verify(processCache.deploymentRepository, Mockito.times(1)).findOne("1");
+    }
+
+    @Test
+    public void testMissingDeploymentIsNotCached() {
+        Assert.assertNull(processCache.deployment("3"));
+        Assert.assertNull(processCache.deployment("3"));
+
+        Mockito.verify(processCache.deploymentRepository, Mockito.times(2)).findOne("3");
+    }
+
+    @Test
+    public void testDeploymentsOnlyQueriesUncached() {
+        processCache.deployment("1");
+        Mockito.when(processCache.deploymentRepository.findAll(Collections.singleton("2"))).thenReturn(Collections.singletonList(second));
+
+        Map<String, ProcessDeployment> deploymentMap = processCache.deployments(new HashSet<String>(Arrays.asList("1", "2")));
+
+        Assert.assertEquals(2, deploymentMap.size());
+        Assert.assertSame(first, deploymentMap.get("1"));
+        Assert.assertSame(second, deploymentMap.get("2"));
+        Mockito.verify(processCache.deploymentRepository).findAll(Collections.singleton("2"));
+    }
+
+    @Test
+    public void testSaveEvictsAndBroadcasts() {
+        processCache.process("demo");
+        processCache.deployment("1");
+
+        processCache.onAfterSave(first, null);
+
+        Assert.assertSame(first, processCache.deployment("1"));
+        processCache.process("demo");
+        Mockito.verify(processCache.deploymentRepository, Mockito.times(2)).findOne("1");
+        Mockito.verify(processCache.processRepository, Mockito.times(2)).findOne("demo");
+        Mockito.verify(processCache.broadcaster).broadcast("deployments", "1");
+        Mockito.verifyNoMoreInteractions(processCache.broadcaster);
+    }
+
+    @Test
+    public void testDeploymentEvictedElsewhereClearsProcesses() {
+        processCache.process("demo");
+        processCache.process("demo");
+
+        processCache.onInvalidation("deployments", "1");
+
+        processCache.process("demo");
+        Mockito.verify(processCache.processRepository, Mockito.times(2)).findOne("demo");
+        Mockito.verifyZeroInteractions(processCache.broadcaster);
+    }
+
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.engine;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+import piecework.enumeration.ActionType;
+import piecework.enumeration.DispatchStatus;
+import piecework.enumeration.StateChangeType;
+import piecework.model.Process;
+import piecework.model.ProcessInstance;
+import piecework.model.QueuedStateChange;
+import piecework.model.Task;
+import piecework.persistence.StateChangeQueueRepository;
+import piecework.service.ProcessInstanceService;
+import piecework.service.ProcessService;
+import piecework.service.TaskService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @author James Renfro
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class EngineStateSynchronizerTest {
+
+    @InjectMocks
+    EngineStateSynchronizer synchronizer;
+
+    @Mock
+    Mediator mediator;
+
+    @Mock
+    ProcessService processService;
+
+    @Mock
+    ProcessInstanceService processInstanceService;
+
+    @Mock
+    TaskService taskService;
+
+    @Mock
+    StateChangeQueueRepository stateChangeQueueRepository;
+
+    @Mock
+    Process process;
+
+    @Mock
+    ProcessInstance instance;
+
+    @Mock
+    EngineTask engineTask;
+
+    @Before
+    public void setup() throws Exception {
+        Mockito.when(process.getProcessDefinitionKey()).thenReturn("TEST");
+        Mockito.when(instance.getProcessInstanceId()).thenReturn("1");
+        Mockito.when(engineTask.getProcessDefinitionKey()).thenReturn("TEST");
+        Mockito.when(engineTask.getProcessInstanceId()).thenReturn("1");
+        Mockito.when(engineTask.getTaskId()).thenReturn("123");
+        Mockito.when(engineTask.getActionType()).thenReturn(ActionType.COMPLETE);
+        Mockito.when(engineTask.getCandidateAssigneeIds()).thenReturn(Collections.<String>emptySet());
+        Mockito.when(engineTask.getCandidateGroupIds()).thenReturn(Collections.<String>emptySet());
+        Mockito.when(processService.read("TEST")).thenReturn(process);
+        Mockito.when(processInstanceService.read(process, "1", true)).thenReturn(instance);
+        Mockito.when(taskService.update(Mockito.eq("1"), Mockito.any(Task.class))).thenReturn(Boolean.TRUE);
+    }
+
+    @Test
+    public void testApplyInstanceChangesInOrder() throws Exception {
+        QueuedStateChange created = new QueuedStateChange.Builder().type(StateChangeType.CREATE_TASK).sequence(1l).task(engineTask).build();
+        Mockito.when(engineTask.getAssigneeId()).thenReturn("testuser");
+        QueuedStateChange assigned = new QueuedStateChange.Builder().type(StateChangeType.ASSIGN_TASK).sequence(2l).task(engineTask).build();
+
+        List<StateChangeEvent> events = new ArrayList<StateChangeEvent>();
+        synchronizer.apply(list(created, assigned), events);
+
+        // The instance is read once, and the assignment starts from the task that was just created
+        Mockito.verify(processInstanceService, Mockito.times(1)).read(process, "1", true);
+        Mockito.verify(taskService, Mockito.never()).read(Mockito.any(ProcessInstance.class), Mockito.anyString());
+        Mockito.verify(stateChangeQueueRepository).delete(created.getQueuedStateChangeId());
+        Mockito.verify(stateChangeQueueRepository).delete(assigned.getQueuedStateChangeId());
+
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals(StateChangeType.CREATE_TASK, events.get(0).getType());
+        Assert.assertNull(events.get(0).getTask().getAssigneeId());
+        Assert.assertEquals(StateChangeType.ASSIGN_TASK, events.get(1).getType());
+        Assert.assertEquals("testuser", events.get(1).getTask().getAssigneeId());
+    }
+
+    @Test
+    public void testWaitForPredecessor() throws Exception {
+        QueuedStateChange earlier = new QueuedStateChange.Builder().type(StateChangeType.CREATE_TASK).sequence(1l).task(engineTask).build();
+        QueuedStateChange later = new QueuedStateChange.Builder().type(StateChangeType.COMPLETE_TASK).sequence(2l).task(engineTask).build();
+        Mockito.when(stateChangeQueueRepository.predecessor(later)).thenReturn(earlier);
+
+        List<StateChangeEvent> events = new ArrayList<StateChangeEvent>();
+        synchronizer.apply(list(later), events);
+
+        Assert.assertTrue(events.isEmpty());
+        Mockito.verify(taskService, Mockito.never()).update(Mockito.anyString(), Mockito.any(Task.class));
+        Mockito.verify(stateChangeQueueRepository, Mockito.never()).delete(Mockito.anyString());
+
+        ArgumentCaptor<QueuedStateChange> captor = ArgumentCaptor.forClass(QueuedStateChange.class);
+        Mockito.verify(stateChangeQueueRepository).save(captor.capture());
+        Assert.assertEquals(DispatchStatus.PENDING, captor.getValue().getStatus());
+        Assert.assertEquals(0, captor.getValue().getAttempts());
+        Assert.assertTrue(captor.getValue().getNextAttempt().after(new Date()));
+    }
+
+    @Test
+    public void testFailureHoldsBackLaterChanges() throws Exception {
+        QueuedStateChange created = new QueuedStateChange.Builder().type(StateChangeType.CREATE_TASK).sequence(1l).task(engineTask).build();
+        QueuedStateChange completed = new QueuedStateChange.Builder().type(StateChangeType.COMPLETE_TASK).sequence(2l).task(engineTask).build();
+        Mockito.when(taskService.update(Mockito.eq("1"), Mockito.any(Task.class))).thenReturn(Boolean.FALSE);
+
+        List<StateChangeEvent> events = new ArrayList<StateChangeEvent>();
+        synchronizer.apply(list(created, completed), events);
+
+        Assert.assertTrue(events.isEmpty());
+        Mockito.verify(taskService, Mockito.times(1)).update(Mockito.anyString(), Mockito.any(Task.class));
+        Mockito.verify(stateChangeQueueRepository, Mockito.never()).delete(Mockito.anyString());
+
+        // The failed change and the one behind it both go back on the queue
+        ArgumentCaptor<QueuedStateChange> captor = ArgumentCaptor.forClass(QueuedStateChange.class);
+        Mockito.verify(stateChangeQueueRepository, Mockito.times(2)).save(captor.capture());
+        Assert.assertEquals(created.getQueuedStateChangeId(), captor.getAllValues().get(0).getQueuedStateChangeId());
+        Assert.assertEquals(1, captor.getAllValues().get(0).getAttempts());
+        Assert.assertEquals(completed.getQueuedStateChangeId(), captor.getAllValues().get(1).getQueuedStateChangeId());
+        Assert.assertEquals(0, captor.getAllValues().get(1).getAttempts());
+    }
+
+    @Test
+    public void testFailedPredecessorFailsLaterChanges() throws Exception {
+        QueuedStateChange created = new QueuedStateChange.Builder().type(StateChangeType.CREATE_TASK).sequence(1l).task(engineTask)
+                .status(DispatchStatus.FAILED).build();
+        QueuedStateChange completed = new QueuedStateChange.Builder().type(StateChangeType.COMPLETE_TASK).sequence(2l).task(engineTask).build();
+        Mockito.when(stateChangeQueueRepository.predecessor(completed)).thenReturn(created);
+
+        List<StateChangeEvent> events = new ArrayList<StateChangeEvent>();
+        synchronizer.apply(list(completed), events);
+
+        // The completion is never applied to a task that was never stored
+        Assert.assertTrue(events.isEmpty());
+        Mockito.verify(taskService, Mockito.never()).read(Mockito.any(ProcessInstance.class), Mockito.anyString());
+        Mockito.verify(taskService, Mockito.never()).update(Mockito.anyString(), Mockito.any(Task.class));
+        Mockito.verify(stateChangeQueueRepository, Mockito.never()).delete(Mockito.anyString());
+
+        ArgumentCaptor<QueuedStateChange> captor = ArgumentCaptor.forClass(QueuedStateChange.class);
+        Mockito.verify(stateChangeQueueRepository).save(captor.capture());
+        Assert.assertEquals(completed.getQueuedStateChangeId(), captor.getValue().getQueuedStateChangeId());
+        Assert.assertEquals(DispatchStatus.FAILED, captor.getValue().getStatus());
+    }
+
+    @Test
+    public void testChangeClaimedElsewhereHoldsBackLaterChanges() throws Exception {
+        QueuedStateChange created = new QueuedStateChange.Builder().type(StateChangeType.CREATE_TASK).sequence(1l).task(engineTask).build();
+        QueuedStateChange assigned = new QueuedStateChange.Builder().type(StateChangeType.ASSIGN_TASK).sequence(2l).task(engineTask)
+                .status(DispatchStatus.SENDING).build();
+        QueuedStateChange completed = new QueuedStateChange.Builder().type(StateChangeType.COMPLETE_TASK).sequence(3l).task(engineTask).build();
+        // The assignment was claimed by another thread, so it is still in flight when the completion comes up
+        Mockito.when(stateChangeQueueRepository.predecessor(completed)).thenReturn(assigned);
+
+        List<StateChangeEvent> events = new ArrayList<StateChangeEvent>();
+        synchronizer.apply(list(created, completed), events);
+
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals(StateChangeType.CREATE_TASK, events.get(0).getType());
+        Mockito.verify(stateChangeQueueRepository).delete(created.getQueuedStateChangeId());
+        Mockito.verify(stateChangeQueueRepository, Mockito.never()).delete(completed.getQueuedStateChangeId());
+
+        ArgumentCaptor<QueuedStateChange> captor = ArgumentCaptor.forClass(QueuedStateChange.class);
+        Mockito.verify(stateChangeQueueRepository).save(captor.capture());
+        Assert.assertEquals(completed.getQueuedStateChangeId(), captor.getValue().getQueuedStateChangeId());
+        Assert.assertEquals(DispatchStatus.PENDING, captor.getValue().getStatus());
+    }
+
+    @Test
+    public void testRetryFailedQueuesChangesAgain() throws Exception {
+        QueuedStateChange created = new QueuedStateChange.Builder().type(StateChangeType.CREATE_TASK).sequence(1l).task(engineTask)
+                .status(DispatchStatus.FAILED).attempts(5).build();
+        QueuedStateChange completed = new QueuedStateChange.Builder().type(StateChangeType.COMPLETE_TASK).sequence(2l).task(engineTask)
+                .status(DispatchStatus.FAILED).build();
+        Mockito.when(stateChangeQueueRepository.findFailed("1")).thenReturn(list(created, completed));
+
+        Assert.assertEquals(2, synchronizer.retryFailed("1"));
+
+        Mockito.verify(stateChangeQueueRepository, Mockito.never()).delete(Mockito.anyString());
+        ArgumentCaptor<QueuedStateChange> captor = ArgumentCaptor.forClass(QueuedStateChange.class);
+        Mockito.verify(stateChangeQueueRepository, Mockito.times(2)).save(captor.capture());
+        for (QueuedStateChange saved : captor.getAllValues()) {
+            Assert.assertEquals(DispatchStatus.PENDING, saved.getStatus());
+            Assert.assertEquals(0, saved.getAttempts());
+        }
+    }
+
+    @Test
+    public void testSkipFailedDropsEarliestChange() throws Exception {
+        QueuedStateChange created = new QueuedStateChange.Builder().type(StateChangeType.CREATE_TASK).sequence(1l).task(engineTask)
+                .status(DispatchStatus.FAILED).attempts(5).build();
+        QueuedStateChange completed = new QueuedStateChange.Builder().type(StateChangeType.COMPLETE_TASK).sequence(2l).task(engineTask)
+                .status(DispatchStatus.FAILED).build();
+        Mockito.when(stateChangeQueueRepository.findFailed("1")).thenReturn(list(created, completed), list(completed));
+
+        QueuedStateChange skipped = synchronizer.skipFailed("1");
+
+        Assert.assertEquals(created.getQueuedStateChangeId(), skipped.getQueuedStateChangeId());
+        Mockito.verify(stateChangeQueueRepository).delete(created.getQueuedStateChangeId());
+        ArgumentCaptor<QueuedStateChange> captor = ArgumentCaptor.forClass(QueuedStateChange.class);
+        Mockito.verify(stateChangeQueueRepository).save(captor.capture());
+        Assert.assertEquals(completed.getQueuedStateChangeId(), captor.getValue().getQueuedStateChangeId());
+        Assert.assertEquals(DispatchStatus.PENDING, captor.getValue().getStatus());
+    }
+
+    @Test
+    public void testEnqueueFailurePropagates() throws Exception {
+        Mockito.when(stateChangeQueueRepository.nextSequence()).thenReturn(Long.valueOf(7l));
+        Mockito.when(stateChangeQueueRepository.save(Mockito.any(QueuedStateChange.class))).thenThrow(new IllegalStateException("Unable to connect"));
+        synchronizer.async = true;
+
+        try {
+            synchronizer.onTaskEvent(StateChangeType.CREATE_TASK, engineTask);
+            Assert.fail("Expected the failure to queue the change to reach the engine");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // Nothing is applied behind the back of the queue
+        Mockito.verify(taskService, Mockito.never()).update(Mockito.anyString(), Mockito.any(Task.class));
+        ArgumentCaptor<QueuedStateChange> captor = ArgumentCaptor.forClass(QueuedStateChange.class);
+        Mockito.verify(stateChangeQueueRepository).save(captor.capture());
+        Assert.assertEquals(7l, captor.getValue().getSequence());
+    }
+
+    private static List<QueuedStateChange> list(QueuedStateChange ... changes) {
+        List<QueuedStateChange> list = new ArrayList<QueuedStateChange>();
+        Collections.addAll(list, changes);
+        return list;
+    }
+
+}
@@ -33,6 +33,7 @@ import piecework.identity.IdentityHelper;
 import piecework.model.*;
 import piecework.model.Process;
 import piecework.persistence.RequestRepository;
+import piecework.security.RequestTokenService;
 import piecework.security.SecuritySettings;
 import piecework.security.concrete.PassthroughSanitizer;
 import piecework.service.TaskService;
@@ -53,6 +54,9 @@ public class RequestHandlerTest {
     @Mock
     RequestRepository requestRepository;
 
+    @Mock
+    RequestTokenService requestTokenService;
+
     @Mock
     IdentityHelper identityHelper;
 
@@ -105,7 +109,7 @@ public class RequestHandlerTest {
         FormRequest formRequest = requestHandler.create(requestDetails, process);
         assertValid(formRequest);
 
-        Mockito.when(requestRepository.findOne(Mockito.any(String.class))).thenReturn(formRequest);
+        Mockito.when(requestRepository.findOneUnresolved(Mockito.any(String.class))).thenReturn(formRequest);
 
         FormRequest handleRequest = requestHandler.handle(requestDetails, formRequest.getRequestId());
         assertEqual(formRequest, handleRequest);
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.ldap;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.ldap.core.support.LdapContextSource;
+import org.springframework.security.ldap.search.LdapUserSearch;
+import org.springframework.security.ldap.userdetails.LdapAuthoritiesPopulator;
+import piecework.model.User;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @author James Renfro
+ */
+public class LdapIdentityServiceTest {
+
+    private static final Pattern ID_PATTERN = Pattern.compile("\\(uid=([^)]+)\\)");
+
+    private Cache cache;
+    private TestLdapIdentityService identityService;
+
+    @Before
+    public void setup() {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("ldap.attribute.id.internal", "uid");
+        properties.put("ldap.lookup.batch.size", "2");
+        properties.put("ldap.lookup.threads", "2");
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("test", properties));
+
+        cache = new ConcurrentMapCache("userById");
+        CacheManager cacheManager = Mockito.mock(CacheManager.class);
+        Mockito.when(cacheManager.getCache("userById")).thenReturn(cache);
+
+        identityService = new TestLdapIdentityService(Mockito.mock(LdapUserSearch.class), new LdapSettings(environment), cacheManager);
+        identityService.directory.addAll(Arrays.asList("a", "b", "c", "d", "e"));
+    }
+
+    @Test
+    public void testBatchesUncachedIds() {
+        Map<String, User> users = identityService.findUsers(new LinkedHashSet<String>(Arrays.asList("a", "b", "c", "d", "e")));
+
+        Assert.assertEquals(5, users.size());
+        // Five ids two at a time makes three searches
+        Assert.assertEquals(3, identityService.searches.size());
+        for (List<String> search : identityService.searches) {
+            Assert.assertTrue(search.size() <= 2);
+        }
+    }
+
+    @Test
+    public void testCachedUsersAreNotSearchedAgain() {
+        identityService.findUsers(Collections.singleton("a"));
+        Assert.assertEquals(1, identityService.searches.size());
+        Assert.assertEquals("a", ((User) cache.get("a").get()).getUserId());
+
+        Map<String, User> users = identityService.findUsers(new HashSet<String>(Arrays.asList("a", "b")));
+        Assert.assertEquals(2, users.size());
+        Assert.assertEquals(2, identityService.searches.size());
+        Assert.assertEquals(Collections.singletonList("b"), identityService.searches.get(1));
+    }
+
+    @Test
+    public void testUsersNotFoundAreCached() {
+        Map<String, User> users = identityService.findUsers(new HashSet<String>(Arrays.asList("a", "missing")));
+        Assert.assertEquals(1, users.size());
+
+        Cache.ValueWrapper wrapper = cache.get("missing");
+        Assert.assertNotNull(wrapper);
+        Assert.assertNull(wrapper.get());
+
+        users = identityService.findUsers(Collections.singleton("missing"));
+        Assert.assertTrue(users.isEmpty());
+        Assert.assertEquals(1, identityService.searches.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFailedBatchFailsLookup() {
+        identityService.failing = "d";
+        identityService.findUsers(new LinkedHashSet<String>(Arrays.asList("a", "b", "c", "d", "e")));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFailedSingleBatchFailsLookup() {
+        identityService.failing = "a";
+        identityService.findUsers(Collections.singleton("a"));
+    }
+
+    /*
+     * Answers searches from a set of ids rather than a directory server
+     */
+    private static class TestLdapIdentityService extends LdapIdentityService {
+
+        private final Set<String> directory = new HashSet<String>();
+        private final List<List<String>> searches = Collections.synchronizedList(new ArrayList<List<String>>());
+        private volatile String failing;
+
+        public TestLdapIdentityService(LdapUserSearch userSearch, LdapSettings ldapSettings, CacheManager cacheManager) {
+            super(Mockito.mock(LdapContextSource.class), userSearch, Mockito.mock(LdapAuthoritiesPopulator.class),
+                    Mockito.mock(CustomLdapUserDetailsMapper.class), ldapSettings, cacheManager);
+        }
+
+        @Override
+        List<User> search(String encoded, long countLimit) {
+            List<String> ids = new ArrayList<String>();
+            Matcher matcher = ID_PATTERN.matcher(encoded);
+            while (matcher.find()) {
+                ids.add(matcher.group(1));
+            }
+            searches.add(ids);
+            if (failing != null && ids.contains(failing))
+                throw new IllegalStateException("Unable to reach directory");
+
+            List<User> users = new ArrayList<User>();
+            for (String id : ids) {
+                if (directory.contains(id))
+                    users.add(new User.Builder().userId(id).build());
+            }
+            return users;
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.notification;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import piecework.enumeration.DispatchStatus;
+import piecework.model.QueuedNotification;
+import piecework.persistence.NotificationQueueRepository;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * @author James Renfro
+ */
+public class EmailNotificationServiceTest {
+
+    private static final String RECIPIENTS = "a@example.com,b@example.com,c@example.com,d@example.com,e@example.com";
+
+    private EmailNotificationService notificationService;
+    private NotificationQueueRepository notificationQueueRepository;
+    private Transport transport;
+    private AtomicReference<QueuedNotification> saved;
+
+    @Before
+    public void setup() throws Exception {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("notification.batch.size", "2");
+        properties.put("notification.retry.attempts", "2");
+        properties.put("notification.poll.interval.seconds", "3600");
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("test", properties));
+
+        transport = Mockito.mock(Transport.class);
+        saved = new AtomicReference<QueuedNotification>();
+        notificationQueueRepository = Mockito.mock(NotificationQueueRepository.class);
+        Mockito.when(notificationQueueRepository.save(Mockito.any(QueuedNotification.class))).thenAnswer(new Answer<QueuedNotification>() {
+            @Override
+            public QueuedNotification answer(InvocationOnMock invocation) throws Throwable {
+                QueuedNotification queued = (QueuedNotification) invocation.getArguments()[0];
+                saved.set(queued);
+                return queued;
+            }
+        });
+        Mockito.when(notificationQueueRepository.findOne(Mockito.any(String.class))).thenAnswer(new Answer<QueuedNotification>() {
+            @Override
+            public QueuedNotification answer(InvocationOnMock invocation) throws Throwable {
+                return saved.get();
+            }
+        });
+
+        notificationService = new EmailNotificationService() {
+            @Override
+            Transport connect() throws MessagingException {
+                return transport;
+            }
+        };
+        notificationService.environment = environment;
+        notificationService.notificationQueueRepository = notificationQueueRepository;
+        notificationService.init();
+    }
+
+    @After
+    public void teardown() {
+        notificationService.destroy();
+    }
+
+    @Test
+    public void testRetryAfterPartialFailureOnlySendsRemainingBatches() throws Exception {
+        QueuedNotification queued = claimed();
+        Mockito.doNothing()
+                .doThrow(new MessagingException("Connection dropped"))
+                .doNothing()
+                .when(transport).sendMessage(Mockito.any(Message.class), Mockito.any(Address[].class));
+
+        Mockito.when(notificationQueueRepository.claim(Mockito.any(Date.class), Mockito.any(Date.class))).thenReturn(queued, (QueuedNotification) null);
+        notificationService.drain();
+
+        QueuedNotification afterFailure = saved.get();
+        Assert.assertEquals(DispatchStatus.PENDING, afterFailure.getStatus());
+        Assert.assertEquals(1, afterFailure.getAttempts());
+        Assert.assertEquals(1, afterFailure.getDeliveredBatches());
+        Mockito.verify(notificationQueueRepository, Mockito.never()).delete(queued.getQueuedNotificationId());
+
+        Mockito.when(notificationQueueRepository.claim(Mockito.any(Date.class), Mockito.any(Date.class))).thenReturn(afterFailure, (QueuedNotification) null);
+        notificationService.drain();
+
+        Mockito.verify(notificationQueueRepository).delete(queued.getQueuedNotificationId());
+
+        ArgumentCaptor<Address[]> captor = ArgumentCaptor.forClass(Address[].class);
+        Mockito.verify(transport, Mockito.times(4)).sendMessage(Mockito.any(Message.class), captor.capture());
+
+        // Everyone in the first batch got exactly one message, and the failed batch was sent again
+        List<String> sentTo = new ArrayList<String>();
+        List<Address[]> attempts = captor.getAllValues();
+        for (int i = 0; i < attempts.size(); i++) {
+            if (i == 1)
+                continue;
+            for (Address address : attempts.get(i)) {
+                sentTo.add(address.toString());
+            }
+        }
+        Collections.sort(sentTo);
+        Assert.assertEquals(Arrays.asList(RECIPIENTS.split(",")), sentTo);
+    }
+
+    @Test
+    public void testFailedAfterMaximumAttempts() throws Exception {
+        QueuedNotification queued = claimed();
+        Mockito.doThrow(new MessagingException("Connection refused"))
+                .when(transport).sendMessage(Mockito.any(Message.class), Mockito.any(Address[].class));
+
+        Mockito.when(notificationQueueRepository.claim(Mockito.any(Date.class), Mockito.any(Date.class))).thenReturn(queued, (QueuedNotification) null);
+        notificationService.drain();
+        QueuedNotification afterFirst = saved.get();
+        Assert.assertEquals(DispatchStatus.PENDING, afterFirst.getStatus());
+        Assert.assertTrue(afterFirst.getNextAttempt().after(new Date()));
+
+        Mockito.when(notificationQueueRepository.claim(Mockito.any(Date.class), Mockito.any(Date.class))).thenReturn(afterFirst, (QueuedNotification) null);
+        notificationService.drain();
+        QueuedNotification afterSecond = saved.get();
+        Assert.assertEquals(DispatchStatus.FAILED, afterSecond.getStatus());
+        Assert.assertEquals(2, afterSecond.getAttempts());
+        Assert.assertEquals("Connection refused", afterSecond.getLastError());
+        Mockito.verify(notificationQueueRepository, Mockito.never()).delete(Mockito.eq(queued.getQueuedNotificationId()));
+    }
+
+    private QueuedNotification claimed() {
+        QueuedNotification queued = new QueuedNotification.Builder()
+                .senderEmail("sender@example.com")
+                .recipients(RECIPIENTS)
+                .subject("Test")
+                .text("Testing")
+                .status(DispatchStatus.SENDING)
+                .build();
+        saved.set(queued);
+        return queued;
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.persistence;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author James Renfro
+ */
+public class IndexRegistryTest {
+
+    @Test
+    public void testSignatureIgnoresNumericType() {
+        DBObject declared = new BasicDBObject("processDefinitionKey", 1).append("startTime", -1);
+        DBObject stored = new BasicDBObject("processDefinitionKey", 1.0d).append("startTime", -1.0d);
+        Assert.assertEquals(IndexRegistry.signature(declared), IndexRegistry.signature(stored));
+    }
+
+    @Test
+    public void testSignatureOfStoredTextIndex() {
+        IndexRegistry.Definition declared = new IndexRegistry.Definition("instance_text").text("processInstanceLabel").text("alias");
+        DBObject indexInfo = new BasicDBObject("name", "instance_text")
+                .append("key", new BasicDBObject("_fts", "text").append("_ftsx", 1))
+                .append("weights", new BasicDBObject("alias", 1).append("processInstanceLabel", 1));
+        Assert.assertEquals(IndexRegistry.signature(declared.getKeys()), IndexRegistry.signature(IndexRegistry.keys(indexInfo)));
+    }
+
+    @Test
+    public void testReconcileCreatesMissingIndexes() {
+        IndexRegistry registry = new IndexRegistry();
+        MongoOperations mongoOperations = Mockito.mock(MongoOperations.class);
+        DBCollection collection = Mockito.mock(DBCollection.class);
+        Mockito.when(mongoOperations.getCollectionName(Mockito.any(Class.class))).thenReturn("test");
+        Mockito.when(mongoOperations.getCollection("test")).thenReturn(collection);
+        Mockito.when(collection.getIndexInfo()).thenReturn(Collections.<DBObject>emptyList());
+
+        int missing = registry.reconcile(mongoOperations, true);
+
+        Assert.assertEquals(0, missing);
+        Mockito.verify(collection, Mockito.times(declaredCount(registry))).ensureIndex(Mockito.any(DBObject.class), Mockito.any(DBObject.class));
+    }
+
+    @Test
+    public void testReconcileReportsMissingIndexes() {
+        IndexRegistry registry = new IndexRegistry();
+        MongoOperations mongoOperations = Mockito.mock(MongoOperations.class);
+        DBCollection collection = Mockito.mock(DBCollection.class);
+        Mockito.when(mongoOperations.getCollectionName(Mockito.any(Class.class))).thenReturn("test");
+        Mockito.when(mongoOperations.getCollection("test")).thenReturn(collection);
+
+        List<DBObject> indexInfos = new ArrayList<DBObject>();
+        indexInfos.add(new BasicDBObject("name", "_id_").append("key", new BasicDBObject("_id", 1)));
+        indexInfos.add(new BasicDBObject("name", "instance_keywords").append("key", new BasicDBObject("keywords", 1.0d)));
+        Mockito.when(collection.getIndexInfo()).thenReturn(indexInfos);
+
+        int missing = registry.reconcile(mongoOperations, false);
+
+        Assert.assertEquals(declaredCount(registry) - 1, missing);
+        Mockito.verify(collection, Mockito.never()).ensureIndex(Mockito.any(DBObject.class), Mockito.any(DBObject.class));
+    }
+
+    @Test
+    public void testRegisteredModelsDeclareNoIndexAnnotations() {
+        // Indexes are declared only in the registry, so that each one has a single, final definition
+        IndexRegistry registry = new IndexRegistry(true, 60l);
+        for (Class<?> type : registry.getDefinitionMap().keySet()) {
+            Assert.assertNull(type.getName(), type.getAnnotation(CompoundIndexes.class));
+            Assert.assertNull(type.getName(), type.getAnnotation(CompoundIndex.class));
+            for (Field field : type.getDeclaredFields()) {
+                Assert.assertNull(type.getName() + "." + field.getName(), field.getAnnotation(Indexed.class));
+            }
+        }
+    }
+
+    private static int declaredCount(IndexRegistry registry) {
+        int count = 0;
+        for (List<IndexRegistry.Definition> definitions : registry.getDefinitionMap().values()) {
+            count += definitions.size();
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.process;
+
+import com.mongodb.DBObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+/**
+ * @author James Renfro
+ */
+public class ProcessInstanceQueryBuilderTest {
+
+    @Test
+    public void testLabelIsMatchedWithTokenIndex() {
+        ProcessInstanceSearchCriteria criteria = new ProcessInstanceSearchCriteria.Builder()
+                .processDefinitionKey("TEST")
+                .processInstanceLabel("Budget")
+                .build();
+
+        DBObject query = new ProcessInstanceQueryBuilder(criteria).build().getQueryObject();
+
+        // The tokens only narrow the search down, the label itself still has to match
+        Assert.assertNotNull(query.get("tokens"));
+        Assert.assertEquals("Budget", ((Pattern) query.get("processInstanceLabel")).pattern());
+    }
+
+    @Test
+    public void testLabelIsMatchedWithTextIndex() {
+        ProcessInstanceSearchCriteria criteria = new ProcessInstanceSearchCriteria.Builder()
+                .processDefinitionKey("TEST")
+                .processInstanceLabel("Budget")
+                .build();
+
+        DBObject query = new ProcessInstanceQueryBuilder(criteria).textIndex(true).build().getQueryObject();
+
+        Assert.assertNull(query.get("tokens"));
+        Assert.assertEquals("Budget", ((Pattern) query.get("processInstanceLabel")).pattern());
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.process;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.DBObject;
+import org.junit.Assert;
+import org.junit.Test;
+import piecework.exception.BadRequestError;
+
+import java.util.Date;
+
+/**
+ * @author James Renfro
+ */
+public class SearchCursorTest {
+
+    @Test
+    public void testEncodeAndDecode() throws BadRequestError {
+        Date startTime = new Date(1382040000000l);
+        SearchCursor cursor = new SearchCursor(startTime, "52601b6f0364a9e8f7a3b2c1");
+        String token = cursor.encode();
+
+        Assert.assertTrue(token.matches("[A-Za-z0-9_-]+"));
+
+        SearchCursor decoded = SearchCursor.decode(token);
+        Assert.assertEquals(startTime, decoded.getSortValue());
+        Assert.assertEquals("52601b6f0364a9e8f7a3b2c1", decoded.getId());
+    }
+
+    @Test
+    public void testEncodeAndDecodeWithoutSortValue() throws BadRequestError {
+        SearchCursor decoded = SearchCursor.decode(new SearchCursor(null, "1234").encode());
+        Assert.assertNull(decoded.getSortValue());
+        Assert.assertEquals("1234", decoded.getId());
+    }
+
+    @Test
+    public void testDecodeMissingToken() throws BadRequestError {
+        Assert.assertNull(SearchCursor.decode(null));
+        Assert.assertNull(SearchCursor.decode(""));
+    }
+
+    @Test
+    public void testDecodeInvalidToken() {
+        // Without a separator, with a sort value that is not a number, and with no id
+        for (String token : new String[] { "bm90aGluZw", "YWJjOjEyMzQ", "MTIzNDo" }) {
+            try {
+                SearchCursor.decode(token);
+                Assert.fail("Expected the cursor " + token + " to be rejected");
+            } catch (BadRequestError e) {
+                Assert.assertEquals(BadRequestError.BAD_REQUEST_ERROR_CODE, e.getStatusCode());
+            }
+        }
+    }
+
+    @Test
+    public void testAfterUsesSortProperty() {
+        Date startTime = new Date(1000l);
+        Date endTime = new Date(2000l);
+        Assert.assertEquals(startTime, SearchCursor.after(ProcessInstanceSearchCriteria.OrderBy.START_TIME_DESC, startTime, endTime, "1").getSortValue());
+        Assert.assertEquals(endTime, SearchCursor.after(ProcessInstanceSearchCriteria.OrderBy.END_TIME_ASC, startTime, endTime, "1").getSortValue());
+        Assert.assertNull(SearchCursor.after(ProcessInstanceSearchCriteria.OrderBy.START_TIME_DESC, startTime, endTime, null));
+    }
+
+    @Test
+    public void testDescendingCriteriaIncludesInstancesNotEnded() {
+        DBObject criteria = new SearchCursor(new Date(1000l), "1234").criteria(ProcessInstanceSearchCriteria.OrderBy.END_TIME_DESC).getCriteriaObject();
+        BasicDBList alternatives = (BasicDBList) criteria.get("$or");
+        Assert.assertEquals(3, alternatives.size());
+    }
+
+    @Test
+    public void testAscendingCriteria() {
+        DBObject criteria = new SearchCursor(new Date(1000l), "1234").criteria(ProcessInstanceSearchCriteria.OrderBy.START_TIME_ASC).getCriteriaObject();
+        BasicDBList alternatives = (BasicDBList) criteria.get("$or");
+        Assert.assertEquals(2, alternatives.size());
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.resource.concrete;
+
+import org.apache.cxf.jaxrs.ext.MessageContext;
+import org.apache.cxf.jaxrs.impl.HttpHeadersImpl;
+import org.apache.cxf.jaxrs.impl.RequestImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import piecework.ui.AssetBundle;
+
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.util.*;
+
+/**
+ * @author James Renfro
+ */
+public class AbstractScriptResourceTest {
+
+    private static final int DAY_SECONDS = 24 * 60 * 60;
+    private static final int YEAR_SECONDS = 365 * DAY_SECONDS;
+
+    private final AssetBundle bundle = new AssetBundle("Form.template.html", "var a = 1;".getBytes(), 1000l);
+
+    @Test
+    public void testAcceptsGzip() {
+        Assert.assertTrue(AbstractScriptResource.acceptsGzip(context("Accept-Encoding", "gzip, deflate")));
+        Assert.assertTrue(AbstractScriptResource.acceptsGzip(context("Accept-Encoding", "deflate, gzip;q=0.5")));
+        Assert.assertTrue(AbstractScriptResource.acceptsGzip(context("Accept-Encoding", "*")));
+        Assert.assertFalse(AbstractScriptResource.acceptsGzip(context("Accept-Encoding", "gzip;q=0")));
+        Assert.assertFalse(AbstractScriptResource.acceptsGzip(context("Accept-Encoding", "deflate, gzip; q=0.0")));
+        Assert.assertFalse(AbstractScriptResource.acceptsGzip(context("Accept-Encoding", "*, gzip;q=0")));
+        Assert.assertFalse(AbstractScriptResource.acceptsGzip(context("Accept-Encoding", "identity")));
+        Assert.assertFalse(AbstractScriptResource.acceptsGzip(context()));
+        Assert.assertFalse(AbstractScriptResource.acceptsGzip(null));
+    }
+
+    @Test
+    public void testResponseForCurrentVersionIsCachedForAYear() {
+        Response response = AbstractScriptResource.response(bundle, bundle.getHash(), "text/javascript", context("Accept-Encoding", "gzip"));
+
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        Assert.assertEquals(YEAR_SECONDS, cacheControl(response).getMaxAge());
+        Assert.assertEquals("gzip", String.valueOf(response.getMetadata().getFirst(HttpHeaders.CONTENT_ENCODING)));
+        Assert.assertSame(bundle.getGzipped(), response.getEntity());
+    }
+
+    @Test
+    public void testResponseForOtherVersionIsNotCached() {
+        Response response = AbstractScriptResource.response(bundle, "0123456789abcdef", "text/javascript", context());
+
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        Assert.assertTrue(cacheControl(response).isNoCache());
+        Assert.assertNull(response.getMetadata().getFirst(HttpHeaders.CONTENT_ENCODING));
+        Assert.assertSame(bundle.getContent(), response.getEntity());
+    }
+
+    @Test
+    public void testResponseWithoutVersionIsCachedForADay() {
+        Response response = AbstractScriptResource.response(bundle, null, "text/javascript", context());
+
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        Assert.assertEquals(DAY_SECONDS, cacheControl(response).getMaxAge());
+        Assert.assertFalse(cacheControl(response).isNoCache());
+    }
+
+    @Test
+    public void testResponseNotModified() {
+        Response response = AbstractScriptResource.response(bundle, null, "text/javascript", context("If-None-Match", "\"" + bundle.getHash() + "\""));
+
+        Assert.assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+        Assert.assertNull(response.getEntity());
+        Assert.assertEquals(DAY_SECONDS, cacheControl(response).getMaxAge());
+    }
+
+    private static CacheControl cacheControl(Response response) {
+        Object header = response.getMetadata().getFirst(HttpHeaders.CACHE_CONTROL);
+        if (header instanceof CacheControl)
+            return CacheControl.class.cast(header);
+        return CacheControl.valueOf(String.valueOf(header));
+    }
+
+    private static MessageContext context(String ... headerNamesAndValues) {
+        Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < headerNamesAndValues.length; i += 2) {
+            headers.put(headerNamesAndValues[i], Collections.singletonList(headerNamesAndValues[i + 1]));
+        }
+        Message message = new MessageImpl();
+        message.put(Message.PROTOCOL_HEADERS, headers);
+        message.put(Message.HTTP_REQUEST_METHOD, "GET");
+
+        MessageContext context = Mockito.mock(MessageContext.class);
+        Mockito.when(context.getRequest()).thenReturn(new RequestImpl(message));
+        Mockito.when(context.getHttpHeaders()).thenReturn(new HttpHeadersImpl(message));
+        return context;
+    }
+
+}
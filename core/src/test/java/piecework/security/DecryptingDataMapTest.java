@@ -0,0 +1,74 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.security;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import piecework.model.Secret;
+import piecework.model.Value;
+import piecework.util.ManyMap;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author James Renfro
+ */
+public class DecryptingDataMapTest {
+
+    private EncryptionService encryptionService;
+    private Secret social;
+    private Secret salary;
+    private Map<String, List<Value>> data;
+
+    @Before
+    public void setup() throws Exception {
+        social = new Secret.Builder().ciphertext(new byte[] { 1 }).plaintextLength(11).build();
+        salary = new Secret.Builder().ciphertext(new byte[] { 2 }).plaintextLength(5).build();
+
+        encryptionService = Mockito.mock(EncryptionService.class);
+        Mockito.when(encryptionService.decrypt(social)).thenReturn("123-45-6789");
+        Mockito.when(encryptionService.decrypt(salary)).thenReturn("50000");
+
+        ManyMap<String, Value> original = new ManyMap<String, Value>();
+        original.putOne("social", social);
+        original.putOne("salary", salary);
+        original.putOne("employeeName", new Value("Joe"));
+        data = new DecryptingDataMap(original, encryptionService);
+    }
+
+    @Test
+    public void testOnlyDecryptsKeysThatAreRead() throws Exception {
+        Assert.assertEquals("123-45-6789", data.get("social").get(0).getValue());
+        Assert.assertEquals("123-45-6789", data.get("social").get(0).getValue());
+        Assert.assertEquals("Joe", data.get("employeeName").get(0).getValue());
+        Assert.assertNull(data.get("missing"));
+
+        Mockito.verify(encryptionService, Mockito.times(1)).decrypt(social);
+        Mockito.verify(encryptionService, Mockito.never()).decrypt(salary);
+    }
+
+    @Test
+    public void testEntriesAreDecrypted() throws Exception {
+        Assert.assertEquals(3, data.size());
+        for (Map.Entry<String, List<Value>> entry : data.entrySet()) {
+            Assert.assertFalse(entry.getValue().get(0) instanceof Secret);
+        }
+    }
+
+}
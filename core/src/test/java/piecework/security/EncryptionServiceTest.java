@@ -48,6 +48,16 @@ public class EncryptionServiceTest {
         String cleartext = encryptionService.decrypt(secret);
 
         Assert.assertEquals("This is a simple test", cleartext);
+        Assert.assertEquals(cleartext.length(), secret.getPlaintextLength());
+    }
+
+    @Test
+    public void testCipherReuse() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            String text = "Value " + i;
+            Secret secret = encryptionService.encrypt(text);
+            Assert.assertEquals(text, encryptionService.decrypt(secret));
+        }
     }
 
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.security;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.support.ResourcePropertySource;
+import piecework.enumeration.ActionType;
+import piecework.exception.ForbiddenError;
+import piecework.model.Activity;
+import piecework.model.FormRequest;
+
+import java.util.Date;
+
+/**
+ * @author James Renfro
+ */
+public class RequestTokenServiceTest {
+
+    private RequestTokenService requestTokenService;
+
+    @Before
+    public void setup() throws Exception {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new ResourcePropertySource("classpath:META-INF/piecework/default.properties"));
+
+        requestTokenService = new RequestTokenService();
+        requestTokenService.environment = environment;
+        requestTokenService.init();
+    }
+
+    @Test
+    public void testEncodeAndDecode() throws Exception {
+        Date requestDate = new Date(1380000000000l);
+        FormRequest formRequest = new FormRequest.Builder()
+                .processDefinitionKey("TEST")
+                .processInstanceId("1234")
+                .taskId("5678")
+                .activity(new Activity.Builder().activityId("abcd").build())
+                .action(ActionType.CREATE)
+                .remoteUser("testuser")
+                .certificateIssuer("issuer")
+                .certificateSubject("subject")
+                .requestDate(requestDate)
+                .build();
+
+        String token = requestTokenService.encode(formRequest);
+        Assert.assertTrue(requestTokenService.isToken(token));
+
+        FormRequest decoded = requestTokenService.decode(token);
+        Assert.assertEquals(token, decoded.getRequestId());
+        Assert.assertEquals("TEST", decoded.getProcessDefinitionKey());
+        Assert.assertEquals("1234", decoded.getProcessInstanceId());
+        Assert.assertEquals("5678", decoded.getTaskId());
+        Assert.assertEquals("abcd", decoded.getActivity().getActivityId());
+        Assert.assertEquals(ActionType.CREATE, decoded.getAction());
+        Assert.assertEquals("testuser", decoded.getRemoteUser());
+        Assert.assertNull(decoded.getActAsUser());
+        Assert.assertEquals("issuer", decoded.getCertificateIssuer());
+        Assert.assertEquals("subject", decoded.getCertificateSubject());
+        Assert.assertEquals(requestDate, decoded.getRequestDate());
+    }
+
+    @Test(expected = ForbiddenError.class)
+    public void testDecodeTamperedToken() throws Exception {
+        FormRequest formRequest = new FormRequest.Builder()
+                .processDefinitionKey("TEST")
+                .remoteUser("testuser")
+                .build();
+
+        String token = requestTokenService.encode(formRequest);
+        String other = requestTokenService.encode(new FormRequest.Builder(formRequest).remoteUser("otheruser").build());
+
+        // Swap in the payload of another request while keeping the original signature
+        requestTokenService.decode(other.substring(0, other.indexOf('.')) + token.substring(token.indexOf('.')));
+    }
+
+    @Test
+    public void testRequestIdIsNotToken() {
+        Assert.assertFalse(requestTokenService.isToken("52433f2e0364b4cd29d2e04d"));
+    }
+
+}
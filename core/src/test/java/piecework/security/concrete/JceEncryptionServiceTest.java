@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.security.concrete;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.support.ResourcePropertySource;
+import piecework.model.Secret;
+import piecework.model.Value;
+import piecework.util.ManyMap;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author James Renfro
+ */
+public class JceEncryptionServiceTest {
+
+    private JceEncryptionService encryptionService;
+
+    @Before
+    public void setup() throws Exception {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new ResourcePropertySource("classpath:META-INF/piecework/default.properties"));
+
+        encryptionService = new JceEncryptionService();
+        encryptionService.environment = environment;
+        encryptionService.init();
+    }
+
+    @Test
+    public void testEncryptAndDecrypt() throws Exception {
+        Secret secret = encryptionService.encrypt("This is a simple test");
+
+        Assert.assertEquals(21, secret.getPlaintextLength());
+        Assert.assertEquals("This is a simple test", encryptionService.decrypt(secret));
+    }
+
+    @Test
+    public void testEncryptAndDecryptList() throws Exception {
+        List<Value> secrets = encryptionService.encrypt(Arrays.asList(new Value("first"), new Value(""), new Value("second")));
+
+        Assert.assertEquals(2, secrets.size());
+        Assert.assertTrue(secrets.get(0) instanceof Secret);
+
+        ManyMap<String, Value> data = new ManyMap<String, Value>();
+        data.put("secrets", secrets);
+        data.putOne("plain", new Value("third"));
+
+        ManyMap<String, Value> decrypted = encryptionService.decrypt(data);
+        Assert.assertEquals("first", decrypted.getOne("secrets").getValue());
+        Assert.assertEquals("second", decrypted.get("secrets").get(1).getValue());
+        Assert.assertEquals("third", decrypted.getOne("plain").getValue());
+    }
+
+}
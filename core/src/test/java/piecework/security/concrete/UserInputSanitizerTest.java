@@ -67,4 +67,26 @@ public class UserInputSanitizerTest {
         Assert.assertEquals(text, sanitized);
     }
 
+    @Test
+    public void testPlainText() throws Exception {
+        Assert.assertTrue(UserInputSanitizer.isPlainText("processDefinitionKey"));
+        Assert.assertTrue(UserInputSanitizer.isPlainText("joe@nowhere.com"));
+        Assert.assertTrue(UserInputSanitizer.isPlainText("2013-10-01 12:00"));
+        Assert.assertFalse(UserInputSanitizer.isPlainText(""));
+        Assert.assertFalse(UserInputSanitizer.isPlainText(" leading"));
+        Assert.assertFalse(UserInputSanitizer.isPlainText("trailing "));
+        Assert.assertFalse(UserInputSanitizer.isPlainText("<b>bold</b>"));
+        Assert.assertFalse(UserInputSanitizer.isPlainText("Tom & Jerry"));
+        Assert.assertFalse(UserInputSanitizer.isPlainText("O'Brien"));
+    }
+
+    @Test
+    public void testSanitizeRepeatedMarkup() throws Exception {
+        String text = "<script>alert('x')</script>Joe";
+        String first = userInputSanitizer.sanitize(text);
+        String second = userInputSanitizer.sanitize(text);
+        Assert.assertEquals(first, second);
+        Assert.assertFalse(second.contains("script"));
+    }
+
 }
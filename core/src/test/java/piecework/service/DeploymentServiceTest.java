@@ -23,10 +23,10 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
+import piecework.cache.ProcessCache;
 import piecework.model.Process;
 import piecework.model.ProcessDeployment;
 import piecework.model.ProcessInstance;
-import piecework.persistence.DeploymentRepository;
 
 /**
  * @author James Renfro
@@ -41,7 +41,7 @@ public class DeploymentServiceTest {
     DeploymentService deploymentService;
 
     @Mock
-    DeploymentRepository deploymentRepository;
+    ProcessCache processCache;
 
     @Mock
     Process process;
@@ -61,7 +61,7 @@ public class DeploymentServiceTest {
         Mockito.when(deploymentFromProcess.getDeploymentId()).thenReturn(TEST_DEPLOYMENT_FROM_PROCESS_ID);
         Mockito.when(process.getDeployment()).thenReturn(deploymentFromProcess);
         Mockito.when(deploymentFromRepository.getDeploymentId()).thenReturn(TEST_DEPLOYMENT_FROM_REPO_ID);
-        Mockito.when(deploymentRepository.findOne(TEST_DEPLOYMENT_FROM_REPO_ID)).thenReturn(deploymentFromRepository);
+        Mockito.when(processCache.deployment(TEST_DEPLOYMENT_FROM_REPO_ID)).thenReturn(deploymentFromRepository);
         Mockito.when(instance.getDeploymentId()).thenReturn(TEST_DEPLOYMENT_FROM_REPO_ID);
     }
 
@@ -72,7 +72,7 @@ public class DeploymentServiceTest {
         Assert.assertNotNull(deployment);
         Assert.assertEquals(TEST_DEPLOYMENT_FROM_PROCESS_ID, deployment.getDeploymentId());
 
-        Mockito.verifyZeroInteractions(deploymentRepository);
+        Mockito.verifyZeroInteractions(processCache);
     }
 
     @Test
@@ -82,7 +82,7 @@ public class DeploymentServiceTest {
         Assert.assertNotNull(deployment);
         Assert.assertEquals(TEST_DEPLOYMENT_FROM_REPO_ID, deployment.getDeploymentId());
 
-        Mockito.verify(deploymentRepository).findOne(TEST_DEPLOYMENT_FROM_REPO_ID);
+        Mockito.verify(processCache).deployment(TEST_DEPLOYMENT_FROM_REPO_ID);
     }
 
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.service;
+
+import com.fasterxml.jackson.jaxrs.json.JacksonJaxbJsonProvider;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.Resource;
+import piecework.identity.IdentityHelper;
+import piecework.model.Content;
+import piecework.persistence.ContentRepository;
+import piecework.ui.AssetBundle;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author James Renfro
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class UserInterfaceServiceTest {
+
+    private static final String TEMPLATE_NAME = "Form.template.html";
+    private static final String TEMPLATE = "<html><head><script src=\"app.js\"></script></head><body></body></html>";
+
+    @InjectMocks
+    UserInterfaceService userInterfaceService;
+
+    @Mock
+    CacheManager cacheManager;
+
+    @Mock
+    ContentRepository contentRepository;
+
+    @Spy
+    StandardEnvironment environment = new StandardEnvironment();
+
+    @Mock
+    FormTemplateService formTemplateService;
+
+    @Mock
+    IdentityHelper helper;
+
+    @Mock
+    JacksonJaxbJsonProvider jacksonJaxbJsonProvider;
+
+    @Mock
+    Resource template;
+
+    private final AtomicLong templateLastModified = new AtomicLong(1000l);
+    private final AtomicReference<String> script = new AtomicReference<String>("var version = 1;");
+
+    @Before
+    public void setup() throws Exception {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("assets.bundles.precompute", "false");
+        properties.put("assets.bundles.refresh.seconds", "0");
+        environment.getPropertySources().addFirst(new MapPropertySource("test", properties));
+
+        Mockito.when(formTemplateService.getTemplateResource(TEMPLATE_NAME)).thenReturn(template);
+        Mockito.when(template.exists()).thenReturn(Boolean.TRUE);
+        Mockito.when(template.lastModified()).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) throws Throwable {
+                return Long.valueOf(templateLastModified.get());
+            }
+        });
+        Mockito.when(template.getInputStream()).thenAnswer(new Answer<InputStream>() {
+            @Override
+            public InputStream answer(InvocationOnMock invocation) throws Throwable {
+                return new ByteArrayInputStream(TEMPLATE.getBytes());
+            }
+        });
+        Mockito.when(contentRepository.findByLocation("app.js")).thenAnswer(new Answer<Content>() {
+            @Override
+            public Content answer(InvocationOnMock invocation) throws Throwable {
+                return new Content.Builder()
+                        .inputStream(new ByteArrayInputStream(script.get().getBytes()))
+                        .build();
+            }
+        });
+
+        userInterfaceService.init();
+    }
+
+    @After
+    public void teardown() {
+        userInterfaceService.destroy();
+    }
+
+    @Test
+    public void testBundleIsBuiltOnceAndReused() throws Exception {
+        AssetBundle bundle = userInterfaceService.getScriptBundle(TEMPLATE_NAME);
+        Assert.assertTrue(new String(bundle.getContent()).contains("var version = 1;"));
+        Assert.assertSame(bundle, userInterfaceService.getScriptBundle(TEMPLATE_NAME));
+
+        Mockito.verify(template, Mockito.times(1)).getInputStream();
+    }
+
+    @Test
+    public void testConcurrentRequestsShareOneBuild() throws Exception {
+        final CountDownLatch building = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(template.getInputStream()).thenAnswer(new Answer<InputStream>() {
+            @Override
+            public InputStream answer(InvocationOnMock invocation) throws Throwable {
+                building.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return new ByteArrayInputStream(TEMPLATE.getBytes());
+            }
+        });
+
+        Callable<AssetBundle> request = new Callable<AssetBundle>() {
+            @Override
+            public AssetBundle call() throws Exception {
+                return userInterfaceService.getScriptBundle(TEMPLATE_NAME);
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<AssetBundle> first = executor.submit(request);
+            Assert.assertTrue(building.await(5, TimeUnit.SECONDS));
+            Future<AssetBundle> second = executor.submit(request);
+            release.countDown();
+
+            Assert.assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Mockito.verify(template, Mockito.times(1)).getInputStream();
+    }
+
+    @Test
+    public void testChangedTemplateIsRebuiltInBackground() throws Exception {
+        AssetBundle original = userInterfaceService.getScriptBundle(TEMPLATE_NAME);
+
+        script.set("var version = 2;");
+        templateLastModified.set(2000l);
+
+        // The bundle already built is served while the new one is built
+        Assert.assertSame(original, userInterfaceService.getScriptBundle(TEMPLATE_NAME));
+
+        AssetBundle rebuilt = original;
+        long deadline = System.currentTimeMillis() + 5000l;
+        while (rebuilt == original && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10l);
+            rebuilt = userInterfaceService.getScriptBundle(TEMPLATE_NAME);
+        }
+
+        Assert.assertNotSame(original, rebuilt);
+        Assert.assertEquals(2000l, rebuilt.getTemplateLastModified());
+        Assert.assertTrue(new String(rebuilt.getContent()).contains("var version = 2;"));
+        Assert.assertFalse(original.getHash().equals(rebuilt.getHash()));
+    }
+
+    @Test
+    public void testRefreshRebuildsOnlyChangedTemplates() throws Exception {
+        AssetBundle original = userInterfaceService.getScriptBundle(TEMPLATE_NAME);
+
+        userInterfaceService.refreshBundles();
+        Assert.assertSame(original, userInterfaceService.getScriptBundle(TEMPLATE_NAME));
+
+        script.set("var version = 2;");
+        templateLastModified.set(2000l);
+        userInterfaceService.refreshBundles();
+
+        AssetBundle refreshed = userInterfaceService.getScriptBundle(TEMPLATE_NAME);
+        Assert.assertNotSame(original, refreshed);
+        Assert.assertTrue(new String(refreshed.getContent()).contains("var version = 2;"));
+        Mockito.verify(template, Mockito.times(2)).getInputStream();
+    }
+
+}
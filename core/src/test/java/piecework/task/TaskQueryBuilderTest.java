@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.task;
+
+import com.mongodb.DBObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.query.Query;
+import piecework.Constants;
+import piecework.authorization.AccessAuthority;
+import piecework.model.Entity;
+import piecework.process.ProcessInstanceSearchCriteria;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author James Renfro
+ */
+public class TaskQueryBuilderTest {
+
+    @Test
+    public void testDefaultsToOpenTasks() {
+        ProcessInstanceSearchCriteria criteria = new ProcessInstanceSearchCriteria.Builder()
+                .processDefinitionKey("TEST")
+                .build();
+
+        DBObject queryObject = new TaskQueryBuilder(criteria).build().getQueryObject();
+        Assert.assertEquals(Constants.TaskStatuses.OPEN, queryObject.get("taskStatus"));
+        Assert.assertNull(queryObject.get("$or"));
+    }
+
+    @Test
+    public void testAllStatuses() {
+        ProcessInstanceSearchCriteria criteria = new ProcessInstanceSearchCriteria.Builder()
+                .processDefinitionKey("TEST")
+                .processStatus(Constants.ProcessStatuses.ALL)
+                .build();
+
+        DBObject queryObject = new TaskQueryBuilder(criteria).build().getQueryObject();
+        Assert.assertFalse(queryObject.containsField("taskStatus"));
+    }
+
+    @Test
+    public void testLimitedToPrincipal() {
+        ProcessInstanceSearchCriteria criteria = new ProcessInstanceSearchCriteria.Builder()
+                .processDefinitionKey("TEST")
+                .assigneeId("testuser")
+                .build();
+
+        Entity principal = Mockito.mock(Entity.class);
+        Mockito.when(principal.getEntityId()).thenReturn("testuser");
+        Mockito.when(principal.getAccessAuthority()).thenReturn(new AccessAuthority.Builder().groupId("testgroup").build());
+
+        Query query = new TaskQueryBuilder(criteria)
+                .principal(principal, Collections.<String>emptySet())
+                .build();
+
+        DBObject queryObject = query.getQueryObject();
+        Assert.assertEquals("testuser", queryObject.get("assigneeId"));
+        List<?> alternatives = List.class.cast(queryObject.get("$or"));
+        Assert.assertEquals(2, alternatives.size());
+    }
+
+    @Test
+    public void testOverseerSeesAllTasksForProcess() {
+        ProcessInstanceSearchCriteria criteria = new ProcessInstanceSearchCriteria.Builder()
+                .processDefinitionKey("TEST")
+                .build();
+
+        Entity principal = Mockito.mock(Entity.class);
+        Mockito.when(principal.getEntityId()).thenReturn("testuser");
+
+        Query query = new TaskQueryBuilder(criteria)
+                .principal(principal, Collections.singleton("TEST"))
+                .build();
+
+        List<?> alternatives = List.class.cast(query.getQueryObject().get("$or"));
+        Assert.assertEquals(3, alternatives.size());
+    }
+
+}
@@ -16,6 +16,7 @@
 package piecework.test.config;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -39,6 +40,7 @@ import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.ldap.core.support.LdapContextSource;
 import piecework.CommandExecutor;
+import piecework.cache.ProcessCache;
 import piecework.Versions;
 import piecework.form.LegacyFormFactory;
 import piecework.process.ProcessInstanceSearchCriteria;
@@ -68,6 +70,7 @@ import piecework.resource.concrete.ProcessResourceVersion1;
 import piecework.resource.ProcessResource;
 import piecework.security.EncryptionService;
 import piecework.security.SecuritySettings;
+import piecework.security.RequestTokenService;
 import piecework.security.concrete.PassthroughEncryptionService;
 import piecework.security.concrete.PassthroughSanitizer;
 import piecework.security.Sanitizer;
@@ -129,6 +132,11 @@ public class UnitTestConfiguration {
         return new RequestHandler();
     }
 
+    @Bean
+    public RequestTokenService requestTokenService() {
+        return new RequestTokenService();
+    }
+
     @Bean
     public SubmissionHandler submissionHandler() {
         return new SubmissionHandler();
@@ -182,6 +190,11 @@ public class UnitTestConfiguration {
         return new ProcessInstanceService();
     }
 
+    @Bean
+    public ProcessCache processCache() {
+        return new ProcessCache();
+    }
+
     @Bean
     public ValidationService validationService() {
         return new ValidationService();
@@ -262,6 +275,11 @@ public class UnitTestConfiguration {
         return new SubmissionRepositoryStub();
     }
 
+    @Bean
+    public TaskRepository taskRepository() {
+        return new TaskRepositoryStub();
+    }
+
     @Bean
     public static PropertySourcesPlaceholderConfigurer loadProperties(Environment environment) throws IOException {
         CustomPropertySourcesConfigurer configurer = new CustomPropertySourcesConfigurer();
@@ -363,6 +381,11 @@ public class UnitTestConfiguration {
             return null;  //To change body of implemented methods use File | Settings | File Templates.
         }
 
+        @Override
+        public Query query(ProcessInstanceSearchCriteria criteria) {
+            return null;
+        }
+
         @Override
         public ProcessInstance update(String id, String label, Map<String, List<Value>> data, Map<String, List<Message>> validation, List<Attachment> attachments, Submission submission, String applicationStatusExplanation) {
             return null;  //To change body of implemented methods use File | Settings | File Templates.
@@ -388,6 +411,16 @@ public class UnitTestConfiguration {
             return null;  //To change body of implemented methods use File | Settings | File Templates.
         }
 
+        @Override
+        public Page<ProcessInstance> findByQuery(Query query, Pageable pageable, boolean includeTotal) {
+            return null;
+        }
+
+        @Override
+        public long stream(Query query, ResultHandler<ProcessInstance> handler) throws IOException {
+            return 0;
+        }
+
         @Override
         public boolean update(String id, Task task) {
             return false;  //To change body of implemented methods use File | Settings | File Templates.
@@ -409,6 +442,11 @@ public class UnitTestConfiguration {
 
     public class RequestRepositoryStub extends MongoRepositoryStub<FormRequest> implements RequestRepository {
 
+        @Override
+        public FormRequest findOneUnresolved(String requestId) {
+            return findOne(requestId);
+        }
+
     }
 
 	public class ScreenRepositoryStub extends MongoRepositoryStub<Screen> implements ScreenRepository {
@@ -423,4 +461,41 @@ public class UnitTestConfiguration {
 
     }
 
+    public class TaskRepositoryStub extends MongoRepositoryStub<Task> implements TaskRepository {
+        @Override
+        public List<Task> findByProcessDefinitionKeyIn(Iterable<String> processDefinitionKeys) {
+            return null;
+        }
+
+        @Override
+        public List<Task> findByProcessInstanceId(String processInstanceId) {
+            return null;
+        }
+
+        @Override
+        public Page<Task> findByQuery(Query query, Pageable pageable) {
+            return null;
+        }
+
+        @Override
+        public Page<Task> findByQuery(Query query, Pageable pageable, boolean includeTotal) {
+            return null;
+        }
+
+        @Override
+        public boolean update(Task task) {
+            return false;
+        }
+
+        @Override
+        public boolean update(Collection<Task> tasks) {
+            return false;
+        }
+
+        @Override
+        public long rebuild() {
+            return 0;
+        }
+    }
+
 }
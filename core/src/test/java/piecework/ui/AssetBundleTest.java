@@ -0,0 +1,58 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.ui;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * @author James Renfro
+ */
+public class AssetBundleTest {
+
+    @Test
+    public void testVersioned() {
+        AssetBundle bundle = new AssetBundle("Form.template.html", "var a = 1;".getBytes(), 0l);
+        String[] versioned = AssetBundle.versioned("Form." + bundle.getHash());
+        Assert.assertEquals("Form", versioned[0]);
+        Assert.assertEquals(bundle.getHash(), versioned[1]);
+
+        versioned = AssetBundle.versioned("SearchResults.form");
+        Assert.assertEquals("SearchResults.form", versioned[0]);
+        Assert.assertNull(versioned[1]);
+    }
+
+    @Test
+    public void testHashFollowsContent() throws Exception {
+        AssetBundle bundle = new AssetBundle("Form.template.html", "var a = 1;".getBytes(), 0l);
+        Assert.assertEquals(16, bundle.getHash().length());
+        Assert.assertEquals(bundle.getHash(), new AssetBundle("Form.template.html", "var a = 1;".getBytes(), 1l).getHash());
+        Assert.assertFalse(bundle.getHash().equals(new AssetBundle("Form.template.html", "var a = 2;".getBytes(), 0l).getHash()));
+
+        GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(bundle.getGzipped()));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        int read;
+        while ((read = input.read(buffer)) != -1)
+            output.write(buffer, 0, read);
+        Assert.assertArrayEquals(bundle.getContent(), output.toByteArray());
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.ui.streaming;
+
+import org.apache.cxf.jaxrs.ext.MessageContext;
+import org.apache.cxf.jaxrs.impl.HttpHeadersImpl;
+import org.apache.cxf.jaxrs.impl.RequestImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import piecework.model.Content;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.*;
+
+/**
+ * @author James Renfro
+ */
+public class AttachmentResponsesTest {
+
+    private static final byte[] BYTES = "0123456789".getBytes();
+    private static final String MD5 = "781e5e245d69b566979b86e28d23f2c7";
+    private static final Date LAST_MODIFIED = new Date(1380000000000l);
+
+    @Test
+    public void testRange() {
+        Assert.assertArrayEquals(new long[] { 0, 4 }, AttachmentResponses.range("bytes=0-4", 10));
+        Assert.assertArrayEquals(new long[] { 5, 9 }, AttachmentResponses.range("bytes=5-", 10));
+        Assert.assertArrayEquals(new long[] { 7, 9 }, AttachmentResponses.range("bytes=-3", 10));
+        Assert.assertArrayEquals(new long[] { 8, 9 }, AttachmentResponses.range("bytes=8-100", 10));
+        Assert.assertArrayEquals(new long[0], AttachmentResponses.range("bytes=10-", 10));
+        Assert.assertNull(AttachmentResponses.range("bytes=5-3", 10));
+        Assert.assertNull(AttachmentResponses.range("bytes=0-1,4-5", 10));
+        Assert.assertNull(AttachmentResponses.range("items=0-4", 10));
+        Assert.assertNull(AttachmentResponses.range("bytes=a-b", 10));
+    }
+
+    @Test
+    public void testWriteRangeFromStream() throws Exception {
+        Content content = new Content.Builder()
+                .inputStream(new ByteArrayInputStream(BYTES))
+                .length(Long.valueOf(BYTES.length))
+                .build();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new StreamingAttachmentContent(null, content).range(3, 4).write(output);
+        Assert.assertEquals("3456", output.toString());
+    }
+
+    @Test
+    public void testWriteRangeFromLocalFile() throws Exception {
+        File file = File.createTempFile("attachment", ".txt");
+        file.deleteOnExit();
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(BYTES);
+        fileOutputStream.close();
+
+        Content content = new Content.Builder()
+                .inputStream(new ByteArrayInputStream(new byte[0]))
+                .length(Long.valueOf(file.length()))
+                .localFile(file)
+                .build();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new StreamingAttachmentContent(null, content).range(6, -1).write(output);
+        Assert.assertEquals("6789", output.toString());
+    }
+
+    @Test
+    public void testBuildNotModifiedForMatchingEntityTag() {
+        TrackingInputStream inputStream = new TrackingInputStream();
+        MessageContext context = context("If-None-Match", "\"" + MD5 + "\"");
+
+        Response response = AttachmentResponses.build(context, new StreamingAttachmentContent(content(inputStream)), "text/plain", "digits.txt");
+
+        Assert.assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+        Assert.assertNull(response.getEntity());
+        Assert.assertTrue(inputStream.closed);
+    }
+
+    @Test
+    public void testBuildPartialContent() {
+        TrackingInputStream inputStream = new TrackingInputStream();
+        MessageContext context = context("Range", "bytes=2-5");
+
+        Response response = AttachmentResponses.build(context, new StreamingAttachmentContent(content(inputStream)), "text/plain", "digits.txt");
+
+        Assert.assertEquals(Response.Status.PARTIAL_CONTENT.getStatusCode(), response.getStatus());
+        Assert.assertEquals("bytes 2-5/10", String.valueOf(response.getMetadata().getFirst("Content-Range")));
+        Assert.assertEquals("4", String.valueOf(response.getMetadata().getFirst(HttpHeaders.CONTENT_LENGTH)));
+        StreamingAttachmentContent entity = StreamingAttachmentContent.class.cast(response.getEntity());
+        Assert.assertEquals(2, entity.getOffset());
+        Assert.assertEquals(4, entity.getLength());
+        Assert.assertFalse(inputStream.closed);
+    }
+
+    @Test
+    public void testBuildRangeNotSatisfiable() {
+        TrackingInputStream inputStream = new TrackingInputStream();
+        MessageContext context = context("Range", "bytes=10-");
+
+        Response response = AttachmentResponses.build(context, new StreamingAttachmentContent(content(inputStream)), "text/plain", "digits.txt");
+
+        Assert.assertEquals(416, response.getStatus());
+        Assert.assertEquals("bytes */10", String.valueOf(response.getMetadata().getFirst("Content-Range")));
+        Assert.assertNull(response.getEntity());
+        Assert.assertTrue(inputStream.closed);
+    }
+
+    @Test
+    public void testBuildWholeContentWhenIfRangeDoesNotMatch() {
+        TrackingInputStream inputStream = new TrackingInputStream();
+        MessageContext context = context("Range", "bytes=2-5", "If-Range", "\"somethingelse\"");
+        StreamingAttachmentContent streamingAttachmentContent = new StreamingAttachmentContent(content(inputStream));
+
+        Response response = AttachmentResponses.build(context, streamingAttachmentContent, "text/plain", "digits.txt");
+
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        Assert.assertNull(response.getMetadata().getFirst("Content-Range"));
+        Assert.assertEquals("10", String.valueOf(response.getMetadata().getFirst(HttpHeaders.CONTENT_LENGTH)));
+        Assert.assertSame(streamingAttachmentContent, response.getEntity());
+        Assert.assertFalse(inputStream.closed);
+    }
+
+    private static Content content(TrackingInputStream inputStream) {
+        return new Content.Builder()
+                .contentType("text/plain")
+                .inputStream(inputStream)
+                .length(Long.valueOf(BYTES.length))
+                .md5(MD5)
+                .lastModified(LAST_MODIFIED)
+                .build();
+    }
+
+    private static MessageContext context(String ... headerNamesAndValues) {
+        Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < headerNamesAndValues.length; i += 2) {
+            headers.put(headerNamesAndValues[i], Collections.singletonList(headerNamesAndValues[i + 1]));
+        }
+        Message message = new MessageImpl();
+        message.put(Message.PROTOCOL_HEADERS, headers);
+        message.put(Message.HTTP_REQUEST_METHOD, "GET");
+
+        MessageContext context = Mockito.mock(MessageContext.class);
+        Mockito.when(context.getRequest()).thenReturn(new RequestImpl(message));
+        Mockito.when(context.getHttpHeaders()).thenReturn(new HttpHeadersImpl(message));
+        return context;
+    }
+
+    private static class TrackingInputStream extends ByteArrayInputStream {
+
+        private boolean closed;
+
+        public TrackingInputStream() {
+            super(BYTES);
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+        }
+
+    }
+
+}
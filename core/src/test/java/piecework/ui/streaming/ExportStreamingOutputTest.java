@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.ui.streaming;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import piecework.enumeration.ExportFormat;
+import piecework.model.ProcessInstance;
+import piecework.persistence.ResultHandler;
+import piecework.persistence.concrete.ExportInstanceProvider;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * @author James Renfro
+ */
+public class ExportStreamingOutputTest {
+
+    @Test
+    public void testCsv() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new ExportStreamingOutput(provider(), ExportFormat.CSV).write(output);
+
+        String expected = "\"Name\",\"Comment\"\r\n" +
+                "\"Joe\",\"Says \"\"hi\"\", twice\"\r\n" +
+                "\"Ann, Bob\",\"\"\r\n";
+        Assert.assertEquals(expected, output.toString("UTF-8"));
+    }
+
+    @Test
+    public void testNdjson() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new ExportStreamingOutput(provider(), ExportFormat.NDJSON).write(output);
+
+        String expected = "{\"processInstanceId\":\"1\",\"name\":[\"Joe\"],\"comment\":[\"Says \\\"hi\\\", twice\"]}\n" +
+                "{\"processInstanceId\":\"2\",\"name\":[\"Ann\",\"Bob\"],\"comment\":[]}\n";
+        Assert.assertEquals(expected, output.toString("UTF-8"));
+    }
+
+    private static ExportInstanceProvider provider() throws Exception {
+        final ProcessInstance first = new ProcessInstance.Builder()
+                .processInstanceId("1")
+                .formValue("name", "Joe")
+                .formValue("comment", "Says \"hi\", twice")
+                .build();
+        final ProcessInstance second = new ProcessInstance.Builder()
+                .processInstanceId("2")
+                .formValue("name", "Ann", "Bob")
+                .build();
+
+        ExportInstanceProvider provider = Mockito.mock(ExportInstanceProvider.class);
+        Mockito.when(provider.getHeaderKeys()).thenReturn(Arrays.asList("name", "comment"));
+        Mockito.when(provider.getHeaders()).thenReturn(Arrays.asList("Name", "Comment"));
+        Mockito.when(provider.export(Mockito.<ResultHandler<ProcessInstance>>any())).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) throws Throwable {
+                ResultHandler<ProcessInstance> handler = (ResultHandler<ProcessInstance>) invocation.getArguments()[0];
+                handler.handle(first);
+                handler.handle(second);
+                return Long.valueOf(2);
+            }
+        });
+        return provider;
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.ui.streaming;
+
+import org.htmlcleaner.SimpleHtmlSerializer;
+import org.htmlcleaner.TagNode;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.core.io.ByteArrayResource;
+import piecework.model.Content;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+
+/**
+ * @author James Renfro
+ */
+public class HtmlTemplateCacheTest {
+
+    private static final String HTML = "<html><head><title>Test</title></head><body><!-- comment --><div id=\"main\" class=\"container\">Some text</div></body></html>";
+
+    @Test
+    public void testTemplateIsParsedOnce() throws Exception {
+        HtmlTemplateCache templateCache = new HtmlTemplateCache(new ConcurrentMapCache("htmlTemplateCache"));
+        CountingResource resource = new CountingResource(HTML, 1000l);
+
+        TagNode first = templateCache.template(resource);
+        TagNode second = templateCache.template(resource);
+
+        Assert.assertEquals(1, resource.reads);
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(serialize(first), serialize(second));
+    }
+
+    @Test
+    public void testStreamsAreClosed() throws Exception {
+        HtmlTemplateCache templateCache = new HtmlTemplateCache(new ConcurrentMapCache("htmlTemplateCache"));
+        CountingResource resource = new CountingResource(HTML, 1000l);
+
+        templateCache.template(resource);
+        templateCache.template(resource);
+
+        Assert.assertEquals(1, resource.reads);
+        Assert.assertEquals(1, resource.closes);
+    }
+
+    @Test
+    public void testCachedContentStreamIsClosed() throws Exception {
+        HtmlTemplateCache templateCache = new HtmlTemplateCache(new ConcurrentMapCache("htmlTemplateCache"));
+        TrackingInputStream first = new TrackingInputStream();
+        TrackingInputStream second = new TrackingInputStream();
+
+        TagNode parsed = templateCache.template(content(first));
+        TagNode cached = templateCache.template(content(second));
+
+        Assert.assertTrue(first.closed);
+        Assert.assertTrue(second.closed);
+        Assert.assertEquals(0, second.reads);
+        Assert.assertEquals(serialize(parsed), serialize(cached));
+    }
+
+    @Test
+    public void testModifiedTemplateIsParsedAgain() throws Exception {
+        HtmlTemplateCache templateCache = new HtmlTemplateCache(new ConcurrentMapCache("htmlTemplateCache"));
+        CountingResource resource = new CountingResource(HTML, 1000l);
+
+        templateCache.template(resource);
+        resource.lastModified = 2000l;
+        templateCache.template(resource);
+
+        Assert.assertEquals(2, resource.reads);
+    }
+
+    @Test
+    public void testChangesToCopyDoNotReachCache() throws Exception {
+        HtmlTemplateCache templateCache = new HtmlTemplateCache(new ConcurrentMapCache("htmlTemplateCache"));
+        CountingResource resource = new CountingResource(HTML, 1000l);
+
+        TagNode first = templateCache.template(resource);
+        String expected = serialize(first);
+        TagNode div = first.findElementByAttValue("id", "main", true, false);
+        div.addAttribute("class", "changed");
+        div.addChild(new TagNode("span"));
+
+        TagNode second = templateCache.template(resource);
+        Assert.assertEquals(expected, serialize(second));
+    }
+
+    private static String serialize(TagNode node) throws IOException {
+        return new SimpleHtmlSerializer(HtmlCleanerStreamingOutput.cleanerProperties()).getAsString(node);
+    }
+
+    private static Content content(InputStream inputStream) {
+        return new Content.Builder()
+                .location("/templates/Test.template.html")
+                .lastModified(new Date(1000l))
+                .inputStream(inputStream)
+                .build();
+    }
+
+    private static class CountingResource extends ByteArrayResource {
+
+        private long lastModified;
+        private int reads;
+        private int closes;
+
+        public CountingResource(String html, long lastModified) {
+            super(html.getBytes());
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public long lastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            reads++;
+            return new ByteArrayInputStream(getByteArray()) {
+                @Override
+                public void close() throws IOException {
+                    closes++;
+                    super.close();
+                }
+            };
+        }
+
+    }
+
+    private static class TrackingInputStream extends ByteArrayInputStream {
+
+        private boolean closed;
+        private int reads;
+
+        public TrackingInputStream() {
+            super(HTML.getBytes());
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            reads++;
+            return super.read(b, off, len);
+        }
+
+        @Override
+        public synchronized int read() {
+            reads++;
+            return super.read();
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+
+    }
+
+}
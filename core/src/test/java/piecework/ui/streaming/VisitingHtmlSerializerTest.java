@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.ui.streaming;
+
+import org.htmlcleaner.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author James Renfro
+ */
+public class VisitingHtmlSerializerTest {
+
+    private static final String HTML = "<html><head><title>Test</title><script src=\"remove.js\"></script></head>" +
+            "<body><!-- comment --><div id=\"main\"><input name=\"a\"/><span>Some &amp; text</span></div><input name=\"a\"/></body></html>";
+
+    @Test
+    public void testOutputMatchesTraverseAndSerialize() throws Exception {
+        CleanerProperties cleanerProperties = HtmlCleanerStreamingOutput.cleanerProperties();
+        HtmlCleaner cleaner = new HtmlCleaner(cleanerProperties);
+
+        TagNode traversed = cleaner.clean(HTML);
+        TestVisitor traverseVisitor = new TestVisitor();
+        traversed.traverse(traverseVisitor);
+        String expected = new SimpleHtmlSerializer(cleanerProperties).getAsString(traversed);
+
+        TestVisitor streamingVisitor = new TestVisitor();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new VisitingHtmlSerializer(cleanerProperties, streamingVisitor).write(cleaner.clean(HTML), output);
+
+        Assert.assertEquals(expected, output.toString("UTF-8"));
+        Assert.assertEquals(traverseVisitor.visited, streamingVisitor.visited);
+        Assert.assertFalse(expected.contains("remove.js"));
+        Assert.assertTrue(expected.contains("data-index=\"1\""));
+    }
+
+    /*
+     * Numbers inputs in the order they are visited, adds a child to the body and removes scripts, much as the page decorators do
+     */
+    private static class TestVisitor implements TagNodeVisitor {
+
+        private final List<String> visited = new ArrayList<String>();
+        private int index;
+
+        @Override
+        public boolean visit(TagNode parentNode, HtmlNode htmlNode) {
+            if (htmlNode instanceof TagNode) {
+                TagNode tag = (TagNode) htmlNode;
+                visited.add(tag.getName());
+                if (tag.getName().equals("input"))
+                    tag.addAttribute("data-index", String.valueOf(index++));
+                else if (tag.getName().equals("body"))
+                    tag.addChild(new TagNode("footer"));
+                else if (tag.getName().equals("script"))
+                    tag.removeFromTree();
+            }
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import piecework.Constants;
+import piecework.model.Constraint;
+import piecework.model.Value;
+
+/**
+ * @author James Renfro
+ */
+public class CompiledConstraintTest {
+
+    @Test
+    public void testCompiledOnceAndCached() throws Exception {
+        Constraint constraint = constraint("actionType", "^promote$");
+
+        Assert.assertSame(constraint.compiled(), constraint.compiled());
+    }
+
+    @Test
+    public void testNestedAndOrBranches() throws Exception {
+        Constraint nested = new Constraint.Builder()
+                .type(Constants.ConstraintTypes.IS_ONLY_VISIBLE_WHEN)
+                .name("budgetNumber")
+                .value("^100001$")
+                .and(constraint("actionType", "^demote$"))
+                .build();
+        Constraint constraint = new Constraint.Builder()
+                .type(Constants.ConstraintTypes.IS_ONLY_VISIBLE_WHEN)
+                .name("actionType")
+                .value("^reprimand$")
+                .or(nested)
+                .or(constraint("actionType", "^promote$"))
+                .build();
+
+        ManyMap<String, Value> data = new ManyMap<String, Value>();
+        data.putOne("actionType", new Value("promote"));
+        Assert.assertTrue(constraint.compiled().evaluate(null, data));
+
+        data = new ManyMap<String, Value>();
+        data.putOne("actionType", new Value("demote"));
+        data.putOne("budgetNumber", new Value("100001"));
+        Assert.assertTrue(constraint.compiled().evaluate(null, data));
+
+        data = new ManyMap<String, Value>();
+        data.putOne("actionType", new Value("demote"));
+        Assert.assertFalse(constraint.compiled().evaluate(null, data));
+    }
+
+    @Test
+    public void testNullValueIsNotSatisfied() throws Exception {
+        ManyMap<String, Value> data = new ManyMap<String, Value>();
+        data.putOne("actionType", new Value(null));
+
+        Assert.assertFalse(constraint("actionType", ".*").compiled().evaluate(null, data));
+    }
+
+    @Test
+    public void testInvalidPatternIsNeverSatisfied() throws Exception {
+        ManyMap<String, Value> data = new ManyMap<String, Value>();
+        data.putOne("actionType", new Value("promote"));
+
+        Assert.assertFalse(constraint("actionType", "(promote").compiled().evaluate(null, data));
+    }
+
+    private static Constraint constraint(String name, String value) {
+        return new Constraint.Builder()
+                .type(Constants.ConstraintTypes.IS_ONLY_VISIBLE_WHEN)
+                .name(name)
+                .value(value)
+                .build();
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * @author James Renfro
+ */
+public class KeywordUtilityTest {
+
+    @Test
+    public void testTokens() {
+        Set<String> tokens = KeywordUtility.tokens("Budget Request #1234 -- jsmith@example.edu");
+        Assert.assertEquals(6, tokens.size());
+        Assert.assertTrue(tokens.containsAll(Arrays.asList("budget", "request", "1234", "jsmith", "example", "edu")));
+    }
+
+    @Test
+    public void testTokensOfCollection() {
+        Set<String> tokens = KeywordUtility.tokens(Arrays.asList("first-value", null, "", "Second value"));
+        Assert.assertEquals(3, tokens.size());
+        Assert.assertTrue(tokens.containsAll(Arrays.asList("first", "value", "second")));
+    }
+
+    @Test
+    public void testLongTokensAreTruncated() {
+        Set<String> tokens = KeywordUtility.tokens("abcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyz");
+        Assert.assertEquals(1, tokens.size());
+        Assert.assertEquals(KeywordUtility.MAXIMUM_TOKEN_LENGTH, tokens.iterator().next().length());
+    }
+
+    @Test
+    public void testPrefixes() {
+        List<Pattern> prefixes = KeywordUtility.prefixes("Budget req");
+        Assert.assertEquals(2, prefixes.size());
+        Assert.assertEquals("^budget", prefixes.get(0).pattern());
+        Assert.assertEquals("^req", prefixes.get(1).pattern());
+        Assert.assertTrue(KeywordUtility.prefixes("--").isEmpty());
+    }
+
+}
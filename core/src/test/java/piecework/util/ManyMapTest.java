@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * @author James Renfro
+ */
+public class ManyMapTest {
+
+    @Test
+    public void testPutOne() {
+        ManyMap<String, String> map = new ManyMap<String, String>();
+        Assert.assertEquals(1, map.putOne("color", "red"));
+        Assert.assertEquals(2, map.putOne("color", "blue"));
+        Assert.assertEquals(3, map.putOne("color", "green"));
+        Assert.assertEquals(1, map.putOne("size", "large"));
+
+        Assert.assertEquals(Arrays.asList("red", "blue", "green"), map.get("color"));
+        Assert.assertEquals(Arrays.asList("large"), map.get("size"));
+        Assert.assertEquals("red", map.getOne("color"));
+        Assert.assertNull(map.getOne("shape"));
+    }
+
+    @Test
+    public void testCopyEqualsOriginal() {
+        ManyMap<String, String> map = new ManyMap<String, String>();
+        map.putOne("color", "red");
+        map.putOne("size", "large");
+        map.putOne("size", "small");
+
+        ManyMap<String, String> copy = new ManyMap<String, String>(map);
+        Assert.assertEquals(map, copy);
+    }
+
+    @Test
+    public void testCompactList() {
+        CompactList<String> list = new CompactList<String>();
+        Assert.assertTrue(list.isEmpty());
+
+        list.add("one");
+        Assert.assertEquals(1, list.size());
+        Assert.assertEquals("one", list.get(0));
+
+        list.add(0, "zero");
+        list.add("two");
+        Assert.assertEquals(Arrays.asList("zero", "one", "two"), list);
+
+        Iterator<String> iterator = list.iterator();
+        iterator.next();
+        iterator.remove();
+        Assert.assertEquals(Arrays.asList("one", "two"), list);
+
+        list.clear();
+        Assert.assertTrue(list.isEmpty());
+        list.add("again");
+        Assert.assertEquals("again", list.set(0, "replaced"));
+        Assert.assertEquals(Arrays.asList("replaced"), list);
+        Assert.assertEquals("replaced", list.remove(0));
+        Assert.assertTrue(list.isEmpty());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testCompactListOutOfBounds() {
+        List<String> list = new CompactList<String>("one");
+        list.get(1);
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.validation;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import piecework.Constants;
+import piecework.enumeration.ActionType;
+import piecework.model.*;
+import piecework.model.Process;
+
+/**
+ * @author James Renfro
+ */
+public class SubmissionTemplateFactoryTest {
+
+    private SubmissionTemplateFactory submissionTemplateFactory;
+    private Process process;
+    private ProcessDeployment deployment;
+    private Activity activity;
+    private Container section;
+
+    @Before
+    public void setup() {
+        Field field = new Field.Builder()
+                .fieldId("employeeNameField")
+                .name("employeeName")
+                .type(Constants.FieldTypes.TEXT)
+                .editable()
+                .required()
+                .build();
+
+        section = new Container.Builder().field(field).build();
+        Container container = new Container.Builder().child(section).build();
+
+        activity = new Activity.Builder()
+                .activityId("activity")
+                .action(ActionType.CREATE, new Action(container, null, null))
+                .build();
+        deployment = new ProcessDeployment.Builder()
+                .deploymentId("1")
+                .activity("start", activity)
+                .build();
+
+        process = Mockito.mock(Process.class);
+        Mockito.when(process.getDeployment()).thenReturn(deployment);
+
+        submissionTemplateFactory = new SubmissionTemplateFactory();
+        submissionTemplateFactory.cacheManager = new ConcurrentMapCacheManager();
+    }
+
+    @Test
+    public void testTemplateIsCachedPerValidationId() throws Exception {
+        SubmissionTemplate template = submissionTemplateFactory.submissionTemplate(process, activity, null);
+        SubmissionTemplate sectionTemplate = submissionTemplateFactory.submissionTemplate(process, activity, section.getContainerId());
+
+        Assert.assertTrue(template.isAcceptable("employeeName"));
+        Assert.assertSame(template, submissionTemplateFactory.submissionTemplate(process, activity, null));
+        Assert.assertSame(sectionTemplate, submissionTemplateFactory.submissionTemplate(process, activity, section.getContainerId()));
+        Assert.assertNotSame(template, sectionTemplate);
+    }
+
+    @Test
+    public void testPrecompileBuildsEverySection() throws Exception {
+        submissionTemplateFactory.precompile(deployment);
+
+        org.springframework.cache.Cache cache = submissionTemplateFactory.cacheManager.getCache(Constants.CacheNames.SUBMISSION_TEMPLATES);
+        Assert.assertNotNull(cache.get("1:activity"));
+        Assert.assertNotNull(cache.get("1:activity:" + section.getContainerId()));
+        Assert.assertSame(cache.get("1:activity").get(), submissionTemplateFactory.submissionTemplate(process, activity, null));
+    }
+
+    @Test
+    public void testSaveClearsTemplates() throws Exception {
+        SubmissionTemplate template = submissionTemplateFactory.submissionTemplate(process, activity, null);
+
+        submissionTemplateFactory.onAfterSave(deployment, null);
+
+        Assert.assertNotSame(template, submissionTemplateFactory.submissionTemplate(process, activity, null));
+    }
+
+}
@@ -23,6 +23,12 @@ import org.activiti.bpmn.model.FlowElement;
 import org.activiti.engine.*;
 import org.activiti.engine.delegate.DelegateTask;
 import org.activiti.engine.history.*;
+import org.activiti.engine.impl.persistence.entity.ExecutionEntity;
+import org.activiti.engine.impl.persistence.entity.HistoricProcessInstanceEntity;
+import org.activiti.engine.impl.persistence.entity.HistoricTaskInstanceEntity;
+import org.activiti.engine.impl.persistence.entity.ProcessDefinitionEntity;
+import org.activiti.engine.impl.persistence.entity.TaskEntity;
+import org.activiti.engine.query.NativeQuery;
 import org.activiti.engine.query.Query;
 import org.activiti.engine.repository.Deployment;
 import org.activiti.engine.repository.ProcessDefinition;
@@ -305,33 +311,38 @@ public class ActivitiEngineProxy implements ProcessEngineProxy {
         if (! criteria.getEngines().contains(getKey()))
             return null;
 
-        HistoricProcessInstanceQuery query = instanceQuery(criteria);
-
         ProcessExecutionResults.Builder resultsBuilder = new ProcessExecutionResults.Builder();
 
-        List<HistoricProcessInstance> instances;
-
-        // Can't use paging since we're going to filter after the fact
-        instances = query.list();
-        int size = instances.size();
+        Set<String> engineProcessDefinitionKeys = criteria.getEngineProcessDefinitionKeys();
+        if (engineProcessDefinitionKeys == null || engineProcessDefinitionKeys.isEmpty())
+            return resultsBuilder.executions(Collections.<ProcessExecution>emptyList()).build();
 
-        resultsBuilder.firstResult(0);
-        resultsBuilder.maxResults(size);
-        resultsBuilder.total(size);
+        // Activiti only filters by a single process definition key at a time, so searches across several keys
+        // are made with native sql instead, which lets the database do the filtering, counting and paging
+        List<HistoricProcessInstance> instances;
+        long total;
+        int firstResult = criteria.getFirstResult() != null ? criteria.getFirstResult().intValue() : 0;
+        Integer maxResults = criteria.getMaxResults();
+        if (engineProcessDefinitionKeys.size() > 1) {
+            NativeQueryBuilder builder = nativeInstanceQuery(criteria);
+            total = builder.count(processEngine.getHistoryService().createNativeHistoricProcessInstanceQuery()).count();
+            NativeHistoricProcessInstanceQuery query = builder.select(processEngine.getHistoryService().createNativeHistoricProcessInstanceQuery());
+            instances = maxResults != null ? query.listPage(firstResult, maxResults.intValue()) : query.list();
+        } else {
+            HistoricProcessInstanceQuery query = instanceQuery(criteria);
+            total = query.count();
+            instances = maxResults != null ? query.listPage(firstResult, maxResults.intValue()) : query.list();
+        }
 
-        // Only need to worry about filtering if there are more than 1 key, since with 1 key
-        // it's part of the search that Activiti performs --- see the instanceQuery() method
-        SortedSet<String> engineProcessDefinitionKeys = new TreeSet<String>(criteria.getEngineProcessDefinitionKeys());
-        Set<String> processDefinitionIds = proxyHelper.getProcessDefinitionIds(engineProcessDefinitionKeys.toArray(new String[engineProcessDefinitionKeys.size()]));
+        resultsBuilder.firstResult(maxResults != null ? firstResult : 0);
+        resultsBuilder.maxResults(maxResults != null ? maxResults.intValue() : instances.size());
+        resultsBuilder.total(total);
 
         List<ProcessExecution> executions;
         if (instances != null && !instances.isEmpty()) {
             executions = new ArrayList<ProcessExecution>(instances.size());
 
             for (HistoricProcessInstance instance : instances) {
-                if (!processDefinitionIds.contains(instance.getProcessDefinitionId()))
-                    continue;
-
                 ProcessExecution.Builder executionBuilder = new ProcessExecution.Builder()
                         .executionId(instance.getId())
                         .businessKey(instance.getBusinessKey())
@@ -417,24 +428,65 @@ public class ActivitiEngineProxy implements ProcessEngineProxy {
         if (criteria.getProcesses() == null || criteria.getProcesses().isEmpty())
             return resultsBuilder.build();
 
-        Query query;
-
-        if (StringUtils.isEmpty(criteria.getProcessStatus()) || criteria.getProcessStatus().equals(Constants.ProcessStatuses.OPEN) ||
-                criteria.getProcessStatus().equals(Constants.ProcessStatuses.SUSPENDED)) {
-            query = taskQuery(criteria);
-        } else {
-            query = historicTaskQuery(criteria);
-        }
+        boolean historic = !(StringUtils.isEmpty(criteria.getProcessStatus()) || criteria.getProcessStatus().equals(Constants.ProcessStatuses.OPEN) ||
+                criteria.getProcessStatus().equals(Constants.ProcessStatuses.SUSPENDED));
 
         long time = 0;
         if (LOG.isDebugEnabled())
             time = System.currentTimeMillis();
 
-        List<?> activitiTasks = query.list();
-        int size = activitiTasks.size();
+        // Activiti only filters by a single process definition key at a time, so searches across several processes
+        // are made with native sql instead, which lets the database do the filtering, counting and paging
+        int firstResult = criteria.getFirstResult() != null ? criteria.getFirstResult().intValue() : 0;
+        Integer maxResults = criteria.getMaxResults();
+        List<?> activitiTasks;
+        long total;
+        if (criteria.getProcesses().size() > 1) {
+            Set<String> engineProcessDefinitionKeys = engineProcessDefinitionKeys(criteria.getProcesses());
+            NativeQuery countQuery;
+            NativeQuery query;
+            if (historic) {
+                NativeQueryBuilder builder = nativeHistoricTaskQuery(criteria, engineProcessDefinitionKeys);
+                countQuery = builder.count(processEngine.getHistoryService().createNativeHistoricTaskInstanceQuery());
+                query = builder.select(processEngine.getHistoryService().createNativeHistoricTaskInstanceQuery());
+            } else {
+                NativeQueryBuilder builder = nativeTaskQuery(criteria, engineProcessDefinitionKeys);
+                countQuery = builder.count(processEngine.getTaskService().createNativeTaskQuery());
+                query = builder.select(processEngine.getTaskService().createNativeTaskQuery());
+            }
+            activitiTasks = maxResults != null ? query.listPage(firstResult, maxResults.intValue()) : query.list();
+            total = maxResults != null ? countQuery.count() : activitiTasks.size();
+        } else {
+            Query query = historic ? historicTaskQuery(criteria) : taskQuery(criteria);
+            activitiTasks = maxResults != null ? query.listPage(firstResult, maxResults.intValue()) : query.list();
+            total = maxResults != null ? query.count() : activitiTasks.size();
+        }
 
         if (activitiTasks != null) {
             ManyMap<String, Process> processMap = proxyHelper.getProcessDefinitionIdMap(criteria.getProcesses());
+
+            // Candidates and users are looked up for the whole list at once, rather than a task at a time
+            Set<String> taskIds = new HashSet<String>();
+            Set<String> userIds = new HashSet<String>();
+            for (Object instance : activitiTasks) {
+                if (instance instanceof org.activiti.engine.task.Task) {
+                    org.activiti.engine.task.Task activitiTask = org.activiti.engine.task.Task.class.cast(instance);
+                    taskIds.add(activitiTask.getId());
+                    if (StringUtils.isNotEmpty(activitiTask.getAssignee()))
+                        userIds.add(activitiTask.getAssignee());
+                } else if (instance != null) {
+                    HistoricTaskInstance historicTask = HistoricTaskInstance.class.cast(instance);
+                    taskIds.add(historicTask.getId());
+                    if (StringUtils.isNotEmpty(historicTask.getAssignee()))
+                        userIds.add(historicTask.getAssignee());
+                }
+            }
+            ManyMap<String, String> candidateUserIdMap = proxyHelper.getCandidateUserIds(taskIds, historic);
+            for (List<String> candidateUserIds : candidateUserIdMap.values()) {
+                userIds.addAll(candidateUserIds);
+            }
+            Map<String, User> userMap = userDetailsService.findUsers(userIds);
+
             for (Object instance : activitiTasks) {
                 String engineProcessInstanceId;
                 Task task;
@@ -444,7 +496,7 @@ public class ActivitiEngineProxy implements ProcessEngineProxy {
                     List<Process> processes = processMap.get(activitiTask.getProcessDefinitionId());
                     if (processes != null) {
                         for (Process process : processes) {
-                            resultsBuilder.task(convert(activitiTask, process, true));
+                            resultsBuilder.task(convert(activitiTask, process, candidateUserIdMap.get(activitiTask.getId()), userMap));
                         }
                     }
                 } else {
@@ -456,7 +508,7 @@ public class ActivitiEngineProxy implements ProcessEngineProxy {
                     List<Process> processes = processMap.get(historicTask.getProcessDefinitionId());
                     if (processes != null) {
                         for (Process process : processes) {
-                            resultsBuilder.task(convert(historicTask, process, true));
+                            resultsBuilder.task(convert(historicTask, process, candidateUserIdMap.get(historicTask.getId()), userMap));
                         }
                     }
                 }
@@ -468,9 +520,9 @@ public class ActivitiEngineProxy implements ProcessEngineProxy {
             LOG.debug("Searching for tasks took " + (System.currentTimeMillis() - time) + " ms");
         }
 
-        resultsBuilder.firstResult(0);
-        resultsBuilder.maxResults(size);
-        resultsBuilder.total(size);
+        resultsBuilder.firstResult(maxResults != null ? firstResult : 0);
+        resultsBuilder.maxResults(maxResults != null ? maxResults.intValue() : activitiTasks.size());
+        resultsBuilder.total(total);
 
         return resultsBuilder.build();
     }
@@ -485,6 +537,49 @@ public class ActivitiEngineProxy implements ProcessEngineProxy {
     }
 
     private Task convert(org.activiti.engine.task.Task instance, Process process, boolean includeDetails) {
+        Task.Builder taskBuilder = builder(instance, process);
+
+        if (includeDetails) {
+            List<IdentityLink> identityLinks = processEngine.getTaskService().getIdentityLinksForTask(instance.getId());
+
+            if (identityLinks != null && !identityLinks.isEmpty()) {
+                for (IdentityLink identityLink : identityLinks) {
+                    String type = identityLink.getType();
+
+                    if (type == null)
+                        continue;
+
+                    if (type.equals(IdentityLinkType.ASSIGNEE) && identityLink.getUserId() != null)
+                        taskBuilder.assignee(userDetailsService.getUser(identityLink.getUserId()));
+                    else if (type.equals(IdentityLinkType.CANDIDATE) && identityLink.getUserId() != null)
+                        taskBuilder.candidateAssignee(userDetailsService.getUser(identityLink.getUserId()));
+                }
+            }
+        } else if (StringUtils.isNotEmpty(instance.getAssignee())) {
+            taskBuilder.assignee(userDetailsService.getUser(instance.getAssignee()));
+        }
+
+        return taskBuilder.build();
+    }
+
+    /*
+     * Builds the task from candidates and users that have already been looked up for a list of tasks
+     */
+    private Task convert(org.activiti.engine.task.Task instance, Process process, List<String> candidateUserIds, Map<String, User> userMap) {
+        Task.Builder taskBuilder = builder(instance, process);
+
+        if (StringUtils.isNotEmpty(instance.getAssignee()))
+            taskBuilder.assignee(userMap.get(instance.getAssignee()));
+        if (candidateUserIds != null) {
+            for (String candidateUserId : candidateUserIds) {
+                taskBuilder.candidateAssignee(userMap.get(candidateUserId));
+            }
+        }
+
+        return taskBuilder.build();
+    }
+
+    private Task.Builder builder(org.activiti.engine.task.Task instance, Process process) {
         Task.Builder taskBuilder = new Task.Builder()
                 .taskInstanceId(instance.getId())
                 .taskDefinitionKey(instance.getTaskDefinitionKey())
@@ -511,11 +606,17 @@ public class ActivitiEngineProxy implements ProcessEngineProxy {
         if (!instance.isSuspended())
             taskBuilder.active();
 
+        return taskBuilder;
+    }
+
+    private Task convert(HistoricTaskInstance instance, Process process, boolean includeDetails) {
+        Task.Builder taskBuilder = builder(instance, process);
+
         if (includeDetails) {
-            List<IdentityLink> identityLinks = processEngine.getTaskService().getIdentityLinksForTask(instance.getId());
+            List<HistoricIdentityLink> identityLinks = processEngine.getHistoryService().getHistoricIdentityLinksForTask(instance.getId());
 
             if (identityLinks != null && !identityLinks.isEmpty()) {
-                for (IdentityLink identityLink : identityLinks) {
+                for (HistoricIdentityLink identityLink : identityLinks) {
                     String type = identityLink.getType();
 
                     if (type == null)
@@ -534,7 +635,21 @@ public class ActivitiEngineProxy implements ProcessEngineProxy {
         return taskBuilder.build();
     }
 
-    private Task convert(HistoricTaskInstance instance, Process process, boolean includeDetails) {
+    private Task convert(HistoricTaskInstance instance, Process process, List<String> candidateUserIds, Map<String, User> userMap) {
+        Task.Builder taskBuilder = builder(instance, process);
+
+        if (StringUtils.isNotEmpty(instance.getAssignee()))
+            taskBuilder.assignee(userMap.get(instance.getAssignee()));
+        if (candidateUserIds != null) {
+            for (String candidateUserId : candidateUserIds) {
+                taskBuilder.candidateAssignee(userMap.get(candidateUserId));
+            }
+        }
+
+        return taskBuilder.build();
+    }
+
+    private Task.Builder builder(HistoricTaskInstance instance, Process process) {
         Task.Builder taskBuilder = new Task.Builder()
                 .taskInstanceId(instance.getId())
                 .taskDefinitionKey(instance.getTaskDefinitionKey())
@@ -557,27 +672,7 @@ public class ActivitiEngineProxy implements ProcessEngineProxy {
         else
             taskBuilder.taskStatus(Constants.TaskStatuses.OPEN);
 
-        if (includeDetails) {
-            List<HistoricIdentityLink> identityLinks = processEngine.getHistoryService().getHistoricIdentityLinksForTask(instance.getId());
-
-            if (identityLinks != null && !identityLinks.isEmpty()) {
-                for (HistoricIdentityLink identityLink : identityLinks) {
-                    String type = identityLink.getType();
-
-                    if (type == null)
-                        continue;
-
-                    if (type.equals(IdentityLinkType.ASSIGNEE) && identityLink.getUserId() != null)
-                        taskBuilder.assignee(userDetailsService.getUser(identityLink.getUserId()));
-                    else if (type.equals(IdentityLinkType.CANDIDATE) && identityLink.getUserId() != null)
-                        taskBuilder.candidateAssignee(userDetailsService.getUser(identityLink.getUserId()));
-                }
-            }
-        } else if (StringUtils.isNotEmpty(instance.getAssignee())) {
-            taskBuilder.assignee(userDetailsService.getUser(instance.getAssignee()));
-        }
-
-        return taskBuilder.build();
+        return taskBuilder;
     }
 
 
@@ -617,6 +712,234 @@ public class ActivitiEngineProxy implements ProcessEngineProxy {
         return activitiInstance;
     }
 
+    /*
+     * Matches the same instances as instanceQuery, but for any number of process definition keys
+     */
+    private NativeQueryBuilder nativeInstanceQuery(ProcessInstanceSearchCriteria criteria) {
+        NativeQueryBuilder builder = new NativeQueryBuilder(tableName(HistoricProcessInstanceEntity.class), tableName(ProcessDefinitionEntity.class))
+                .processDefinitionKeyIn(criteria.getEngineProcessDefinitionKeys());
+
+        List<String> executionIds = criteria.getExecutionIds();
+        if (executionIds != null && !executionIds.isEmpty())
+            builder.in("RES.PROC_INST_ID_", new HashSet<String>(executionIds));
+
+        if (criteria.getBusinessKey() != null)
+            builder.where("RES.BUSINESS_KEY_ = ?", criteria.getBusinessKey());
+
+        if (criteria.getStartedAfter() != null)
+            builder.where("RES.START_TIME_ >= ?", criteria.getStartedAfter());
+
+        if (criteria.getStartedBefore() != null)
+            builder.where("RES.START_TIME_ <= ?", criteria.getStartedBefore());
+
+        if (criteria.getCompletedBefore() != null)
+            builder.where("RES.END_TIME_ <= ?", criteria.getCompletedBefore());
+
+        if (criteria.getCompletedAfter() != null)
+            builder.where("RES.END_TIME_ >= ?", criteria.getCompletedAfter());
+
+        if (criteria.getInitiatedBy() != null)
+            builder.where("RES.START_USER_ID_ = ?", criteria.getInitiatedBy());
+
+        if (criteria.getComplete() != null)
+            builder.where(criteria.getComplete().booleanValue() ? "RES.END_TIME_ IS NOT NULL" : "RES.END_TIME_ IS NULL");
+
+        ProcessInstanceSearchCriteria.OrderBy orderBy = criteria.getOrderBy();
+        if (orderBy == ProcessInstanceSearchCriteria.OrderBy.START_TIME_ASC)
+            builder.orderBy("RES.START_TIME_ ASC, RES.ID_ ASC");
+        else if (orderBy == ProcessInstanceSearchCriteria.OrderBy.START_TIME_DESC)
+            builder.orderBy("RES.START_TIME_ DESC, RES.ID_ DESC");
+        else if (orderBy == ProcessInstanceSearchCriteria.OrderBy.END_TIME_ASC)
+            builder.orderBy("RES.END_TIME_ ASC, RES.ID_ ASC");
+        else
+            builder.orderBy("RES.END_TIME_ DESC, RES.ID_ DESC");
+
+        return builder;
+    }
+
+    /*
+     * Matches the same tasks as taskQuery, but for any number of process definition keys
+     */
+    private NativeQueryBuilder nativeTaskQuery(TaskCriteria criteria, Set<String> engineProcessDefinitionKeys) {
+        NativeQueryBuilder builder = new NativeQueryBuilder(tableName(TaskEntity.class), tableName(ProcessDefinitionEntity.class))
+                .processDefinitionKeyIn(engineProcessDefinitionKeys);
+
+        List<String> taskIds = criteria.getTaskIds();
+        if (taskIds != null && taskIds.size() == 1)
+            builder.where("RES.ID_ = ?", taskIds.iterator().next());
+
+        if (StringUtils.isNotEmpty(criteria.getProcessStatus()) && !criteria.getProcessStatus().equals(Constants.ProcessStatuses.OPEN)) {
+            if (criteria.getProcessStatus().equals(Constants.ProcessStatuses.SUSPENDED))
+                builder.where("RES.SUSPENSION_STATE_ = 2");
+        } else {
+            builder.where("RES.SUSPENSION_STATE_ = 1");
+        }
+
+        if (StringUtils.isNotEmpty(criteria.getExecutionId()))
+            builder.where("RES.PROC_INST_ID_ = ?", criteria.getExecutionId());
+
+        if (StringUtils.isNotEmpty(criteria.getBusinessKey()))
+            builder.where("RES.PROC_INST_ID_ IN (SELECT E.ID_ FROM " + tableName(ExecutionEntity.class) + " E WHERE E.BUSINESS_KEY_ = ?)", criteria.getBusinessKey());
+
+        if (StringUtils.isNotEmpty(criteria.getAssigneeId()))
+            builder.where("RES.ASSIGNEE_ = ?", criteria.getAssigneeId());
+
+        // Same as the engine's own candidate user search, which also matches tasks offered to any of the user's groups
+        if (StringUtils.isNotEmpty(criteria.getCandidateAssigneeId())) {
+            String candidateAssigneeId = criteria.getCandidateAssigneeId();
+            Set<String> groupIds = new HashSet<String>();
+            for (org.activiti.engine.identity.Group group : processEngine.getIdentityService().createGroupQuery().groupMember(candidateAssigneeId).list()) {
+                groupIds.add(group.getId());
+            }
+            builder.where("RES.ASSIGNEE_ IS NULL AND EXISTS (SELECT LINK.ID_ FROM " + proxyHelper.getIdentityLinkTableName(false) + " LINK WHERE LINK.TASK_ID_ = RES.ID_ " +
+                    "AND LINK.TYPE_ = ? AND (LINK.USER_ID_ = ? OR LINK.GROUP_ID_ IN (?)))", IdentityLinkType.CANDIDATE, candidateAssigneeId, groupIds);
+        }
+
+        if (StringUtils.isNotEmpty(criteria.getParticipantId())) {
+            String participantId = criteria.getParticipantId();
+            builder.where("(RES.ASSIGNEE_ = ? OR RES.OWNER_ = ? OR EXISTS (SELECT LINK.ID_ FROM " + proxyHelper.getIdentityLinkTableName(false) + " LINK " +
+                    "WHERE LINK.TASK_ID_ = RES.ID_ AND LINK.USER_ID_ = ?))", participantId, participantId, participantId);
+        }
+
+        if (criteria.getCreatedAfter() != null)
+            builder.where("RES.CREATE_TIME_ > ?", criteria.getCreatedAfter());
+
+        if (criteria.getCreatedBefore() != null)
+            builder.where("RES.CREATE_TIME_ < ?", criteria.getCreatedBefore());
+
+        if (criteria.getDueBefore() != null)
+            builder.where("RES.DUE_DATE_ < ?", criteria.getDueBefore());
+
+        if (criteria.getDueAfter() != null)
+            builder.where("RES.DUE_DATE_ > ?", criteria.getDueAfter());
+
+        if (criteria.getMaxPriority() != null)
+            builder.where("RES.PRIORITY_ <= ?", criteria.getMaxPriority());
+
+        if (criteria.getMinPriority() != null)
+            builder.where("RES.PRIORITY_ >= ?", criteria.getMinPriority());
+
+        if (StringUtils.isNotEmpty(criteria.getProcessInstanceId())) {
+            ProcessInstance instance = processInstanceRepository.findOne(criteria.getProcessInstanceId());
+            // A search scoped to an instance that is not known matches nothing, rather than every task
+            if (instance != null)
+                builder.where("RES.PROC_INST_ID_ = ?", instance.getEngineProcessInstanceId());
+            else
+                builder.where("1 = 0");
+        }
+
+        TaskCriteria.OrderBy orderBy = criteria.getOrderBy();
+        if (orderBy != null)
+            builder.orderBy(taskOrderBy(orderBy, "RES.CREATE_TIME_"));
+        else
+            builder.orderBy("RES.DUE_DATE_ DESC, RES.CREATE_TIME_ DESC, RES.ID_ DESC");
+
+        if (criteria.getActive() != null)
+            builder.where(criteria.getActive().booleanValue() ? "RES.SUSPENSION_STATE_ = 1" : "RES.SUSPENSION_STATE_ = 2");
+
+        return builder;
+    }
+
+    /*
+     * Matches the same tasks as historicTaskQuery, but for any number of process definition keys
+     */
+    private NativeQueryBuilder nativeHistoricTaskQuery(TaskCriteria criteria, Set<String> engineProcessDefinitionKeys) {
+        NativeQueryBuilder builder = new NativeQueryBuilder(tableName(HistoricTaskInstanceEntity.class), tableName(ProcessDefinitionEntity.class))
+                .processDefinitionKeyIn(engineProcessDefinitionKeys);
+
+        String processFinished = "EXISTS (SELECT P.ID_ FROM " + tableName(HistoricProcessInstanceEntity.class) + " P WHERE P.PROC_INST_ID_ = RES.PROC_INST_ID_ AND P.END_TIME_ IS NOT NULL)";
+        String processUnfinished = "EXISTS (SELECT P.ID_ FROM " + tableName(HistoricProcessInstanceEntity.class) + " P WHERE P.PROC_INST_ID_ = RES.PROC_INST_ID_ AND P.END_TIME_ IS NULL)";
+
+        if (StringUtils.isNotEmpty(criteria.getProcessStatus()) && !criteria.getProcessStatus().equals(Constants.ProcessStatuses.OPEN)) {
+            if (criteria.getProcessStatus().equals(Constants.ProcessStatuses.COMPLETE)) {
+                builder.where("RES.DELETE_REASON_ = ?", "completed");
+                builder.where(processFinished);
+            }
+            if (criteria.getProcessStatus().equals(Constants.ProcessStatuses.CANCELLED)) {
+                builder.where("RES.DELETE_REASON_ = ?", Constants.DeleteReasons.CANCELLED);
+                builder.where(processFinished);
+            }
+        } else {
+            builder.where(processUnfinished);
+        }
+
+        List<String> taskIds = criteria.getTaskIds();
+        if (taskIds != null && taskIds.size() == 1)
+            builder.where("RES.ID_ = ?", taskIds.iterator().next());
+
+        if (criteria.getExecutionId() != null)
+            builder.where("RES.EXECUTION_ID_ = ?", criteria.getExecutionId());
+
+        if (StringUtils.isNotEmpty(criteria.getAssigneeId()))
+            builder.where("RES.ASSIGNEE_ = ?", criteria.getAssigneeId());
+
+        if (criteria.getDueBefore() != null)
+            builder.where("RES.DUE_DATE_ < ?", criteria.getDueBefore());
+
+        if (criteria.getDueAfter() != null)
+            builder.where("RES.DUE_DATE_ > ?", criteria.getDueAfter());
+
+        if (StringUtils.isNotEmpty(criteria.getParticipantId())) {
+            String participantId = criteria.getParticipantId();
+            builder.where("(RES.ASSIGNEE_ = ? OR RES.OWNER_ = ? OR EXISTS (SELECT LINK.ID_ FROM " + proxyHelper.getIdentityLinkTableName(true) + " LINK " +
+                    "WHERE LINK.TASK_ID_ = RES.ID_ AND LINK.USER_ID_ = ?))", participantId, participantId, participantId);
+        }
+
+        if (StringUtils.isNotEmpty(criteria.getProcessInstanceId())) {
+            ProcessInstance instance = processInstanceRepository.findOne(criteria.getProcessInstanceId());
+            // A search scoped to an instance that is not known matches nothing, rather than every task
+            if (instance != null)
+                builder.where("RES.PROC_INST_ID_ = ?", instance.getEngineProcessInstanceId());
+            else
+                builder.where("1 = 0");
+        }
+
+        TaskCriteria.OrderBy orderBy = criteria.getOrderBy();
+        if (orderBy != null)
+            builder.orderBy(taskOrderBy(orderBy, "RES.START_TIME_"));
+        else
+            builder.orderBy("RES.START_TIME_ DESC, RES.ID_ DESC");
+
+        if (criteria.getComplete() != null)
+            builder.where(criteria.getComplete().booleanValue() ? processFinished : processUnfinished);
+
+        return builder;
+    }
+
+    /*
+     * Returns the name of the engine's table for the entity passed, with whatever prefix the engine is configured to use
+     */
+    private String tableName(Class<?> entityClass) {
+        return processEngine.getManagementService().getTableName(entityClass);
+    }
+
+    private static String taskOrderBy(TaskCriteria.OrderBy orderBy, String createdColumn) {
+        switch (orderBy) {
+            case CREATED_TIME_ASC:
+                return createdColumn + " ASC, RES.ID_ ASC";
+            case DUE_TIME_ASC:
+                return "RES.DUE_DATE_ ASC, RES.ID_ ASC";
+            case DUE_TIME_DESC:
+                return "RES.DUE_DATE_ DESC, RES.ID_ DESC";
+            case PRIORITY_ASC:
+                return "RES.PRIORITY_ ASC, RES.ID_ ASC";
+            case PRIORITY_DESC:
+                return "RES.PRIORITY_ DESC, RES.ID_ DESC";
+            default:
+                return createdColumn + " DESC, RES.ID_ DESC";
+        }
+    }
+
+    private static Set<String> engineProcessDefinitionKeys(Set<Process> processes) {
+        Set<String> engineProcessDefinitionKeys = new HashSet<String>();
+        for (Process process : processes) {
+            ProcessDeployment deployment = process.getDeployment();
+            if (deployment != null && StringUtils.isNotEmpty(deployment.getEngineProcessDefinitionKey()))
+                engineProcessDefinitionKeys.add(deployment.getEngineProcessDefinitionKey());
+        }
+        return engineProcessDefinitionKeys;
+    }
+
     private HistoricProcessInstanceQuery instanceQuery(ProcessInstanceSearchCriteria criteria) {
         HistoricProcessInstanceQuery query = processEngine.getHistoryService().createHistoricProcessInstanceQuery();
 
@@ -15,20 +15,33 @@
  */
 package piecework.engine.activiti;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.activiti.engine.ProcessEngine;
 import org.activiti.engine.RepositoryService;
+import org.activiti.engine.impl.persistence.entity.IdentityLinkEntity;
 import org.activiti.engine.repository.ProcessDefinition;
+import org.activiti.engine.task.IdentityLinkType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
+import piecework.Constants;
 import piecework.model.*;
 import piecework.model.Process;
 import piecework.util.ManyMap;
 
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -37,16 +50,25 @@ import java.util.Set;
 @Service
 public class ActivitiEngineProxyHelper {
 
+    // Keeps the in clause well under the limits that some databases put on the number of values
+    private static final int IDENTITY_LINK_BATCH_SIZE = 500;
+    private static final String CANDIDATE_USERS_SQL = "SELECT TASK_ID_, USER_ID_ FROM %s WHERE TYPE_ = :type AND USER_ID_ IS NOT NULL AND TASK_ID_ IN (:taskIds)";
+
     @Autowired
     ProcessEngine processEngine;
 
-    @Cacheable("processDefinitionIds")
+    @Autowired
+    DataSource dataSource;
+
+    @Cacheable(Constants.CacheNames.PROCESS_DEFINITION_IDS)
     public Set<String> getProcessDefinitionIds(String ... keys) {
+        // Asks only for the definitions with these keys, rather than reading every definition the engine has
         Set<String> keySet = Sets.newHashSet(keys);
         Set<String> set = new HashSet<String>();
-        for (ProcessDefinition processDefinition : processEngine.getRepositoryService().createProcessDefinitionQuery().list()) {
-            if (keySet.contains(processDefinition.getKey()))
+        for (String key : keySet) {
+            for (ProcessDefinition processDefinition : processEngine.getRepositoryService().createProcessDefinitionQuery().processDefinitionKey(key).list()) {
                 set.add(processDefinition.getId());
+            }
         }
 
         return Collections.unmodifiableSet(set);
@@ -62,7 +84,7 @@ public class ActivitiEngineProxyHelper {
 //        return set;
 //    }
 
-    @Cacheable("processDefinitionIdMap")
+    @Cacheable(Constants.CacheNames.PROCESS_DEFINITION_ID_MAP)
     public ManyMap<String, Process> getProcessDefinitionIdMap(Set<Process> processes) {
         ManyMap<String, Process> processDefinitionKeyMap = new ManyMap<String, Process>();
         for (Process process : processes) {
@@ -72,15 +94,52 @@ public class ActivitiEngineProxyHelper {
         }
 
         ManyMap<String, Process> map = new ManyMap<String, Process>();
-        for (ProcessDefinition processDefinition : processEngine.getRepositoryService().createProcessDefinitionQuery().list()) {
-            List<Process> matchingProcesses = processDefinitionKeyMap.get(processDefinition.getKey());
-            if (matchingProcesses != null && !matchingProcesses.isEmpty())
-                map.put(processDefinition.getId(), matchingProcesses);
+        for (Map.Entry<String, List<Process>> entry : processDefinitionKeyMap.entrySet()) {
+            for (ProcessDefinition processDefinition : processEngine.getRepositoryService().createProcessDefinitionQuery().processDefinitionKey(entry.getKey()).list()) {
+                map.put(processDefinition.getId(), entry.getValue());
+            }
         }
 
         return map;
     }
 
+    /*
+     * Returns the ids of the candidate users for each of the tasks passed, keyed by task id. The engine only
+     * offers to look up identity links one task at a time, so they are read directly from its tables here,
+     * a batch of tasks at a time. Assignees are not stored as identity links, so callers take them from the
+     * task itself.
+     */
+    public ManyMap<String, String> getCandidateUserIds(Collection<String> taskIds, boolean historic) {
+        final ManyMap<String, String> candidateUserIdMap = new ManyMap<String, String>();
+        if (taskIds == null || taskIds.isEmpty())
+            return candidateUserIdMap;
+
+        String sql = String.format(CANDIDATE_USERS_SQL, getIdentityLinkTableName(historic));
+        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(dataSource);
+        for (List<String> batch : Lists.partition(new ArrayList<String>(taskIds), IDENTITY_LINK_BATCH_SIZE)) {
+            MapSqlParameterSource parameters = new MapSqlParameterSource()
+                    .addValue("type", IdentityLinkType.CANDIDATE)
+                    .addValue("taskIds", batch);
+            template.query(sql, parameters, new RowCallbackHandler() {
+                @Override
+                public void processRow(ResultSet rs) throws SQLException {
+                    candidateUserIdMap.putOne(rs.getString("TASK_ID_"), rs.getString("USER_ID_"));
+                }
+            });
+        }
+
+        return candidateUserIdMap;
+    }
+
+    /*
+     * Returns the name of the engine's identity link table, with whatever prefix the engine is configured to use.
+     * The engine only maps the runtime table, so the historic one is named after it the way the engine names it.
+     */
+    public String getIdentityLinkTableName(boolean historic) {
+        String tableName = processEngine.getManagementService().getTableName(IdentityLinkEntity.class);
+        return historic ? tableName.replace("ACT_RU_", "ACT_HI_") : tableName;
+    }
+
     public String getKey() {
         return "activiti";
     }
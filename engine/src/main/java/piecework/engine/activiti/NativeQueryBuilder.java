@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.engine.activiti;
+
+import org.activiti.engine.query.NativeQuery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the sql for an Activiti native query, for the searches that the engine's query api
+ * cannot express, such as matching any one of several process definitions. Conditions are
+ * written against the alias RES for the table being searched, with ? standing in for each
+ * value, and values are always passed to the engine as parameters rather than inlined.
+ *
+ * The same conditions produce both the query for a page of results and the query for the
+ * total, so that the total stays exact however the results are paged.
+ *
+ * @author James Renfro
+ */
+public class NativeQueryBuilder {
+
+    private final String table;
+    private final String processDefinitionTable;
+    private final List<String> conditions;
+    private final Map<String, Object> parameters;
+    private String orderBy;
+
+    /*
+     * Takes the names of the table being searched and of the engine's process definition table, as the engine
+     * resolves them, so that any table prefix the engine is configured with is kept
+     */
+    public NativeQueryBuilder(String table, String processDefinitionTable) {
+        this.table = table;
+        this.processDefinitionTable = processDefinitionTable;
+        this.conditions = new ArrayList<String>();
+        this.parameters = new LinkedHashMap<String, Object>();
+    }
+
+    /*
+     * Adds a condition that every result has to meet, replacing each ? in it with the next value passed. A
+     * collection is expanded to a comma separated list of values, for use in an in clause.
+     */
+    public NativeQueryBuilder where(String condition, Object ... values) {
+        StringBuilder builder = new StringBuilder();
+        int index = 0;
+        for (int i = 0; i < condition.length(); i++) {
+            char c = condition.charAt(i);
+            if (c == '?' && values != null && index < values.length) {
+                Object value = values[index++];
+                if (value instanceof Collection)
+                    builder.append(placeholders((Collection<?>) value));
+                else
+                    builder.append(parameter(value));
+            }
+            else
+                builder.append(c);
+        }
+        conditions.add(builder.toString());
+        return this;
+    }
+
+    /*
+     * Adds a condition that the column matches one of the values passed, which matches nothing when there are none
+     */
+    public NativeQueryBuilder in(String column, Collection<?> values) {
+        if (values == null || values.isEmpty()) {
+            conditions.add("1 = 0");
+            return this;
+        }
+        conditions.add(column + " IN (" + placeholders(values) + ")");
+        return this;
+    }
+
+    /*
+     * Adds a condition that the process definition of each result has one of the keys passed
+     */
+    public NativeQueryBuilder processDefinitionKeyIn(Collection<String> processDefinitionKeys) {
+        if (processDefinitionKeys == null || processDefinitionKeys.isEmpty()) {
+            conditions.add("1 = 0");
+            return this;
+        }
+        conditions.add("RES.PROC_DEF_ID_ IN (SELECT DEF.ID_ FROM " + processDefinitionTable + " DEF WHERE DEF.KEY_ IN (" + placeholders(processDefinitionKeys) + "))");
+        return this;
+    }
+
+    public NativeQueryBuilder orderBy(String orderBy) {
+        this.orderBy = orderBy;
+        return this;
+    }
+
+    public <Q extends NativeQuery<Q, ?>> Q select(Q query) {
+        StringBuilder sql = new StringBuilder("SELECT RES.* FROM ").append(table).append(" RES").append(where());
+        if (orderBy != null)
+            sql.append(" ORDER BY ").append(orderBy);
+        return parameters(query.sql(sql.toString()));
+    }
+
+    public <Q extends NativeQuery<Q, ?>> Q count(Q query) {
+        String sql = "SELECT COUNT(*) FROM " + table + " RES" + where();
+        return parameters(query.sql(sql));
+    }
+
+    private <Q extends NativeQuery<Q, ?>> Q parameters(Q query) {
+        Q result = query;
+        for (Map.Entry<String, Object> entry : parameters.entrySet()) {
+            result = result.parameter(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    private String parameter(Object value) {
+        String name = "p" + parameters.size();
+        parameters.put(name, value);
+        return "#{" + name + "}";
+    }
+
+    private String placeholders(Collection<?> values) {
+        // An empty in clause is not valid sql, while one that holds only null never matches anything
+        if (values.isEmpty())
+            return "NULL";
+
+        StringBuilder builder = new StringBuilder();
+        Iterator<?> iterator = values.iterator();
+        while (iterator.hasNext()) {
+            builder.append(parameter(iterator.next()));
+            if (iterator.hasNext())
+                builder.append(", ");
+        }
+        return builder.toString();
+    }
+
+    private String where() {
+        if (conditions.isEmpty())
+            return "";
+
+        StringBuilder builder = new StringBuilder(" WHERE ");
+        Iterator<String> iterator = conditions.iterator();
+        while (iterator.hasNext()) {
+            builder.append(iterator.next());
+            if (iterator.hasNext())
+                builder.append(" AND ");
+        }
+        return builder.toString();
+    }
+
+}
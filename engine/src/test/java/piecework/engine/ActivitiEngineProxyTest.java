@@ -17,15 +17,20 @@ package piecework.engine;
 
 import junit.framework.Assert;
 import org.activiti.engine.ProcessEngine;
+import org.activiti.engine.TaskService;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import piecework.Constants;
+import piecework.engine.activiti.ActivitiEngineProxyHelper;
 import piecework.engine.activiti.config.TestConfiguration;
 import piecework.engine.exception.ProcessEngineException;
 import piecework.engine.test.ExampleFactory;
@@ -33,11 +38,13 @@ import piecework.model.*;
 import piecework.model.Process;
 import piecework.process.ProcessInstanceSearchCriteria;
 import piecework.security.concrete.PassthroughSanitizer;
+import piecework.service.IdentityService;
+import piecework.task.TaskCriteria;
+import piecework.task.TaskResults;
 import piecework.util.ManyMap;
 
 import java.io.IOException;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 /**
  * @author James Renfro
@@ -53,6 +60,12 @@ public class ActivitiEngineProxyTest {
 	@Autowired
     ProcessEngine processEngine;
 
+    @Autowired
+    ActivitiEngineProxyHelper proxyHelper;
+
+    @Autowired
+    IdentityService userDetailsService;
+
     private Process process;
     private ProcessDeployment deployment;
 
@@ -72,6 +85,19 @@ public class ActivitiEngineProxyTest {
         process = new Process.Builder(process, new PassthroughSanitizer())
                 .deploy(new ProcessDeploymentVersion(deployment), deployment)
                 .build();
+
+        Mockito.when(userDetailsService.findUsers(Mockito.anySetOf(String.class))).thenAnswer(new Answer<Map<String, User>>() {
+            @Override
+            public Map<String, User> answer(InvocationOnMock invocation) throws Throwable {
+                @SuppressWarnings("unchecked")
+                Set<String> ids = (Set<String>) invocation.getArguments()[0];
+                Map<String, User> users = new HashMap<String, User>();
+                for (String id : ids) {
+                    users.put(id, new User.Builder().userId(id).visibleId(id).displayName(id).build());
+                }
+                return users;
+            }
+        });
     }
 	
 	@Test
@@ -150,5 +176,121 @@ public class ActivitiEngineProxyTest {
         String employeeID = (String)execution.getData().get("EmployeeID");
         Assert.assertEquals("testuser", employeeID);
 	}
-	
+
+    @Test
+    public void testFindTasksIncludesCandidateUsers() throws ProcessEngineException {
+        String instanceId = engineProxy.start(process, deployment, Mockito.mock(ProcessInstance.class));
+        String taskId = assignTask(instanceId);
+
+        TaskCriteria criteria = new TaskCriteria.Builder()
+                .process(process)
+                .executionId(instanceId)
+                .build();
+
+        TaskResults results = engineProxy.findTasks(criteria);
+
+        Assert.assertEquals(1, results.getTasks().size());
+        Task task = results.getTasks().get(0);
+        Assert.assertEquals(taskId, task.getTaskInstanceId());
+        Assert.assertEquals("assignee1", task.getAssignee().getUserId());
+        Assert.assertEquals(Collections.singleton("candidate1"), userIds(task.getCandidateAssignees()));
+    }
+
+    @Test
+    public void testFindHistoricTasksIncludesCandidateUsers() throws ProcessEngineException {
+        String instanceId = engineProxy.start(process, deployment, Mockito.mock(ProcessInstance.class));
+        String taskId = assignTask(instanceId);
+        processEngine.getRuntimeService().deleteProcessInstance(instanceId, Constants.DeleteReasons.CANCELLED);
+
+        TaskCriteria criteria = new TaskCriteria.Builder()
+                .process(process)
+                .executionId(instanceId)
+                .processStatus(Constants.ProcessStatuses.ALL)
+                .build();
+
+        TaskResults results = engineProxy.findTasks(criteria);
+
+        Assert.assertEquals(1, results.getTasks().size());
+        Task task = results.getTasks().get(0);
+        Assert.assertEquals(taskId, task.getTaskInstanceId());
+        Assert.assertEquals("assignee1", task.getAssignee().getUserId());
+        Assert.assertEquals(Collections.singleton("candidate1"), userIds(task.getCandidateAssignees()));
+    }
+
+    @Test
+    public void testFindTasksAcrossProcessesForUnknownInstance() throws ProcessEngineException {
+        engineProxy.start(process, deployment, Mockito.mock(ProcessInstance.class));
+        Process otherProcess = new Process.Builder(process, new PassthroughSanitizer())
+                .processDefinitionKey("OTHER")
+                .build();
+
+        // The instance repository knows of no instance with this id, so neither search should match any task
+        for (String processStatus : new String[] { Constants.ProcessStatuses.OPEN, Constants.ProcessStatuses.ALL }) {
+            TaskCriteria criteria = new TaskCriteria.Builder()
+                    .process(process)
+                    .process(otherProcess)
+                    .processInstanceId("unknown")
+                    .processStatus(processStatus)
+                    .build();
+
+            TaskResults results = engineProxy.findTasks(criteria);
+            Assert.assertTrue(results.getTasks() == null || results.getTasks().isEmpty());
+        }
+    }
+
+    @Test
+    public void testCandidateUserIdsSkipGroupOnlyLinks() throws ProcessEngineException {
+        String instanceId = engineProxy.start(process, deployment, Mockito.mock(ProcessInstance.class));
+        String taskId = processEngine.getTaskService().createTaskQuery().processInstanceId(instanceId).singleResult().getId();
+        processEngine.getTaskService().addCandidateGroup(taskId, "group1");
+
+        ManyMap<String, String> candidateUserIdMap = proxyHelper.getCandidateUserIds(Collections.singleton(taskId), false);
+        Assert.assertNull(candidateUserIdMap.get(taskId));
+
+        candidateUserIdMap = proxyHelper.getCandidateUserIds(Collections.singleton(taskId), true);
+        Assert.assertNull(candidateUserIdMap.get(taskId));
+    }
+
+    @Test
+    public void testCandidateUserIdsForMoreTasksThanOneBatch() throws ProcessEngineException {
+        String firstInstanceId = engineProxy.start(process, deployment, Mockito.mock(ProcessInstance.class));
+        String firstTaskId = assignTask(firstInstanceId);
+        String secondInstanceId = engineProxy.start(process, deployment, Mockito.mock(ProcessInstance.class));
+        String secondTaskId = assignTask(secondInstanceId);
+
+        // The real tasks fall into separate batches of the lookup, on either side of the unknown ids
+        List<String> taskIds = new ArrayList<String>();
+        taskIds.add(firstTaskId);
+        for (int i = 0; i < 600; i++) {
+            taskIds.add("unknown" + i);
+        }
+        taskIds.add(secondTaskId);
+
+        for (boolean historic : new boolean[] { false, true }) {
+            ManyMap<String, String> candidateUserIdMap = proxyHelper.getCandidateUserIds(taskIds, historic);
+            Assert.assertEquals(2, candidateUserIdMap.size());
+            Assert.assertEquals(Collections.singletonList("candidate1"), candidateUserIdMap.get(firstTaskId));
+            Assert.assertEquals(Collections.singletonList("candidate1"), candidateUserIdMap.get(secondTaskId));
+        }
+    }
+
+    private String assignTask(String instanceId) {
+        TaskService taskService = processEngine.getTaskService();
+        String taskId = taskService.createTaskQuery().processInstanceId(instanceId).singleResult().getId();
+        taskService.setAssignee(taskId, "assignee1");
+        taskService.addCandidateUser(taskId, "candidate1");
+        taskService.addCandidateGroup(taskId, "group1");
+        return taskId;
+    }
+
+    private static Set<String> userIds(List<User> users) {
+        Set<String> userIds = new HashSet<String>();
+        if (users != null) {
+            for (User user : users) {
+                userIds.add(user.getUserId());
+            }
+        }
+        return userIds;
+    }
+
 }
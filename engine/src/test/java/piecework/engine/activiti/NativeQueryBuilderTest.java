@@ -0,0 +1,91 @@
+/*
+ * Copyright 2013 University of Washington
+ *
+ * Licensed under the Educational Community License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl1.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package piecework.engine.activiti;
+
+import org.activiti.engine.task.NativeTaskQuery;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+/**
+ * @author James Renfro
+ */
+public class NativeQueryBuilderTest {
+
+    private NativeTaskQuery query;
+
+    @Before
+    public void setup() {
+        query = Mockito.mock(NativeTaskQuery.class);
+        Mockito.when(query.sql(Mockito.anyString())).thenReturn(query);
+        Mockito.when(query.parameter(Mockito.anyString(), Mockito.any())).thenReturn(query);
+    }
+
+    @Test
+    public void testSelect() {
+        Date dueBefore = new Date();
+        new NativeQueryBuilder("ACT_RU_TASK", "ACT_RE_PROCDEF")
+                .processDefinitionKeyIn(Arrays.asList("first", "second"))
+                .where("RES.DUE_DATE_ < ?", dueBefore)
+                .where("RES.GROUP_ID_ IN (?)", Arrays.asList("a", "b"))
+                .orderBy("RES.CREATE_TIME_ DESC")
+                .select(query);
+
+        Mockito.verify(query).sql("SELECT RES.* FROM ACT_RU_TASK RES WHERE RES.PROC_DEF_ID_ IN (SELECT DEF.ID_ FROM ACT_RE_PROCDEF DEF WHERE DEF.KEY_ IN (#{p0}, #{p1})) " +
+                "AND RES.DUE_DATE_ < #{p2} AND RES.GROUP_ID_ IN (#{p3}, #{p4}) ORDER BY RES.CREATE_TIME_ DESC");
+        Mockito.verify(query).parameter("p0", "first");
+        Mockito.verify(query).parameter("p1", "second");
+        Mockito.verify(query).parameter("p2", dueBefore);
+        Mockito.verify(query).parameter("p3", "a");
+        Mockito.verify(query).parameter("p4", "b");
+    }
+
+    @Test
+    public void testTablePrefix() {
+        new NativeQueryBuilder("TEST.ACT_RU_TASK", "TEST.ACT_RE_PROCDEF")
+                .processDefinitionKeyIn(Collections.singleton("first"))
+                .count(query);
+
+        Mockito.verify(query).sql("SELECT COUNT(*) FROM TEST.ACT_RU_TASK RES WHERE RES.PROC_DEF_ID_ IN (SELECT DEF.ID_ FROM TEST.ACT_RE_PROCDEF DEF WHERE DEF.KEY_ IN (#{p0}))");
+    }
+
+    @Test
+    public void testCountHasNoOrder() {
+        new NativeQueryBuilder("ACT_RU_TASK", "ACT_RE_PROCDEF")
+                .where("RES.ASSIGNEE_ = ?", "testuser")
+                .orderBy("RES.CREATE_TIME_ DESC")
+                .count(query);
+
+        Mockito.verify(query).sql("SELECT COUNT(*) FROM ACT_RU_TASK RES WHERE RES.ASSIGNEE_ = #{p0}");
+        Mockito.verify(query).parameter("p0", "testuser");
+    }
+
+    @Test
+    public void testEmptyValuesMatchNothing() {
+        new NativeQueryBuilder("ACT_HI_PROCINST", "ACT_RE_PROCDEF")
+                .processDefinitionKeyIn(Collections.<String>emptySet())
+                .where("RES.GROUP_ID_ IN (?)", Collections.emptySet())
+                .count(query);
+
+        Mockito.verify(query).sql("SELECT COUNT(*) FROM ACT_HI_PROCINST RES WHERE 1 = 0 AND RES.GROUP_ID_ IN (NULL)");
+        Mockito.verify(query, Mockito.never()).parameter(Mockito.anyString(), Mockito.any());
+    }
+
+}